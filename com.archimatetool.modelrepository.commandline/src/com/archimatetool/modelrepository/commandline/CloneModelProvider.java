@@ -17,6 +17,7 @@ import com.archimatetool.editor.utils.StringUtils;
 import com.archimatetool.modelrepository.authentication.ICredentials;
 import com.archimatetool.modelrepository.authentication.UsernamePassword;
 import com.archimatetool.modelrepository.repository.ArchiRepository;
+import com.archimatetool.modelrepository.repository.RepositoryPool;
 
 /**
  * Command Line interface for loading a repository model and cloning from online Repository
@@ -66,6 +67,7 @@ public class CloneModelProvider extends AbstractModelRepositoryProvider {
         try {
             // Delete target folder first in case it's not empty
             logMessage(NLS.bind("Deleting target folder {0}", folder));
+            RepositoryPool.getInstance().evict(folder);
             FileUtils.deleteFolder(folder);
             
             logMessage(NLS.bind("Cloning from {0} to {1}", url, folder));
@@ -10,10 +10,10 @@ import java.io.File;
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.Option;
 import org.apache.commons.cli.Options;
-import org.eclipse.jgit.api.Git;
 import org.eclipse.osgi.util.NLS;
 
 import com.archimatetool.modelrepository.repository.BranchStatus;
+import com.archimatetool.modelrepository.repository.GitUtils;
 import com.archimatetool.modelrepository.repository.RepoConstants;
 
 /**
@@ -63,8 +63,8 @@ public class SwitchBranchProvider extends AbstractModelRepositoryProvider {
             logMessage(NLS.bind("Switching to and creating branch: {0}", branch));
         }
         
-        try(Git git = Git.open(modelFolder)) {
-            git.checkout()
+        try(GitUtils utils = GitUtils.open(modelFolder)) {
+            utils.checkout()
                 .setName(branch)
                 .setCreateBranch(!localRefExists)
                 .setStartPoint(remoteRefExists ? RepoConstants.R_REMOTES_ORIGIN + branch : null)
@@ -9,12 +9,23 @@ import org.junit.platform.suite.api.SelectClasses;
 import org.junit.platform.suite.api.Suite;
 import org.junit.platform.suite.api.SuiteDisplayName;
 
+import com.archimatetool.modelrepository.merge.IdentifierComparisonTests;
+import com.archimatetool.modelrepository.merge.IdentifierMergeTests;
+import com.archimatetool.modelrepository.merge.MergeFactoryTests;
+import com.archimatetool.modelrepository.merge.MergeIntegrityCheckerTests;
+import com.archimatetool.modelrepository.merge.SubtreeHashesTests;
 import com.archimatetool.modelrepository.repository.ArchiRepositoryTests;
 import com.archimatetool.modelrepository.repository.BranchInfoTests;
 import com.archimatetool.modelrepository.repository.BranchStatusTests;
 import com.archimatetool.modelrepository.repository.CommitManifestTests;
 import com.archimatetool.modelrepository.repository.GitUtilsTests;
+import com.archimatetool.modelrepository.repository.ManifestNotesTests;
+import com.archimatetool.modelrepository.repository.ModelCacheTests;
+import com.archimatetool.modelrepository.repository.ModelChangeJournalTests;
+import com.archimatetool.modelrepository.repository.ModelObjectIndexTests;
 import com.archimatetool.modelrepository.repository.RepoUtilsTests;
+import com.archimatetool.modelrepository.repository.RepositoryMaintenanceTests;
+import com.archimatetool.modelrepository.repository.RepositoryPoolTests;
 import com.archimatetool.modelrepository.repository.TagInfoTests;
 import com.archimatetool.modelrepository.treemodel.GroupTests;
 import com.archimatetool.modelrepository.treemodel.RepositoryRefTests;
@@ -23,13 +34,26 @@ import com.archimatetool.modelrepository.treemodel.RepositoryTreeModelTests;
 
 @Suite
 @SelectClasses({
+    // merge
+    IdentifierComparisonTests.class,
+    IdentifierMergeTests.class,
+    MergeFactoryTests.class,
+    MergeIntegrityCheckerTests.class,
+    SubtreeHashesTests.class,
+    
     // repository
     ArchiRepositoryTests.class,
     BranchInfoTests.class,
     BranchStatusTests.class,
     CommitManifestTests.class,
     GitUtilsTests.class,
+    ManifestNotesTests.class,
+    ModelCacheTests.class,
+    ModelChangeJournalTests.class,
+    ModelObjectIndexTests.class,
     RepoUtilsTests.class,
+    RepositoryMaintenanceTests.class,
+    RepositoryPoolTests.class,
     TagInfoTests.class,
     
     // treemodel
@@ -0,0 +1,260 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+package com.archimatetool.modelrepository.merge;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.eclipse.emf.compare.AttributeChange;
+import org.eclipse.emf.compare.Comparison;
+import org.eclipse.emf.compare.Diff;
+import org.eclipse.emf.compare.Match;
+import org.eclipse.emf.compare.ReferenceChange;
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.util.EcoreUtil;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.archimatetool.model.FolderType;
+import com.archimatetool.model.IArchimateDiagramModel;
+import com.archimatetool.model.IArchimateFactory;
+import com.archimatetool.model.IArchimateModel;
+import com.archimatetool.model.IArchimateRelationship;
+import com.archimatetool.model.IBusinessActor;
+import com.archimatetool.model.IDiagramModelArchimateObject;
+import com.archimatetool.model.IFolder;
+import com.archimatetool.model.IIdentifier;
+import com.archimatetool.model.util.ArchimateModelUtils;
+import com.archimatetool.modelrepository.testsupport.GitHelper;
+
+
+@SuppressWarnings("nls")
+public class IdentifierComparisonTests {
+
+    private IArchimateModel model;
+    private IBusinessActor actor1, actor2, actor3;
+    private IArchimateRelationship relation;
+    private IFolder subFolder;
+    private IDiagramModelArchimateObject dmo;
+    
+    @BeforeEach
+    public void runOnceBeforeEachTest() {
+        model = GitHelper.createSimpleModel();
+        
+        IFolder folder = model.getFolder(FolderType.BUSINESS);
+        subFolder = IArchimateFactory.eINSTANCE.createFolder();
+        folder.getFolders().add(subFolder);
+        
+        actor1 = createActor(folder, "Actor 1");
+        actor2 = createActor(folder, "Actor 2");
+        actor3 = createActor(folder, "Actor 3");
+        
+        relation = IArchimateFactory.eINSTANCE.createAssociationRelationship();
+        relation.connect(actor1, actor2);
+        model.getDefaultFolderForObject(relation).getElements().add(relation);
+        
+        IArchimateDiagramModel dm = (IArchimateDiagramModel)model.getDiagramModels().get(0);
+        dmo = IArchimateFactory.eINSTANCE.createDiagramModelArchimateObject();
+        dmo.setArchimateElement(actor1);
+        dmo.setBounds(10, 10, 120, 55);
+        dm.getChildren().add(dmo);
+    }
+    
+    private IBusinessActor createActor(IFolder folder, String name) {
+        IBusinessActor actor = IArchimateFactory.eINSTANCE.createBusinessActor();
+        actor.setName(name);
+        folder.getElements().add(actor);
+        return actor;
+    }
+    
+    @SuppressWarnings("unchecked")
+    private <T extends IIdentifier> T find(IArchimateModel model, T eObject) {
+        return (T)ArchimateModelUtils.getObjectByID(model, eObject.getId());
+    }
+    
+    /**
+     * @return the differences of the comparison of newModel with model as Strings
+     */
+    private Set<String> compare(IArchimateModel newModel, boolean identifierComparison) {
+        Comparison comparison = identifierComparison ? IdentifierComparison.create(newModel, model) : MergeFactory.createEMFComparison(newModel, model, null);
+        assertNotNull(comparison);
+        return getDiffs(comparison);
+    }
+    
+    private Set<String> getDiffs(Comparison comparison) {
+        Set<String> diffs = new HashSet<>();
+        for(Diff diff : comparison.getDifferences()) {
+            Match match = diff.getMatch();
+            String feature = diff instanceof ReferenceChange rc ? rc.getReference().getName() : ((AttributeChange)diff).getAttribute().getName();
+            String value = diff instanceof ReferenceChange rc ? getIdentifier(rc.getValue()) : String.valueOf(((AttributeChange)diff).getValue());
+            diffs.add(diff.getKind() + " " + feature + " " + getIdentifier(match.getLeft()) + " " + getIdentifier(match.getRight()) + " " + value);
+        }
+        
+        return diffs;
+    }
+    
+    private String getIdentifier(EObject eObject) {
+        return eObject != null ? MergeFactory.createIdentifier(eObject) : null;
+    }
+    
+    /**
+     * Compare newModel with model with IdentifierComparison and EMF Compare and check the differences are the same
+     */
+    private Set<String> assertSameAsEMFCompare(IArchimateModel newModel) {
+        Set<String> diffs = compare(newModel, true);
+        assertEquals(compare(newModel, false), diffs);
+        return diffs;
+    }
+    
+    @Test
+    public void noChanges() {
+        assertEquals(Set.of(), assertSameAsEMFCompare(EcoreUtil.copy(model)));
+    }
+    
+    @Test
+    public void attributeChanged() {
+        IArchimateModel newModel = EcoreUtil.copy(model);
+        find(newModel, actor1).setName("Changed");
+        
+        assertEquals(Set.of("CHANGE name " + actor1.getId() + " " + actor1.getId() + " Changed"), assertSameAsEMFCompare(newModel));
+    }
+    
+    @Test
+    public void boundsChanged() {
+        IArchimateModel newModel = EcoreUtil.copy(model);
+        find(newModel, dmo).getBounds().setX(50);
+        
+        assertEquals(Set.of("CHANGE x " + dmo.getId() + "#bounds " + dmo.getId() + "#bounds 50"), assertSameAsEMFCompare(newModel));
+    }
+    
+    @Test
+    public void objectAdded() {
+        IArchimateModel newModel = EcoreUtil.copy(model);
+        IBusinessActor actor = createActor(find(newModel, subFolder), "New");
+        
+        assertEquals(Set.of("ADD elements " + subFolder.getId() + " " + subFolder.getId() + " " + actor.getId()), assertSameAsEMFCompare(newModel));
+    }
+    
+    @Test
+    public void objectDeleted() {
+        IArchimateModel newModel = EcoreUtil.copy(model);
+        EcoreUtil.remove(find(newModel, actor3));
+        
+        String folderId = model.getFolder(FolderType.BUSINESS).getId();
+        assertEquals(Set.of("DELETE elements " + folderId + " " + folderId + " " + actor3.getId()), assertSameAsEMFCompare(newModel));
+    }
+    
+    @Test
+    public void objectMoved() {
+        IArchimateModel newModel = EcoreUtil.copy(model);
+        find(newModel, subFolder).getElements().add(find(newModel, actor3));
+        
+        assertEquals(Set.of("MOVE elements " + subFolder.getId() + " " + subFolder.getId() + " " + actor3.getId()), assertSameAsEMFCompare(newModel));
+    }
+    
+    @Test
+    public void objectReordered() {
+        IArchimateModel newModel = EcoreUtil.copy(model);
+        IFolder folder = newModel.getFolder(FolderType.BUSINESS);
+        folder.getElements().move(folder.getElements().size() - 1, 0);
+        
+        Set<String> diffs = compare(newModel, true);
+        assertEquals(Set.of("MOVE elements " + folder.getId() + " " + folder.getId() + " " + actor3.getId()), diffs);
+    }
+    
+    @Test
+    public void referenceChanged() {
+        IArchimateModel newModel = EcoreUtil.copy(model);
+        find(newModel, relation).setTarget(find(newModel, actor3));
+        
+        assertEquals(Set.of("CHANGE target " + relation.getId() + " " + relation.getId() + " " + actor3.getId()), assertSameAsEMFCompare(newModel));
+    }
+    
+    @Test
+    public void subtreeHashes_SameDifferences() {
+        IArchimateModel newModel = EcoreUtil.copy(model);
+        find(newModel, actor1).setName("Changed");
+        find(newModel, dmo).getBounds().setX(50);
+        find(newModel, subFolder).getElements().add(find(newModel, actor3));
+        
+        Comparison comparison = IdentifierComparison.create(newModel, model, SubtreeHashes.compute(newModel), SubtreeHashes.compute(model));
+        assertEquals(compare(newModel, true), getDiffs(comparison));
+        assertEquals(3, comparison.getDifferences().size());
+    }
+    
+    @Test
+    public void getMatch() {
+        IArchimateModel newModel = EcoreUtil.copy(model);
+        find(newModel, actor1).setName("Changed");
+        
+        Comparison comparison = IdentifierComparison.create(newModel, model);
+        Match match = comparison.getMatch(find(newModel, actor1));
+        assertEquals(actor1, match.getRight());
+        assertEquals(1, match.getDifferences().size());
+        
+        // The matches of the containers are created
+        assertEquals(model.getFolder(FolderType.BUSINESS), ((Match)match.eContainer()).getRight());
+        
+        // No match for an unchanged object
+        assertNull(comparison.getMatch(actor2));
+    }
+    
+    @Test
+    public void objectWithoutId_UsesEMFCompare() {
+        IArchimateModel newModel = EcoreUtil.copy(model);
+        find(newModel, actor1).setId(null);
+        
+        assertNull(IdentifierComparison.create(newModel, model));
+        assertNotNull(MergeFactory.createComparison(newModel, model, null));
+    }
+    
+    @Test
+    public void objectsWithoutIdentifier_ComparedWithEMFCompare() {
+        model.setMetadata(IArchimateFactory.eINSTANCE.createMetadata());
+        model.getMetadata().getEntries().add(IArchimateFactory.eINSTANCE.createProperty("key1", "value1"));
+        model.getMetadata().getEntries().add(IArchimateFactory.eINSTANCE.createProperty("key2", "value2"));
+        
+        IArchimateModel newModel = EcoreUtil.copy(model);
+        find(newModel, actor1).setName("Changed");
+        newModel.getMetadata().getEntries().get(0).setValue("Changed");
+        newModel.getMetadata().getEntries().add(IArchimateFactory.eINSTANCE.createProperty("key3", "value3"));
+        
+        // The properties of metadata can't be identified so only they are compared with EMF Compare
+        Set<String> diffs = assertSameAsEMFCompare(newModel);
+        assertTrue(diffs.contains("CHANGE name " + actor1.getId() + " " + actor1.getId() + " Changed"));
+        assertTrue(diffs.contains("CHANGE value null null Changed"));
+        assertTrue(diffs.contains("ADD entries " + model.getId() + "#metadata " + model.getId() + "#metadata null"));
+        assertEquals(3, diffs.size());
+    }
+    
+    @Test
+    public void duplicateId_UsesEMFCompare() {
+        IArchimateModel newModel = EcoreUtil.copy(model);
+        find(newModel, actor2).setId(actor1.getId());
+        
+        assertNull(IdentifierComparison.create(newModel, model));
+    }
+    
+    @Test
+    public void threeWay_UsesEMFCompare() {
+        Comparison comparison = MergeFactory.createComparison(EcoreUtil.copy(model), EcoreUtil.copy(model), model);
+        assertTrue(comparison.isThreeWay());
+    }
+    
+    @Test
+    public void getLongestIncreasingSubsequence() {
+        assertArrayEquals(new boolean[] {}, IdentifierComparison.getLongestIncreasingSubsequence(new int[] {}));
+        assertArrayEquals(new boolean[] { true, true, true }, IdentifierComparison.getLongestIncreasingSubsequence(new int[] { 0, 1, 2 }));
+        assertArrayEquals(new boolean[] { false, true, true, true }, IdentifierComparison.getLongestIncreasingSubsequence(new int[] { 3, 0, 1, 2 }));
+        assertArrayEquals(new boolean[] { false, true, false, true, true }, IdentifierComparison.getLongestIncreasingSubsequence(new int[] { 1, 0, 3, 2, 4 }));
+    }
+}
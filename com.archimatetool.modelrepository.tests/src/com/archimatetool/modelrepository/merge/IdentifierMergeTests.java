@@ -0,0 +1,163 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+package com.archimatetool.modelrepository.merge;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Set;
+
+import org.eclipse.emf.ecore.util.EcoreUtil;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.archimatetool.model.FolderType;
+import com.archimatetool.model.IArchimateDiagramModel;
+import com.archimatetool.model.IArchimateFactory;
+import com.archimatetool.model.IArchimateModel;
+import com.archimatetool.model.IAssociationRelationship;
+import com.archimatetool.model.IBusinessActor;
+import com.archimatetool.model.IDiagramModelArchimateObject;
+import com.archimatetool.model.IFolder;
+import com.archimatetool.model.IIdentifier;
+import com.archimatetool.model.util.ArchimateModelUtils;
+import com.archimatetool.modelrepository.testsupport.GitHelper;
+
+
+@SuppressWarnings("nls")
+public class IdentifierMergeTests {
+
+    private IArchimateModel baseModel;
+    private IBusinessActor actor1, actor2;
+    private IArchimateDiagramModel dm;
+    private IDiagramModelArchimateObject dmo1;
+    
+    @BeforeEach
+    public void runOnceBeforeEachTest() {
+        baseModel = GitHelper.createSimpleModel();
+        
+        IFolder folder = baseModel.getFolder(FolderType.BUSINESS);
+        actor1 = IArchimateFactory.eINSTANCE.createBusinessActor();
+        actor1.setName("Actor 1");
+        folder.getElements().add(actor1);
+        actor2 = IArchimateFactory.eINSTANCE.createBusinessActor();
+        actor2.setName("Actor 2");
+        folder.getElements().add(actor2);
+        
+        dm = (IArchimateDiagramModel)baseModel.getDiagramModels().get(0);
+        dmo1 = IArchimateFactory.eINSTANCE.createDiagramModelArchimateObject();
+        dmo1.setArchimateElement(actor1);
+        dm.getChildren().add(dmo1);
+    }
+    
+    private <T> T get(IArchimateModel model, T eObject) {
+        @SuppressWarnings("unchecked")
+        T object = (T)ArchimateModelUtils.getObjectByID(model, ((IIdentifier)eObject).getId());
+        return object;
+    }
+    
+    @Test
+    public void merge_ChangedAndAddedObjects() {
+        IArchimateModel ourModel = EcoreUtil.copy(baseModel);
+        IArchimateModel theirModel = EcoreUtil.copy(baseModel);
+        
+        // We change actor 2
+        get(ourModel, actor2).setName("Our name");
+        
+        // They change actor 1 and add a relation from actor 1 to actor 2
+        get(theirModel, actor1).setName("Their name");
+        IAssociationRelationship relation = IArchimateFactory.eINSTANCE.createAssociationRelationship();
+        relation.connect(get(theirModel, actor1), get(theirModel, actor2));
+        theirModel.getFolder(FolderType.RELATIONS).getElements().add(relation);
+        
+        IBusinessActor ourActor1 = get(ourModel, actor1);
+        
+        assertTrue(IdentifierMerge.merge(ourModel, theirModel, Set.of(actor1.getId(), relation.getId())));
+        
+        // Our object is updated and not replaced so the diagram still references it
+        assertSame(ourActor1, get(ourModel, actor1));
+        assertEquals("Their name", ourActor1.getName());
+        assertSame(ourActor1, get(ourModel, dmo1).getArchimateElement());
+        
+        // Our change is kept
+        assertEquals("Our name", get(ourModel, actor2).getName());
+        
+        // Their relation is added and references our objects
+        IAssociationRelationship ourRelation = get(ourModel, relation);
+        assertNotNull(ourRelation);
+        assertSame(ourModel.getFolder(FolderType.RELATIONS), ourRelation.eContainer());
+        assertSame(ourActor1, ourRelation.getSource());
+        assertSame(get(ourModel, actor2), ourRelation.getTarget());
+    }
+    
+    @Test
+    public void merge_ChangedDiagram() {
+        IArchimateModel ourModel = EcoreUtil.copy(baseModel);
+        IArchimateModel theirModel = EcoreUtil.copy(baseModel);
+        
+        // They move a diagram object and add another
+        get(theirModel, dmo1).setBounds(10, 20, 30, 40);
+        IDiagramModelArchimateObject dmo2 = IArchimateFactory.eINSTANCE.createDiagramModelArchimateObject();
+        dmo2.setArchimateElement(get(theirModel, actor2));
+        get(theirModel, dm).getChildren().add(dmo2);
+        
+        IDiagramModelArchimateObject ourDmo1 = get(ourModel, dmo1);
+        
+        assertTrue(IdentifierMerge.merge(ourModel, theirModel, Set.of(dm.getId())));
+        
+        IArchimateDiagramModel ourDm = get(ourModel, dm);
+        assertEquals(2, ourDm.getChildren().size());
+        assertSame(ourDmo1, ourDm.getChildren().get(0));
+        assertEquals(10, ourDmo1.getBounds().getX());
+        assertSame(get(ourModel, actor2), ((IDiagramModelArchimateObject)ourDm.getChildren().get(1)).getArchimateElement());
+    }
+    
+    @Test
+    public void merge_DeletedObject() {
+        IArchimateModel ourModel = EcoreUtil.copy(baseModel);
+        IArchimateModel theirModel = EcoreUtil.copy(baseModel);
+        
+        EcoreUtil.remove(get(theirModel, actor2));
+        
+        assertTrue(IdentifierMerge.merge(ourModel, theirModel, Set.of(actor2.getId())));
+        assertNull(get(ourModel, actor2));
+    }
+    
+    @Test
+    public void merge_DeletedFolderWithOurMember_ReturnsFalse() {
+        IFolder folder = IArchimateFactory.eINSTANCE.createFolder();
+        baseModel.getFolder(FolderType.BUSINESS).getFolders().add(folder);
+        
+        IArchimateModel ourModel = EcoreUtil.copy(baseModel);
+        IArchimateModel theirModel = EcoreUtil.copy(baseModel);
+        
+        // We add an actor to the folder and they delete the folder
+        IBusinessActor actor = IArchimateFactory.eINSTANCE.createBusinessActor();
+        get(ourModel, folder).getElements().add(actor);
+        EcoreUtil.remove(get(theirModel, folder));
+        
+        assertFalse(IdentifierMerge.merge(ourModel, theirModel, Set.of(folder.getId())));
+    }
+    
+    @Test
+    public void merge_ReferenceToMissingObject_ReturnsFalse() {
+        IArchimateModel ourModel = EcoreUtil.copy(baseModel);
+        IArchimateModel theirModel = EcoreUtil.copy(baseModel);
+        
+        // They add a relation to an actor that is not in the changes
+        IBusinessActor actor = IArchimateFactory.eINSTANCE.createBusinessActor();
+        theirModel.getFolder(FolderType.BUSINESS).getElements().add(actor);
+        IAssociationRelationship relation = IArchimateFactory.eINSTANCE.createAssociationRelationship();
+        relation.connect(get(theirModel, actor1), actor);
+        theirModel.getFolder(FolderType.RELATIONS).getElements().add(relation);
+        
+        assertFalse(IdentifierMerge.merge(ourModel, theirModel, Set.of(relation.getId())));
+    }
+}
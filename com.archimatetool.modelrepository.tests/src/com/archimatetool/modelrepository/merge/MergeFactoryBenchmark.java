@@ -0,0 +1,121 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+package com.archimatetool.modelrepository.merge;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.eclipse.emf.compare.EMFCompare;
+import org.eclipse.emf.compare.scope.DefaultComparisonScope;
+import org.eclipse.emf.ecore.util.EcoreUtil;
+
+import com.archimatetool.model.FolderType;
+import com.archimatetool.model.IArchimateFactory;
+import com.archimatetool.model.IArchimateModel;
+import com.archimatetool.model.IBusinessActor;
+import com.archimatetool.model.IFolder;
+import com.archimatetool.modelrepository.testsupport.GitHelper;
+
+/**
+ * Standalone benchmark of the shared EMFCompare in MergeFactory against building a new match engine registry
+ * and EMFCompare for each comparison, as was done before they were shared.
+ *
+ * This is not part of AllTests. Run it as a Java Application from this fragment with the plug-in dependencies on the classpath.
+ * Arguments are the number of actors in the model (default 2000), the number of comparisons in each round (default 20)
+ * and the number of rounds (default 5). The first round is a warm up and is not counted.
+ * The median time of a comparison in the measured rounds is printed for each.
+ */
+@SuppressWarnings("nls")
+public class MergeFactoryBenchmark {
+
+    public static void main(String[] args) {
+        int numberOfActors = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        int rounds = Math.max(2, args.length > 2 ? Integer.parseInt(args[2]) : 5);
+        
+        IArchimateModel model = createModel(numberOfActors);
+        IArchimateModel copy = createChangedCopy(model);
+        
+        long[] newInstances = new long[rounds - 1];
+        long[] shared = new long[rounds - 1];
+        
+        for(int round = 0; round < rounds; round++) {
+            long newInstancesTime = timeNewInstances(copy, model, iterations);
+            long sharedTime = timeShared(copy, model, iterations);
+            
+            // Warm up
+            if(round == 0) {
+                continue;
+            }
+            
+            newInstances[round - 1] = newInstancesTime / iterations;
+            shared[round - 1] = sharedTime / iterations;
+        }
+        
+        long newInstancesMedian = median(newInstances);
+        long sharedMedian = median(shared);
+        
+        System.out.println("EMF Compare of " + numberOfActors + " actors, median of " + (rounds - 1) + " rounds of " + iterations + " comparisons");
+        System.out.println("New registry and EMFCompare: " + format(newInstancesMedian) + " per comparison");
+        System.out.println("Shared EMFCompare: " + format(sharedMedian) + " per comparison");
+        System.out.println("Saving: " + format(newInstancesMedian - sharedMedian) + " per comparison ("
+                + (newInstancesMedian > 0 ? (newInstancesMedian - sharedMedian) * 100 / newInstancesMedian : 0) + "%)");
+    }
+    
+    private static long timeNewInstances(IArchimateModel left, IArchimateModel right, int iterations) {
+        long start = System.nanoTime();
+        for(int i = 0; i < iterations; i++) {
+            EMFCompare.builder().setMatchEngineFactoryRegistry(MergeFactory.createMatchEngineFactoryRegistry()).build()
+                                .compare(new DefaultComparisonScope(left, right, null));
+        }
+        return System.nanoTime() - start;
+    }
+    
+    private static long timeShared(IArchimateModel left, IArchimateModel right, int iterations) {
+        long start = System.nanoTime();
+        for(int i = 0; i < iterations; i++) {
+            MergeFactory.createEMFComparison(left, right, null);
+        }
+        return System.nanoTime() - start;
+    }
+    
+    private static IArchimateModel createModel(int numberOfActors) {
+        IArchimateModel model = GitHelper.createSimpleModel();
+        IFolder folder = model.getFolder(FolderType.BUSINESS);
+        
+        for(int i = 0; i < numberOfActors; i++) {
+            IBusinessActor actor = IArchimateFactory.eINSTANCE.createBusinessActor();
+            actor.setName("Actor " + i);
+            folder.getElements().add(actor);
+        }
+        
+        return model;
+    }
+    
+    /**
+     * @return a copy of model with the name of the first actor changed and the last actor deleted
+     */
+    private static IArchimateModel createChangedCopy(IArchimateModel model) {
+        IArchimateModel copy = EcoreUtil.copy(model);
+        List<IBusinessActor> actors = copy.getFolder(FolderType.BUSINESS).getElements().stream()
+                                          .filter(IBusinessActor.class::isInstance)
+                                          .map(IBusinessActor.class::cast)
+                                          .toList();
+        actors.get(0).setName("Changed");
+        EcoreUtil.remove(actors.get(actors.size() - 1));
+        return copy;
+    }
+    
+    private static long median(long[] values) {
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+    
+    private static String format(long nanos) {
+        return String.format("%.3f ms", nanos / 1_000_000.0);
+    }
+}
@@ -0,0 +1,163 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+package com.archimatetool.modelrepository.merge;
+
+import static org.eclipse.emf.compare.utils.EMFComparePredicates.fromSide;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.eclipse.emf.common.util.BasicMonitor;
+import org.eclipse.emf.compare.Comparison;
+import org.eclipse.emf.compare.Diff;
+import org.eclipse.emf.compare.DifferenceSource;
+import org.eclipse.emf.compare.Match;
+import org.eclipse.emf.compare.merge.BatchMerger;
+import org.eclipse.emf.compare.merge.IMerger.RegistryImpl;
+import org.eclipse.emf.ecore.util.EcoreUtil;
+import org.junit.jupiter.api.Test;
+
+import com.archimatetool.model.FolderType;
+import com.archimatetool.model.IArchimateFactory;
+import com.archimatetool.model.IArchimateModel;
+import com.archimatetool.model.IAssociationRelationship;
+import com.archimatetool.model.IBusinessActor;
+import com.archimatetool.model.IFolder;
+import com.archimatetool.model.util.ArchimateModelUtils;
+import com.archimatetool.modelrepository.testsupport.GitHelper;
+
+
+@SuppressWarnings("nls")
+public class MergeFactoryTests {
+
+    private IArchimateModel createModel(int numberOfActors) {
+        IArchimateModel model = GitHelper.createSimpleModel();
+        IFolder folder = model.getFolder(FolderType.BUSINESS);
+        
+        for(int i = 0; i < numberOfActors; i++) {
+            IBusinessActor actor = IArchimateFactory.eINSTANCE.createBusinessActor();
+            actor.setName("Actor " + i);
+            folder.getElements().add(actor);
+        }
+        
+        return model;
+    }
+    
+    private List<IBusinessActor> getActors(IArchimateModel model) {
+        return model.getFolder(FolderType.BUSINESS).getElements().stream()
+                    .filter(IBusinessActor.class::isInstance)
+                    .map(IBusinessActor.class::cast)
+                    .toList();
+    }
+    
+    /**
+     * @return a copy of model with the name of the i'th actor changed and the last actor deleted
+     */
+    private IArchimateModel createChangedCopy(IArchimateModel model, int i) {
+        IArchimateModel copy = EcoreUtil.copy(model);
+        List<IBusinessActor> actors = getActors(copy);
+        actors.get(i).setName("Changed");
+        EcoreUtil.remove(actors.get(actors.size() - 1));
+        return copy;
+    }
+    
+    private List<String> getDiffs(Comparison comparison) {
+        List<String> diffs = new ArrayList<>();
+        for(Diff diff : comparison.getDifferences()) {
+            Match match = diff.getMatch();
+            diffs.add(diff.getKind() + " " + MergeFactory.createIdentifier(match.getLeft() != null ? match.getLeft() : match.getRight()));
+        }
+        return diffs;
+    }
+    
+    @Test
+    public void createEMFComparison_ConcurrentSameAsSequential() throws Exception {
+        IArchimateModel model = createModel(50);
+        
+        List<IArchimateModel> copies = new ArrayList<>();
+        List<List<String>> expected = new ArrayList<>();
+        for(int i = 0; i < 16; i++) {
+            IArchimateModel copy = createChangedCopy(model, i);
+            copies.add(copy);
+            expected.add(getDiffs(MergeFactory.createEMFComparison(copy, model, null)));
+        }
+        
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            // Each thread compares with its own copy of the model
+            List<Future<List<String>>> futures = new ArrayList<>();
+            for(IArchimateModel copy : copies) {
+                IArchimateModel modelCopy = EcoreUtil.copy(model);
+                futures.add(executor.submit(() -> getDiffs(MergeFactory.createEMFComparison(copy, modelCopy, null))));
+            }
+            
+            for(int i = 0; i < futures.size(); i++) {
+                assertEquals(2, expected.get(i).size());
+                assertEquals(expected.get(i), futures.get(i).get());
+            }
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+    
+    @Test
+    public void createEMFComparison_ComparisonsAreIndependent() {
+        IArchimateModel model = createModel(10);
+        
+        Comparison comparison1 = MergeFactory.createEMFComparison(createChangedCopy(model, 0), model, null);
+        Comparison comparison2 = MergeFactory.createEMFComparison(EcoreUtil.copy(model), model, null);
+        
+        // The second comparison doesn't see any state from the first
+        assertEquals(2, comparison1.getDifferences().size());
+        assertEquals(0, comparison2.getDifferences().size());
+    }
+    
+    @Test
+    public void createComparison_ThreeWayPrunedSameAsNotPruned() {
+        IArchimateModel base = createModel(50);
+        
+        IArchimateModel ours = EcoreUtil.copy(base);
+        getActors(ours).get(3).setName("Ours");
+        
+        IArchimateModel theirs = EcoreUtil.copy(base);
+        getActors(theirs).get(10).setName("Theirs");
+        IAssociationRelationship relation = IArchimateFactory.eINSTANCE.createAssociationRelationship();
+        relation.connect(getActors(theirs).get(20), getActors(theirs).get(21));
+        theirs.getFolder(FolderType.RELATIONS).getElements().add(relation);
+        
+        Comparison pruned = MergeFactory.createComparison(ours, theirs, base, SubtreeHashes.compute(ours), SubtreeHashes.compute(theirs), SubtreeHashes.compute(base));
+        Comparison notPruned = MergeFactory.createEMFComparison(ours, theirs, base);
+        
+        List<String> expected = new ArrayList<>(getDiffs(notPruned));
+        List<String> actual = new ArrayList<>(getDiffs(pruned));
+        expected.sort(null);
+        actual.sort(null);
+        assertEquals(expected, actual);
+        
+        // An unchanged actor was left out of the comparison but is matched
+        Match match = pruned.getMatch(getActors(ours).get(20));
+        assertNotNull(match);
+        assertTrue(PrunedComparisonScope.isPruned(match));
+        assertSame(getActors(theirs).get(20), match.getRight());
+        assertSame(getActors(base).get(20), match.getOrigin());
+        
+        // Their new relationship is merged into our model with our actors as its source and target
+        new BatchMerger(RegistryImpl.createStandaloneInstance(), fromSide(DifferenceSource.RIGHT)).copyAllRightToLeft(pruned.getDifferences(), new BasicMonitor());
+        IAssociationRelationship merged = (IAssociationRelationship)ArchimateModelUtils.getObjectByID(ours, relation.getId());
+        assertNotNull(merged);
+        assertSame(getActors(ours).get(20), merged.getSource());
+        assertSame(getActors(ours).get(21), merged.getTarget());
+        assertEquals("Theirs", getActors(ours).get(10).getName());
+    }
+}
@@ -0,0 +1,129 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+package com.archimatetool.modelrepository.merge;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Set;
+
+import org.eclipse.emf.ecore.util.EcoreUtil;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.archimatetool.model.FolderType;
+import com.archimatetool.model.IArchimateDiagramModel;
+import com.archimatetool.model.IArchimateFactory;
+import com.archimatetool.model.IArchimateModel;
+import com.archimatetool.model.IAssociationRelationship;
+import com.archimatetool.model.IBusinessActor;
+import com.archimatetool.model.IDiagramModelArchimateObject;
+import com.archimatetool.model.IDiagramModelImage;
+import com.archimatetool.model.IFolder;
+import com.archimatetool.modelrepository.testsupport.GitHelper;
+
+
+@SuppressWarnings("nls")
+public class MergeIntegrityCheckerTests {
+
+    private IArchimateModel model;
+    private IBusinessActor actor1, actor2;
+    private IAssociationRelationship relation;
+    private IArchimateDiagramModel dm;
+    private IDiagramModelArchimateObject dmo1;
+    
+    @BeforeEach
+    public void runOnceBeforeEachTest() {
+        model = GitHelper.createSimpleModel();
+        
+        IFolder folder = model.getFolder(FolderType.BUSINESS);
+        actor1 = IArchimateFactory.eINSTANCE.createBusinessActor();
+        folder.getElements().add(actor1);
+        actor2 = IArchimateFactory.eINSTANCE.createBusinessActor();
+        folder.getElements().add(actor2);
+        
+        relation = IArchimateFactory.eINSTANCE.createAssociationRelationship();
+        relation.connect(actor1, actor2);
+        model.getFolder(FolderType.RELATIONS).getElements().add(relation);
+        
+        dm = (IArchimateDiagramModel)model.getDiagramModels().get(0);
+        dmo1 = IArchimateFactory.eINSTANCE.createDiagramModelArchimateObject();
+        dmo1.setArchimateElement(actor1);
+        dm.getChildren().add(dmo1);
+    }
+    
+    @Test
+    public void check_Integral() {
+        assertTrue(new MergeIntegrityChecker(model).check(Set.of(model.getId(), actor1.getId(), relation.getId(), dm.getId())));
+    }
+    
+    @Test
+    public void check_RelationshipToDeletedConcept() {
+        EcoreUtil.remove(actor2);
+        assertFalse(new MergeIntegrityChecker(model).check(Set.of(actor2.getId(), relation.getId())));
+    }
+    
+    @Test
+    public void check_DiagramToDeletedConcept() {
+        EcoreUtil.remove(actor1);
+        
+        // Only changed objects are checked
+        assertTrue(new MergeIntegrityChecker(model).check(Set.of(actor1.getId())));
+        
+        assertFalse(new MergeIntegrityChecker(model).check(Set.of(actor1.getId(), dm.getId())));
+    }
+    
+    @Test
+    public void check_DuplicateId() {
+        IBusinessActor actor = IArchimateFactory.eINSTANCE.createBusinessActor();
+        actor.setId(actor1.getId());
+        model.getFolder(FolderType.BUSINESS).getElements().add(actor);
+        
+        assertFalse(new MergeIntegrityChecker(model).check(Set.of()));
+    }
+    
+    @Test
+    public void check_MissingImage() {
+        IDiagramModelImage dmImage = IArchimateFactory.eINSTANCE.createDiagramModelImage();
+        dmImage.setImagePath("images/missing.png");
+        dm.getChildren().add(dmImage);
+        
+        assertFalse(new MergeIntegrityChecker(model).check(Set.of(dm.getId())));
+    }
+    
+    @Test
+    public void getImagePaths_OnlyChangedObjects() {
+        IDiagramModelImage dmImage = IArchimateFactory.eINSTANCE.createDiagramModelImage();
+        dmImage.setImagePath("images/changed.png");
+        dm.getChildren().add(dmImage);
+        
+        IArchimateDiagramModel dm2 = IArchimateFactory.eINSTANCE.createArchimateDiagramModel();
+        model.getDefaultFolderForObject(dm2).getElements().add(dm2);
+        IDiagramModelImage dmImage2 = IArchimateFactory.eINSTANCE.createDiagramModelImage();
+        dmImage2.setImagePath("images/unchanged.png");
+        dm2.getChildren().add(dmImage2);
+        
+        assertEquals(Set.of("images/changed.png"), MergeIntegrityChecker.getImagePaths(model, Set.of(dm.getId())));
+        assertEquals(Set.of("images/changed.png", "images/unchanged.png"), MergeIntegrityChecker.getImagePaths(model, Set.of(dm.getId(), dm2.getId())));
+        assertTrue(MergeIntegrityChecker.getImagePaths(model, Set.of(actor1.getId())).isEmpty());
+    }
+    
+    @Test
+    public void getChangedIds() {
+        IArchimateModel changedModel = EcoreUtil.copy(model);
+        
+        // Change a diagram object and delete a relation
+        ((IArchimateDiagramModel)changedModel.getDiagramModels().get(0)).getChildren().get(0).setBounds(10, 20, 30, 40);
+        EcoreUtil.remove(changedModel.getFolder(FolderType.RELATIONS).getElements().get(0));
+        
+        Set<String> changedIds = MergeIntegrityChecker.getChangedIds(MergeFactory.createComparison(changedModel, model, null).getDifferences());
+        
+        // The diagram, the deleted relation, and the folder it was deleted from
+        assertTrue(changedIds.containsAll(Set.of(dm.getId(), relation.getId(), model.getFolder(FolderType.RELATIONS).getId())));
+        assertFalse(changedIds.contains(actor1.getId()));
+    }
+}
@@ -0,0 +1,153 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+package com.archimatetool.modelrepository.merge;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Set;
+
+import org.eclipse.emf.ecore.util.EcoreUtil;
+import org.eclipse.jgit.lib.ObjectId;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.archimatetool.model.FolderType;
+import com.archimatetool.model.IArchimateDiagramModel;
+import com.archimatetool.model.IArchimateFactory;
+import com.archimatetool.model.IArchimateModel;
+import com.archimatetool.model.IBusinessActor;
+import com.archimatetool.model.IFolder;
+import com.archimatetool.model.util.ArchimateModelUtils;
+import com.archimatetool.modelrepository.testsupport.GitHelper;
+
+
+@SuppressWarnings("nls")
+public class SubtreeHashesTests {
+
+    private IArchimateModel model;
+    private IBusinessActor actor1, actor2;
+    
+    @BeforeEach
+    public void runOnceBeforeEachTest() {
+        model = GitHelper.createSimpleModel();
+        
+        IFolder folder = model.getFolder(FolderType.BUSINESS);
+        actor1 = IArchimateFactory.eINSTANCE.createBusinessActor();
+        actor1.setName("Actor 1");
+        folder.getElements().add(actor1);
+        actor2 = IArchimateFactory.eINSTANCE.createBusinessActor();
+        actor2.setName("Actor 2");
+        folder.getElements().add(actor2);
+    }
+    
+    @AfterEach
+    public void runOnceAfterEachTest() {
+        SubtreeHashes.clearMemo();
+    }
+    
+    @Test
+    public void sameModel_SameHashes() {
+        SubtreeHashes hashes = SubtreeHashes.compute(model);
+        SubtreeHashes copyHashes = SubtreeHashes.compute(EcoreUtil.copy(model));
+        
+        assertNotNull(hashes.get(model.getId()));
+        assertEquals(hashes.get(model.getId()), copyHashes.get(model.getId()));
+        assertTrue(hashes.isSameSubtree(model, copyHashes));
+    }
+    
+    @Test
+    public void changedObject_ChangesHashOfContainers() {
+        IArchimateModel newModel = EcoreUtil.copy(model);
+        ((IBusinessActor)ArchimateModelUtils.getObjectByID(newModel, actor1.getId())).setName("Changed");
+        
+        SubtreeHashes hashes = SubtreeHashes.compute(model);
+        SubtreeHashes newHashes = SubtreeHashes.compute(newModel);
+        
+        // Changed object and its containers
+        assertFalse(hashes.isSameSubtree(actor1, newHashes));
+        assertFalse(hashes.isSameSubtree(model.getFolder(FolderType.BUSINESS), newHashes));
+        assertFalse(hashes.isSameSubtree(model, newHashes));
+        
+        // Unchanged objects
+        assertTrue(hashes.isSameSubtree(actor2, newHashes));
+        assertTrue(hashes.isSameSubtree(model.getFolder(FolderType.DIAGRAMS), newHashes));
+    }
+    
+    @Test
+    public void reorderedObjects_ChangesHashOfContainer() {
+        IArchimateModel newModel = EcoreUtil.copy(model);
+        newModel.getFolder(FolderType.BUSINESS).getElements().move(0, 1);
+        
+        SubtreeHashes hashes = SubtreeHashes.compute(model);
+        SubtreeHashes newHashes = SubtreeHashes.compute(newModel);
+        
+        assertTrue(hashes.isSameSubtree(actor1, newHashes));
+        assertTrue(hashes.isSameSubtree(actor2, newHashes));
+        assertFalse(hashes.isSameSubtree(model.getFolder(FolderType.BUSINESS), newHashes));
+    }
+    
+    @Test
+    public void changedChildWithoutId_ChangesHashOfParent() {
+        IArchimateDiagramModel dm = (IArchimateDiagramModel)model.getDiagramModels().get(0);
+        dm.getProperties().add(IArchimateFactory.eINSTANCE.createProperty("key", "value"));
+        
+        IArchimateModel newModel = EcoreUtil.copy(model);
+        newModel.getDiagramModels().get(0).getProperties().get(0).setValue("changed");
+        
+        assertNotEquals(SubtreeHashes.compute(model).get(dm.getId()), SubtreeHashes.compute(newModel).get(dm.getId()));
+    }
+    
+    @Test
+    public void get_IsMemoised() {
+        ObjectId blobId = ObjectId.fromString("0123456789012345678901234567890123456789");
+        SubtreeHashes hashes = SubtreeHashes.get(blobId, model);
+        assertSame(hashes, SubtreeHashes.get(blobId, EcoreUtil.copy(model)));
+    }
+    
+    private boolean isChangedOnly(IArchimateModel newModel, String... changedIds) {
+        return SubtreeHashes.isChangedOnly(newModel, SubtreeHashes.compute(newModel), model, SubtreeHashes.compute(model), Set.of(changedIds));
+    }
+    
+    @Test
+    public void isChangedOnly_ChangedObject() {
+        IArchimateModel newModel = EcoreUtil.copy(model);
+        ((IBusinessActor)ArchimateModelUtils.getObjectByID(newModel, actor1.getId())).setName("Changed");
+        
+        assertTrue(isChangedOnly(newModel, actor1.getId()));
+        assertFalse(isChangedOnly(newModel, actor2.getId()));
+        assertFalse(isChangedOnly(newModel));
+    }
+    
+    @Test
+    public void isChangedOnly_AddedAndDeletedObjects() {
+        IArchimateModel newModel = EcoreUtil.copy(model);
+        EcoreUtil.remove(ArchimateModelUtils.getObjectByID(newModel, actor2.getId()));
+        IBusinessActor actor3 = IArchimateFactory.eINSTANCE.createBusinessActor();
+        newModel.getFolder(FolderType.BUSINESS).getElements().add(actor3);
+        
+        // The folder is not recorded as changed when its members are added or deleted
+        assertTrue(isChangedOnly(newModel, actor2.getId(), actor3.getId()));
+        assertFalse(isChangedOnly(newModel, actor2.getId()));
+        assertFalse(isChangedOnly(newModel, actor3.getId()));
+    }
+    
+    @Test
+    public void isChangedOnly_MovedObject() {
+        IArchimateModel newModel = EcoreUtil.copy(model);
+        IFolder subFolder = IArchimateFactory.eINSTANCE.createFolder();
+        newModel.getFolder(FolderType.BUSINESS).getFolders().add(subFolder);
+        subFolder.getElements().add((IBusinessActor)ArchimateModelUtils.getObjectByID(newModel, actor1.getId()));
+        
+        assertTrue(isChangedOnly(newModel, subFolder.getId(), actor1.getId()));
+        assertFalse(isChangedOnly(newModel, subFolder.getId()));
+    }
+}
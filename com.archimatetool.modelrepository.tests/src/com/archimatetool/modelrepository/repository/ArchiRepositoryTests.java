@@ -24,7 +24,6 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import com.archimatetool.editor.model.IEditorModelManager;
-import com.archimatetool.editor.utils.FileUtils;
 import com.archimatetool.model.IArchimateFactory;
 import com.archimatetool.model.IArchimateModel;
 import com.archimatetool.modelrepository.testsupport.GitHelper;
@@ -39,7 +38,7 @@ public class ArchiRepositoryTests {
     
     @AfterEach
     public void runOnceAfterEachTest() throws IOException {
-        FileUtils.deleteFolder(GitHelper.getTempTestsFolder());
+        GitHelper.deleteTempTestsFolder();
     }
 
     @Test
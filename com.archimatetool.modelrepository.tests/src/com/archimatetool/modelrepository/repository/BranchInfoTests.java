@@ -16,7 +16,6 @@ import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
-import com.archimatetool.editor.utils.FileUtils;
 import com.archimatetool.modelrepository.repository.BranchInfo.Option;
 import com.archimatetool.modelrepository.testsupport.GitHelper;
 
@@ -36,7 +35,7 @@ public class BranchInfoTests {
     @AfterEach
     public void runOnceAfterEachTest() throws IOException {
         utils.close();
-        FileUtils.deleteFolder(GitHelper.getTempTestsFolder());
+        GitHelper.deleteTempTestsFolder();
     }
     
     @Test
@@ -6,6 +6,7 @@
 package com.archimatetool.modelrepository.repository;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
@@ -16,7 +17,6 @@ import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
-import com.archimatetool.editor.utils.FileUtils;
 import com.archimatetool.modelrepository.repository.BranchInfo.Option;
 import com.archimatetool.modelrepository.testsupport.GitHelper;
 
@@ -51,7 +51,7 @@ public class BranchStatusTests {
     @AfterEach
     public void runOnceAfterEachTest() throws IOException {
         utils.close();
-        FileUtils.deleteFolder(GitHelper.getTempTestsFolder());
+        GitHelper.deleteTempTestsFolder();
     }
     
     @Test
@@ -121,4 +121,36 @@ public class BranchStatusTests {
         assertNotNull(status.find(RepoConstants.R_HEADS + "local"));
         assertTrue(status.find(RepoConstants.R_REMOTES_ORIGIN + "local").isEmpty());
     }
+    
+    @Test
+    public void commitStatusAndMerged() throws Exception {
+        // Unpushed commit on main
+        utils.commitChanges("Commit 2", false);
+        
+        // Commit on local branch not merged into any other branch
+        utils.checkout().setName(RepoConstants.R_HEADS + "local").call();
+        utils.commitChanges("Commit 3", false);
+        utils.checkout().setName(RepoConstants.R_HEADS_MAIN).call();
+        
+        status = new BranchStatus(repo.getWorkingFolder(), Option.ALL);
+        
+        BranchInfo main = status.find(RepoConstants.R_HEADS_MAIN).orElseThrow();
+        assertTrue(main.hasUnpushedCommits());
+        assertFalse(main.hasRemoteCommits());
+        
+        // Same as BranchInfo created on its own
+        BranchInfo currentInfo = BranchInfo.currentLocalBranchInfo(repo.getWorkingFolder(), Option.ALL).orElseThrow();
+        assertEquals(currentInfo.hasUnpushedCommits(), main.hasUnpushedCommits());
+        assertEquals(currentInfo.hasRemoteCommits(), main.hasRemoteCommits());
+        assertEquals(currentInfo.isMerged(), main.isMerged());
+        assertEquals(currentInfo.getLatestCommit(), main.getLatestCommit());
+        
+        BranchInfo branch = status.find(RepoConstants.R_HEADS + "branch").orElseThrow();
+        assertFalse(branch.hasUnpushedCommits());
+        assertFalse(branch.hasRemoteCommits());
+        assertTrue(branch.isMerged());
+        
+        assertTrue(status.find(RepoConstants.R_REMOTES_ORIGIN_MAIN).orElseThrow().isMerged());
+        assertFalse(status.find(RepoConstants.R_HEADS + "local").orElseThrow().isMerged());
+    }
 }
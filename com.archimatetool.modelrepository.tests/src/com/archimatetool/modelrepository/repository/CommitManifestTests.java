@@ -16,6 +16,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.eclipse.emf.ecore.EClass;
@@ -24,7 +25,6 @@ import org.eclipse.jgit.revwalk.RevCommit;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Test;
 
-import com.archimatetool.editor.utils.FileUtils;
 import com.archimatetool.model.IArchimateConcept;
 import com.archimatetool.model.IArchimateFactory;
 import com.archimatetool.model.IArchimateModel;
@@ -107,7 +107,7 @@ public class CommitManifestTests {
             utils.close();
         }
         
-        FileUtils.deleteFolder(GitHelper.getTempTestsFolder());
+        GitHelper.deleteTempTestsFolder();
     }
     
     @Test
@@ -124,6 +124,40 @@ public class CommitManifestTests {
         }
     }
 
+    @Test
+    public void createManifestForInitialCommit_LargeModel() {
+        IArchimateModel model = GitHelper.createSimpleModel();
+        IFolder folder = model.getDefaultFolderForObject(IArchimateFactory.eINSTANCE.createBusinessActor());
+        for(int i = 0; i < 10000; i++) {
+            folder.getElements().add(IArchimateFactory.eINSTANCE.createBusinessActor());
+        }
+        
+        String manifest = CommitManifest.createManifestForInitialCommit(model);
+        
+        Set<ObjectChange> changes = CommitManifest.getObjectChangesFromCommitMessage(manifest);
+        assertEquals(10011, changes.size());
+    }
+    
+    @Test
+    public void indexChanges() {
+        List<ObjectChange> changes = List.of(new ObjectChange("1", CommitManifest.ADDED),
+                                             new ObjectChange("1", CommitManifest.MODIFIED),
+                                             new ObjectChange("2", CommitManifest.ADDED),
+                                             new ObjectChange("2", CommitManifest.DELETED),
+                                             new ObjectChange("2", CommitManifest.MOVED),
+                                             new ObjectChange("3", CommitManifest.DELETED),
+                                             new ObjectChange("3", CommitManifest.MOVED),
+                                             new ObjectChange("4", CommitManifest.MODIFIED),
+                                             new ObjectChange("4", CommitManifest.MOVED));
+        
+        Map<String, Set<String>> index = CommitManifest.indexChanges(changes);
+        assertEquals(3, index.size());
+        assertEquals(Set.of(CommitManifest.ADDED), index.get("1"));
+        assertFalse(index.containsKey("2"));
+        assertEquals(Set.of(CommitManifest.DELETED), index.get("3"));
+        assertEquals(Set.of(CommitManifest.MODIFIED, CommitManifest.MOVED), index.get("4"));
+    }
+    
     @Test
     public void createManifestForCommit() throws Exception {
         createRepo();
@@ -185,6 +219,7 @@ public class CommitManifestTests {
         
         // Get manifest
         String manifest = CommitManifest.createManifestForCommit(utils, true);
+        assertTrue(manifest.contains("amended=\"true\""));
         
         changes = CommitManifest.getObjectChangesFromCommitMessage(manifest);
         assertEquals(14, changes.size());
@@ -198,6 +233,45 @@ public class CommitManifestTests {
         assertTrue(hasObjectChange(changes, testModel.concept2.getId(), CommitManifest.ADDED));
     }
     
+    @Test
+    public void getChangedObjectIds() throws Exception {
+        createRepo();
+        
+        TestModel testModel = new TestModel();
+        GitHelper.saveModelToTestRepo(testModel.model, repo);
+        RevCommit baseCommit = utils.commitModelWithManifest(testModel.model, "Commit 1");
+        
+        testModel.concept1.setName("new name");
+        testModel.save();
+        utils.commitChangesWithManifest("Commit 2", false);
+        
+        testModel.concept2.setName("new name");
+        testModel.save();
+        RevCommit tipCommit = utils.commitChangesWithManifest("Commit 3", false);
+        
+        Set<String> ids = CommitManifest.getChangedObjectIds(utils.getRepository(), baseCommit, tipCommit);
+        assertEquals(Set.of(testModel.concept1.getId(), testModel.concept2.getId()), ids);
+        
+        // Same commit
+        assertTrue(CommitManifest.getChangedObjectIds(utils.getRepository(), tipCommit, tipCommit).isEmpty());
+    }
+    
+    @Test
+    public void getChangedObjectIds_NoManifestIsNull() throws Exception {
+        createRepo();
+        
+        TestModel testModel = new TestModel();
+        GitHelper.saveModelToTestRepo(testModel.model, repo);
+        RevCommit baseCommit = utils.commitModelWithManifest(testModel.model, "Commit 1");
+        
+        // Commit a model change without a manifest
+        testModel.concept1.setName("new name");
+        testModel.save();
+        RevCommit tipCommit = utils.commitChanges("Commit 2", false);
+        
+        assertNull(CommitManifest.getChangedObjectIds(utils.getRepository(), baseCommit, tipCommit));
+    }
+    
     @Test
     public void getCommitMessageWithoutManifest_NullIsEmptyString() {
         assertEquals("", CommitManifest.getCommitMessageWithoutManifest(null));
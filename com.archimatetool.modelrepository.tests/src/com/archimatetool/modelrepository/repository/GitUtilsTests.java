@@ -8,7 +8,9 @@ package com.archimatetool.modelrepository.repository;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.io.File;
@@ -16,10 +18,12 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 
+import org.eclipse.emf.ecore.resource.Resource;
 import org.eclipse.jgit.api.ListBranchCommand.ListMode;
 import org.eclipse.jgit.api.MergeCommand.FastForwardMode;
 import org.eclipse.jgit.lib.ConfigConstants;
@@ -41,7 +45,7 @@ import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
-import com.archimatetool.editor.utils.FileUtils;
+import com.archimatetool.editor.model.IArchiveManager;
 import com.archimatetool.model.IArchimateModel;
 import com.archimatetool.modelrepository.testsupport.GitHelper;
 
@@ -61,7 +65,7 @@ public class GitUtilsTests {
     @AfterEach
     public void runOnceAfterEachTest() throws IOException {
         utils.close();
-        FileUtils.deleteFolder(GitHelper.getTempTestsFolder());
+        GitHelper.deleteTempTestsFolder();
     }
     
     @Test
@@ -113,6 +117,37 @@ public class GitUtilsTests {
         }
     }
     
+    @Test
+    public void commitChangesAddedModifiedDeletedFiles() throws Exception {
+        GitHelper.writeFileToTestRepo(repo, "file1.txt", "123");
+        GitHelper.writeFileToTestRepo(repo, "file2.txt", "1234");
+        GitHelper.writeFileToTestRepo(repo, "file3.txt", "12345");
+        utils.commitChanges("Commit 1", false);
+        
+        // Delete two files, modify one and add one
+        Files.delete(Path.of(repo.getWorkingFolder().getPath(), "file1.txt"));
+        Files.delete(Path.of(repo.getWorkingFolder().getPath(), "file2.txt"));
+        GitHelper.writeFileToTestRepo(repo, "file3.txt", "6", StandardOpenOption.APPEND);
+        GitHelper.writeFileToTestRepo(repo, "file4.txt", "123456");
+        
+        RevCommit commit = utils.commitChanges("Commit 2", false);
+        
+        // All changes are committed
+        assertTrue(utils.status().call().isClean());
+        
+        // Index is not locked
+        assertFalse(new File(repo.getGitFolder(), "index.lock").exists());
+        
+        try(TreeWalk treeWalk = new TreeWalk(utils.getRepository())) {
+            treeWalk.addTree(commit.getTree());
+            List<String> paths = new ArrayList<>();
+            while(treeWalk.next()) {
+                paths.add(treeWalk.getPathString());
+            }
+            assertEquals(List.of("file3.txt", "file4.txt"), paths);
+        }
+    }
+    
     @Test
     public void commitChangesWithManifest_ShouldNotHaveManifest() throws Exception {
         // Should not have a manifest on inital commit. We should add one manually.
@@ -168,6 +203,110 @@ public class GitUtilsTests {
         assertFalse(utils.hasChangesToCommit());
     }
     
+    @Test
+    public void hasModelChangesToCommit() throws Exception {
+        assertFalse(utils.hasModelChangesToCommit());
+        
+        // Other files are not checked
+        GitHelper.writeFileToTestRepo(repo, "file1.txt", "123");
+        assertFalse(utils.hasModelChangesToCommit());
+        
+        // New model file
+        GitHelper.writeFileToTestRepo(repo, RepoConstants.MODEL_FILENAME, "model");
+        assertTrue(utils.hasModelChangesToCommit());
+        
+        utils.commitChanges("Message", false);
+        assertFalse(utils.hasModelChangesToCommit());
+        
+        // Same content
+        GitHelper.writeFileToTestRepo(repo, RepoConstants.MODEL_FILENAME, "model");
+        assertFalse(utils.hasModelChangesToCommit());
+        
+        // Same size, different content
+        GitHelper.writeFileToTestRepo(repo, RepoConstants.MODEL_FILENAME, "MODEL");
+        assertTrue(utils.hasModelChangesToCommit());
+        assertTrue(utils.hasChangesToCommit());
+        
+        utils.commitChanges("Message", false);
+        
+        // New image
+        new File(repo.getWorkingFolder(), RepoConstants.IMAGES_FOLDER).mkdirs();
+        GitHelper.writeFileToTestRepo(repo, RepoConstants.IMAGES_FOLDER + "/image.png", "image");
+        assertTrue(utils.hasModelChangesToCommit());
+        
+        utils.commitChanges("Message", false);
+        assertFalse(utils.hasModelChangesToCommit());
+        
+        // Deleted image
+        new File(repo.getWorkingFolder(), RepoConstants.IMAGES_FOLDER + "/image.png").delete();
+        assertTrue(utils.hasModelChangesToCommit());
+    }
+    
+    @Test
+    public void hasChangesToCommitFast() throws Exception {
+        assertFalse(utils.hasChangesToCommitFast());
+        
+        // Other files are checked
+        GitHelper.writeFileToTestRepo(repo, "file1.txt", "123");
+        assertTrue(utils.hasChangesToCommitFast());
+        assertTrue(utils.hasChangesToCommit());
+        
+        utils.commitChanges("Message", false);
+        assertFalse(utils.hasChangesToCommitFast());
+        
+        // Same size, different content
+        GitHelper.writeFileToTestRepo(repo, "file1.txt", "456");
+        assertTrue(utils.hasChangesToCommitFast());
+        
+        // Deleted
+        new File(repo.getWorkingFolder(), "file1.txt").delete();
+        assertTrue(utils.hasChangesToCommitFast());
+    }
+    
+    @Test
+    public void hasModelChanges() throws Exception {
+        GitHelper.writeFileToTestRepo(repo, RepoConstants.MODEL_FILENAME, "model");
+        RevCommit commit1 = utils.commitChanges("Message", false);
+        assertFalse(utils.hasModelChanges(commit1));
+        
+        GitHelper.writeFileToTestRepo(repo, RepoConstants.MODEL_FILENAME, "model2");
+        RevCommit commit2 = utils.commitChanges("Message", false);
+        assertTrue(utils.hasModelChanges(commit1));
+        assertFalse(utils.hasModelChanges(commit2));
+        
+        // Working tree changes
+        GitHelper.writeFileToTestRepo(repo, RepoConstants.MODEL_FILENAME, "model3");
+        assertTrue(utils.hasModelChanges(commit2));
+    }
+    
+    @Test
+    public void isSameModel() throws Exception {
+        GitHelper.writeFileToTestRepo(repo, RepoConstants.MODEL_FILENAME, "model");
+        RevCommit commit1 = utils.commitChanges("Message", false);
+        
+        // Other files are not compared
+        GitHelper.writeFileToTestRepo(repo, "file1.txt", "123");
+        RevCommit commit2 = utils.commitChanges("Message", false);
+        assertTrue(utils.isSameModel(commit1, commit2));
+        
+        // New image
+        new File(repo.getWorkingFolder(), RepoConstants.IMAGES_FOLDER).mkdirs();
+        GitHelper.writeFileToTestRepo(repo, RepoConstants.IMAGES_FOLDER + "/image.png", "image");
+        RevCommit commit3 = utils.commitChanges("Message", false);
+        assertFalse(utils.isSameModel(commit2, commit3));
+        
+        // Changed model
+        GitHelper.writeFileToTestRepo(repo, RepoConstants.MODEL_FILENAME, "model2");
+        RevCommit commit4 = utils.commitChanges("Message", false);
+        assertFalse(utils.isSameModel(commit3, commit4));
+        
+        // Model changed back
+        new File(repo.getWorkingFolder(), RepoConstants.IMAGES_FOLDER + "/image.png").delete();
+        GitHelper.writeFileToTestRepo(repo, RepoConstants.MODEL_FILENAME, "model");
+        RevCommit commit5 = utils.commitChanges("Message", false);
+        assertTrue(utils.isSameModel(commit1, commit5));
+    }
+    
     @Test
     public void pushToRemote() throws Exception {
         utils.setRemote(GitHelper.createBareRepository().getAbsolutePath());
@@ -593,6 +732,31 @@ public class GitUtilsTests {
         assertEquals(3, utils.getCommitCount());
     }
     
+    @Test
+    public void getCommitCount_IncludesMergedBranch() throws Exception {
+        assertEquals(0, utils.getCommitCount());
+        
+        utils.commit().setMessage("Commit 1").call();
+        assertEquals(1, utils.getCommitCount());
+        
+        // Branch with two commits
+        utils.branchCreate().setName("branch").call();
+        utils.checkout().setName("branch").call();
+        utils.commit().setMessage("Branch commit 1").call();
+        utils.commit().setMessage("Branch commit 2").call();
+        assertEquals(3, utils.getCommitCount());
+        
+        // Commit on main
+        utils.checkout().setName(RepoConstants.MAIN).call();
+        utils.commit().setMessage("Commit 2").call();
+        assertEquals(2, utils.getCommitCount());
+        
+        // Merge commit counts from the cached count of main and the branch commits
+        utils.merge().include(utils.getRepository().resolve("branch")).setMessage("Merge").call();
+        assertEquals(5, utils.getCommitCount());
+        assertTrue(CommitCountCache.getInstance().size() > 0);
+    }
+    
     @Test
     public void getCommitParentCount() throws Exception {
         // First commit, no parent
@@ -645,6 +809,65 @@ public class GitUtilsTests {
         assertEquals(baseCommit.getId(), utils.getBaseCommit("HEAD", branchCommit.getName()));
     }
 
+    @Test
+    public void commitMergedModel() throws Exception {
+        IArchimateModel model = GitHelper.createSimpleModelInTestRepo(repo);
+        RevCommit baseCommit = utils.commitChanges("Base", false);
+        
+        // Their commit changes the model
+        utils.branchCreate().setName("branch").call();
+        utils.checkout().setName(RepoConstants.R_HEADS + "branch").call();
+        model.setName("Their name");
+        GitHelper.saveModel(model);
+        RevCommit theirCommit = utils.commitChanges("Theirs", false);
+        
+        // Our commit adds a file
+        utils.checkout().setName(RepoConstants.R_HEADS + "main").call();
+        GitHelper.writeFileToTestRepo(repo, "file.txt", "123");
+        RevCommit ourCommit = utils.commitChanges("Ours", false);
+        
+        // The merged model is their model
+        IArchimateModel mergedModel = utils.loadModel(theirCommit);
+        Resource resource = mergedModel.eResource();
+        RevCommit mergeCommit = utils.commitMergedModel(mergedModel, ourCommit, theirCommit, baseCommit, "Merged");
+        
+        // The merged model is not moved out of its resource
+        assertNotNull(resource);
+        assertSame(resource, mergedModel.eResource());
+        
+        assertNotNull(mergeCommit);
+        assertTrue(utils.isCommitAtHead(mergeCommit));
+        assertEquals(2, mergeCommit.getParentCount());
+        assertEquals(ourCommit, mergeCommit.getParent(0));
+        assertEquals(theirCommit, mergeCommit.getParent(1));
+        assertTrue(mergeCommit.getFullMessage().startsWith("Merged"));
+        
+        // The merged model and our file are in the commit and the working tree
+        assertEquals("Their name", utils.loadModel(mergeCommit).getName());
+        assertTrue(new File(repo.getWorkingFolder(), "file.txt").exists());
+        assertFalse(utils.hasChangesToCommit());
+    }
+    
+    @Test
+    public void commitMergedModel_FileChangedInBoth() throws Exception {
+        GitHelper.createSimpleModelInTestRepo(repo);
+        GitHelper.writeFileToTestRepo(repo, "file.txt", "123");
+        RevCommit baseCommit = utils.commitChanges("Base", false);
+        
+        utils.branchCreate().setName("branch").call();
+        utils.checkout().setName(RepoConstants.R_HEADS + "branch").call();
+        GitHelper.writeFileToTestRepo(repo, "file.txt", "456");
+        RevCommit theirCommit = utils.commitChanges("Theirs", false);
+        
+        utils.checkout().setName(RepoConstants.R_HEADS + "main").call();
+        GitHelper.writeFileToTestRepo(repo, "file.txt", "789");
+        RevCommit ourCommit = utils.commitChanges("Ours", false);
+        
+        // Can't be merged in memory and HEAD is not moved
+        assertNull(utils.commitMergedModel(utils.loadModel(ourCommit), ourCommit, theirCommit, baseCommit, "Merged"));
+        assertTrue(utils.isCommitAtHead(ourCommit));
+    }
+    
     @Test
     public void isMergedInto() throws Exception {
         // First commit
@@ -696,6 +919,26 @@ public class GitUtilsTests {
         
         assertTrue(utils.hasMultipleRoots());
     }
+    
+    @Test
+    public void hasMultipleRoots_IsIncremental() throws Exception {
+        utils.commit().setMessage("Initial commit on main").call();
+        assertFalse(utils.hasMultipleRoots());
+        assertTrue(new File(repo.getGitFolder(), RootCommitIndex.INDEX_FILENAME).exists());
+        
+        // Orphan branch
+        utils.checkout().setOrphan(true).setName("branch").call();
+        utils.commit().setMessage("Initial commit on orphan branch").call();
+        assertTrue(utils.hasMultipleRoots());
+        
+        // Delete the orphan branch so that its root is no longer reachable
+        utils.checkout().setName(RepoConstants.MAIN).call();
+        utils.branchDelete().setBranchNames("branch").setForce(true).call();
+        assertFalse(utils.hasMultipleRoots());
+        
+        utils.commit().setMessage("Second commit on main").call();
+        assertFalse(utils.hasMultipleRoots());
+    }
 
     @Test
     public void extractCommitRevStr() throws Exception {
@@ -751,4 +994,52 @@ public class GitUtilsTests {
         
         assertEquals("123\n456", new String(contents));
     }
+
+    @Test
+    public void getImages() throws Exception {
+        new File(repo.getWorkingFolder(), RepoConstants.IMAGES_FOLDER).mkdirs();
+        GitHelper.writeFileToTestRepo(repo, RepoConstants.IMAGES_FOLDER + "/image1.png", "image1");
+        GitHelper.writeFileToTestRepo(repo, RepoConstants.IMAGES_FOLDER + "/image2.png", "image2");
+        RevCommit commit = utils.commitChanges("Message 1", false);
+        
+        String imagePath1 = RepoConstants.IMAGES_FOLDER + "/image1.png";
+        String imagePath3 = RepoConstants.IMAGES_FOLDER + "/image3.png";
+        
+        Map<String, byte[]> images = utils.getImages(commit, List.of(imagePath1, imagePath3));
+        assertEquals(1, images.size());
+        assertEquals("image1", new String(images.get(imagePath1)));
+        
+        assertTrue(utils.getImages(commit, List.of()).isEmpty());
+    }
+    
+    @Test
+    public void loadModelRevStr() throws Exception {
+        testLoadModel(false);
+    }
+
+    @Test
+    public void loadModelRevCommit() throws Exception {
+        testLoadModel(true);
+    }
+    
+    private void testLoadModel(boolean useCommit) throws Exception {
+        IArchimateModel model = GitHelper.createSimpleModelInTestRepo(repo);
+        RevCommit commit = utils.commitChanges("Message 1", false);
+        
+        IArchimateModel loadedModel = useCommit ? utils.loadModel(commit) : utils.loadModel(commit.getName());
+        
+        assertNotNull(loadedModel);
+        assertEquals(model.getId(), loadedModel.getId());
+        assertEquals(model.getName(), loadedModel.getName());
+        assertNotNull(loadedModel.getAdapter(IArchiveManager.class));
+        assertNull(loadedModel.getFile());
+    }
+    
+    @Test
+    public void loadModel_NoModelFile() throws Exception {
+        GitHelper.writeFileToTestRepo(repo, "file.txt", "123");
+        RevCommit commit = utils.commitChanges("Message 1", false);
+        assertNull(utils.loadModel(commit));
+        assertNull(utils.loadModel("unknown"));
+    }
 }
@@ -0,0 +1,196 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+package com.archimatetool.modelrepository.repository;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.transport.FetchResult;
+import org.eclipse.jgit.transport.PushResult;
+import org.eclipse.jgit.transport.RemoteRefUpdate;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.archimatetool.model.IArchimateFactory;
+import com.archimatetool.model.IArchimateModel;
+import com.archimatetool.model.IBusinessActor;
+import com.archimatetool.modelrepository.repository.CommitManifest.ObjectChange;
+import com.archimatetool.modelrepository.testsupport.GitHelper;
+
+
+@SuppressWarnings("nls")
+public class ManifestNotesTests {
+
+    private IArchiRepository repo;
+    private GitUtils utils;
+    
+    @BeforeEach
+    public void runOnceBeforeEachTest() throws Exception {
+        repo = GitHelper.createNewRepository().init();
+        utils = GitUtils.open(repo.getGitFolder());
+    }
+    
+    @AfterEach
+    public void runOnceAfterEachTest() throws Exception {
+        utils.close();
+        GitHelper.deleteTempTestsFolder();
+    }
+    
+    private Set<ObjectChange> getNoteChanges(GitUtils utils, RevCommit commit) throws Exception {
+        try(ObjectReader reader = utils.getRepository().newObjectReader()) {
+            ManifestNotes.Manifest manifest = ManifestNotes.read(utils.getRepository(), reader).getManifest(commit);
+            return manifest != null ? manifest.getObjectChanges() : null;
+        }
+    }
+    
+    @Test
+    public void encodeAndParse() {
+        Map<String, Set<String>> changes = new LinkedHashMap<>();
+        changes.put("id-b", new LinkedHashSet<>(List.of(CommitManifest.MOVED, CommitManifest.MODIFIED)));
+        changes.put("id-c", Set.of(CommitManifest.DELETED));
+        changes.put("id-a", Set.of(CommitManifest.ADDED));
+        
+        String note = ManifestNotes.encode(changes);
+        assertEquals(ManifestNotes.HEADER + "\nid-a A\nid-b M\nid-b V\nid-c D\n", note);
+        
+        ManifestNotes.Manifest manifest = ManifestNotes.parse(note.getBytes(StandardCharsets.UTF_8));
+        assertEquals(List.of(new ObjectChange("id-a", CommitManifest.ADDED),
+                             new ObjectChange("id-b", CommitManifest.MODIFIED),
+                             new ObjectChange("id-b", CommitManifest.MOVED),
+                             new ObjectChange("id-c", CommitManifest.DELETED)), List.copyOf(manifest.getObjectChanges()));
+        
+        assertTrue(manifest.containsChange("id-a"));
+        assertTrue(manifest.containsChange("id-b"));
+        assertTrue(manifest.containsChange("id-c"));
+        assertFalse(manifest.containsChange("id-d"));
+        assertFalse(manifest.containsChange("id"));
+    }
+    
+    @Test
+    public void parse_NotAManifest() {
+        assertNull(ManifestNotes.parse("Some other note".getBytes(StandardCharsets.UTF_8)));
+    }
+    
+    @Test
+    public void parse_ConcatenatedNotes() {
+        String note = ManifestNotes.HEADER + "\nid-c A\nid-d A\n\n" + ManifestNotes.HEADER + "\nid-a D\nid-c A\n";
+        
+        ManifestNotes.Manifest manifest = ManifestNotes.parse(note.getBytes(StandardCharsets.UTF_8));
+        assertEquals(List.of(new ObjectChange("id-a", CommitManifest.DELETED),
+                             new ObjectChange("id-c", CommitManifest.ADDED),
+                             new ObjectChange("id-d", CommitManifest.ADDED)), List.copyOf(manifest.getObjectChanges()));
+        assertTrue(manifest.containsChange("id-a"));
+        assertTrue(manifest.containsChange("id-d"));
+    }
+    
+    @Test
+    public void commitWithManifest_AddsNote() throws Exception {
+        IArchimateModel model = GitHelper.createSimpleModelInTestRepo(repo);
+        RevCommit commit = utils.commitModelWithManifest(model, "Commit 1");
+        
+        Set<ObjectChange> noteChanges = getNoteChanges(utils, commit);
+        assertEquals(11, noteChanges.size());
+        assertEquals(CommitManifest.getObjectChangesFromCommitMessage(commit.getFullMessage()), noteChanges);
+        
+        IBusinessActor actor = IArchimateFactory.eINSTANCE.createBusinessActor();
+        model.getDefaultFolderForObject(actor).getElements().add(actor);
+        GitHelper.saveModel(model);
+        
+        commit = utils.commitChangesWithManifest("Commit 2", false);
+        assertEquals(CommitManifest.getObjectChangesFromCommitMessage(commit.getFullMessage()), getNoteChanges(utils, commit));
+        assertTrue(getNoteChanges(utils, commit).contains(new ObjectChange(actor.getId(), CommitManifest.ADDED)));
+    }
+    
+    @Test
+    public void getObjectChanges_NoNote_ReadsCommitMessage() throws Exception {
+        IArchimateModel model = GitHelper.createSimpleModelInTestRepo(repo);
+        RevCommit commit = utils.commitChanges("Commit 1" + CommitManifest.createManifestForInitialCommit(model), false);
+        assertNull(getNoteChanges(utils, commit));
+        
+        try(ObjectReader reader = utils.getRepository().newObjectReader(); RevWalk revWalk = new RevWalk(reader)) {
+            revWalk.setRetainBody(false);
+            Set<ObjectChange> changes = ManifestNotes.read(utils.getRepository(), reader).getObjectChanges(revWalk, revWalk.parseCommit(commit));
+            assertEquals(CommitManifest.getObjectChangesFromCommitMessage(commit.getFullMessage()), changes);
+        }
+    }
+    
+    @Test
+    public void notesAreNotTipsOrRoots() throws Exception {
+        IArchimateModel model = GitHelper.createSimpleModelInTestRepo(repo);
+        RevCommit commit = utils.commitModelWithManifest(model, "Commit 1");
+        assertNotNull(utils.getRepository().exactRef(RepoConstants.R_NOTES_MANIFEST));
+        
+        assertEquals(Set.of(commit), ModelObjectIndex.getTips(utils.getRepository()));
+        assertEquals(Set.of(commit), RootCommitIndex.getRoots(utils.getRepository()));
+    }
+    
+    @Test
+    public void pushAndFetchNotes() throws Exception {
+        String repoURL = GitHelper.createBareRepository().getAbsolutePath();
+        utils.setRemote(repoURL);
+        
+        IArchimateModel model = GitHelper.createSimpleModelInTestRepo(repo);
+        RevCommit commit1 = utils.commitModelWithManifest(model, "Commit 1");
+        utils.pushToRemote(null, null);
+        
+        // Clone and fetch the notes
+        IArchiRepository repo2 = GitHelper.createNewRepository("testRepo2");
+        repo2.cloneModel(repoURL, null, null);
+        
+        try(GitUtils utils2 = GitUtils.open(repo2.getGitFolder())) {
+            utils2.fetchFromRemote(null, null, true);
+            assertEquals(getNoteChanges(utils, commit1), getNoteChanges(utils2, commit1));
+            
+            // Commit in the clone and push
+            GitHelper.createSimpleModelInTestRepo(repo2);
+            RevCommit commit2 = utils2.commitChangesWithManifest("Commit 2", false);
+            utils2.pushToRemote(null, null);
+            
+            // Fetch in the first repo and the notes are merged with ours
+            utils.fetchFromRemote(null, null, true);
+            assertNotNull(getNoteChanges(utils, commit1));
+            assertEquals(getNoteChanges(utils2, commit2), getNoteChanges(utils, commit2));
+        }
+    }
+    
+    @Test
+    public void pushAndFetchNotes_WithBranch() throws Exception {
+        String repoURL = GitHelper.createBareRepository().getAbsolutePath();
+        utils.setRemote(repoURL);
+        
+        IArchimateModel model = GitHelper.createSimpleModelInTestRepo(repo);
+        utils.commitModelWithManifest(model, "Commit 1");
+        
+        // The notes are pushed with the branch
+        PushResult pushResult = utils.pushToRemote(null, null);
+        assertEquals(RemoteRefUpdate.Status.OK, pushResult.getRemoteUpdate(RepoConstants.R_NOTES_MANIFEST).getStatus());
+        
+        IArchiRepository repo2 = GitHelper.createNewRepository("testRepo2");
+        repo2.cloneModel(repoURL, null, null);
+        
+        try(GitUtils utils2 = GitUtils.open(repo2.getGitFolder())) {
+            // The notes are fetched with the branches but are not reported as an update
+            List<FetchResult> fetchResults = utils2.fetchFromRemote(null, null, true);
+            assertNotNull(fetchResults.get(0).getTrackingRefUpdate(RepoConstants.R_NOTES_ORIGIN_MANIFEST));
+            assertFalse(GitUtils.hasTrackingRefUpdates(fetchResults.get(0)));
+            assertNotNull(utils2.getRepository().exactRef(RepoConstants.R_NOTES_MANIFEST));
+        }
+    }
+}
@@ -0,0 +1,164 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+package com.archimatetool.modelrepository.repository;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.archimatetool.editor.model.IArchiveManager;
+import com.archimatetool.model.IArchimateModel;
+import com.archimatetool.modelrepository.testsupport.GitHelper;
+
+
+@SuppressWarnings("nls")
+public class ModelCacheTests {
+
+    private ModelCache cache = ModelCache.getInstance();
+    
+    private ModelCache.Key key1 = new ModelCache.Key(ObjectId.fromString("1111111111111111111111111111111111111111"), ObjectId.zeroId());
+    private ModelCache.Key key2 = new ModelCache.Key(ObjectId.fromString("2222222222222222222222222222222222222222"), ObjectId.zeroId());
+    
+    @BeforeEach
+    public void runOnceBeforeEachTest() {
+        cache.clear();
+    }
+    
+    @AfterEach
+    public void runOnceAfterEachTest() throws IOException {
+        cache.clear();
+        GitHelper.deleteTempTestsFolder();
+    }
+    
+    @Test
+    public void get_HitAndMissCounts() throws Exception {
+        // First request is not cached
+        cache.get(key1, () -> new ModelCache.LoadedModel(GitHelper.createSimpleModel(), 100));
+        assertEquals(0, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(0, cache.size());
+        
+        // Second request is cached
+        cache.get(key1, () -> new ModelCache.LoadedModel(GitHelper.createSimpleModel(), 100));
+        assertEquals(0, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+        
+        // Loader not called
+        cache.get(key1, () -> null);
+        assertEquals(1, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+        
+        assertEquals(1, cache.size());
+        assertEquals(100, cache.getWeight());
+    }
+    
+    @Test
+    public void get_FirstRequestReturnsLoadedModel() throws Exception {
+        IArchimateModel model = GitHelper.createSimpleModel();
+        assertSame(model, cache.get(key1, () -> new ModelCache.LoadedModel(model, 100)));
+    }
+    
+    @Test
+    public void get_ReturnsCopy() throws Exception {
+        cache.get(key1, () -> new ModelCache.LoadedModel(GitHelper.createSimpleModel(), 100));
+        
+        IArchimateModel model = GitHelper.createSimpleModel();
+        model.setName("Name");
+        
+        IArchimateModel copy1 = cache.get(key1, () -> new ModelCache.LoadedModel(model, 100));
+        assertNotSame(model, copy1);
+        assertEquals(model.getId(), copy1.getId());
+        assertNotNull(copy1.getAdapter(IArchiveManager.class));
+        
+        // Changing a copy doesn't affect the cached model
+        copy1.setName("Changed");
+        
+        IArchimateModel copy2 = cache.get(key1, () -> null);
+        assertNotSame(copy1, copy2);
+        assertEquals("Name", copy2.getName());
+        assertNotSame(copy1.getAdapter(IArchiveManager.class), copy2.getAdapter(IArchiveManager.class));
+    }
+    
+    @Test
+    public void estimateWeight() throws Exception {
+        IArchimateModel model = GitHelper.createSimpleModel();
+        long weight = ModelCache.estimateWeight(model, 0);
+        assertTrue(weight > 0);
+        assertEquals(weight + 1000, ModelCache.estimateWeight(model, 1000));
+    }
+    
+    @Test
+    public void get_LoaderReturnsNull() throws Exception {
+        assertNull(cache.get(key1, () -> null));
+        assertEquals(0, cache.size());
+    }
+    
+    @Test
+    public void get_EvictsLeastRecentlyUsed() throws Exception {
+        long maxWeight = ModelCache.MAX_WEIGHT;
+        ModelCache.MAX_WEIGHT = 150;
+        
+        try {
+            // Request each twice so that they are cached
+            for(int i = 0; i < 2; i++) {
+                cache.get(key1, () -> new ModelCache.LoadedModel(GitHelper.createSimpleModel(), 100));
+            }
+            for(int i = 0; i < 2; i++) {
+                cache.get(key2, () -> new ModelCache.LoadedModel(GitHelper.createSimpleModel(), 100));
+            }
+            
+            assertEquals(1, cache.size());
+            assertEquals(100, cache.getWeight());
+            
+            // key1 was evicted so it is loaded again
+            cache.get(key1, () -> new ModelCache.LoadedModel(GitHelper.createSimpleModel(), 100));
+            assertEquals(5, cache.getMissCount());
+            
+            // Too big to cache
+            cache.get(key2, () -> new ModelCache.LoadedModel(GitHelper.createSimpleModel(), 200));
+            assertEquals(1, cache.size());
+        }
+        finally {
+            ModelCache.MAX_WEIGHT = maxWeight;
+        }
+    }
+    
+    @Test
+    public void loadModel_UsesCache() throws Exception {
+        IArchiRepository repo = GitHelper.createNewRepository().init();
+        IArchimateModel model = GitHelper.createSimpleModelInTestRepo(repo);
+        
+        try(GitUtils utils = GitUtils.open(repo.getWorkingFolder())) {
+            RevCommit commit1 = utils.commitChanges("Message 1", false);
+            
+            // First load is not cached, second is
+            IArchimateModel loadedModel1 = utils.loadModel(commit1);
+            utils.loadModel(commit1);
+            assertEquals(2, cache.getMissCount());
+            assertNotEquals(0, cache.getWeight());
+            
+            // Another commit with the same model is a hit
+            RevCommit commit2 = utils.commit().setAllowEmpty(true).setMessage("Message 2").call();
+            IArchimateModel loadedModel2 = utils.loadModel(commit2);
+            assertEquals(1, cache.getHitCount());
+            
+            assertNotSame(loadedModel1, loadedModel2);
+            assertEquals(model.getId(), loadedModel2.getId());
+        }
+    }
+}
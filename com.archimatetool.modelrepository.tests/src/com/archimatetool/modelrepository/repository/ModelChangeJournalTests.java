@@ -0,0 +1,179 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+package com.archimatetool.modelrepository.repository;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.util.Set;
+
+import org.eclipse.emf.common.notify.Notification;
+import org.eclipse.emf.ecore.util.EContentAdapter;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.archimatetool.model.FolderType;
+import com.archimatetool.model.IArchimateFactory;
+import com.archimatetool.model.IArchimateModel;
+import com.archimatetool.model.IBusinessActor;
+import com.archimatetool.model.IFolder;
+import com.archimatetool.modelrepository.repository.CommitManifest.ObjectChange;
+import com.archimatetool.modelrepository.testsupport.GitHelper;
+
+
+@SuppressWarnings("nls")
+public class ModelChangeJournalTests {
+
+    private IArchiRepository repo;
+    private GitUtils utils;
+    private IArchimateModel model;
+    private ModelChangeJournal journal = ModelChangeJournal.getInstance();
+    
+    // Send the model's notifications to the journal as the editor does
+    private EContentAdapter adapter = new EContentAdapter() {
+        @Override
+        public void notifyChanged(Notification notification) {
+            super.notifyChanged(notification);
+            journal.modelChanged(model, notification);
+        }
+    };
+    
+    @BeforeEach
+    public void runOnceBeforeEachTest() throws Exception {
+        repo = GitHelper.createNewRepository().init();
+        utils = GitUtils.open(repo.getGitFolder());
+        model = GitHelper.createSimpleModelInTestRepo(repo);
+        utils.commitModelWithManifest(model, "Commit 1");
+        
+        journal.modelOpened(model);
+        model.eAdapters().add(adapter);
+    }
+    
+    @AfterEach
+    public void runOnceAfterEachTest() throws Exception {
+        model.eAdapters().remove(adapter);
+        journal.modelClosed(model);
+        utils.close();
+        GitHelper.deleteTempTestsFolder();
+    }
+    
+    private void save() throws Exception {
+        GitHelper.saveModel(model);
+        journal.modelSaved(model);
+    }
+    
+    private IBusinessActor addElement() {
+        IBusinessActor element = IArchimateFactory.eINSTANCE.createBusinessActor();
+        model.getDefaultFolderForObject(element).getElements().add(element);
+        return element;
+    }
+    
+    @Test
+    public void getChanges_Empty() {
+        assertEquals(Set.of(), ModelChangeJournal.getChanges(utils.getRepository()));
+    }
+    
+    @Test
+    public void getChanges_UnsavedChangesNotIncluded() throws Exception {
+        IBusinessActor element = addElement();
+        assertEquals(Set.of(), ModelChangeJournal.getChanges(utils.getRepository()));
+        
+        save();
+        assertEquals(Set.of(new ObjectChange(element.getId(), CommitManifest.ADDED)), ModelChangeJournal.getChanges(utils.getRepository()));
+    }
+    
+    @Test
+    public void getChanges_AddedModifiedMovedDeleted() throws Exception {
+        IBusinessActor element = addElement();
+        save();
+        utils.commitChangesWithManifest("Commit 2", false);
+        
+        // Modified
+        element.setName("Actor");
+        element.getProperties().add(IArchimateFactory.eINSTANCE.createProperty("key", "value"));
+        save();
+        assertEquals(Set.of(new ObjectChange(element.getId(), CommitManifest.MODIFIED)), ModelChangeJournal.getChanges(utils.getRepository()));
+        
+        // Moved
+        IFolder subFolder = IArchimateFactory.eINSTANCE.createFolder();
+        model.getFolder(FolderType.BUSINESS).getFolders().add(subFolder);
+        subFolder.getElements().add(element);
+        save();
+        Set<ObjectChange> changes = ModelChangeJournal.getChanges(utils.getRepository());
+        assertTrue(changes.contains(new ObjectChange(element.getId(), CommitManifest.MOVED)));
+        assertTrue(changes.contains(new ObjectChange(subFolder.getId(), CommitManifest.ADDED)));
+        
+        // Deleted with its folder
+        model.getFolder(FolderType.BUSINESS).getFolders().remove(subFolder);
+        save();
+        changes = ModelChangeJournal.getChanges(utils.getRepository());
+        assertTrue(changes.contains(new ObjectChange(element.getId(), CommitManifest.DELETED)));
+        assertTrue(changes.contains(new ObjectChange(subFolder.getId(), CommitManifest.DELETED)));
+    }
+    
+    @Test
+    public void getChanges_DeleteUndone() throws Exception {
+        IBusinessActor element = addElement();
+        save();
+        utils.commitChangesWithManifest("Commit 2", false);
+        
+        IFolder folder = (IFolder)element.eContainer();
+        folder.getElements().remove(element);
+        save();
+        assertEquals(Set.of(new ObjectChange(element.getId(), CommitManifest.DELETED)), ModelChangeJournal.getChanges(utils.getRepository()));
+        
+        folder.getElements().add(element);
+        save();
+        assertEquals(Set.of(), ModelChangeJournal.getChanges(utils.getRepository()));
+    }
+    
+    @Test
+    public void getChanges_InvalidWhenModelFileChanged() throws Exception {
+        addElement();
+        save();
+        assertNotNull(ModelChangeJournal.getChanges(utils.getRepository()));
+        
+        // Saved without the journal
+        model.setName("Changed");
+        GitHelper.saveModel(model);
+        assertNull(ModelChangeJournal.getChanges(utils.getRepository()));
+    }
+    
+    @Test
+    public void commitChangesWithManifest_UsesJournal() throws Exception {
+        IBusinessActor element = addElement();
+        save();
+        
+        RevCommit commit = utils.commitChangesWithManifest("Commit 2", false);
+        Set<ObjectChange> changes = CommitManifest.getObjectChangesFromCommitMessage(commit.getFullMessage());
+        assertEquals(Set.of(new ObjectChange(element.getId(), CommitManifest.ADDED)), changes);
+        
+        // New journal for the new commit
+        assertEquals(Set.of(), ModelChangeJournal.getChanges(utils.getRepository()));
+    }
+    
+    @Test
+    public void createManifestForCommit_SameAsComparison() throws Exception {
+        IBusinessActor element = addElement();
+        element.setName("Actor");
+        model.setName("Changed");
+        save();
+        
+        String journalManifest = CommitManifest.createManifestForCommit(utils, false);
+        
+        // Compare without the journal
+        new File(repo.getGitFolder(), ModelChangeJournal.JOURNAL_FILENAME).delete();
+        assertNull(ModelChangeJournal.getChanges(utils.getRepository()));
+        String comparisonManifest = CommitManifest.createManifestForCommit(utils, false);
+        
+        assertEquals(CommitManifest.getObjectChangesFromCommitMessage(comparisonManifest), CommitManifest.getObjectChangesFromCommitMessage(journalManifest));
+    }
+}
@@ -0,0 +1,179 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+package com.archimatetool.modelrepository.repository;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.archimatetool.model.IArchimateModel;
+import com.archimatetool.modelrepository.testsupport.GitHelper;
+
+
+@SuppressWarnings("nls")
+public class ModelObjectIndexTests {
+
+    private IArchiRepository repo;
+    private GitUtils utils;
+    private IArchimateModel model;
+    private File indexFile;
+    
+    @BeforeEach
+    public void runOnceBeforeEachTest() throws Exception {
+        repo = GitHelper.createNewRepository().init();
+        utils = GitUtils.open(repo.getGitFolder());
+        model = GitHelper.createSimpleModelInTestRepo(repo);
+        indexFile = new File(repo.getGitFolder(), ModelObjectIndex.INDEX_FILENAME);
+    }
+    
+    @AfterEach
+    public void runOnceAfterEachTest() throws Exception {
+        utils.close();
+        GitHelper.deleteTempTestsFolder();
+    }
+    
+    @Test
+    public void update_CreatesIndex() throws Exception {
+        RevCommit commit = utils.commitModelWithManifest(model, "Commit 1");
+        assertFalse(indexFile.exists());
+        
+        ModelObjectIndex index = ModelObjectIndex.update(utils.getRepository());
+        assertTrue(indexFile.exists());
+        
+        List<ModelObjectIndex.Entry> entries = index.getEntries(model.getId());
+        assertEquals(1, entries.size());
+        assertEquals(commit, entries.get(0).commitId());
+        assertEquals(CommitManifest.ADDED, entries.get(0).changeType());
+        
+        assertTrue(index.getEntries("unknown").isEmpty());
+    }
+    
+    @Test
+    public void update_IsIncrementalAfterCommit() throws Exception {
+        RevCommit commit1 = utils.commitModelWithManifest(model, "Commit 1");
+        ModelObjectIndex.update(utils.getRepository());
+        
+        model.setName("Changed");
+        GitHelper.saveModel(model);
+        
+        // Committing updates the existing index
+        RevCommit commit2 = utils.commitChangesWithManifest("Commit 2", false);
+        long lastModified = indexFile.lastModified();
+        
+        ModelObjectIndex index = ModelObjectIndex.update(utils.getRepository());
+        assertEquals(lastModified, indexFile.lastModified()); // No change to index file
+        
+        assertEquals(Set.of(commit1, commit2), index.getCommitIds(model.getId()));
+        assertEquals(CommitManifest.MODIFIED, index.getEntries(model.getId()).get(1).changeType());
+        
+        // Only the first commit has the diagram model
+        String dmId = model.getDiagramModels().get(0).getId();
+        assertEquals(Set.of(commit1), index.getCommitIds(dmId));
+    }
+    
+    @Test
+    public void update_AppendsNewCommits() throws Exception {
+        RevCommit commit1 = utils.commitModelWithManifest(model, "Commit 1");
+        ModelObjectIndex.update(utils.getRepository());
+        byte[] bytes = Files.readAllBytes(indexFile.toPath());
+        
+        model.setName("Changed");
+        GitHelper.saveModel(model);
+        RevCommit commit2 = utils.commitChangesWithManifest("Commit 2", false);
+        
+        // The new commit is appended to the existing file
+        byte[] newBytes = Files.readAllBytes(indexFile.toPath());
+        assertTrue(newBytes.length > bytes.length);
+        assertArrayEquals(bytes, Arrays.copyOf(newBytes, bytes.length));
+        
+        // Truncate the last segment as if it was not completely written
+        Files.write(indexFile.toPath(), Arrays.copyOf(newBytes, newBytes.length - 5));
+        
+        // The partly written segment is ignored and the commit is indexed again
+        ModelObjectIndex index = ModelObjectIndex.update(utils.getRepository());
+        assertEquals(List.of(new ModelObjectIndex.Entry(commit1, CommitManifest.ADDED), new ModelObjectIndex.Entry(commit2, CommitManifest.MODIFIED)),
+                     index.getEntries(model.getId()));
+        
+        // The file was compacted to one segment which is smaller than two segments
+        assertTrue(indexFile.length() < newBytes.length);
+    }
+    
+    @Test
+    public void update_CompactsSegments() throws Exception {
+        int maxSegments = ModelObjectIndex.MAX_SEGMENTS;
+        ModelObjectIndex.MAX_SEGMENTS = 2;
+        
+        try {
+            RevCommit commit1 = utils.commitModelWithManifest(model, "Commit 1");
+            ModelObjectIndex.update(utils.getRepository());
+            
+            model.setName("Changed");
+            GitHelper.saveModel(model);
+            RevCommit commit2 = utils.commitChangesWithManifest("Commit 2", false);
+            byte[] bytes = Files.readAllBytes(indexFile.toPath());
+            
+            model.setName("Changed again");
+            GitHelper.saveModel(model);
+            RevCommit commit3 = utils.commitChangesWithManifest("Commit 3", false);
+            
+            // Two segments so the file was written again instead of appended to
+            byte[] newBytes = Files.readAllBytes(indexFile.toPath());
+            assertFalse(Arrays.equals(bytes, Arrays.copyOf(newBytes, bytes.length)));
+            
+            // Change the file's modification time so that it is loaded again
+            indexFile.setLastModified(indexFile.lastModified() - 1000);
+            assertEquals(Set.of(commit1, commit2, commit3), ModelObjectIndex.update(utils.getRepository()).getCommitIds(model.getId()));
+        }
+        finally {
+            ModelObjectIndex.MAX_SEGMENTS = maxSegments;
+        }
+    }
+    
+    @Test
+    public void update_RebuildsInvalidIndex() throws Exception {
+        RevCommit commit = utils.commitModelWithManifest(model, "Commit 1");
+        GitHelper.writeFileToTestRepo(repo, ".git/" + ModelObjectIndex.INDEX_FILENAME, "rubbish");
+        
+        ModelObjectIndex index = ModelObjectIndex.update(utils.getRepository());
+        assertEquals(Set.of(commit), index.getCommitIds(model.getId()));
+    }
+    
+    @Test
+    public void modelObjectIdFilter() throws Exception {
+        RevCommit commit1 = utils.commitModelWithManifest(model, "Commit 1");
+        
+        String dmId = model.getDiagramModels().get(0).getId();
+        model.setName("Changed");
+        GitHelper.saveModel(model);
+        utils.commitChangesWithManifest("Commit 2", false);
+        
+        try(RevWalk revWalk = new RevWalk(utils.getRepository())) {
+            revWalk.setRevFilter(ModelObjectIdFilter.create(utils.getRepository(), dmId));
+            revWalk.markStart(revWalk.parseCommit(utils.getRepository().resolve(RepoConstants.HEAD)));
+            
+            int count = 0;
+            for(RevCommit commit : revWalk) {
+                assertEquals(commit1, commit);
+                count++;
+            }
+            
+            assertEquals(1, count);
+        }
+    }
+}
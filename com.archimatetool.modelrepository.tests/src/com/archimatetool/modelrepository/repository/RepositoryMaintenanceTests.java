@@ -0,0 +1,137 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+package com.archimatetool.modelrepository.repository;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+
+import org.eclipse.jgit.lib.ConfigConstants;
+import org.eclipse.jgit.lib.NullProgressMonitor;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.archimatetool.model.IArchimateModel;
+import com.archimatetool.modelrepository.testsupport.GitHelper;
+
+
+@SuppressWarnings("nls")
+public class RepositoryMaintenanceTests {
+
+    private IArchiRepository repo;
+    private GitUtils utils;
+    private IArchimateModel model;
+    
+    @BeforeEach
+    public void runOnceBeforeEachTest() throws Exception {
+        repo = GitHelper.createNewRepository().init();
+        utils = GitUtils.open(repo.getGitFolder());
+        model = GitHelper.createSimpleModelInTestRepo(repo);
+    }
+    
+    @AfterEach
+    public void runOnceAfterEachTest() throws Exception {
+        utils.close();
+        GitHelper.deleteTempTestsFolder();
+    }
+    
+    @Test
+    public void enableCommitGraph() throws Exception {
+        assertTrue(RepositoryMaintenance.enableCommitGraph(utils.getRepository()));
+        assertTrue(utils.getRepository().getConfig().getBoolean(ConfigConstants.CONFIG_CORE_SECTION, ConfigConstants.CONFIG_COMMIT_GRAPH, false));
+        assertTrue(utils.getRepository().getConfig().getBoolean(ConfigConstants.CONFIG_GC_SECTION, ConfigConstants.CONFIG_KEY_WRITE_COMMIT_GRAPH, false));
+        
+        // Already enabled
+        assertFalse(RepositoryMaintenance.enableCommitGraph(utils.getRepository()));
+    }
+    
+    @Test
+    public void needsMaintenance_NoCommits() throws Exception {
+        assertFalse(RepositoryMaintenance.needsMaintenance(utils.getRepository()));
+    }
+    
+    @Test
+    public void run_WritesCommitGraph() throws Exception {
+        utils.commitChanges("Commit 1", false);
+        assertTrue(RepositoryMaintenance.needsMaintenance(utils.getRepository()));
+        
+        RepositoryMaintenance.Result result = RepositoryMaintenance.run(utils.getRepository(), NullProgressMonitor.INSTANCE);
+        assertTrue(new File(repo.getGitFolder(), RepositoryMaintenance.COMMIT_GRAPH_FILE).exists());
+        assertTrue(result.getLooseObjectsBefore() > 0);
+        assertEquals(0, result.getLooseObjectsAfter());
+        assertEquals(1, result.getPackFilesAfter());
+        assertFalse(RepositoryMaintenance.needsMaintenance(utils.getRepository()));
+        
+        // New commit
+        model.setName("Changed");
+        GitHelper.saveModel(model);
+        utils.commitChanges("Commit 2", false);
+        assertTrue(RepositoryMaintenance.needsMaintenance(utils.getRepository()));
+    }
+    
+    @Test
+    public void getRequiredTask_Thresholds() throws Exception {
+        utils.commitChanges("Commit 1", false);
+        RepositoryMaintenance.run(utils.getRepository(), NullProgressMonitor.INSTANCE);
+        
+        RepositoryMaintenance.Thresholds thresholds = new RepositoryMaintenance.Thresholds(100, 10, 3);
+        assertEquals(RepositoryMaintenance.Task.NONE, RepositoryMaintenance.getRequiredTask(utils.getRepository(), thresholds));
+        
+        // Loose refs
+        for(int i = 0; i < 3; i++) {
+            utils.branchCreate().setName("branch" + i).call();
+        }
+        assertEquals(RepositoryMaintenance.Task.PACK_REFS, RepositoryMaintenance.getRequiredTask(utils.getRepository(), thresholds));
+        
+        RepositoryMaintenance.Result result = RepositoryMaintenance.run(utils.getRepository(), RepositoryMaintenance.Task.PACK_REFS, null);
+        assertEquals(RepositoryMaintenance.Task.PACK_REFS, result.task());
+        assertEquals(RepositoryMaintenance.Task.NONE, RepositoryMaintenance.getRequiredTask(utils.getRepository(), thresholds));
+        
+        // Loose objects
+        model.setName("Changed");
+        GitHelper.saveModel(model);
+        utils.commitChanges("Commit 2", false);
+        assertEquals(RepositoryMaintenance.Task.NONE, RepositoryMaintenance.getRequiredTask(utils.getRepository(), thresholds));
+        assertEquals(RepositoryMaintenance.Task.GC, RepositoryMaintenance.getRequiredTask(utils.getRepository(), new RepositoryMaintenance.Thresholds(1, 0, 0)));
+    }
+    
+    @Test
+    public void run_SpaceReclaimed() throws Exception {
+        for(int i = 0; i < 3; i++) {
+            model.setName("Name " + i);
+            GitHelper.saveModel(model);
+            utils.commitChanges("Commit " + i, false);
+        }
+        
+        // Packed objects are compressed and deltified
+        RepositoryMaintenance.Result result = RepositoryMaintenance.run(utils.getRepository(), RepositoryMaintenance.Task.GC, null);
+        assertTrue(result.getSpaceReclaimed() > 0);
+    }
+    
+    @Test
+    public void isMergedInto_AfterMaintenance() throws Exception {
+        RevCommit commit1 = utils.commitChanges("Commit 1", false);
+        
+        model.setName("Changed");
+        GitHelper.saveModel(model);
+        RevCommit commit2 = utils.commitChanges("Commit 2", false);
+        
+        RepositoryMaintenance.run(utils.getRepository(), NullProgressMonitor.INSTANCE);
+        
+        // Tip commit has a bitmap
+        assertTrue(utils.isMergedInto(commit1.getName(), commit2.getName()));
+        assertFalse(utils.isMergedInto(commit2.getName(), commit1.getName()));
+        
+        // Commits in the commit-graph
+        assertEquals(commit1, utils.getBaseCommit(commit1.getName(), commit2.getName()));
+        assertEquals(2, utils.getCommitCount());
+        assertFalse(utils.hasMultipleRoots());
+    }
+}
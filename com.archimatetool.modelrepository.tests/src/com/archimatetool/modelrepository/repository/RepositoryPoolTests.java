@@ -0,0 +1,171 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+package com.archimatetool.modelrepository.repository;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.eclipse.jgit.errors.RepositoryNotFoundException;
+import org.eclipse.jgit.lib.Repository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.archimatetool.editor.utils.FileUtils;
+import com.archimatetool.modelrepository.testsupport.GitHelper;
+
+
+@SuppressWarnings("nls")
+public class RepositoryPoolTests {
+
+    private IArchiRepository repo;
+    private RepositoryPool pool = RepositoryPool.getInstance();
+    
+    @BeforeEach
+    public void runOnceBeforeEachTest() throws Exception {
+        pool.dispose();
+        repo = GitHelper.createNewRepository().init();
+    }
+    
+    @AfterEach
+    public void runOnceAfterEachTest() throws IOException {
+        GitHelper.deleteTempTestsFolder();
+    }
+    
+    @Test
+    public void acquire_SameRepositoryForWorkingFolderAndGitFolder() throws Exception {
+        Repository repository1 = pool.acquire(repo.getWorkingFolder());
+        Repository repository2 = pool.acquire(repo.getGitFolder());
+        
+        assertSame(repository1, repository2);
+        assertEquals(1, pool.size());
+        
+        pool.release(repository1);
+        pool.release(repository2);
+    }
+    
+    @Test
+    public void open_GitUtilsSharesRepository() throws Exception {
+        try(GitUtils utils1 = GitUtils.open(repo.getWorkingFolder()); GitUtils utils2 = GitUtils.open(repo.getWorkingFolder())) {
+            assertSame(utils1.getRepository(), utils2.getRepository());
+        }
+        
+        // Still pooled after close
+        assertEquals(1, pool.size());
+    }
+    
+    @Test
+    public void getUseCount() throws Exception {
+        assertEquals(0, pool.getUseCount(repo.getWorkingFolder()));
+        
+        Repository repository1 = pool.acquire(repo.getWorkingFolder());
+        Repository repository2 = pool.acquire(repo.getGitFolder());
+        assertEquals(2, pool.getUseCount(repo.getWorkingFolder()));
+        
+        pool.release(repository1);
+        pool.release(repository2);
+        assertEquals(0, pool.getUseCount(repo.getGitFolder()));
+    }
+    
+    @Test
+    public void acquire_ChangesInGitFolderDoNotDiscardRepository() throws Exception {
+        Repository repository1 = pool.acquire(repo.getWorkingFolder());
+        pool.release(repository1);
+        
+        // Creating and renaming files in the ".git" folder changes its modification time
+        Thread.sleep(10);
+        File file = new File(repo.getGitFolder(), "test.lock");
+        file.createNewFile();
+        file.renameTo(new File(repo.getGitFolder(), "test"));
+        
+        Repository repository2 = pool.acquire(repo.getWorkingFolder());
+        assertSame(repository1, repository2);
+        pool.release(repository2);
+    }
+    
+    @Test
+    public void evict() throws Exception {
+        Repository repository1 = pool.acquire(repo.getWorkingFolder());
+        pool.release(repository1);
+        
+        pool.evict(repo.getWorkingFolder());
+        assertEquals(0, pool.size());
+        
+        Repository repository2 = pool.acquire(repo.getWorkingFolder());
+        assertNotSame(repository1, repository2);
+        pool.release(repository2);
+    }
+    
+    @Test
+    public void evictIdle() throws Exception {
+        long timeout = RepositoryPool.IDLE_TIMEOUT;
+        RepositoryPool.IDLE_TIMEOUT = 0;
+        
+        try {
+            Repository repository = pool.acquire(repo.getWorkingFolder());
+            
+            // In use so not evicted
+            pool.evictIdle();
+            assertEquals(1, pool.size());
+            
+            // Released so evicted
+            pool.release(repository);
+            pool.evictIdle();
+            assertEquals(0, pool.size());
+        }
+        finally {
+            RepositoryPool.IDLE_TIMEOUT = timeout;
+        }
+    }
+    
+    @Test
+    public void acquire_DeletedRepositoryIsDiscarded() throws Exception {
+        Repository repository = pool.acquire(repo.getWorkingFolder());
+        pool.release(repository);
+        
+        // Deleted without being evicted as when deleted outside of Archi
+        FileUtils.deleteFolder(repo.getWorkingFolder());
+        
+        assertThrows(RepositoryNotFoundException.class, () -> pool.acquire(repo.getWorkingFolder()));
+        assertEquals(0, pool.size());
+    }
+    
+    @Test
+    public void evictIdle_DeletedRepository() throws Exception {
+        Repository repository = pool.acquire(repo.getWorkingFolder());
+        pool.release(repository);
+        
+        // Not idle for long enough so not evicted
+        pool.evictIdle();
+        assertEquals(1, pool.size());
+        
+        // Deleted so evicted
+        FileUtils.deleteFolder(repo.getWorkingFolder());
+        pool.evictIdle();
+        assertEquals(0, pool.size());
+    }
+    
+    @Test
+    public void acquire_RecreatedRepositoryIsNotStale() throws Exception {
+        Repository repository1 = pool.acquire(repo.getWorkingFolder());
+        pool.release(repository1);
+        
+        // Delete and re-create the repository in the same folder. Evict it first as callers do.
+        pool.evict(repo.getWorkingFolder());
+        FileUtils.deleteFolder(repo.getWorkingFolder());
+        Thread.sleep(10); // Ensure a different creation time on file systems that don't support inodes
+        repo.init();
+        
+        Repository repository2 = pool.acquire(repo.getWorkingFolder());
+        assertNotSame(repository1, repository2);
+        pool.release(repository2);
+    }
+}
@@ -21,7 +21,6 @@ import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
-import com.archimatetool.editor.utils.FileUtils;
 import com.archimatetool.modelrepository.testsupport.GitHelper;
 
 
@@ -40,7 +39,7 @@ public class TagInfoTests {
     @AfterEach
     public void runOnceAfterEachTest() throws IOException {
         utils.close();
-        FileUtils.deleteFolder(GitHelper.getTempTestsFolder());
+        GitHelper.deleteTempTestsFolder();
     }
     
     @Test
@@ -96,6 +95,28 @@ public class TagInfoTests {
         assertTrue(tagInfo.isOrphaned());
     }
     
+    @Test
+    public void isOrphaned_MultipleTags() throws Exception {
+        RevCommit commit1 = utils.commitChanges("Commit 1", false);
+        addAnnotatedTag(commit1, "tag1");
+        
+        RevCommit commit2 = utils.commitChanges("Commit 2", false);
+        addAnnotatedTag(commit2, "tag2");
+        
+        RevCommit commit3 = utils.commitChanges("Commit 3", false);
+        addAnnotatedTag(commit3, "tag3");
+        
+        // Undo third commit
+        utils.resetToRef("HEAD^");
+        
+        List<TagInfo> tagInfos = TagInfo.getTags(repo.getGitFolder());
+        assertEquals(3, tagInfos.size());
+        
+        assertFalse(tagInfos.get(0).isOrphaned());
+        assertFalse(tagInfos.get(1).isOrphaned());
+        assertTrue(tagInfos.get(2).isOrphaned());
+    }
+    
     @Test
     public void isLightweightTag() throws Exception {
         RevCommit commit1 = utils.commitChanges("Commit 1", false);
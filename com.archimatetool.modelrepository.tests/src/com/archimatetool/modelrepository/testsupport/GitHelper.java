@@ -16,12 +16,14 @@ import org.eclipse.jgit.api.Git;
 import org.eclipse.jgit.api.errors.GitAPIException;
 
 import com.archimatetool.editor.model.IArchiveManager;
+import com.archimatetool.editor.utils.FileUtils;
 import com.archimatetool.model.IArchimateDiagramModel;
 import com.archimatetool.model.IArchimateFactory;
 import com.archimatetool.model.IArchimateModel;
 import com.archimatetool.modelrepository.repository.ArchiRepository;
 import com.archimatetool.modelrepository.repository.IArchiRepository;
 import com.archimatetool.modelrepository.repository.RepoConstants;
+import com.archimatetool.modelrepository.repository.RepositoryPool;
 
 @SuppressWarnings("nls")
 public class GitHelper {
@@ -53,6 +55,16 @@ public class GitHelper {
         return folder;
     }
     
+    /**
+     * Close the pooled repositories and delete the temp tests folder.
+     * The repositories must be removed from the pool before deleting their folders so that a test repository
+     * that is created again in the same folder is not given the previous test's Repository.
+     */
+    public static void deleteTempTestsFolder() throws IOException {
+        RepositoryPool.getInstance().dispose();
+        FileUtils.deleteFolder(getTempTestsFolder());
+    }
+    
     public static File writeFileToTestRepo(IArchiRepository repo, String fileName, String contents) throws IOException {
         return writeFileToTestRepo(repo, fileName, contents, StandardOpenOption.CREATE);
     }
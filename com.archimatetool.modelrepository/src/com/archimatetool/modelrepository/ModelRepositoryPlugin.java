@@ -12,12 +12,14 @@ import java.nio.file.Path;
 
 import org.eclipse.core.runtime.FileLocator;
 import org.eclipse.core.runtime.ILog;
+import org.eclipse.ui.PlatformUI;
 import org.eclipse.ui.plugin.AbstractUIPlugin;
 import org.osgi.framework.BundleContext;
 
 import com.archimatetool.editor.FileLogger;
 import com.archimatetool.editor.utils.StringUtils;
 import com.archimatetool.modelrepository.preferences.IPreferenceConstants;
+import com.archimatetool.modelrepository.repository.RepositoryPool;
 
 
 
@@ -38,6 +40,9 @@ public class ModelRepositoryPlugin extends AbstractUIPlugin {
     // The shared instance
     private static ModelRepositoryPlugin instance;
     
+    // Background repository maintenance
+    private RepositoryMaintenanceJob maintenanceJob;
+    
     /**
      * @return the shared instance
      */
@@ -67,6 +72,35 @@ public class ModelRepositoryPlugin extends AbstractUIPlugin {
         }
     }
     
+    /**
+     * Start background repository maintenance.
+     * This is called from Startup and only if the Workbench is running, not when the plug-in is used from the command line.
+     */
+    synchronized void startMaintenanceJob() {
+        if(maintenanceJob == null && PlatformUI.isWorkbenchRunning()) {
+            maintenanceJob = new RepositoryMaintenanceJob();
+            maintenanceJob.schedule(RepositoryMaintenanceJob.START_DELAY);
+        }
+    }
+    
+    @Override
+    public void stop(BundleContext context) throws Exception {
+        // Stop background repository maintenance
+        RepositoryMaintenanceJob maintenanceJob;
+        synchronized(this) {
+            maintenanceJob = this.maintenanceJob;
+        }
+        if(maintenanceJob != null) {
+            maintenanceJob.cancel();
+            maintenanceJob.join(5000, null);
+        }
+        
+        // Close any pooled repositories
+        RepositoryPool.getInstance().dispose();
+        
+        super.stop(context);
+    }
+    
     private void setSystemProperties() {
         // This needs to be set in order to avoid this exception when using a Proxy:
         // "Unable to tunnel through proxy. Proxy returns "HTTP/1.1 407 Proxy Authentication Required""
@@ -0,0 +1,188 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+package com.archimatetool.modelrepository;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.SubMonitor;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.jface.preference.IPreferenceStore;
+import org.eclipse.swt.widgets.Display;
+import org.eclipse.ui.PlatformUI;
+
+import com.archimatetool.modelrepository.preferences.IPreferenceConstants;
+import com.archimatetool.modelrepository.repository.GitUtils;
+import com.archimatetool.modelrepository.repository.RepositoryMaintenance;
+import com.archimatetool.modelrepository.repository.RepositoryMaintenance.Result;
+import com.archimatetool.modelrepository.repository.RepositoryMaintenance.Task;
+import com.archimatetool.modelrepository.repository.RepositoryMaintenance.Thresholds;
+import com.archimatetool.modelrepository.repository.RepositoryPool;
+import com.archimatetool.modelrepository.treemodel.RepositoryRef;
+import com.archimatetool.modelrepository.treemodel.RepositoryTreeModel;
+import com.archimatetool.modelrepository.workflows.ProgressMonitorWrapper;
+
+/**
+ * Background Job that checks the loose objects, pack files and loose refs of each repository in the Repositories tree
+ * and runs RepositoryMaintenance on those that have reached the thresholds set in Preferences.
+ * It then reschedules itself after the interval set in Preferences.
+ */
+@SuppressWarnings("nls")
+public class RepositoryMaintenanceJob extends Job {
+
+    private static Logger logger = Logger.getLogger(RepositoryMaintenanceJob.class.getName());
+    
+    /**
+     * Delay before the first pass after startup
+     */
+    static long START_DELAY = TimeUnit.MINUTES.toMillis(2);
+    
+    public RepositoryMaintenanceJob() {
+        super("Repository Maintenance");
+        setSystem(true);
+        setPriority(DECORATE); // Lowest priority
+    }
+    
+    @Override
+    protected IStatus run(IProgressMonitor monitor) {
+        IPreferenceStore store = ModelRepositoryPlugin.getInstance().getPreferenceStore();
+        
+        if(store.getBoolean(IPreferenceConstants.PREFS_MAINTENANCE_ENABLED)) {
+            Thresholds thresholds = new Thresholds(store.getInt(IPreferenceConstants.PREFS_MAINTENANCE_LOOSE_OBJECTS),
+                                                   store.getInt(IPreferenceConstants.PREFS_MAINTENANCE_PACK_FILES),
+                                                   store.getInt(IPreferenceConstants.PREFS_MAINTENANCE_LOOSE_REFS));
+            runPass(thresholds, monitor);
+        }
+        
+        // Reschedule even if disabled so that it starts again if enabled in Preferences
+        if(!monitor.isCanceled()) {
+            schedule(TimeUnit.MINUTES.toMillis(Math.max(1, store.getInt(IPreferenceConstants.PREFS_MAINTENANCE_INTERVAL))));
+        }
+        
+        return monitor.isCanceled() ? Status.CANCEL_STATUS : Status.OK_STATUS;
+    }
+    
+    /**
+     * Run maintenance on each repository that needs it
+     */
+    private void runPass(Thresholds thresholds, IProgressMonitor monitor) {
+        long start = System.currentTimeMillis();
+        
+        List<File> repoFolders = getRepositoryFolders();
+        SubMonitor subMonitor = SubMonitor.convert(monitor, repoFolders.size());
+        
+        int count = 0;
+        long spaceReclaimed = 0;
+        
+        for(File repoFolder : repoFolders) {
+            if(subMonitor.isCanceled()) {
+                break;
+            }
+            
+            Result result = maintain(repoFolder, thresholds, subMonitor.split(1));
+            if(result != null) {
+                count++;
+                spaceReclaimed += result.getSpaceReclaimed();
+            }
+        }
+        
+        if(count > 0) {
+            logger.info("Repository maintenance pass on " + count + " of " + repoFolders.size() + " repositories took "
+                    + (System.currentTimeMillis() - start) + " ms and reclaimed " + spaceReclaimed + " bytes");
+        }
+    }
+    
+    /**
+     * Run maintenance on a repository if it has reached the thresholds
+     * @return The result or null if maintenance was not run
+     */
+    private Result maintain(File repoFolder, Thresholds thresholds, IProgressMonitor monitor) {
+        if(!new File(repoFolder, ".git").isDirectory()) {
+            return null;
+        }
+        
+        // gc and packing refs lock refs so a commit or ref update in a workflow using the repository at the same time could fail.
+        // Skip the repository if it is in use. It will be checked again in the next pass.
+        if(isInUse(repoFolder, 0)) {
+            return null;
+        }
+        
+        try(GitUtils utils = GitUtils.open(repoFolder)) {
+            Task task = RepositoryMaintenance.getRequiredTask(utils.getRepository(), thresholds);
+            if(task == Task.NONE) {
+                return null;
+            }
+            
+            // Check again as getting the task can take a while. We have it open ourselves.
+            if(isInUse(repoFolder, 1)) {
+                return null;
+            }
+            
+            Result result = RepositoryMaintenance.run(utils.getRepository(), task, new ProgressMonitorWrapper(monitor));
+            
+            logger.info("Repository maintenance (" + task + ") of " + repoFolder + " took " + result.duration() + " ms and reclaimed "
+                    + result.getSpaceReclaimed() + " bytes. Loose objects " + result.getLooseObjectsBefore() + " -> "
+                    + result.getLooseObjectsAfter() + ", pack files " + result.getPackFilesAfter());
+            
+            return result;
+        }
+        catch(Exception ex) {
+            // Cancelled
+            if(monitor.isCanceled()) {
+                logger.info("Repository maintenance of " + repoFolder + " was cancelled");
+                return null;
+            }
+            
+            logger.log(Level.WARNING, "Repository maintenance of " + repoFolder, ex);
+            return null;
+        }
+    }
+    
+    /**
+     * @param ownUseCount The number of times this Job has acquired the repository
+     * @return true if the repository has been acquired from the RepositoryPool by someone else
+     */
+    private boolean isInUse(File repoFolder, int ownUseCount) {
+        if(RepositoryPool.getInstance().getUseCount(repoFolder) > ownUseCount) {
+            logger.info("Repository maintenance of " + repoFolder + " skipped as the repository is in use");
+            return true;
+        }
+        return false;
+    }
+    
+    /**
+     * @return The working folders of the repositories in the Repositories tree.
+     * The tree model is not thread safe so get them in the UI thread.
+     * The Workbench's Display is used so that a Display is not created for this thread.
+     */
+    private List<File> getRepositoryFolders() {
+        List<File> folders = new ArrayList<>();
+        
+        if(!PlatformUI.isWorkbenchRunning()) {
+            return folders;
+        }
+        
+        Display display = PlatformUI.getWorkbench().getDisplay();
+        if(display.isDisposed()) {
+            return folders;
+        }
+        
+        display.syncExec(() -> {
+            for(RepositoryRef ref : RepositoryTreeModel.getInstance().getAllChildRepositoryRefs()) {
+                folders.add(ref.getArchiRepository().getWorkingFolder());
+            }
+        });
+        
+        return folders;
+    }
+}
@@ -6,6 +6,9 @@
 package com.archimatetool.modelrepository;
 
 import org.eclipse.ui.IStartup;
+import org.eclipse.ui.PlatformUI;
+
+import com.archimatetool.modelrepository.repository.ModelChangeJournal;
 
 
 /**
@@ -18,7 +21,11 @@ public class Startup implements IStartup {
 
     @Override
     public void earlyStartup() {
-        // Do nothing
+        // Record changes to open models in the UI thread where model notifications are sent
+        PlatformUI.getWorkbench().getDisplay().asyncExec(() -> ModelChangeJournal.getInstance().start());
+        
+        // Start background repository maintenance
+        ModelRepositoryPlugin.getInstance().startMaintenanceJob();
     }
 
 }
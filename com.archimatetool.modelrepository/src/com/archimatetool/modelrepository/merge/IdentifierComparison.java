@@ -0,0 +1,621 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+package com.archimatetool.modelrepository.merge;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import org.eclipse.emf.common.util.TreeIterator;
+import org.eclipse.emf.compare.AttributeChange;
+import org.eclipse.emf.compare.CompareFactory;
+import org.eclipse.emf.compare.Comparison;
+import org.eclipse.emf.compare.Diff;
+import org.eclipse.emf.compare.DifferenceKind;
+import org.eclipse.emf.compare.DifferenceSource;
+import org.eclipse.emf.compare.Match;
+import org.eclipse.emf.compare.ReferenceChange;
+import org.eclipse.emf.compare.scope.DefaultComparisonScope;
+import org.eclipse.emf.ecore.EAttribute;
+import org.eclipse.emf.ecore.EClass;
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.EReference;
+import org.eclipse.emf.ecore.EStructuralFeature;
+
+import com.archimatetool.model.IIdentifier;
+
+/**
+ * Two-way comparison of models that matches objects by identifier in hash maps and compares the features of each matched pair,
+ * instead of running EMF Compare's match, diff, equivalence, requirement and conflict engines.
+ *
+ * An object is identified by its id, or if it doesn't have one by the identifier from MergeFactory.createIdentifier,
+ * or else by its parent's identifier and its containing feature if that is single valued (for example metadata).
+ * The values of a containment reference of matched objects that can't be identified (for example the properties of metadata)
+ * are compared with EMF Compare, scoped to that reference, and its Matches and differences are added to this comparison.
+ * If an identifier is not unique, matched objects are not the same type, a containment reference has values that can be
+ * identified and values that can't, or a reference of an identified object refers to an object that can't be identified,
+ * null is returned so that EMF Compare can be used for the whole comparison instead.
+ *
+ * The differences are those of EMF Compare's default diff engine for a two-way comparison:
+ * - ADD, DELETE and MOVE ReferenceChanges for containment references, including the contents of added and deleted objects
+ * - CHANGE for single valued attributes and references, ADD and DELETE for multi valued attributes and references,
+ *   of matched objects
+ * - MOVE for matched objects whose order changed in an ordered multi valued reference
+ *
+ * A Match is only created for an object that has differences, and for the objects that contain it.
+ *
+ * If SubtreeHashes are given for both models, matched objects with the same subtree hash, and their contents, are not compared.
+ */
+@SuppressWarnings("nls")
+class IdentifierComparison {
+
+    /**
+     * Features of an EClass to compare
+     */
+    static record Features(List<EAttribute> attributes, List<EReference> references, List<EReference> containments) {}
+    
+    private static final Map<EClass, Features> featuresCache = Collections.synchronizedMap(new HashMap<>());
+    
+    // Objects in containment order keyed by identifier
+    private Map<String, EObject> leftObjects = new LinkedHashMap<>();
+    private Map<String, EObject> rightObjects = new LinkedHashMap<>();
+    
+    // Objects that can't be identified, and their contents
+    private Set<EObject> leftUnidentified = Collections.newSetFromMap(new IdentityHashMap<>());
+    private Set<EObject> rightUnidentified = Collections.newSetFromMap(new IdentityHashMap<>());
+    
+    private Map<EObject, String> identifiers = new HashMap<>();
+    private Map<EObject, Match> matches = new HashMap<>();
+    
+    private Comparison comparison;
+    
+    private SubtreeHashes leftHashes, rightHashes;
+    
+    // Set if objects are found that can't be compared by identifier
+    private boolean useEMFCompare;
+    
+    /**
+     * @return A Comparison of left (most recent) and right, or null if objects can't be matched by identifier
+     */
+    static Comparison create(EObject left, EObject right) {
+        return create(left, right, null, null);
+    }
+    
+    /**
+     * @param leftHashes The SubtreeHashes of left, or null
+     * @param rightHashes The SubtreeHashes of right, or null
+     * @return A Comparison of left (most recent) and right, or null if objects can't be matched by identifier
+     */
+    static Comparison create(EObject left, EObject right, SubtreeHashes leftHashes, SubtreeHashes rightHashes) {
+        return new IdentifierComparison(leftHashes, rightHashes).compare(left, right);
+    }
+    
+    private IdentifierComparison(SubtreeHashes leftHashes, SubtreeHashes rightHashes) {
+        this.leftHashes = leftHashes;
+        this.rightHashes = rightHashes;
+    }
+    
+    private Comparison compare(EObject left, EObject right) {
+        if(!index(left, leftObjects, leftUnidentified) || !index(right, rightObjects, rightUnidentified)
+                || !identifiers.get(left).equals(identifiers.get(right))) {
+            return null;
+        }
+        
+        for(EObject leftObject : leftObjects.values()) {
+            EObject rightObject = getCounterpart(leftObject);
+            if(rightObject != null && leftObject.eClass() != rightObject.eClass()) {
+                return null;
+            }
+        }
+        
+        comparison = MergeFactory.createEmptyComparison();
+        
+        Match rootMatch = CompareFactory.eINSTANCE.createMatch();
+        rootMatch.setLeft(left);
+        rootMatch.setRight(right);
+        comparison.getMatches().add(rootMatch);
+        matches.put(left, rootMatch);
+        matches.put(right, rootMatch);
+        
+        // Matched objects with the same subtree hash, and their contents. Objects are in containment order so a container comes first.
+        Set<EObject> unchanged = Collections.newSetFromMap(new IdentityHashMap<>());
+        
+        // Matched and added objects
+        for(EObject leftObject : leftObjects.values()) {
+            EObject rightObject = getCounterpart(leftObject);
+            
+            if(rightObject != null && leftHashes != null && (unchanged.contains(leftObject.eContainer()) || leftHashes.isSameSubtree(leftObject, rightHashes))) {
+                unchanged.add(leftObject);
+                continue;
+            }
+            
+            if(rightObject != null) {
+                compareFeatures(leftObject, rightObject);
+            }
+            compareContainments(leftObject, rightObject);
+        }
+        
+        // Deleted objects
+        for(EObject rightObject : rightObjects.values()) {
+            if(getCounterpart(rightObject) == null) {
+                compareContainments(null, rightObject);
+            }
+        }
+        
+        return useEMFCompare ? null : comparison;
+    }
+    
+    /**
+     * Add root and all its contents to objects keyed by identifier, or to unidentified if they can't be identified
+     * @return false if root can't be identified or an identifier is not unique
+     */
+    private boolean index(EObject root, Map<String, EObject> objects, Set<EObject> unidentified) {
+        String rootIdentifier = getIdentifier(root);
+        if(rootIdentifier == null) {
+            return false;
+        }
+        objects.put(rootIdentifier, root);
+        identifiers.put(root, rootIdentifier);
+        
+        for(TreeIterator<EObject> iter = root.eAllContents(); iter.hasNext();) {
+            EObject eObject = iter.next();
+            String identifier = getIdentifier(eObject);
+            
+            // The contents of an object that can't be identified are compared with it by EMF Compare
+            if(identifier == null) {
+                unidentified.add(eObject);
+                eObject.eAllContents().forEachRemaining(unidentified::add);
+                iter.prune();
+            }
+            else if(objects.putIfAbsent(identifier, eObject) != null) {
+                return false;
+            }
+            else {
+                identifiers.put(eObject, identifier);
+            }
+        }
+        
+        return true;
+    }
+    
+    private boolean isUnidentified(Object value) {
+        return value instanceof EObject eObject && (leftUnidentified.contains(eObject) || rightUnidentified.contains(eObject));
+    }
+    
+    private String getIdentifier(EObject eObject) {
+        String identifier = MergeFactory.createIdentifier(eObject);
+        
+        // A child without an id in a single valued containment reference is identified by its parent and the reference
+        if(identifier == null && !(eObject instanceof IIdentifier) && eObject.eContainer() != null && !eObject.eContainmentFeature().isMany()) {
+            String parentIdentifier = identifiers.get(eObject.eContainer());
+            if(parentIdentifier != null) {
+                identifier = parentIdentifier + "#" + eObject.eContainmentFeature().getName();
+            }
+        }
+        
+        return identifier;
+    }
+    
+    /**
+     * @return The matching object in the other model, or null
+     */
+    private EObject getCounterpart(EObject eObject) {
+        String identifier = identifiers.get(eObject);
+        if(identifier == null) {
+            return null;
+        }
+        return isLeft(eObject) ? rightObjects.get(identifier) : leftObjects.get(identifier);
+    }
+    
+    private boolean isLeft(EObject eObject) {
+        String identifier = identifiers.get(eObject);
+        return identifier != null ? leftObjects.get(identifier) == eObject : leftUnidentified.contains(eObject);
+    }
+    
+    /**
+     * @return true if value1 and value2 are the same object in each model, or equal if not in the models
+     */
+    private boolean isSameObject(Object value1, Object value2) {
+        // The counterpart of an object that can't be identified is not known
+        if(isUnidentified(value1) || isUnidentified(value2)) {
+            useEMFCompare = true;
+            return false;
+        }
+        
+        if(value1 instanceof EObject eObject && identifiers.containsKey(eObject)) {
+            return value2 != null && getCounterpart(eObject) == value2;
+        }
+        return Objects.equals(value1, value2);
+    }
+    
+    /**
+     * @return The Match for an object in either model, creating it and the Matches of its containers if needed
+     */
+    private Match getMatch(EObject eObject) {
+        Match match = matches.get(eObject);
+        if(match != null) {
+            return match;
+        }
+        
+        EObject counterpart = getCounterpart(eObject);
+        EObject left = isLeft(eObject) ? eObject : counterpart;
+        EObject right = isLeft(eObject) ? counterpart : eObject;
+        
+        match = CompareFactory.eINSTANCE.createMatch();
+        match.setLeft(left);
+        match.setRight(right);
+        
+        // The parent Match is the Match of the left object's container, or the right object's if there is no left object
+        getMatch(left != null ? left.eContainer() : right.eContainer()).getSubmatches().add(match);
+        
+        if(left != null) {
+            matches.put(left, match);
+        }
+        if(right != null) {
+            matches.put(right, match);
+        }
+        
+        return match;
+    }
+    
+    /**
+     * Compare the attributes and non-containment references of matched objects
+     */
+    private void compareFeatures(EObject left, EObject right) {
+        Features features = getFeatures(left.eClass());
+        
+        for(EAttribute attribute : features.attributes()) {
+            if(attribute.isMany()) {
+                compareMultiValued(left, right, attribute);
+            }
+            else {
+                Object leftValue = left.eGet(attribute);
+                Object rightValue = right.eGet(attribute);
+                if(!Objects.equals(leftValue, rightValue)) {
+                    addAttributeChange(left, attribute, leftValue != null ? leftValue : rightValue, DifferenceKind.CHANGE);
+                }
+            }
+        }
+        
+        for(EReference reference : features.references()) {
+            if(reference.isMany()) {
+                compareMultiValued(left, right, reference);
+            }
+            else {
+                Object leftValue = left.eGet(reference);
+                Object rightValue = right.eGet(reference);
+                if(!(leftValue == null ? rightValue == null : isSameObject(leftValue, rightValue))) {
+                    addReferenceChange(left, reference, (EObject)(leftValue != null ? leftValue : rightValue), DifferenceKind.CHANGE);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Compare the values of a multi valued attribute or non-containment reference of matched objects
+     */
+    private void compareMultiValued(EObject left, EObject right, EStructuralFeature feature) {
+        List<?> leftValues = (List<?>)left.eGet(feature);
+        List<?> rightValues = (List<?>)right.eGet(feature);
+        
+        if(leftValues.isEmpty() && rightValues.isEmpty()) {
+            return;
+        }
+        
+        boolean isReference = feature instanceof EReference;
+        
+        // The counterpart of an object that can't be identified is not known
+        if(isReference && (leftValues.stream().anyMatch(this::isUnidentified) || rightValues.stream().anyMatch(this::isUnidentified))) {
+            useEMFCompare = true;
+            return;
+        }
+        
+        // Right indexes of each value, an object in the models is keyed by its left counterpart
+        Map<Object, List<Integer>> rightIndex = new HashMap<>();
+        for(int i = 0; i < rightValues.size(); i++) {
+            Object value = rightValues.get(i);
+            if(isReference && value instanceof EObject eObject && identifiers.containsKey(eObject)) {
+                value = getCounterpart(eObject);
+            }
+            if(value != null) {
+                rightIndex.computeIfAbsent(value, v -> new ArrayList<>(1)).add(i);
+            }
+        }
+        
+        boolean[] rightMatched = new boolean[rightValues.size()];
+        List<Object> inBoth = new ArrayList<>();
+        List<Integer> rightIndexes = new ArrayList<>();
+        
+        for(Object leftValue : leftValues) {
+            List<Integer> indexes = rightIndex.get(leftValue);
+            if(indexes == null || indexes.isEmpty()) {
+                addFeatureChange(left, feature, leftValue, DifferenceKind.ADD);
+            }
+            else {
+                int index = indexes.remove(0);
+                rightMatched[index] = true;
+                inBoth.add(leftValue);
+                rightIndexes.add(index);
+            }
+        }
+        
+        for(int i = 0; i < rightMatched.length; i++) {
+            if(!rightMatched[i]) {
+                addFeatureChange(left, feature, rightValues.get(i), DifferenceKind.DELETE);
+            }
+        }
+        
+        // Order of attribute values is not compared as values can be repeated
+        if(isReference && feature.isOrdered()) {
+            addMoves(left, feature, inBoth, rightIndexes);
+        }
+    }
+    
+    /**
+     * Compare the containment references of matched objects, or of an added (right is null) or deleted (left is null) object
+     */
+    private void compareContainments(EObject left, EObject right) {
+        EObject eObject = left != null ? left : right;
+        
+        // Containment references of matched objects with values that can't be identified
+        List<EReference> unidentifiedReferences = new ArrayList<>();
+        
+        for(EReference reference : getFeatures(eObject.eClass()).containments()) {
+            List<EObject> leftValues = getValues(left, reference);
+            List<EObject> rightValues = getValues(right, reference);
+            
+            if(leftValues.isEmpty() && rightValues.isEmpty()) {
+                continue;
+            }
+            
+            if(left != null && right != null && (leftValues.stream().anyMatch(this::isUnidentified) || rightValues.stream().anyMatch(this::isUnidentified))) {
+                // EMF Compare can only be scoped to all the values of a reference
+                if(!(leftValues.stream().allMatch(this::isUnidentified) && rightValues.stream().allMatch(this::isUnidentified))) {
+                    useEMFCompare = true;
+                    return;
+                }
+                unidentifiedReferences.add(reference);
+                continue;
+            }
+            
+            List<Object> inBoth = new ArrayList<>();
+            
+            for(EObject leftValue : leftValues) {
+                EObject rightValue = getCounterpart(leftValue);
+                
+                // Added
+                if(rightValue == null) {
+                    addReferenceChange(eObject, reference, leftValue, DifferenceKind.ADD);
+                    
+                    // The contents of an added object that can't be identified are not in leftObjects
+                    if(isUnidentified(leftValue)) {
+                        compareContainments(leftValue, null);
+                    }
+                }
+                // Moved from another container
+                else if(right == null || rightValue.eContainer() != right || rightValue.eContainmentFeature() != reference) {
+                    addReferenceChange(eObject, reference, leftValue, DifferenceKind.MOVE);
+                }
+                else {
+                    inBoth.add(leftValue);
+                }
+            }
+            
+            // Deleted
+            for(EObject rightValue : rightValues) {
+                if(getCounterpart(rightValue) == null) {
+                    addReferenceChange(eObject, reference, rightValue, DifferenceKind.DELETE);
+                    
+                    // The contents of a deleted object that can't be identified are not in rightObjects
+                    if(isUnidentified(rightValue)) {
+                        compareContainments(null, rightValue);
+                    }
+                }
+            }
+            
+            // Moved in the same container
+            if(reference.isMany() && reference.isOrdered() && inBoth.size() > 1) {
+                Map<EObject, Integer> rightIndex = new IdentityHashMap<>(rightValues.size());
+                for(int i = 0; i < rightValues.size(); i++) {
+                    rightIndex.put(rightValues.get(i), i);
+                }
+                
+                List<Integer> rightIndexes = new ArrayList<>(inBoth.size());
+                for(Object leftValue : inBoth) {
+                    rightIndexes.add(rightIndex.get(getCounterpart((EObject)leftValue)));
+                }
+                
+                addMoves(eObject, reference, inBoth, rightIndexes);
+            }
+        }
+        
+        if(!unidentifiedReferences.isEmpty()) {
+            compareWithEMFCompare(left, right, unidentifiedReferences);
+        }
+    }
+    
+    /**
+     * Compare the values of containment references of matched objects that can't be identified with EMF Compare
+     * and add the Matches of the values and the differences of the references to this comparison.
+     * The scope of the EMF Compare comparison is left and right and the values of the references, and their contents.
+     */
+    private void compareWithEMFCompare(EObject left, EObject right, List<EReference> references) {
+        DefaultComparisonScope scope = new DefaultComparisonScope(left, right, null);
+        scope.setEObjectContentFilter(eObject -> isInReferences(eObject, left, right, references));
+        
+        Comparison emfComparison = MergeFactory.createEMFComparison(scope);
+        Match emfMatch = emfComparison.getMatch(left);
+        Match match = getMatch(left);
+        
+        // Only the differences of the references. Any others are found by this comparison.
+        for(Diff diff : List.copyOf(emfMatch.getDifferences())) {
+            if(diff instanceof ReferenceChange referenceChange && references.contains(referenceChange.getReference())) {
+                match.getDifferences().add(diff);
+            }
+        }
+        
+        // The submatches are all of the values of the references because of the scope's filter
+        for(Match submatch : List.copyOf(emfMatch.getSubmatches())) {
+            match.getSubmatches().add(submatch);
+            addEquivalences(submatch);
+            for(Match contentMatch : submatch.getAllSubmatches()) {
+                addEquivalences(contentMatch);
+            }
+        }
+        addEquivalences(match);
+    }
+    
+    /**
+     * Move the Equivalences of the differences of match from the EMF Compare comparison to this comparison
+     */
+    private void addEquivalences(Match match) {
+        for(Diff diff : match.getDifferences()) {
+            if(diff.getEquivalence() != null && diff.getEquivalence().eContainer() != comparison) {
+                comparison.getEquivalences().add(diff.getEquivalence());
+            }
+        }
+    }
+    
+    /**
+     * @return true if eObject is a value of one of the containment references of left or right, or is contained by one
+     */
+    private static boolean isInReferences(EObject eObject, EObject left, EObject right, List<EReference> references) {
+        for(EObject container = eObject.eContainer(); container != null; eObject = container, container = eObject.eContainer()) {
+            if(container == left || container == right) {
+                return references.contains(eObject.eContainmentFeature());
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Add a MOVE for each value that is not in the longest run of values in the same order on both sides.
+     * @param values The values in left order that are on both sides
+     * @param rightIndexes The right index of each value
+     */
+    private void addMoves(EObject eObject, EStructuralFeature feature, List<Object> values, List<Integer> rightIndexes) {
+        if(values.size() < 2) {
+            return;
+        }
+        
+        boolean[] inOrder = getLongestIncreasingSubsequence(rightIndexes.stream().mapToInt(Integer::intValue).toArray());
+        for(int i = 0; i < inOrder.length; i++) {
+            if(!inOrder[i]) {
+                addFeatureChange(eObject, feature, values.get(i), DifferenceKind.MOVE);
+            }
+        }
+    }
+    
+    /**
+     * @return For each index of sequence, whether it is in a longest increasing subsequence
+     */
+    static boolean[] getLongestIncreasingSubsequence(int[] sequence) {
+        int[] tails = new int[sequence.length];        // index of the smallest tail of each subsequence length
+        int[] predecessors = new int[sequence.length];
+        int length = 0;
+        
+        for(int i = 0; i < sequence.length; i++) {
+            int low = 0, high = length;
+            while(low < high) {
+                int mid = (low + high) >>> 1;
+                if(sequence[tails[mid]] < sequence[i]) {
+                    low = mid + 1;
+                }
+                else {
+                    high = mid;
+                }
+            }
+            
+            predecessors[i] = low > 0 ? tails[low - 1] : -1;
+            tails[low] = i;
+            if(low == length) {
+                length++;
+            }
+        }
+        
+        boolean[] result = new boolean[sequence.length];
+        for(int i = length > 0 ? tails[length - 1] : -1; i != -1; i = predecessors[i]) {
+            result[i] = true;
+        }
+        
+        return result;
+    }
+    
+    @SuppressWarnings("unchecked")
+    private List<EObject> getValues(EObject eObject, EReference reference) {
+        if(eObject == null) {
+            return Collections.emptyList();
+        }
+        
+        if(reference.isMany()) {
+            return (List<EObject>)eObject.eGet(reference);
+        }
+        
+        EObject value = (EObject)eObject.eGet(reference);
+        return value != null ? List.of(value) : Collections.emptyList();
+    }
+    
+    private void addFeatureChange(EObject eObject, EStructuralFeature feature, Object value, DifferenceKind kind) {
+        if(feature instanceof EReference reference) {
+            addReferenceChange(eObject, reference, (EObject)value, kind);
+        }
+        else {
+            addAttributeChange(eObject, (EAttribute)feature, value, kind);
+        }
+    }
+    
+    private void addReferenceChange(EObject eObject, EReference reference, EObject value, DifferenceKind kind) {
+        ReferenceChange diff = CompareFactory.eINSTANCE.createReferenceChange();
+        diff.setReference(reference);
+        diff.setValue(value);
+        addDiff(eObject, diff, kind);
+    }
+    
+    private void addAttributeChange(EObject eObject, EAttribute attribute, Object value, DifferenceKind kind) {
+        AttributeChange diff = CompareFactory.eINSTANCE.createAttributeChange();
+        diff.setAttribute(attribute);
+        diff.setValue(value);
+        addDiff(eObject, diff, kind);
+    }
+    
+    private void addDiff(EObject eObject, Diff diff, DifferenceKind kind) {
+        diff.setKind(kind);
+        diff.setSource(DifferenceSource.LEFT); // In a two-way comparison all differences are from the left
+        getMatch(eObject).getDifferences().add(diff);
+    }
+    
+    /**
+     * @return The features of eClass that are compared. As in EMF Compare derived, transient and container features are not compared.
+     */
+    static Features getFeatures(EClass eClass) {
+        return featuresCache.computeIfAbsent(eClass, c -> {
+            List<EAttribute> attributes = new ArrayList<>();
+            List<EReference> references = new ArrayList<>();
+            List<EReference> containments = new ArrayList<>();
+            
+            for(EStructuralFeature feature : eClass.getEAllStructuralFeatures()) {
+                if(feature.isDerived() || feature.isTransient()) {
+                    continue;
+                }
+                
+                if(feature instanceof EAttribute attribute) {
+                    attributes.add(attribute);
+                }
+                else if(feature instanceof EReference reference && !reference.isContainer()) {
+                    (reference.isContainment() ? containments : references).add(reference);
+                }
+            }
+            
+            return new Features(List.copyOf(attributes), List.copyOf(references), List.copyOf(containments));
+        });
+    }
+}
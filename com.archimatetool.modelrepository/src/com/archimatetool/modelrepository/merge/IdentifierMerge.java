@@ -0,0 +1,343 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+package com.archimatetool.modelrepository.merge;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.logging.Logger;
+
+import org.eclipse.emf.common.util.ECollections;
+import org.eclipse.emf.common.util.EList;
+import org.eclipse.emf.common.util.TreeIterator;
+import org.eclipse.emf.ecore.EAttribute;
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.EReference;
+import org.eclipse.emf.ecore.util.EcoreUtil;
+
+import com.archimatetool.model.IArchimateModel;
+import com.archimatetool.model.IFolder;
+import com.archimatetool.model.IIdentifier;
+import com.archimatetool.modelrepository.repository.CommitManifest;
+
+/**
+ * Merges their changes into our model by copying the objects that they changed from their model to our model, matched by id,
+ * instead of comparing the models. This is only correct if none of the objects that they changed were changed in our model
+ * so that there can be no conflicts. The ids of the changed objects come from the commit manifests.
+ *
+ * Manifests record changes to the model, folders, concepts and diagrams. A changed concept or diagram is replaced with their version
+ * including its contents. A changed folder or model only has its own features replaced because its members have their own changes.
+ * Objects in our model with the same id as objects in their model are updated rather than replaced so that references to them are kept.
+ *
+ * If an object can't be merged, for example a deleted folder still contains objects that weren't deleted, false is returned and the
+ * models should be compared instead. As our model might have been partly changed it should not be used.
+ */
+@SuppressWarnings("nls")
+class IdentifierMerge {
+
+    private static Logger logger = Logger.getLogger(IdentifierMerge.class.getName());
+    
+    private Set<String> changedIds;
+    
+    // Objects keyed by id, their objects in containment order
+    private Map<String, EObject> ourObjects = new HashMap<>();
+    private Map<String, EObject> theirObjects = new LinkedHashMap<>();
+    
+    // Their objects that are merged and the objects in our model that they are merged to
+    private Map<EObject, EObject> counterparts = new LinkedHashMap<>();
+    
+    /**
+     * Merge the objects that they changed into our model
+     * @param ourModel Our model. This is changed.
+     * @param theirModel Their model
+     * @param changedIds The ids of the objects that they changed since the common ancestor. None of these can have been changed in our model.
+     * @return true if merged, false if the models should be compared instead
+     */
+    static boolean merge(IArchimateModel ourModel, IArchimateModel theirModel, Set<String> changedIds) {
+        return new IdentifierMerge(changedIds).merge(ourModel, theirModel);
+    }
+    
+    private IdentifierMerge(Set<String> changedIds) {
+        this.changedIds = changedIds;
+    }
+    
+    private boolean merge(IArchimateModel ourModel, IArchimateModel theirModel) {
+        if(!index(ourModel, ourObjects) || !index(theirModel, theirObjects)) {
+            return false;
+        }
+        
+        // Deleted objects
+        for(String id : changedIds) {
+            EObject ourObject = ourObjects.get(id);
+            if(ourObject != null && !theirObjects.containsKey(id) && !delete(ourObject)) {
+                return false;
+            }
+        }
+        
+        // Changed and added objects in containment order so that new containers are created before their members
+        List<EObject> changedObjects = new ArrayList<>();
+        for(Entry<String, EObject> entry : theirObjects.entrySet()) {
+            if(changedIds.contains(entry.getKey())) {
+                changedObjects.add(entry.getValue());
+            }
+        }
+        
+        for(EObject theirObject : changedObjects) {
+            if(!mergeContents(theirObject, getOrCreateObject(theirObject), isShallow(theirObject))) {
+                return false;
+            }
+        }
+        
+        for(EObject theirObject : changedObjects) {
+            if(!moveToContainer(theirObject)) {
+                return false;
+            }
+        }
+        
+        // References can be set once all objects exist
+        for(Entry<EObject, EObject> entry : counterparts.entrySet()) {
+            if(!mergeReferences(entry.getKey(), entry.getValue())) {
+                return false;
+            }
+        }
+        
+        return true;
+    }
+    
+    /**
+     * Index the objects that have an id
+     * @return false if an id is not unique
+     */
+    private boolean index(EObject root, Map<String, EObject> objects) {
+        if(!add(root, objects)) {
+            return false;
+        }
+        
+        for(TreeIterator<EObject> iter = root.eAllContents(); iter.hasNext();) {
+            if(!add(iter.next(), objects)) {
+                return false;
+            }
+        }
+        
+        return true;
+    }
+    
+    private boolean add(EObject eObject, Map<String, EObject> objects) {
+        String id = getId(eObject);
+        if(id != null && objects.putIfAbsent(id, eObject) != null) {
+            logger.warning("Duplicate id: " + id);
+            return false;
+        }
+        return true;
+    }
+    
+    /**
+     * @return The id of eObject or null if it doesn't have one
+     */
+    private String getId(Object object) {
+        return object instanceof IIdentifier identifier ? identifier.getId() : null;
+    }
+    
+    /**
+     * @return true if only the features of theirObject are merged and not its members, which have their own changes
+     */
+    private boolean isShallow(EObject theirObject) {
+        return theirObject instanceof IArchimateModel || theirObject instanceof IFolder;
+    }
+    
+    /**
+     * Delete an object from our model
+     * @return false if it contains objects that they didn't delete
+     */
+    private boolean delete(EObject ourObject) {
+        for(TreeIterator<EObject> iter = ourObject.eAllContents(); iter.hasNext();) {
+            EObject eObject = iter.next();
+            if(CommitManifest.isManifestType(eObject) && !changedIds.contains(getId(eObject))) {
+                logger.info("Deleted object contains an object that was not deleted: " + getId(eObject));
+                return false;
+            }
+        }
+        
+        EcoreUtil.remove(ourObject);
+        ourObjects.remove(getId(ourObject));
+        
+        return true;
+    }
+    
+    /**
+     * @return The object in our model with the same id as theirObject and of the same type, or a new object
+     */
+    private EObject getOrCreateObject(EObject theirObject) {
+        String id = getId(theirObject);
+        EObject ourObject = id != null ? ourObjects.get(id) : null;
+        
+        if(ourObject == null || ourObject.eClass() != theirObject.eClass()) {
+            ourObject = EcoreUtil.create(theirObject.eClass());
+            if(id != null) {
+                ourObjects.put(id, ourObject);
+            }
+        }
+        
+        counterparts.put(theirObject, ourObject);
+        
+        return ourObject;
+    }
+    
+    /**
+     * @return The object in our model that theirObject is merged to or has the same id, or null
+     */
+    private EObject getOurObject(EObject theirObject) {
+        EObject ourObject = counterparts.get(theirObject);
+        if(ourObject == null) {
+            String id = getId(theirObject);
+            ourObject = id != null ? ourObjects.get(id) : null;
+        }
+        return ourObject;
+    }
+    
+    /**
+     * Set the attributes and contents of ourObject to those of theirObject
+     * @param shallow If true, contained members that have their own changes are not merged
+     */
+    private boolean mergeContents(EObject theirObject, EObject ourObject, boolean shallow) {
+        IdentifierComparison.Features features = IdentifierComparison.getFeatures(theirObject.eClass());
+        
+        for(EAttribute attribute : features.attributes()) {
+            ourObject.eSet(attribute, theirObject.eGet(attribute));
+        }
+        
+        for(EReference containment : features.containments()) {
+            List<EObject> theirValues = getValues(theirObject, containment);
+            
+            // Members that have their own changes
+            if(shallow && (hasManifestType(theirValues) || hasManifestType(getValues(ourObject, containment)))) {
+                for(EObject theirValue : theirValues) {
+                    // A member that is not in our model must have been added by them
+                    if(getOurObject(theirValue) == null && !changedIds.contains(getId(theirValue))) {
+                        logger.info("Member was not added: " + getId(theirValue));
+                        return false;
+                    }
+                }
+                continue;
+            }
+            
+            List<EObject> ourValues = new ArrayList<>();
+            for(EObject theirValue : theirValues) {
+                EObject ourValue = getOrCreateObject(theirValue);
+                if(!mergeContents(theirValue, ourValue, false)) {
+                    return false;
+                }
+                ourValues.add(ourValue);
+            }
+            
+            setValues(ourObject, containment, ourValues);
+        }
+        
+        return true;
+    }
+    
+    /**
+     * If a changed object is not in the same container in our model as in their model move it there
+     */
+    @SuppressWarnings("unchecked")
+    private boolean moveToContainer(EObject theirObject) {
+        EObject theirContainer = theirObject.eContainer();
+        if(theirContainer == null) {
+            return true;
+        }
+        
+        EObject ourContainer = getOurObject(theirContainer);
+        if(ourContainer == null) {
+            logger.info("Container not found: " + getId(theirContainer));
+            return false;
+        }
+        
+        EObject ourObject = counterparts.get(theirObject);
+        EReference containment = theirObject.eContainmentFeature();
+        
+        if(ourObject.eContainer() != ourContainer || ourObject.eContainmentFeature() != containment) {
+            if(containment.isMany()) {
+                EList<EObject> ourValues = (EList<EObject>)ourContainer.eGet(containment);
+                int index = ((List<EObject>)theirContainer.eGet(containment)).indexOf(theirObject);
+                ourValues.add(Math.min(index, ourValues.size()), ourObject);
+            }
+            else {
+                ourContainer.eSet(containment, ourObject);
+            }
+        }
+        
+        return true;
+    }
+    
+    /**
+     * Set the references of ourObject to the objects in our model with the same ids as the references of theirObject
+     * @return false if a referenced object is not in our model
+     */
+    private boolean mergeReferences(EObject theirObject, EObject ourObject) {
+        for(EReference reference : IdentifierComparison.getFeatures(theirObject.eClass()).references()) {
+            List<EObject> ourValues = new ArrayList<>();
+            
+            for(EObject theirValue : getValues(theirObject, reference)) {
+                EObject ourValue = getOurObject(theirValue);
+                if(ourValue == null) {
+                    logger.info("Referenced object not found: " + getId(theirValue));
+                    return false;
+                }
+                ourValues.add(ourValue);
+            }
+            
+            setValues(ourObject, reference, ourValues);
+        }
+        
+        return true;
+    }
+    
+    /**
+     * @return true if any of the objects is of a type that has its own changes in the manifest
+     */
+    private boolean hasManifestType(List<EObject> eObjects) {
+        for(EObject eObject : eObjects) {
+            if(CommitManifest.isManifestType(eObject)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * @return The values of a reference as a list without nulls
+     */
+    @SuppressWarnings("unchecked")
+    private List<EObject> getValues(EObject eObject, EReference reference) {
+        Object value = eObject.eGet(reference);
+        if(reference.isMany()) {
+            return (List<EObject>)value;
+        }
+        
+        List<EObject> values = new ArrayList<>(1);
+        if(value != null) {
+            values.add((EObject)value);
+        }
+        return values;
+    }
+    
+    /**
+     * Set the values of a reference, only changing a list if the values are different
+     */
+    @SuppressWarnings("unchecked")
+    private void setValues(EObject eObject, EReference reference, List<EObject> values) {
+        if(reference.isMany()) {
+            ECollections.setEList((EList<EObject>)eObject.eGet(reference), values);
+        }
+        else {
+            eObject.eSet(reference, values.isEmpty() ? null : values.get(0));
+        }
+    }
+}
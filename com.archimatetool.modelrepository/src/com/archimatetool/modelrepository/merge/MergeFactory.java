@@ -5,9 +5,19 @@
  */
 package com.archimatetool.modelrepository.merge;
 
+import java.util.logging.Logger;
+
 import org.eclipse.emf.common.notify.Notifier;
+import org.eclipse.emf.common.util.BasicDiagnostic;
+import org.eclipse.emf.common.util.Diagnostic;
+import org.eclipse.emf.common.util.Monitor;
+import org.eclipse.emf.compare.CompareFactory;
 import org.eclipse.emf.compare.Comparison;
 import org.eclipse.emf.compare.EMFCompare;
+import org.eclipse.emf.compare.Match;
+import org.eclipse.emf.compare.diff.DefaultDiffEngine;
+import org.eclipse.emf.compare.diff.DiffBuilder;
+import org.eclipse.emf.compare.diff.IDiffEngine;
 import org.eclipse.emf.compare.match.DefaultComparisonFactory;
 import org.eclipse.emf.compare.match.DefaultEqualityHelperFactory;
 import org.eclipse.emf.compare.match.DefaultMatchEngine;
@@ -31,6 +41,7 @@ import com.archimatetool.model.IFeature;
 import com.archimatetool.model.IIdentifier;
 import com.archimatetool.model.IProperties;
 import com.archimatetool.model.IProperty;
+import com.archimatetool.modelrepository.ModelRepositoryPlugin;
 
 
 /**
@@ -44,33 +55,92 @@ import com.archimatetool.model.IProperty;
 @SuppressWarnings("nls")
 public class MergeFactory {
     
+    private static Logger logger = Logger.getLogger(MergeFactory.class.getName());
+    
     /**
      * This is a replacement for the constructor MatchEngineFactoryImpl(IEObjectMatcher matcher, IComparisonFactory comparisonFactory)
      * but that constructor is deprecated, so this is the equivalent.
+     * 
+     * The factory is shared by all comparisons so it holds no per-comparison state.
+     * The Comparison Factory is stateless and creates a new equality helper (and its cache) for each Comparison,
+     * but the default matcher keeps an index of the objects being matched so getMatchEngine() returns a new match engine
+     * with new matchers for each comparison. These are cheap to create.
      */
     private static class ExtendedMatchEngineFactoryImpl extends MatchEngineFactoryImpl {
         private boolean USE_CUSTOM_ID_MATCHER = true;
         private boolean USE_CUSTOM_EQUALITY_HELPER = false; // Experimental, not used
+        
+        private final IComparisonFactory comparisonFactory;
       
         ExtendedMatchEngineFactoryImpl() {
             // Initialise with defaults
             super();
             
-             // Default matcher
+            // Comparison Factory with either custom or default equality helper
+            comparisonFactory = new DefaultComparisonFactory(USE_CUSTOM_EQUALITY_HELPER ?
+                    new CustomEqualityHelperFactory() : new DefaultEqualityHelperFactory());
+            
+            // The default engine ranking is 10, so this must be higher to override it
+            setRanking(20);
+        }
+        
+        @Override
+        public IMatchEngine getMatchEngine() {
+            // Default matcher
             IEObjectMatcher defaultMatcher = DefaultMatchEngine.createDefaultEObjectMatcher(UseIdentifiers.WHEN_AVAILABLE);
             
             // Custom matcher using a function that returns an identifier for an object
             IEObjectMatcher customIDMatcher = new IdentifierEObjectMatcher(defaultMatcher, eObject -> createIdentifier(eObject));
             
-            // Comparison Factory with either custom or default equality helper
-            IComparisonFactory comparisonFactory = new DefaultComparisonFactory(USE_CUSTOM_EQUALITY_HELPER ?
-                    new CustomEqualityHelperFactory() : new DefaultEqualityHelperFactory());
-            
             // Match engine
-            matchEngine = new DefaultMatchEngine(USE_CUSTOM_ID_MATCHER ? customIDMatcher : defaultMatcher, comparisonFactory);
+            return new DefaultMatchEngine(USE_CUSTOM_ID_MATCHER ? customIDMatcher : defaultMatcher, comparisonFactory);
+        }
+    }
+    
+    /**
+     * Match engine factory for a PrunedComparisonScope.
+     * It is only used for a PrunedComparisonScope and it adds the Matches of the subtrees left out of the scope
+     * after the objects in the scope are matched.
+     */
+    private static class PrunedMatchEngineFactoryImpl extends ExtendedMatchEngineFactoryImpl {
+        
+        PrunedMatchEngineFactoryImpl() {
+            // Higher than ExtendedMatchEngineFactoryImpl
+            setRanking(30);
+        }
+        
+        @Override
+        public boolean isMatchEngineFactoryFor(IComparisonScope scope) {
+            return scope instanceof PrunedComparisonScope;
+        }
+        
+        @Override
+        public IMatchEngine getMatchEngine() {
+            IMatchEngine matchEngine = super.getMatchEngine();
             
-            // The default engine ranking is 10, so this must be higher to override it
-            setRanking(20);
+            return (scope, monitor) -> {
+                Comparison comparison = matchEngine.match(scope, monitor);
+                ((PrunedComparisonScope)scope).addPrunedMatches(comparison);
+                return comparison;
+            };
+        }
+    }
+    
+    /**
+     * Diff engine that doesn't look for differences in the Matches of subtrees left out of a PrunedComparisonScope.
+     * Other Matches are checked as by the default diff engine.
+     */
+    private static class PrunedDiffEngine extends DefaultDiffEngine {
+        
+        PrunedDiffEngine() {
+            super(new DiffBuilder());
+        }
+        
+        @Override
+        protected void checkForDifferences(Match match, Monitor monitor) {
+            if(!PrunedComparisonScope.isPruned(match)) {
+                super.checkForDifferences(match, monitor);
+            }
         }
     }
     
@@ -108,30 +178,117 @@ public class MergeFactory {
         // Add our MatchEngineFactory to the registry
         registry.add(new ExtendedMatchEngineFactoryImpl());
         
+        // And the MatchEngineFactory for a PrunedComparisonScope
+        registry.add(new PrunedMatchEngineFactoryImpl());
+        
         return registry;
     }
     
     /**
-     * Create a Comparison for left, right and options base origin using DefaultComparisonScope and our MatchEngineFactoryRegistry
+     * The MatchEngineFactoryRegistry, diff engine and EMFCompare shared by all comparisons.
+     * None of them is changed after it is created and each comparison's state is created in EMFCompare.compare()
+     * so they can be used by more than one thread at the same time.
+     */
+    private static final IMatchEngine.Factory.Registry MATCH_ENGINE_FACTORY_REGISTRY = createMatchEngineFactoryRegistry();
+    private static final IDiffEngine DIFF_ENGINE = new PrunedDiffEngine();
+    private static final EMFCompare EMF_COMPARE = EMFCompare.builder().setMatchEngineFactoryRegistry(MATCH_ENGINE_FACTORY_REGISTRY)
+                                                                      .setDiffEngine(DIFF_ENGINE).build();
+    
+    /**
+     * Whether to use IdentifierComparison for two-way comparisons
+     */
+    static boolean USE_IDENTIFIER_COMPARISON = true;
+    
+    /**
+     * Create a Comparison for left, right and options base origin.
+     * A two-way comparison is done by IdentifierComparison if it can match the models' objects,
+     * else EMF Compare is used.
      * @param left Left root of this comparison.
      * @param right Right root of this comparison.
      * @param origin Common ancestor of <code>left</code> and <code>right</code>.
      */
     public static Comparison createComparison(Notifier left, Notifier right, Notifier origin) {
-        // Use our MatchEngineFactoryRegistry
-        IMatchEngine.Factory.Registry matchEngineFactoryRegistry = createMatchEngineFactoryRegistry();
+        if(origin == null && left instanceof EObject leftObject && right instanceof EObject rightObject) {
+            return createComparison(leftObject, rightObject, null, null);
+        }
         
-        // Default ComparisonScope
-        IComparisonScope scope = new DefaultComparisonScope(left, right, origin);
+        return createEMFComparison(left, right, origin);
+    }
+    
+    /**
+     * Create a two-way Comparison for left and right.
+     * If IdentifierComparison is used, subtrees with the same hash in leftHashes and rightHashes are not compared.
+     * @param left Left root of this comparison.
+     * @param right Right root of this comparison.
+     * @param leftHashes The SubtreeHashes of left or null
+     * @param rightHashes The SubtreeHashes of right or null
+     */
+    static Comparison createComparison(EObject left, EObject right, SubtreeHashes leftHashes, SubtreeHashes rightHashes) {
+        if(USE_IDENTIFIER_COMPARISON) {
+            Comparison comparison = IdentifierComparison.create(left, right, leftHashes, rightHashes);
+            if(comparison != null) {
+                return comparison;
+            }
+            logger.info("Model objects can't all be matched by identifier, using EMF Compare");
+        }
+        
+        return createEMFComparison(left, right, null);
+    }
+    
+    /**
+     * Create a three-way Comparison for left, right and origin with EMF Compare.
+     * If all the SubtreeHashes are given, subtrees that are the same in the three models are left out of the comparison
+     * (see PrunedComparisonScope).
+     * @param left Left root of this comparison.
+     * @param right Right root of this comparison.
+     * @param origin Common ancestor of <code>left</code> and <code>right</code>.
+     * @param leftHashes The SubtreeHashes of left or null
+     * @param rightHashes The SubtreeHashes of right or null
+     * @param originHashes The SubtreeHashes of origin or null
+     */
+    static Comparison createComparison(EObject left, EObject right, EObject origin, SubtreeHashes leftHashes, SubtreeHashes rightHashes, SubtreeHashes originHashes) {
+        if(leftHashes == null || rightHashes == null || originHashes == null) {
+            return createEMFComparison(left, right, origin);
+        }
         
-        // Build the Comparison
-        return EMFCompare.builder().setMatchEngineFactoryRegistry(matchEngineFactoryRegistry).build().compare(scope);
+        PrunedComparisonScope scope = new PrunedComparisonScope(left, right, origin, leftHashes, rightHashes, originHashes);
+        logger.fine("Subtrees left out of the comparison: " + scope.getPrunedCount());
+        return createEMFComparison(scope);
+    }
+    
+    /**
+     * Create a Comparison for left, right and options base origin with EMF Compare using DefaultComparisonScope and our MatchEngineFactoryRegistry
+     * @param left Left root of this comparison.
+     * @param right Right root of this comparison.
+     * @param origin Common ancestor of <code>left</code> and <code>right</code>.
+     */
+    static Comparison createEMFComparison(Notifier left, Notifier right, Notifier origin) {
+        // Default ComparisonScope
+        return createEMFComparison(new DefaultComparisonScope(left, right, origin));
+    }
+    
+    /**
+     * Create a Comparison for scope with EMF Compare using our MatchEngineFactoryRegistry
+     */
+    static Comparison createEMFComparison(IComparisonScope scope) {
+        // Build the Comparison with the shared EMFCompare
+        return EMF_COMPARE.compare(scope);
+    }
+    
+    /**
+     * @return a Comparison with no differences
+     */
+    static Comparison createEmptyComparison() {
+        Comparison comparison = CompareFactory.eINSTANCE.createComparison();
+        comparison.setThreeWay(false);
+        comparison.setDiagnostic(new BasicDiagnostic(Diagnostic.OK, ModelRepositoryPlugin.PLUGIN_ID, 0, "", null));
+        return comparison;
     }
     
     /**
      * @return a unique identifier for an object or null
      */
-    private static String createIdentifier(EObject eObject) {
+    static String createIdentifier(EObject eObject) {
         // Object has an identifier so use it
         if(eObject instanceof IIdentifier identifier) {
             return identifier.getId();
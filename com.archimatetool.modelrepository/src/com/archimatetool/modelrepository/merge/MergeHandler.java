@@ -12,15 +12,31 @@ import static org.eclipse.emf.compare.utils.EMFComparePredicates.hasConflict;
 
 import java.io.File;
 import java.io.IOException;
-import java.nio.file.Files;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
 import org.eclipse.emf.common.util.BasicMonitor;
 import org.eclipse.emf.compare.Comparison;
 import org.eclipse.emf.compare.ConflictKind;
@@ -29,29 +45,32 @@ import org.eclipse.emf.compare.DifferenceSource;
 import org.eclipse.emf.compare.merge.BatchMerger;
 import org.eclipse.emf.compare.merge.IMerger;
 import org.eclipse.emf.compare.merge.IMerger.RegistryImpl;
-import org.eclipse.emf.ecore.util.EcoreUtil;
 import org.eclipse.jface.dialogs.MessageDialog;
 import org.eclipse.jface.dialogs.ProgressMonitorDialog;
 import org.eclipse.jgit.api.MergeCommand.FastForwardMode;
 import org.eclipse.jgit.api.MergeResult;
 import org.eclipse.jgit.api.MergeResult.MergeStatus;
 import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.merge.MergeStrategy;
 import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
 import org.eclipse.osgi.util.NLS;
 import org.eclipse.swt.SWT;
 import org.eclipse.ui.IWorkbenchWindow;
 
 import com.archimatetool.editor.model.IArchiveManager;
-import com.archimatetool.editor.model.IEditorModelManager;
 import com.archimatetool.editor.model.ModelChecker;
-import com.archimatetool.editor.utils.FileUtils;
 import com.archimatetool.model.IArchimateModel;
 import com.archimatetool.modelrepository.IRunnable;
+import com.archimatetool.modelrepository.ModelRepositoryPlugin;
+import com.archimatetool.modelrepository.preferences.IPreferenceConstants;
 import com.archimatetool.modelrepository.repository.BranchInfo;
+import com.archimatetool.modelrepository.repository.CommitManifest;
 import com.archimatetool.modelrepository.repository.GitUtils;
 import com.archimatetool.modelrepository.repository.IArchiRepository;
 import com.archimatetool.modelrepository.repository.RepoConstants;
+import com.google.common.base.Predicate;
 
 
 /**
@@ -75,6 +94,38 @@ public class MergeHandler {
     
     private static MergeMethod MERGE_METHOD = MergeMethod.APPLY_ALL;
     
+    // Merge the models and commit the merged tree in memory rather than merging and checking out the working tree
+    private static boolean IN_MEMORY_MERGE = true;
+    
+    private static final Predicate<? super Diff> isRealConflict = hasConflict(ConflictKind.REAL);
+    
+    /**
+     * Supplies a model that is only loaded if it's needed
+     */
+    @FunctionalInterface
+    private static interface ModelSupplier {
+        IArchimateModel get() throws IOException;
+    }
+    
+    /**
+     * The ids of the objects changed in our and their branches since the common ancestor
+     */
+    private static record ManifestChanges(Set<String> ours, Set<String> theirs) {
+        
+        Set<String> all() {
+            Set<String> all = new HashSet<>(ours);
+            all.addAll(theirs);
+            return all;
+        }
+    }
+    
+    /**
+     * The models of a merge that was compared in memory but could not be committed in memory, for the merge in the working tree
+     * @param mergedModel Our model with their changes merged into it
+     * @param merged false if there are conflicts that were not merged or the merged model is not integral
+     */
+    private static record ModelMerge(IArchimateModel mergedModel, boolean merged) {}
+    
     public enum MergeHandlerResult {
         MERGED_OK,
         ALREADY_UP_TO_DATE,
@@ -107,6 +158,16 @@ public class MergeHandler {
                 utils.resetToRef(branchToMerge.getFullName());
                 return MergeHandlerResult.MERGED_OK;
             }
+            
+            // Try to merge in memory if there are no changes in the working tree that a merge commit would overwrite
+            AtomicReference<ModelMerge> modelMerge = new AtomicReference<>();
+            if(IN_MEMORY_MERGE && !utils.hasChangesToCommitFast()) {
+                MergeHandlerResult result = handleInMemoryMerge(utils, branchToMerge, modelMerge);
+                if(result != null) {
+                    return result;
+                }
+                logger.info("Could not merge in memory, merging in the working tree");
+            }
 
             // Do the merge
             MergeResult mergeResult = utils.merge()
@@ -126,6 +187,12 @@ public class MergeHandler {
                 return MergeHandlerResult.ALREADY_UP_TO_DATE;
             }
             
+            // If the models were already merged in memory use the merged model rather than loading and comparing them again
+            if(modelMerge.get() != null) {
+                ProgressMonitorDialog progressDialog = new ProgressMonitorDialog(workbenchWindow.getShell());
+                return commitWorkingTreeMerge(progressDialog, utils, branchToMerge, modelMerge.get().mergedModel(), modelMerge.get().merged());
+            }
+            
             // 3 way merge
             return handle3WayMerge(utils, branchToMerge);
         }
@@ -145,51 +212,313 @@ public class MergeHandler {
     }
     
     /**
-     * We load 3 models - ours, theirs and the common ancestor.
-     * Then we will show any conflicts and resolve them before merging and committing
+     * Merge without a textual merge or checkout of the working tree.
+     * HEAD, the branch to merge and their common ancestor are resolved as commits and their models are merged in memory.
+     * The merge commit's tree is written to the object database and the working tree is only updated after HEAD is moved to the merge commit.
+     * @param modelMerge If the models were merged but the merge has to be done in the working tree this is set to the merged model
+     * @return The result, or null if the merge has to be done in the working tree because there are conflicts,
+     *         the merged model is not integral or another file was changed in both branches
      */
-    private MergeHandlerResult handle3WayMerge(GitUtils utils, BranchInfo branchToMerge) throws IOException, GitAPIException {
-        logger.info("Handling 3Way merge...");
+    private MergeHandlerResult handleInMemoryMerge(GitUtils utils, BranchInfo branchToMerge, AtomicReference<ModelMerge> modelMerge) throws IOException, GitAPIException {
+        logger.info("Handling 3Way merge in memory...");
+        
+        RevCommit ourCommit = parseCommit(utils, RepoConstants.HEAD);
+        RevCommit theirCommit = parseCommit(utils, branchToMerge.getFullName());
+        RevCommit baseCommit = utils.getBaseCommit(ourCommit.getName(), theirCommit.getName());
+        if(baseCommit == null) {
+            return null;
+        }
         
         ProgressMonitorDialog progressDialog = new ProgressMonitorDialog(workbenchWindow.getShell());
         
-        AtomicReference<IArchimateModel> ourModelRef = new AtomicReference<>();
-        AtomicReference<IArchimateModel> theirModelRef = new AtomicReference<>();
-        AtomicReference<IArchimateModel> baseModelRef = new AtomicReference<>();
-
-        // Load the three models...
+        resetPeakHeapUsage();
+        
+        ModelSupplier ourModelSupplier = () -> utils.loadModel(ourCommit);
+        ModelSupplier theirModelSupplier = () -> utils.loadModel(theirCommit);
+        
+        IArchimateModel ourModel = null;
+        
+        // The models if they were loaded and not changed when checking the commit manifests
+        IArchimateModel[] unchangedModels = null;
+        
+        // If the commit manifests show that no object was changed in both branches merge the objects they changed without comparing the models
+        ManifestChanges changes = getNonConflictingChanges(utils, ourCommit, theirCommit, baseCommit);
+        if(changes != null) {
+            IArchimateModel[] models = loadModels(progressDialog, ourModelSupplier, theirModelSupplier, () -> utils.loadModel(baseCommit));
+            if(models == null) {
+                logger.info("User cancelled loading models.");
+                return MergeHandlerResult.CANCELLED;
+            }
+            
+            logHeapUsage("Loaded models");
+            
+            // The manifests might not record all changes if a commit was made by another client
+            if(!isManifestChangesVerified(progressDialog, utils, models, ourCommit, theirCommit, baseCommit, changes)) {
+                logger.info("Models have changes that are not in the commit manifests, comparing models");
+                unchangedModels = models;
+            }
+            else if(mergeChangedObjects(progressDialog, utils, models[0], models[1], theirCommit, changes)) {
+                ourModel = models[0];
+            }
+            else {
+                logger.info("Could not merge changed objects by id, comparing models");
+            }
+            
+            // Their model is not needed now so release it before the models are compared or the merged model is committed
+            models = null;
+            logHeapUsage("Merged changed objects");
+        }
+        
+        // Else compare and merge the models. If there are conflicts or the model is not integral merge in the working tree.
+        if(ourModel == null) {
+            IArchimateModel[] models = unchangedModels != null ? unchangedModels
+                                       : loadModels(progressDialog, ourModelSupplier, theirModelSupplier, () -> utils.loadModel(baseCommit));
+            if(models == null) {
+                logger.info("User cancelled loading models.");
+                return MergeHandlerResult.CANCELLED;
+            }
+            
+            unchangedModels = null;
+            logHeapUsage("Loaded models");
+            
+            ourModel = models[0];
+            Set<String> changedIds = new HashSet<>();
+            
+            if(!mergeModels(progressDialog, utils, ourModel, models[1], models[2], ourCommit, theirCommit, changedIds)) {
+                modelMerge.set(new ModelMerge(ourModel, false));
+                return null;
+            }
+            
+            // Their model and the base model are not needed now so release them before the merged model is committed
+            models = null;
+            logHeapUsage("Merged models");
+            
+            if(!isModelIntegral(ourModel, changedIds)) {
+                logger.warning("Model was not integral");
+                modelMerge.set(new ModelMerge(ourModel, false));
+                return null;
+            }
+        }
+        
+        // Commit the merged model
+        String message = getMergeMessage(utils, "Merge{0}branch ''{1}'' into ''{2}''", branchToMerge);
+        AtomicReference<RevCommit> mergeCommit = new AtomicReference<>();
+        IArchimateModel mergedModel = ourModel;
+        
         try {
             IRunnable.run(progressDialog, true, false, monitor -> {
-                monitor.beginTask("Extracting models...", IProgressMonitor.UNKNOWN);
-                
-                ourModelRef.set(loadModel(utils, RepoConstants.HEAD));
-                if(ourModelRef.get() == null) {
-                    throw new IOException("Our model was null.");
-                }
+                monitor.beginTask("Committing...", IProgressMonitor.UNKNOWN);
+                logger.info("Committing merge " + message);
+                mergeCommit.set(utils.commitMergedModel(mergedModel, ourCommit, theirCommit, baseCommit, message));
+            });
+        }
+        catch(Exception ex) {
+            throw new IOException(ex);
+        }
+        
+        // Another file was changed in both branches
+        if(mergeCommit.get() == null) {
+            modelMerge.set(new ModelMerge(ourModel, true));
+            return null;
+        }
+        
+        logHeapUsage("Committed merge");
+        logger.info("Merge succesful!");
+        
+        return MergeHandlerResult.MERGED_OK;
+    }
+    
+    /**
+     * Get the ids of the objects changed in our and their commits since the base commit from the commit manifests
+     * @return The ids of the objects that we and they changed, or null if an object was changed by both or the manifests are not available
+     */
+    private ManifestChanges getNonConflictingChanges(GitUtils utils, RevCommit ourCommit, RevCommit theirCommit, RevCommit baseCommit) throws IOException {
+        Set<String> ourChanges = CommitManifest.getChangedObjectIds(utils.getRepository(), baseCommit, ourCommit);
+        Set<String> theirChanges = ourChanges != null ? CommitManifest.getChangedObjectIds(utils.getRepository(), baseCommit, theirCommit) : null;
+        
+        if(ourChanges == null || theirChanges == null) {
+            logger.info("Changed objects are not available from the commit manifests, comparing models");
+            return null;
+        }
+        
+        Set<String> conflicting = new HashSet<>(ourChanges);
+        conflicting.retainAll(theirChanges);
+        if(!conflicting.isEmpty()) {
+            logger.info(conflicting.size() + " objects were changed in both branches, comparing models");
+            return null;
+        }
+        
+        logger.info("Objects changed: ours " + ourChanges.size() + ", theirs " + theirChanges.size());
+        
+        return new ManifestChanges(ourChanges, theirChanges);
+    }
+    
+    /**
+     * Check that the objects that the commit manifests don't record as changed since the base commit are the same in our model
+     * and their model as in the base model by comparing their subtree hashes. Subtrees with the same hash are not walked.
+     * @param models Our model, their model and the base model as loaded from their commits
+     * @return true if the only changes in our and their models are to the objects in changes
+     */
+    private boolean isManifestChangesVerified(ProgressMonitorDialog progressDialog, GitUtils utils, IArchimateModel[] models,
+            RevCommit ourCommit, RevCommit theirCommit, RevCommit baseCommit, ManifestChanges changes) throws IOException {
+        ObjectId ourBlobId = utils.getModelBlobId(ourCommit);
+        ObjectId theirBlobId = utils.getModelBlobId(theirCommit);
+        ObjectId baseBlobId = utils.getModelBlobId(baseCommit);
+        if(ourBlobId == null || theirBlobId == null || baseBlobId == null || models[2] == null) {
+            return false;
+        }
+        
+        AtomicBoolean verified = new AtomicBoolean();
+        
+        try {
+            IRunnable.run(progressDialog, true, false, monitor -> {
+                monitor.beginTask("Checking changes...", IProgressMonitor.UNKNOWN);
                 
-                theirModelRef.set(loadModel(utils,branchToMerge.getFullName()));
-                if(theirModelRef.get() == null) {
-                    throw new IOException("Their model was null.");
-                }
+                long start = System.currentTimeMillis();
+                SubtreeHashes baseHashes = SubtreeHashes.get(baseBlobId, models[2]);
+                verified.set(SubtreeHashes.isChangedOnly(models[0], SubtreeHashes.get(ourBlobId, models[0]), models[2], baseHashes, changes.ours())
+                          && SubtreeHashes.isChangedOnly(models[1], SubtreeHashes.get(theirBlobId, models[1]), models[2], baseHashes, changes.theirs()));
+                logPhase("Checked changes against the commit manifests", start, -1);
+            });
+        }
+        catch(Exception ex) {
+            throw new IOException(ex);
+        }
+        
+        return verified.get();
+    }
+    
+    /**
+     * Merge the objects that they changed into our model by id
+     * @return true if merged and the model is integral
+     */
+    private boolean mergeChangedObjects(ProgressMonitorDialog progressDialog, GitUtils utils, IArchimateModel ourModel, IArchimateModel theirModel,
+            RevCommit theirCommit, ManifestChanges changes) throws IOException {
+        AtomicBoolean merged = new AtomicBoolean();
+        
+        try {
+            IRunnable.run(progressDialog, true, false, monitor -> {
+                monitor.beginTask("Merging...", IProgressMonitor.UNKNOWN);
                 
-                baseModelRef.set(loadBaseModel(utils, branchToMerge.getFullName()));
-                if(baseModelRef.get() == null) {
-                    throw new IOException("Base model was null.");
+                long start = System.currentTimeMillis();
+                if(IdentifierMerge.merge(ourModel, theirModel, changes.theirs())) {
+                    fixMissingImages(ourModel, utils, theirCommit, changes.all());
+                    start = logPhase("Merged changed objects by id", start, changes.theirs().size());
+                    merged.set(isModelIntegral(ourModel, changes.all()));
                 }
             });
         }
         catch(Exception ex) {
             throw new IOException(ex);
         }
-
-        IArchimateModel ourModel = ourModelRef.get();
-        IArchimateModel theirModel = theirModelRef.get();
-        IArchimateModel baseModel = baseModelRef.get();
         
-        // Make copies of our models so we can retrieve objects from the originals before they are merged
-        IArchimateModel ourModelCopy = copyModel(ourModel);
-        IArchimateModel theirModelCopy = copyModel(theirModel);
-
+        return merged.get();
+    }
+    
+    /**
+     * @return The commit that revStr resolves to
+     */
+    private RevCommit parseCommit(GitUtils utils, String revStr) throws IOException {
+        ObjectId commitId = utils.getRepository().resolve(revStr);
+        if(commitId == null) {
+            throw new IOException("Could not resolve " + revStr);
+        }
+        
+        try(RevWalk revWalk = new RevWalk(utils.getRepository())) {
+            return revWalk.parseCommit(commitId);
+        }
+    }
+    
+    /**
+     * We load 3 models - ours, theirs and the common ancestor.
+     * Then we will show any conflicts and resolve them before merging and committing
+     */
+    private MergeHandlerResult handle3WayMerge(GitUtils utils, BranchInfo branchToMerge) throws IOException, GitAPIException {
+        logger.info("Handling 3Way merge...");
+        
+        ProgressMonitorDialog progressDialog = new ProgressMonitorDialog(workbenchWindow.getShell());
+        
+        resetPeakHeapUsage();
+        
+        // Our and their commits for any images that are missing after the merge
+        RevCommit ourCommit = parseCommit(utils, RepoConstants.HEAD);
+        RevCommit theirCommit = parseCommit(utils, branchToMerge.getFullName());
+        
+        // Load the three models...
+        IArchimateModel[] models = loadModels(progressDialog,
+                                              () -> loadModel(utils, RepoConstants.HEAD),
+                                              () -> loadModel(utils, branchToMerge.getFullName()),
+                                              () -> loadBaseModel(utils, branchToMerge.getFullName()));
+        if(models == null) {
+            logger.info("User cancelled loading models. Resetting to HEAD.");
+            utils.resetToRef(RepoConstants.HEAD);
+            return MergeHandlerResult.CANCELLED;
+        }
+        
+        logHeapUsage("Loaded models");
+        
+        IArchimateModel ourModel = models[0];
+        
+        // Merge the models
+        Set<String> changedIds = new HashSet<>();
+        boolean merged = mergeModels(progressDialog, utils, ourModel, models[1], models[2], ourCommit, theirCommit, changedIds);
+        
+        // Their model and the base model are not needed now so release them before the merged model is saved
+        models = null;
+        logHeapUsage("Merged models");
+        
+        if(merged && !isModelIntegral(ourModel, changedIds)) {
+            logger.warning("Model was not integral");
+            merged = false;
+        }
+        
+        return commitWorkingTreeMerge(progressDialog, utils, branchToMerge, ourModel, merged);
+    }
+    
+    /**
+     * Save the merged model to the working tree and commit the merge
+     * @param merged false if there are conflicts that were not merged or the merged model is not integral
+     */
+    private MergeHandlerResult commitWorkingTreeMerge(ProgressMonitorDialog progressDialog, GitUtils utils, BranchInfo branchToMerge,
+            IArchimateModel ourModel, boolean merged) throws IOException, GitAPIException {
+        /*
+         * If there are conflicts or the result is a non-integral model then ask the user to use ours or theirs
+         * TODO: Show and resolve conflicts
+         */
+        if(!merged) {
+            return handleConflictingMerge(progressDialog, utils, branchToMerge);
+        }
+        
+        // If OK, save the model
+        ourModel.setFile(new File(utils.getRepository().getWorkTree(), RepoConstants.MODEL_FILENAME));
+        saveModel(ourModel);
+        
+        // Commit the merge
+        commitChanges(progressDialog, utils, "Merge{0}branch ''{1}'' into ''{2}''", branchToMerge);
+        
+        logHeapUsage("Committed merge");
+        logger.info("Merge succesful!");
+        
+        // Return
+        return MergeHandlerResult.MERGED_OK;
+    }
+    
+    /**
+     * Merge their model into our model
+     * @param ourCommit Our commit, from which images missing from their model are read
+     * @param theirCommit Their commit, from which images missing from our model are read
+     * @param changedIds The ids of the objects that are changed by the merge are added to this
+     * @return false if there are conflicts that were not merged
+     */
+    private boolean mergeModels(ProgressMonitorDialog progressDialog, GitUtils utils, IArchimateModel ourModel, IArchimateModel theirModel, IArchimateModel baseModel,
+            RevCommit ourCommit, RevCommit theirCommit, Set<String> changedIds) throws IOException {
+        // The blob ids of the models' files so that subtrees that are the same in the three models are not compared.
+        // The models are loaded from these commits and not changed before they are compared.
+        RevCommit baseCommit = utils.getBaseCommit(ourCommit.getName(), theirCommit.getName());
+        ObjectId ourBlobId = utils.getModelBlobId(ourCommit);
+        ObjectId theirBlobId = utils.getModelBlobId(theirCommit);
+        ObjectId baseBlobId = baseCommit != null ? utils.getModelBlobId(baseCommit) : null;
+        
         // Create a Merger Registry
         IMerger.Registry mergerRegistry = RegistryImpl.createStandaloneInstance();
         
@@ -197,21 +526,48 @@ public class MergeHandler {
             try {
                 IRunnable.run(progressDialog, true, false, monitor -> {
                     monitor.beginTask("Merging...", IProgressMonitor.UNKNOWN);
-                    List<Diff> differences = MergeFactory.createComparison(ourModel, theirModel, baseModel).getDifferences();
+                    
+                    long start = System.currentTimeMillis();
+                    List<Diff> differences = createComparison(ourModel, theirModel, baseModel, ourBlobId, theirBlobId, baseBlobId).getDifferences();
+                    start = logPhase("Compared models", start, differences.size());
+                    changedIds.addAll(MergeIntegrityChecker.getChangedIds(differences));
+                    
+                    // Partition the differences in one pass so that the mergers don't each filter all of them
+                    List<Diff> leftNonConflicting = new ArrayList<>();
+                    List<Diff> rightNonConflicting = new ArrayList<>();
+                    List<Diff> leftConflicting = new ArrayList<>();
+                    
+                    for(Diff diff : differences) {
+                        boolean isConflict = isRealConflict.apply(diff);
+                        if(diff.getSource() == DifferenceSource.LEFT) {
+                            (isConflict ? leftConflicting : leftNonConflicting).add(diff);
+                        }
+                        else if(!isConflict) {
+                            rightNonConflicting.add(diff);
+                        }
+                    }
+                    
+                    start = logPhase("Partitioned differences", start, differences.size());
+                    
+                    BatchMerger batchMerger = new BatchMerger(mergerRegistry);
                     
                     // Merge non conflicting changes coming from LEFT
-                    new BatchMerger(mergerRegistry, and(fromSide(DifferenceSource.LEFT), not(hasConflict(ConflictKind.REAL)))).copyAllLeftToRight(differences, new BasicMonitor());
+                    batchMerger.copyAllLeftToRight(leftNonConflicting, new BasicMonitor());
+                    start = logPhase("Merged non conflicting changes from LEFT", start, leftNonConflicting.size());
                     
                     // Merge non conflicting changes coming from RIGHT
-                    new BatchMerger(mergerRegistry, and(fromSide(DifferenceSource.RIGHT), not(hasConflict(ConflictKind.REAL)))).copyAllRightToLeft(differences, new BasicMonitor());
+                    batchMerger.copyAllRightToLeft(rightNonConflicting, new BasicMonitor());
+                    start = logPhase("Merged non conflicting changes from RIGHT", start, rightNonConflicting.size());
                     
                     // Merge conflicts
                     //new BatchMerger(mergerRegistry, and(fromSide(DifferenceSource.RIGHT), hasConflict(ConflictKind.REAL))).copyAllRightToLeft(differences, new BasicMonitor());
-                    new BatchMerger(mergerRegistry, and(fromSide(DifferenceSource.LEFT), hasConflict(ConflictKind.REAL))).copyAllLeftToRight(differences, new BasicMonitor());
+                    batchMerger.copyAllLeftToRight(leftConflicting, new BasicMonitor());
+                    start = logPhase("Merged conflicting changes from LEFT", start, leftConflicting.size());
                     
                     // Fix any missing images
-                    fixMissingImages(ourModel, theirModelCopy);
-                    fixMissingImages(theirModel, ourModelCopy);
+                    fixMissingImages(ourModel, utils, theirCommit, changedIds);
+                    fixMissingImages(theirModel, utils, ourCommit, changedIds);
+                    logPhase("Fixed missing images", start, -1);
                 });
             }
             catch(Exception ex) {
@@ -227,15 +583,16 @@ public class MergeHandler {
                     monitor.beginTask("Merging...", IProgressMonitor.UNKNOWN);
                     
                     // Notice that left and right are swapped here
-                    comparison.set(MergeFactory.createComparison(theirModel, ourModel, baseModel));
+                    comparison.set(createComparison(theirModel, ourModel, baseModel, theirBlobId, ourBlobId, baseBlobId));
                     List<Diff> differences = comparison.get().getDifferences();
+                    changedIds.addAll(MergeIntegrityChecker.getChangedIds(differences));
                     
                     // Apply non-conflicting incoming changes (theirs -> ours)
                     new BatchMerger(mergerRegistry, and(fromSide(DifferenceSource.LEFT), not(hasConflict(ConflictKind.REAL)))).copyAllLeftToRight(differences, new BasicMonitor());
 
                     // Fix any missing images
-                    fixMissingImages(ourModel, theirModelCopy);
-                    fixMissingImages(theirModel, ourModelCopy);
+                    fixMissingImages(ourModel, utils, theirCommit, changedIds);
+                    fixMissingImages(theirModel, utils, ourCommit, changedIds);
                 });
             }
             catch(Exception ex) {
@@ -245,31 +602,75 @@ public class MergeHandler {
             // Do not auto-apply real conflicts. Let the conflict handler run if any conflicts exist.
             if(!comparison.get().getConflicts().isEmpty()) {
                 logger.warning("Found " + comparison.get().getConflicts().size() + " conflicts");
-                return handleConflictingMerge(progressDialog, utils, branchToMerge);
+                return false;
             }
         }
         
-        /*
-         * If the result is a non-integral model then ask the user to use ours or theirs
-         * TODO: Show and resolve conflicts
-         */
-        if(!isModelIntegral(ourModel)) {
-            // Reset and clear for now
-            logger.warning("Model was not integral");
-            return handleConflictingMerge(progressDialog, utils, branchToMerge);
+        return true;
+    }
+    
+    /**
+     * Compare left and right with base as their common ancestor.
+     * If the blob ids of the files the three models were loaded from are known, subtrees with the same hashes in the three models are not compared.
+     * @param leftBlobId The blob id of left's file or null
+     * @param rightBlobId The blob id of right's file or null
+     * @param baseBlobId The blob id of base's file or null
+     */
+    private Comparison createComparison(IArchimateModel left, IArchimateModel right, IArchimateModel base,
+            ObjectId leftBlobId, ObjectId rightBlobId, ObjectId baseBlobId) {
+        if(base == null || leftBlobId == null || rightBlobId == null || baseBlobId == null) {
+            return MergeFactory.createComparison(left, right, base);
         }
         
-        // If OK, save the model
-        ourModel.setFile(new File(utils.getRepository().getWorkTree(), RepoConstants.MODEL_FILENAME));
-        saveModel(ourModel);
-        
-        // Commit the merge
-        commitChanges(progressDialog, utils, "Merge{0}branch ''{1}'' into ''{2}''", branchToMerge);
+        long start = System.currentTimeMillis();
+        SubtreeHashes leftHashes = SubtreeHashes.get(leftBlobId, left);
+        SubtreeHashes rightHashes = SubtreeHashes.get(rightBlobId, right);
+        SubtreeHashes baseHashes = SubtreeHashes.get(baseBlobId, base);
+        logPhase("Hashed models", start, -1);
         
-        logger.info("Merge succesful!");
+        return MergeFactory.createComparison(left, right, base, leftHashes, rightHashes, baseHashes);
+    }
+    
+    /**
+     * Log the time taken by a phase of a merge
+     * @param phase The name of the phase
+     * @param start The time the phase started
+     * @param count The number of differences in the phase, or -1
+     * @return The time now, which is the start of the next phase
+     */
+    private long logPhase(String phase, long start, int count) {
+        long now = System.currentTimeMillis();
+        logger.info(phase + (count != -1 ? " (" + count + " differences)" : "") + " in " + (now - start) + " ms");
+        return now;
+    }
+    
+    /**
+     * Reset the peak usage of the heap memory pools so that the peak heap usage of a merge can be logged
+     */
+    private void resetPeakHeapUsage() {
+        for(MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if(pool.getType() == MemoryType.HEAP && pool.isValid()) {
+                pool.resetPeakUsage();
+            }
+        }
+    }
+    
+    /**
+     * Log the heap used now and the peak heap used since resetPeakHeapUsage() was called.
+     * The peak is the sum of the peaks of the heap memory pools. These might not have been reached at the same time so this is an upper bound.
+     * @param phase The name of the phase of the merge
+     */
+    private void logHeapUsage(String phase) {
+        long peak = 0;
+        for(MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            MemoryUsage usage = pool.getType() == MemoryType.HEAP ? pool.getPeakUsage() : null;
+            if(usage != null) {
+                peak += usage.getUsed();
+            }
+        }
         
-        // Return
-        return MergeHandlerResult.MERGED_OK;
+        long used = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+        logger.info(phase + " - heap used: " + (used / (1024 * 1024)) + " MB, peak: " + (peak / (1024 * 1024)) + " MB");
     }
     
     /**
@@ -286,9 +687,7 @@ public class MergeHandler {
      * Commit any changes from a merge
      */
     private void commitChanges(ProgressMonitorDialog progressDialog, GitUtils utils, String message, BranchInfo branchToMerge) throws IOException {
-        String fullMessage = NLS.bind(message,
-                new Object[] { branchToMerge.isRemote() ? " remote " : " ",
-                        branchToMerge.getShortName(), utils.getCurrentLocalBranchName().orElse("null")} );
+        String fullMessage = getMergeMessage(utils, message, branchToMerge);
         
         try {
             IRunnable.run(progressDialog, true, false, monitor -> {
@@ -302,35 +701,57 @@ public class MergeHandler {
         }
     }
     
+    /**
+     * @return The commit message for a merge
+     */
+    private String getMergeMessage(GitUtils utils, String message, BranchInfo branchToMerge) throws IOException {
+        return NLS.bind(message,
+                new Object[] { branchToMerge.isRemote() ? " remote " : " ",
+                        branchToMerge.getShortName(), utils.getCurrentLocalBranchName().orElse("null")} );
+    }
+    
     /**
      * Check the model integrity after a merge
-     * @return false if an image is missing, or the ModelChecker fails
+     * @param changedIds The ids of the objects changed by the merge. Only these are checked unless the full integrity check preference is set.
+     * @return false if an image is missing, or the model is not integral
      */
-    private boolean isModelIntegral(IArchimateModel model) {
-        // Check that all referenced images are present
-        if(!getMissingImagePaths(model).isEmpty()) {
-            return false;
+    private boolean isModelIntegral(IArchimateModel model, Set<String> changedIds) {
+        long start = System.currentTimeMillis();
+        boolean integral;
+        
+        if(isFullIntegrityCheck()) {
+            // Check that all referenced images are present and pass it to the ModelChecker
+            IArchiveManager archiveManager = (IArchiveManager)model.getAdapter(IArchiveManager.class);
+            integral = getMissingImagePaths(model, archiveManager.getImagePaths()).isEmpty() && new ModelChecker(model).checkAll();
         }
+        else {
+            integral = new MergeIntegrityChecker(model).check(changedIds);
+        }
+        
+        logPhase("Checked model integrity", start, -1);
         
-        // Now pass it to the ModelChecker
-        return new ModelChecker(model).checkAll();
+        return integral;
     }
     
     /**
-     * If our model contains missing images, get them from the other model
+     * If our model contains missing images, read them from the blobs in the other commit
      * They might have deleted an image but we are still using it, or we might have deleted it but they were using it
+     * The images are read directly from the commit so that the other commit's model doesn't have to be loaded.
+     * Only the images referenced by the changed objects are checked unless the full integrity check preference is set.
      */
-    private void fixMissingImages(IArchimateModel model, IArchimateModel otherModel) {
-        Set<String> missingPaths = getMissingImagePaths(model);
+    private void fixMissingImages(IArchimateModel model, GitUtils utils, RevCommit otherCommit, Collection<String> changedIds) throws IOException {
+        IArchiveManager archiveManager = (IArchiveManager)model.getAdapter(IArchiveManager.class);
+        
+        Set<String> imagePaths = isFullIntegrityCheck() ? archiveManager.getImagePaths() : MergeIntegrityChecker.getImagePaths(model, changedIds);
+        Set<String> missingPaths = getMissingImagePaths(model, imagePaths);
         if(missingPaths.isEmpty()) {
             return;
         }
         
-        IArchiveManager archiveManager = (IArchiveManager)model.getAdapter(IArchiveManager.class);
-        IArchiveManager otherArchiveManager = (IArchiveManager)otherModel.getAdapter(IArchiveManager.class);
+        Map<String, byte[]> images = utils.getImages(otherCommit, missingPaths);
         
         for(String imagePath : missingPaths) {
-            byte[] bytes = otherArchiveManager.getBytesFromEntry(imagePath);
+            byte[] bytes = images.get(imagePath);
             if(bytes != null) {
                 try {
                     logger.info("Restoring missing image: " + imagePath);
@@ -338,7 +759,6 @@ public class MergeHandler {
                 }
                 catch(IOException ex) {
                     // Don't fail beacause of an image that might be in a format unsupported by this version of Archi
-                    ex.printStackTrace();
                     logger.log(Level.SEVERE, "Could not load image: " + imagePath, ex); //$NON-NLS-1$
                 }
             }
@@ -349,14 +769,14 @@ public class MergeHandler {
     }
     
     /**
-     * Check for any missing image paths.
+     * Check for any missing image paths in imagePaths.
      * They might have deleted an image but we are still using it, or we might have deleted it but they were using it
      */
-    private Set<String> getMissingImagePaths(IArchimateModel model) {
+    private Set<String> getMissingImagePaths(IArchimateModel model, Set<String> imagePaths) {
         Set<String> missingPaths = new HashSet<>();
         
         IArchiveManager archiveManager = (IArchiveManager)model.getAdapter(IArchiveManager.class);
-        for(String imagePath : archiveManager.getImagePaths()) {
+        for(String imagePath : imagePaths) {
             if(archiveManager.getBytesFromEntry(imagePath) == null) {
                 missingPaths.add(imagePath);
             }
@@ -365,6 +785,13 @@ public class MergeHandler {
         return missingPaths;
     }
     
+    /**
+     * @return true if the whole merged model should be checked rather than only the objects changed by the merge
+     */
+    private boolean isFullIntegrityCheck() {
+        return ModelRepositoryPlugin.getInstance().getPreferenceStore().getBoolean(IPreferenceConstants.PREFS_MERGE_FULL_INTEGRITY_CHECK);
+    }
+    
     /**
      * Load the model at the base commit (common ancestor between HEAD and the branch to merge)
      */
@@ -378,27 +805,86 @@ public class MergeHandler {
      * revStr could be "HEAD" or "refs/remotes/origin/main", or a SHA-1 - same as for Repository#resolve()
      */
     private IArchimateModel loadModel(GitUtils utils, String revStr) throws IOException {
-        File tempFolder = Files.createTempDirectory("archi-").toFile();
+        return utils.loadModel(revStr);
+    }
+    
+    /**
+     * Load our model, their model and, if given, the base model in parallel, each on its own thread.
+     * If loading a model fails the other loads are cancelled and the exception is thrown.
+     * @return The models in the same order as the suppliers, or null if the user cancelled
+     */
+    private IArchimateModel[] loadModels(ProgressMonitorDialog progressDialog, ModelSupplier... suppliers) throws IOException {
+        IArchimateModel[] models = new IArchimateModel[suppliers.length];
         
         try {
-            utils.extractCommit(revStr, tempFolder, false);
-            
-            // Load it
-            File modelFile = new File(tempFolder, RepoConstants.MODEL_FILENAME);
-            return modelFile.exists() ? IEditorModelManager.INSTANCE.load(modelFile) : null;
+            IRunnable.run(progressDialog, true, true, monitor -> {
+                monitor.beginTask("Extracting models...", IProgressMonitor.UNKNOWN);
+                
+                ExecutorService executor = Executors.newFixedThreadPool(models.length, runnable -> {
+                    Thread thread = new Thread(runnable, "Merge Model Loader");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+                
+                try {
+                    CompletionService<IArchimateModel> completionService = new ExecutorCompletionService<>(executor);
+                    Map<Future<IArchimateModel>, Integer> indexes = new HashMap<>();
+                    for(int i = 0; i < suppliers.length; i++) {
+                        indexes.put(completionService.submit(suppliers[i]::get), i);
+                    }
+                    
+                    // Take the results as they complete so that a failure is thrown without waiting for the other loads
+                    for(int completed = 0; completed < models.length;) {
+                        if(monitor.isCanceled()) {
+                            throw new OperationCanceledException();
+                        }
+                        
+                        Future<IArchimateModel> future = completionService.poll(100, TimeUnit.MILLISECONDS);
+                        if(future != null) {
+                            models[indexes.get(future)] = getResult(future);
+                            completed++;
+                        }
+                    }
+                }
+                finally {
+                    // Interrupt any loads still running
+                    executor.shutdownNow();
+                }
+            });
+        }
+        catch(OperationCanceledException ex) {
+            return null;
         }
-        finally {
-            FileUtils.deleteFolder(tempFolder);
+        catch(Exception ex) {
+            throw new IOException(ex);
+        }
+        
+        if(models[0] == null) {
+            throw new IOException("Our model was null.");
         }
+        if(models[1] == null) {
+            throw new IOException("Their model was null.");
+        }
+        if(models.length > 2 && models[2] == null) {
+            throw new IOException("Base model was null.");
+        }
+        
+        return models;
     }
     
     /**
-     * Copy a model and add a cloned ArchiveManager
+     * @return The result of a completed Future, throwing the Exception thrown by its task
      */
-    private IArchimateModel copyModel(IArchimateModel model) {
-        IArchimateModel copy = EcoreUtil.copy(model);
-        copy.setAdapter(IArchiveManager.class, ((IArchiveManager)model.getAdapter(IArchiveManager.class)).clone(copy));
-        return copy;
+    private IArchimateModel getResult(Future<IArchimateModel> future) throws Exception {
+        try {
+            return future.get();
+        }
+        catch(ExecutionException ex) {
+            if(ex.getCause() instanceof Exception cause) {
+                throw cause;
+            }
+            throw ex;
+        }
     }
     
     /**
@@ -0,0 +1,256 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+package com.archimatetool.modelrepository.merge;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+
+import org.eclipse.emf.common.util.TreeIterator;
+import org.eclipse.emf.compare.Diff;
+import org.eclipse.emf.compare.Match;
+import org.eclipse.emf.compare.ReferenceChange;
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.EReference;
+import org.eclipse.emf.ecore.util.EcoreUtil;
+
+import com.archimatetool.editor.model.IArchiveManager;
+import com.archimatetool.model.IArchimateModel;
+import com.archimatetool.model.IArchimateRelationship;
+import com.archimatetool.model.IDiagramModelArchimateComponent;
+import com.archimatetool.model.IDiagramModelConnection;
+import com.archimatetool.model.IDiagramModelImageProvider;
+import com.archimatetool.model.IFolder;
+import com.archimatetool.model.IIdentifier;
+import com.archimatetool.modelrepository.repository.CommitManifest;
+
+/**
+ * Checks the integrity of a merged model by checking only the objects that were changed by the merge instead of the whole model.
+ *
+ * If our model and their model were both integral then an object that was not changed on either side is the same as in the base model,
+ * and if an object that it references was deleted on one side then that side must also have changed it. So a broken reference
+ * or missing image in the merged model can only be in or from an object that was changed on one of the sides.
+ *
+ * Changed objects are identified by the ids of the objects that are recorded in commit manifests - the model, folders, concepts and diagrams.
+ * A diagram's contents are checked with the diagram.
+ *
+ * Checked are:
+ * - the ids of all objects are set and unique
+ * - relationships and connections have a source and target
+ * - diagram components reference a concept
+ * - referenced objects are in the model
+ * - referenced images are in the model's archive manager
+ */
+@SuppressWarnings("nls")
+class MergeIntegrityChecker {
+
+    private static Logger logger = Logger.getLogger(MergeIntegrityChecker.class.getName());
+    
+    private IArchimateModel model;
+    private IArchiveManager archiveManager;
+    
+    // Objects in the model keyed by id
+    private Map<String, EObject> objects = new HashMap<>();
+    
+    /**
+     * @return The ids of the objects that are changed by the differences of a Comparison, whether on the left, right or origin side
+     */
+    static Set<String> getChangedIds(Collection<Diff> differences) {
+        Set<String> ids = new LinkedHashSet<>();
+        
+        for(Diff diff : differences) {
+            Match match = diff.getMatch();
+            addChangedId(match.getLeft(), ids);
+            addChangedId(match.getRight(), ids);
+            addChangedId(match.getOrigin(), ids);
+            
+            if(diff instanceof ReferenceChange referenceChange) {
+                addChangedId(referenceChange.getValue(), ids);
+            }
+        }
+        
+        return ids;
+    }
+    
+    /**
+     * Add the id of the object that records a change to eObject in the manifest
+     */
+    private static void addChangedId(EObject eObject, Set<String> ids) {
+        while(eObject != null && !CommitManifest.isManifestType(eObject)) {
+            eObject = eObject.eContainer();
+        }
+        
+        if(eObject instanceof IIdentifier identifier && identifier.getId() != null) {
+            ids.add(identifier.getId());
+        }
+    }
+    
+    /**
+     * @return The image paths referenced by the changed objects and their contents that don't have their own changes.
+     * If our model and their model were both integral these are the only images that can be missing after a merge.
+     */
+    static Set<String> getImagePaths(IArchimateModel model, Collection<String> changedIds) {
+        Set<String> imagePaths = new HashSet<>();
+        
+        for(TreeIterator<EObject> iter = EcoreUtil.getAllContents(Set.of(model), false); iter.hasNext();) {
+            EObject eObject = iter.next();
+            
+            // Only the model and folders contain objects that have their own changes so the contents of an unchanged concept or diagram are not walked
+            if(CommitManifest.isManifestType(eObject) && !changedIds.contains(((IIdentifier)eObject).getId())
+                    && !(eObject instanceof IArchimateModel || eObject instanceof IFolder)) {
+                iter.prune();
+            }
+            else if(eObject instanceof IDiagramModelImageProvider imageProvider && imageProvider.getImagePath() != null && isChanged(eObject, changedIds)) {
+                imagePaths.add(imageProvider.getImagePath());
+            }
+        }
+        
+        return imagePaths;
+    }
+    
+    /**
+     * @return true if eObject, or the object that records a change to it in the manifest, is changed
+     */
+    private static boolean isChanged(EObject eObject, Collection<String> changedIds) {
+        while(eObject != null && !CommitManifest.isManifestType(eObject)) {
+            eObject = eObject.eContainer();
+        }
+        return eObject instanceof IIdentifier identifier && changedIds.contains(identifier.getId());
+    }
+    
+    MergeIntegrityChecker(IArchimateModel model) {
+        this.model = model;
+        archiveManager = (IArchiveManager)model.getAdapter(IArchiveManager.class);
+    }
+    
+    /**
+     * Check the objects that were changed by a merge
+     * @param changedIds The ids of the objects changed on either side. Objects that are not in the model were deleted.
+     * @return true if the changed objects are integral
+     */
+    boolean check(Collection<String> changedIds) {
+        // Index all ids to find the changed objects and check that referenced objects are in the model. This also finds duplicate ids.
+        if(!index()) {
+            return false;
+        }
+        
+        for(String id : changedIds) {
+            EObject eObject = objects.get(id);
+            
+            // Deleted
+            if(eObject == null) {
+                continue;
+            }
+            
+            if(!checkObject(eObject)) {
+                return false;
+            }
+            
+            // Check the contents that don't have their own changes, such as diagram components and profiles
+            for(TreeIterator<EObject> iter = eObject.eAllContents(); iter.hasNext();) {
+                EObject child = iter.next();
+                if(CommitManifest.isManifestType(child)) {
+                    iter.prune();
+                }
+                else if(!checkObject(child)) {
+                    return false;
+                }
+            }
+        }
+        
+        return true;
+    }
+    
+    /**
+     * Index the objects in the model by id
+     * @return false if an id is not unique
+     */
+    private boolean index() {
+        objects.put(model.getId(), model);
+        
+        for(TreeIterator<EObject> iter = model.eAllContents(); iter.hasNext();) {
+            if(iter.next() instanceof IIdentifier identifier && identifier.getId() != null && objects.putIfAbsent(identifier.getId(), identifier) != null) {
+                logger.warning("Duplicate id: " + identifier.getId());
+                return false;
+            }
+        }
+        
+        return true;
+    }
+    
+    private boolean checkObject(EObject eObject) {
+        if(eObject instanceof IIdentifier identifier && identifier.getId() == null) {
+            logger.warning("Object has no id: " + eObject);
+            return false;
+        }
+        
+        if(eObject instanceof IArchimateRelationship relationship && (relationship.getSource() == null || relationship.getTarget() == null)) {
+            logger.warning("Relationship has no source or target: " + relationship.getId());
+            return false;
+        }
+        
+        if(eObject instanceof IDiagramModelConnection connection && (connection.getSource() == null || connection.getTarget() == null)) {
+            logger.warning("Connection has no source or target: " + connection.getId());
+            return false;
+        }
+        
+        if(eObject instanceof IDiagramModelArchimateComponent component && component.getArchimateConcept() == null) {
+            logger.warning("Diagram component has no concept: " + component.getId());
+            return false;
+        }
+        
+        // Referenced objects are in the model
+        for(EReference reference : eObject.eClass().getEAllReferences()) {
+            if(reference.isContainment() || reference.isContainer() || reference.isDerived() || reference.isTransient()) {
+                continue;
+            }
+            
+            for(EObject value : getValues(eObject, reference)) {
+                if(!isInModel(value)) {
+                    logger.warning("Referenced object is not in the model: " + getName(value) + " from " + getName(eObject));
+                    return false;
+                }
+            }
+        }
+        
+        // Referenced image is in the archive manager
+        if(eObject instanceof IDiagramModelImageProvider imageProvider && imageProvider.getImagePath() != null
+                && archiveManager != null && archiveManager.getBytesFromEntry(imageProvider.getImagePath()) == null) {
+            logger.warning("Image is missing: " + imageProvider.getImagePath());
+            return false;
+        }
+        
+        return true;
+    }
+    
+    /**
+     * @return true if eObject is in the model
+     */
+    private boolean isInModel(EObject eObject) {
+        if(eObject instanceof IIdentifier identifier && identifier.getId() != null) {
+            return objects.get(identifier.getId()) == eObject;
+        }
+        return EcoreUtil.isAncestor(model, eObject);
+    }
+    
+    private String getName(EObject eObject) {
+        return eObject instanceof IIdentifier identifier ? identifier.getId() : eObject.eClass().getName();
+    }
+    
+    @SuppressWarnings("unchecked")
+    private List<EObject> getValues(EObject eObject, EReference reference) {
+        Object value = eObject.eGet(reference);
+        if(reference.isMany()) {
+            return (List<EObject>)value;
+        }
+        return value != null ? List.of((EObject)value) : List.of();
+    }
+}
@@ -25,11 +25,13 @@ import org.eclipse.emf.compare.DifferenceKind;
 import org.eclipse.emf.compare.Match;
 import org.eclipse.emf.compare.ReferenceChange;
 import org.eclipse.emf.ecore.EObject;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
 import org.eclipse.jgit.revwalk.RevCommit;
 
 import com.archimatetool.editor.model.IEditorModelManager;
 import com.archimatetool.editor.ui.ArchiLabelProvider;
-import com.archimatetool.editor.utils.FileUtils;
 import com.archimatetool.model.IArchimateModel;
 import com.archimatetool.model.IArchimateModelObject;
 import com.archimatetool.model.IBounds;
@@ -44,7 +46,6 @@ import com.archimatetool.model.IProperty;
 import com.archimatetool.model.util.ArchimateModelUtils;
 import com.archimatetool.modelrepository.repository.GitUtils;
 import com.archimatetool.modelrepository.repository.IArchiRepository;
-import com.archimatetool.modelrepository.repository.RepoConstants;
 
 /**
  * Represents a comparison of changes between two models
@@ -191,22 +192,41 @@ public class ModelComparison {
         }
         
         try(GitUtils utils = GitUtils.open(repository.getWorkingFolder())) {
+            // If the model file and images are the same in both there are no differences so don't load the models
+            if(isWorkingTreeComparison() ? !utils.hasModelChanges(revCommit1) : utils.isSameModel(revCommit1, revCommit2)) {
+                comparison = MergeFactory.createEmptyComparison();
+                return this;
+            }
+            
             // Load the model from first commit
-            model1 = loadModel(utils, revCommit1.getName());
+            model1 = utils.loadModel(revCommit1);
             
             if(model1 == null) {
                 throw new IOException("Model was null for " + revCommit1.getName());
             }
 
             // Load the model from the second commit or the working tree. If the second commit is null, load the working tree
-            model2 = isWorkingTreeComparison() ? getWorkingTreeModel() : loadModel(utils, revCommit2.getName());
+            ObjectId blobId2 = isWorkingTreeComparison() ? getWorkingTreeModelBlobId() : utils.getModelBlobId(revCommit2);
+            model2 = isWorkingTreeComparison() ? getWorkingTreeModel() : utils.loadModel(revCommit2);
             
             if(model2 == null) {
                 throw new IOException("Model was null for " + (isWorkingTreeComparison() ? "working tree" : revCommit1.getName()));
             }
             
+            // Subtree hashes are memoised against the blob id of the model file so they are usually only computed once for a commit
+            // and once for the working tree model file until it is changed.
+            // If the working tree model file was changed while it was loaded its hashes are computed and not memoised.
+            SubtreeHashes hashes1 = SubtreeHashes.get(utils.getModelBlobId(revCommit1), model1);
+            SubtreeHashes hashes2;
+            if(blobId2 == null || (isWorkingTreeComparison() && !blobId2.equals(getWorkingTreeModelBlobId()))) {
+                hashes2 = SubtreeHashes.compute(model2);
+            }
+            else {
+                hashes2 = SubtreeHashes.get(blobId2, model2);
+            }
+            
             // Create Comparison
-            comparison = MergeFactory.createComparison(model2, model1, null);  // Left/Right are swapped!
+            comparison = MergeFactory.createComparison(model2, model1, hashes2, hashes1);  // Left/Right are swapped!
             
             // Print and log any diagnostic errors and warnings
             for(Diagnostic diagnostic : comparison.getDiagnostic().getChildren()) {
@@ -331,16 +351,18 @@ public class ModelComparison {
     
     /**
      * Find an object by ID in the first model (the oldest commit)
+     * @return The object or null if not found or if the models were not loaded because they are the same
      */
     public EObject findObjectInFirstModel(String id) {
-        return ArchimateModelUtils.getObjectByID(model1, id);
+        return model1 != null ? ArchimateModelUtils.getObjectByID(model1, id) : null;
     }
     
     /**
      * Find an object by ID in the second model (the later commit, or working tree)
+     * @return The object or null if not found or if the models were not loaded because they are the same
      */
     public EObject findObjectInSecondModel(String id) {
-        return ArchimateModelUtils.getObjectByID(model2, id);
+        return model2 != null ? ArchimateModelUtils.getObjectByID(model2, id) : null;
     }
 
     private IArchimateModel getWorkingTreeModel() throws IOException {
@@ -350,24 +372,19 @@ public class ModelComparison {
     }
     
     /**
-     * Load a model from its revision string
+     * @return The blob id that the model file in the working tree would have if it was committed, or null if it doesn't exist
      */
-    private IArchimateModel loadModel(GitUtils utils, String revStr) throws IOException {
-        File tempFolder = Files.createTempDirectory("archi-").toFile();
-        
-        try {
-            utils.extractCommit(revStr, tempFolder, false);
-            
-            // Load it
-            File modelFile = new File(tempFolder, RepoConstants.MODEL_FILENAME);
-            return modelFile.exists() ? IEditorModelManager.INSTANCE.load(modelFile) : null;
+    private ObjectId getWorkingTreeModelBlobId() throws IOException {
+        File file = repository.getModelFile();
+        if(!file.exists()) {
+            return null;
         }
-        finally {
-            FileUtils.deleteFolder(tempFolder);
+        
+        try(ObjectInserter.Formatter formatter = new ObjectInserter.Formatter()) {
+            return formatter.idFor(Constants.OBJ_BLOB, Files.readAllBytes(file.toPath()));
         }
     }
     
-    
 
     // ================================ DEBUG STUFF ==========================================
     
@@ -0,0 +1,212 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+package com.archimatetool.modelrepository.merge;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.emf.common.notify.Adapter;
+import org.eclipse.emf.common.notify.impl.AdapterImpl;
+import org.eclipse.emf.compare.CompareFactory;
+import org.eclipse.emf.compare.Comparison;
+import org.eclipse.emf.compare.Match;
+import org.eclipse.emf.compare.scope.DefaultComparisonScope;
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.EReference;
+
+import com.archimatetool.model.IIdentifier;
+
+/**
+ * A three-way comparison scope that leaves out the subtrees that are the same in left, right and origin.
+ *
+ * A subtree is left out if its root has the same subtree hash in all three models and is in the same containment reference
+ * at the same index of the same container. EMF Compare doesn't match or compare the objects that are left out.
+ * Instead MergeFactory's match engine adds Matches for them with addPrunedMatches() so that references to them are matched
+ * and can be merged, and its diff engine doesn't look for differences in those Matches.
+ */
+class PrunedComparisonScope extends DefaultComparisonScope {
+    
+    /**
+     * Marks the Match of the root of a subtree that was left out
+     */
+    private static final Adapter PRUNED = new AdapterImpl();
+    
+    // The left roots of subtrees that are left out and their right and origin counterparts
+    private Map<EObject, EObject[]> prunedRoots = new IdentityHashMap<>();
+    
+    // The roots of subtrees that are left out in all three models
+    private Set<EObject> excluded = Collections.newSetFromMap(new IdentityHashMap<>());
+    
+    private SubtreeHashes leftHashes, rightHashes, originHashes;
+    
+    PrunedComparisonScope(EObject left, EObject right, EObject origin, SubtreeHashes leftHashes, SubtreeHashes rightHashes, SubtreeHashes originHashes) {
+        super(left, right, origin);
+        
+        this.leftHashes = leftHashes;
+        this.rightHashes = rightHashes;
+        this.originHashes = originHashes;
+        
+        prune(left, right, origin);
+        
+        setEObjectContentFilter(this::isInScope);
+    }
+    
+    /**
+     * @return true if match is the Match of the root of a subtree that was left out
+     */
+    static boolean isPruned(Match match) {
+        return match.eAdapters().contains(PRUNED);
+    }
+    
+    /**
+     * @return The number of subtrees that are left out
+     */
+    int getPrunedCount() {
+        return prunedRoots.size();
+    }
+    
+    /**
+     * Add Matches for the subtrees that were left out to the Matches of their containers
+     */
+    void addPrunedMatches(Comparison comparison) {
+        for(Map.Entry<EObject, EObject[]> entry : prunedRoots.entrySet()) {
+            EObject left = entry.getKey();
+            Match containerMatch = comparison.getMatch(left.eContainer());
+            if(containerMatch != null) {
+                Match match = createMatch(left, entry.getValue()[0], entry.getValue()[1]);
+                match.eAdapters().add(PRUNED);
+                containerMatch.getSubmatches().add(match);
+                addContentMatches(match);
+            }
+        }
+    }
+    
+    /**
+     * Add Matches for the contents of the objects of match.
+     * These are the same subtrees so their contents are in the same order in the containment features that are hashed.
+     */
+    private void addContentMatches(Match match) {
+        for(EReference containment : IdentifierComparison.getFeatures(match.getLeft().eClass()).containments()) {
+            Iterator<EObject> rightValues = getValues(match.getRight(), containment).iterator();
+            Iterator<EObject> originValues = getValues(match.getOrigin(), containment).iterator();
+            
+            for(EObject left : getValues(match.getLeft(), containment)) {
+                if(!rightValues.hasNext() || !originValues.hasNext()) {
+                    break;
+                }
+                
+                Match childMatch = createMatch(left, rightValues.next(), originValues.next());
+                match.getSubmatches().add(childMatch);
+                addContentMatches(childMatch);
+            }
+        }
+    }
+    
+    @SuppressWarnings("unchecked")
+    private List<EObject> getValues(EObject eObject, EReference containment) {
+        if(containment.isMany()) {
+            return (List<EObject>)eObject.eGet(containment);
+        }
+        
+        EObject value = (EObject)eObject.eGet(containment);
+        return value != null ? List.of(value) : List.of();
+    }
+    
+    private Match createMatch(EObject left, EObject right, EObject origin) {
+        Match match = CompareFactory.eINSTANCE.createMatch();
+        match.setLeft(left);
+        match.setRight(right);
+        match.setOrigin(origin);
+        return match;
+    }
+    
+    /**
+     * Find the subtrees to leave out in the containment references of matched objects
+     */
+    private void prune(EObject left, EObject right, EObject origin) {
+        for(EReference containment : IdentifierComparison.getFeatures(left.eClass()).containments()) {
+            List<EObject> leftValues = getValues(left, containment);
+            SiblingIndex rightValues = new SiblingIndex(getValues(right, containment));
+            SiblingIndex originValues = new SiblingIndex(getValues(origin, containment));
+            
+            for(int i = 0; i < leftValues.size(); i++) {
+                if(!(leftValues.get(i) instanceof IIdentifier leftValue) || leftValue.getId() == null) {
+                    continue;
+                }
+                
+                EObject rightValue = rightValues.get(i, leftValue.getId());
+                EObject originValue = originValues.get(i, leftValue.getId());
+                if(rightValue == null || originValue == null) {
+                    continue;
+                }
+                
+                if(rightValues.isAt(i, rightValue) && originValues.isAt(i, originValue)
+                        && leftHashes.isSameSubtree(leftValue, rightHashes) && leftHashes.isSameSubtree(leftValue, originHashes)) {
+                    prunedRoots.put(leftValue, new EObject[] { rightValue, originValue });
+                    excluded.add(leftValue);
+                    excluded.add(rightValue);
+                    excluded.add(originValue);
+                }
+                else {
+                    prune(leftValue, rightValue, originValue);
+                }
+            }
+        }
+    }
+    
+    /**
+     * @return true if eObject is not in a subtree that is left out
+     */
+    private boolean isInScope(EObject eObject) {
+        for(; eObject != null; eObject = eObject.eContainer()) {
+            if(excluded.contains(eObject)) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * The values of a containment reference with an index by id that is only created if an object is not at the expected index
+     */
+    private static class SiblingIndex {
+        private List<?> values;
+        private Map<String, EObject> index;
+        
+        SiblingIndex(List<?> values) {
+            this.values = values;
+        }
+        
+        boolean isAt(int i, EObject eObject) {
+            return i < values.size() && values.get(i) == eObject;
+        }
+        
+        /**
+         * @return The value with id, looking at index i first
+         */
+        EObject get(int i, String id) {
+            if(i < values.size() && values.get(i) instanceof IIdentifier value && id.equals(value.getId())) {
+                return (EObject)value;
+            }
+            
+            if(index == null) {
+                index = new HashMap<>();
+                for(Object value : values) {
+                    if(value instanceof IIdentifier identifier && identifier.getId() != null) {
+                        index.putIfAbsent(identifier.getId(), (EObject)value);
+                    }
+                }
+            }
+            
+            return index.get(id);
+        }
+    }
+}
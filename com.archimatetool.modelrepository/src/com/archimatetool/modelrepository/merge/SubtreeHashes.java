@@ -0,0 +1,331 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+package com.archimatetool.modelrepository.merge;
+
+import java.lang.ref.SoftReference;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.emf.common.util.TreeIterator;
+import org.eclipse.emf.ecore.EAttribute;
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.EReference;
+import org.eclipse.emf.ecore.EStructuralFeature;
+import org.eclipse.emf.ecore.util.EcoreUtil;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+
+import com.archimatetool.model.IArchimateModel;
+import com.archimatetool.model.IFolder;
+import com.archimatetool.model.IIdentifier;
+import com.archimatetool.modelrepository.repository.CommitManifest;
+
+/**
+ * Merkle hashes of the subtrees of a model, keyed by the id of each object that has one (folders, views, elements,
+ * relations, diagram components). The hash of an object covers its class, the features that IdentifierComparison compares,
+ * the identifiers of the objects it references and the hashes of its children in order, so if an object has the same hash
+ * in two models then it and all of its contents have no differences and don't need to be compared.
+ *
+ * An object has no hash if it or any of its contents references an object that can't be identified.
+ *
+ * Objects whose changes are recorded in commit manifests also have an own hash. This covers the identifier of the object's
+ * container and, for the model and folders, the object without the contained objects whose changes are recorded separately.
+ * For other objects it covers the subtree. This is used to check that objects the manifests don't record as changed are unchanged.
+ *
+ * Hashes depend only on the model file so they are memoised against the ObjectId of the model file's blob.
+ */
+@SuppressWarnings("nls")
+class SubtreeHashes {
+
+    /**
+     * Maximum number of memoised hashes
+     */
+    static int MAX_MEMOISED = 32;
+    
+    // Access ordered so that the first entry is the least recently used
+    private static final Map<ObjectId, SoftReference<SubtreeHashes>> memo = new LinkedHashMap<>(16, 0.75f, true);
+    
+    private static final byte[] NULL_VALUE = { 0 };
+    
+    private Map<String, ObjectId> hashes = new HashMap<>();
+    private Map<String, ObjectId> ownHashes = new HashMap<>();
+    
+    private MessageDigest digest = Constants.newMessageDigest();
+    
+    /**
+     * Get the hashes of a model from the memo, or compute and memoise them.
+     * @param modelBlobId The ObjectId of the model file blob that model was loaded from
+     * @param model The model as loaded from the blob. It must not have been changed.
+     */
+    static SubtreeHashes get(ObjectId modelBlobId, EObject model) {
+        synchronized(memo) {
+            SoftReference<SubtreeHashes> ref = memo.get(modelBlobId);
+            SubtreeHashes hashes = ref != null ? ref.get() : null;
+            if(hashes != null) {
+                return hashes;
+            }
+        }
+        
+        // Compute outside of the lock as this can take some time
+        SubtreeHashes hashes = compute(model);
+        
+        synchronized(memo) {
+            memo.put(modelBlobId.copy(), new SoftReference<>(hashes));
+            
+            // Remove the least recently used
+            while(memo.size() > MAX_MEMOISED) {
+                memo.remove(memo.keySet().iterator().next());
+            }
+        }
+        
+        return hashes;
+    }
+    
+    /**
+     * Compute the hashes of model
+     */
+    static SubtreeHashes compute(EObject model) {
+        SubtreeHashes hashes = new SubtreeHashes();
+        hashes.hash(model);
+        hashes.digest = null;
+        return hashes;
+    }
+    
+    /**
+     * Clear the memoised hashes
+     */
+    static void clearMemo() {
+        synchronized(memo) {
+            memo.clear();
+        }
+    }
+    
+    private SubtreeHashes() {
+    }
+    
+    /**
+     * @return The hash of the subtree of the object with id, or null if it has no hash
+     */
+    ObjectId get(String id) {
+        return hashes.get(id);
+    }
+    
+    /**
+     * @return true if eObject has a hash in these hashes and the object with the same id has the same hash in other
+     */
+    boolean isSameSubtree(EObject eObject, SubtreeHashes other) {
+        if(other != null && eObject instanceof IIdentifier identifier && identifier.getId() != null) {
+            ObjectId hash = hashes.get(identifier.getId());
+            return hash != null && hash.equals(other.hashes.get(identifier.getId()));
+        }
+        return false;
+    }
+    
+    /**
+     * @return true if the objects whose changes are recorded in commit manifests and that are different in model1 and model2
+     * all have ids in changedIds. Objects with the same subtree hash, and their contents, are not walked.
+     * The order of objects in a folder is not checked.
+     */
+    static boolean isChangedOnly(EObject model1, SubtreeHashes hashes1, EObject model2, SubtreeHashes hashes2, Collection<String> changedIds) {
+        // Walk both models so that deleted objects are found as well as added objects
+        return isChangedOnly(model1, hashes1, hashes2, changedIds) && isChangedOnly(model2, hashes2, hashes1, changedIds);
+    }
+    
+    private static boolean isChangedOnly(EObject model, SubtreeHashes hashes, SubtreeHashes other, Collection<String> changedIds) {
+        for(TreeIterator<EObject> iter = EcoreUtil.getAllContents(Set.of(model), false); iter.hasNext();) {
+            EObject eObject = iter.next();
+            
+            // Only objects whose changes are recorded are checked, their contents are covered by their own hash
+            if(!CommitManifest.isManifestType(eObject) || hashes.isSameSubtree(eObject, other)) {
+                iter.prune();
+                continue;
+            }
+            
+            String id = ((IIdentifier)eObject).getId();
+            if(!changedIds.contains(id) && !hashes.isSameOwn(id, other)) {
+                return false;
+            }
+            
+            // Only the model and folders contain objects whose changes are recorded separately
+            if(!(eObject instanceof IArchimateModel || eObject instanceof IFolder)) {
+                iter.prune();
+            }
+        }
+        
+        return true;
+    }
+    
+    /**
+     * @return true if the object with id has an own hash in these hashes and the same own hash in other
+     */
+    private boolean isSameOwn(String id, SubtreeHashes other) {
+        ObjectId hash = id != null ? ownHashes.get(id) : null;
+        return hash != null && hash.equals(other.ownHashes.get(id));
+    }
+    
+    /**
+     * @return The hash of eObject and its contents, or null if it can't be hashed
+     */
+    private byte[] hash(EObject eObject) {
+        IdentifierComparison.Features features = IdentifierComparison.getFeatures(eObject.eClass());
+        
+        // Hash the children first so that the digest is only used for one object at a time
+        List<byte[]> childHashes = new ArrayList<>();
+        boolean hashable = true;
+        
+        for(EReference containment : features.containments()) {
+            for(Object child : getValues(eObject, containment)) {
+                if(child == null) {
+                    continue;
+                }
+                byte[] childHash = hash((EObject)child);
+                if(childHash == null) {
+                    hashable = false;
+                }
+                childHashes.add(childHash);
+            }
+        }
+        
+        if(!hashable || !update(eObject, features, childHashes, false)) {
+            return null;
+        }
+        
+        byte[] hash = digest.digest();
+        
+        if(eObject instanceof IIdentifier identifier && identifier.getId() != null) {
+            hashes.put(identifier.getId(), ObjectId.fromRaw(hash));
+            
+            if(CommitManifest.isManifestType(eObject)) {
+                ownHashes.put(identifier.getId(), ObjectId.fromRaw(ownHash(eObject, features, childHashes, hash)));
+            }
+        }
+        
+        return hash;
+    }
+    
+    /**
+     * @return The own hash of an object whose changes are recorded in commit manifests
+     */
+    private byte[] ownHash(EObject eObject, IdentifierComparison.Features features, List<byte[]> childHashes, byte[] hash) {
+        update(eObject.eContainer() instanceof IIdentifier container ? container.getId() : null);
+        
+        if(eObject instanceof IArchimateModel || eObject instanceof IFolder) {
+            update(eObject, features, childHashes, true);
+        }
+        else {
+            digest.update(hash);
+        }
+        
+        return digest.digest();
+    }
+    
+    /**
+     * Add the class and features of eObject to the digest
+     * @param childHashes The hashes of the objects that eObject contains
+     * @param own If true the objects whose changes are recorded in commit manifests are not added
+     * @return false if eObject can't be hashed
+     */
+    private boolean update(EObject eObject, IdentifierComparison.Features features, List<byte[]> childHashes, boolean own) {
+        update(eObject.eClass().getEPackage().getNsURI());
+        update(eObject.eClass().getName());
+        
+        for(EAttribute attribute : features.attributes()) {
+            update(attribute.getName());
+            List<Object> values = getValues(eObject, attribute);
+            update(values.size());
+            for(Object value : values) {
+                update(value != null ? EcoreUtil.convertToString(attribute.getEAttributeType(), value) : null);
+            }
+        }
+        
+        for(EReference reference : features.references()) {
+            update(reference.getName());
+            List<Object> values = getValues(eObject, reference);
+            update(values.size());
+            for(Object value : values) {
+                String identifier = value != null ? MergeFactory.createIdentifier((EObject)value) : null;
+                if(value != null && identifier == null) {
+                    digest.reset();
+                    return false;
+                }
+                update(identifier);
+            }
+        }
+        
+        int index = 0;
+        for(EReference containment : features.containments()) {
+            // The hash of each value, or null for a null value
+            List<byte[]> valueHashes = new ArrayList<>();
+            for(Object value : getValues(eObject, containment)) {
+                if(value == null) {
+                    valueHashes.add(null);
+                }
+                else {
+                    byte[] childHash = childHashes.get(index++);
+                    if(!(own && CommitManifest.isManifestType((EObject)value))) {
+                        valueHashes.add(childHash);
+                    }
+                }
+            }
+            
+            update(containment.getName());
+            update(valueHashes.size());
+            for(byte[] valueHash : valueHashes) {
+                if(valueHash != null) {
+                    digest.update(valueHash);
+                }
+                else {
+                    update((String)null);
+                }
+            }
+        }
+        
+        return true;
+    }
+    
+    /**
+     * Add a number of values to the digest
+     */
+    private void update(int count) {
+        digest.update(ByteBuffer.allocate(4).putInt(count).array());
+    }
+    
+    /**
+     * Add a length prefixed string, or a null marker, to the digest
+     */
+    private void update(String s) {
+        if(s == null) {
+            digest.update(NULL_VALUE);
+            return;
+        }
+        
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        digest.update(ByteBuffer.allocate(5).put((byte)1).putInt(bytes.length).array());
+        digest.update(bytes);
+    }
+    
+    /**
+     * @return The values of a feature as a list
+     */
+    @SuppressWarnings("unchecked")
+    private List<Object> getValues(EObject eObject, EStructuralFeature feature) {
+        Object value = eObject.eGet(feature);
+        if(feature.isMany()) {
+            return (List<Object>)value;
+        }
+        List<Object> values = new ArrayList<>(1);
+        values.add(value);
+        return values;
+    }
+}
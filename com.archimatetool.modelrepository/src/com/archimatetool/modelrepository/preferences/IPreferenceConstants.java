@@ -29,4 +29,12 @@ public interface IPreferenceConstants {
     String PREFS_FETCH_IN_BACKGROUND_INTERVAL = "fetchInBackgroundInterval";
     
     String PREFS_HISTORY_SORT_STRATEGY = "historySortStrategy";
+    
+    String PREFS_MAINTENANCE_ENABLED = "maintenanceEnabled";
+    String PREFS_MAINTENANCE_INTERVAL = "maintenanceInterval";
+    String PREFS_MAINTENANCE_LOOSE_OBJECTS = "maintenanceLooseObjects";
+    String PREFS_MAINTENANCE_PACK_FILES = "maintenancePackFiles";
+    String PREFS_MAINTENANCE_LOOSE_REFS = "maintenanceLooseRefs";
+    
+    String PREFS_MERGE_FULL_INTEGRITY_CHECK = "mergeFullIntegrityCheck";
  }
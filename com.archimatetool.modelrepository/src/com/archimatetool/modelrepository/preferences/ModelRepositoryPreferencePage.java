@@ -27,6 +27,7 @@ import org.eclipse.swt.widgets.DirectoryDialog;
 import org.eclipse.swt.widgets.FileDialog;
 import org.eclipse.swt.widgets.Group;
 import org.eclipse.swt.widgets.Label;
+import org.eclipse.swt.widgets.Spinner;
 import org.eclipse.swt.widgets.Text;
 import org.eclipse.ui.IWorkbench;
 import org.eclipse.ui.IWorkbenchPreferencePage;
@@ -56,6 +57,14 @@ implements IWorkbenchPreferencePage, IPreferenceConstants {
     
     private Text userRepoFolderTextField;
     
+    private Button maintenanceEnabledButton;
+    private Spinner maintenanceIntervalSpinner;
+    private Spinner maintenanceLooseObjectsSpinner;
+    private Spinner maintenancePackFilesSpinner;
+    private Spinner maintenanceLooseRefsSpinner;
+    
+    private Button mergeFullIntegrityCheckButton;
+    
     private Button sshIdentitySelectButton;
     private Text sshIdentityFileTextField;
     private Text sshIdentityPasswordTextField;
@@ -114,6 +123,37 @@ implements IWorkbenchPreferencePage, IPreferenceConstants {
             }
         }));
         
+        // Maintenance Group
+        Group maintenanceGroup = new Group(client, SWT.NULL);
+        maintenanceGroup.setText(Messages.ModelRepositoryPreferencePage_19);
+        GridLayoutFactory.swtDefaults().numColumns(2).applyTo(maintenanceGroup);
+        GridDataFactory.create(GridData.FILL_HORIZONTAL).applyTo(maintenanceGroup);
+        
+        maintenanceEnabledButton = new Button(maintenanceGroup, SWT.CHECK);
+        maintenanceEnabledButton.setText(Messages.ModelRepositoryPreferencePage_20);
+        GridDataFactory.fillDefaults().span(2, 0).applyTo(maintenanceEnabledButton);
+        maintenanceEnabledButton.addSelectionListener(widgetSelectedAdapter(event -> {
+            updateMaintenanceControls();
+        }));
+        
+        maintenanceIntervalSpinner = createSpinner(maintenanceGroup, Messages.ModelRepositoryPreferencePage_21, 1, 24 * 60);
+        maintenanceLooseObjectsSpinner = createSpinner(maintenanceGroup, Messages.ModelRepositoryPreferencePage_22, 0, 100000);
+        maintenancePackFilesSpinner = createSpinner(maintenanceGroup, Messages.ModelRepositoryPreferencePage_23, 0, 1000);
+        maintenanceLooseRefsSpinner = createSpinner(maintenanceGroup, Messages.ModelRepositoryPreferencePage_24, 0, 100000);
+        
+        Label label = new Label(maintenanceGroup, SWT.NULL);
+        label.setText(Messages.ModelRepositoryPreferencePage_25);
+        GridDataFactory.fillDefaults().span(2, 0).applyTo(label);
+        
+        // Merge Group
+        Group mergeGroup = new Group(client, SWT.NULL);
+        mergeGroup.setText(Messages.ModelRepositoryPreferencePage_26);
+        GridLayoutFactory.swtDefaults().applyTo(mergeGroup);
+        GridDataFactory.create(GridData.FILL_HORIZONTAL).applyTo(mergeGroup);
+        
+        mergeFullIntegrityCheckButton = new Button(mergeGroup, SWT.CHECK);
+        mergeFullIntegrityCheckButton.setText(Messages.ModelRepositoryPreferencePage_27);
+        
         // Authentication Group
         Group authGroup = new Group(client, SWT.NULL);
         authGroup.setText(Messages.ModelRepositoryPreferencePage_7);
@@ -157,6 +197,24 @@ implements IWorkbenchPreferencePage, IPreferenceConstants {
         return client;
     }
 
+    private Spinner createSpinner(Composite parent, String text, int min, int max) {
+        new Label(parent, SWT.NULL).setText(text);
+        
+        Spinner spinner = new Spinner(parent, SWT.BORDER);
+        spinner.setMinimum(min);
+        spinner.setMaximum(max);
+        
+        return spinner;
+    }
+    
+    private void updateMaintenanceControls() {
+        boolean enabled = maintenanceEnabledButton.getSelection();
+        maintenanceIntervalSpinner.setEnabled(enabled);
+        maintenanceLooseObjectsSpinner.setEnabled(enabled);
+        maintenancePackFilesSpinner.setEnabled(enabled);
+        maintenanceLooseRefsSpinner.setEnabled(enabled);
+    }
+    
     private String chooseFolderPath() {
         DirectoryDialog dialog = new DirectoryDialog(getShell());
         dialog.setText(Messages.ModelRepositoryPreferencePage_6);
@@ -185,6 +243,17 @@ implements IWorkbenchPreferencePage, IPreferenceConstants {
         // Workspace folder
         userRepoFolderTextField.setText(getPreferenceStore().getString(PREFS_REPOSITORY_FOLDER));
         
+        // Maintenance
+        maintenanceEnabledButton.setSelection(getPreferenceStore().getBoolean(PREFS_MAINTENANCE_ENABLED));
+        maintenanceIntervalSpinner.setSelection(getPreferenceStore().getInt(PREFS_MAINTENANCE_INTERVAL));
+        maintenanceLooseObjectsSpinner.setSelection(getPreferenceStore().getInt(PREFS_MAINTENANCE_LOOSE_OBJECTS));
+        maintenancePackFilesSpinner.setSelection(getPreferenceStore().getInt(PREFS_MAINTENANCE_PACK_FILES));
+        maintenanceLooseRefsSpinner.setSelection(getPreferenceStore().getInt(PREFS_MAINTENANCE_LOOSE_REFS));
+        updateMaintenanceControls();
+        
+        // Merge
+        mergeFullIntegrityCheckButton.setSelection(getPreferenceStore().getBoolean(PREFS_MERGE_FULL_INTEGRITY_CHECK));
+        
         // SSH details
         sshScanDirButton.setSelection(getPreferenceStore().getBoolean(PREFS_SSH_SCAN_DIR));
         sshIdentityFileTextField.setText(getPreferenceStore().getString(PREFS_SSH_IDENTITY_FILE));
@@ -219,6 +288,16 @@ implements IWorkbenchPreferencePage, IPreferenceConstants {
         
         getPreferenceStore().setValue(PREFS_REPOSITORY_FOLDER, userRepoFolderTextField.getText());
         
+        // Maintenance
+        getPreferenceStore().setValue(PREFS_MAINTENANCE_ENABLED, maintenanceEnabledButton.getSelection());
+        getPreferenceStore().setValue(PREFS_MAINTENANCE_INTERVAL, maintenanceIntervalSpinner.getSelection());
+        getPreferenceStore().setValue(PREFS_MAINTENANCE_LOOSE_OBJECTS, maintenanceLooseObjectsSpinner.getSelection());
+        getPreferenceStore().setValue(PREFS_MAINTENANCE_PACK_FILES, maintenancePackFilesSpinner.getSelection());
+        getPreferenceStore().setValue(PREFS_MAINTENANCE_LOOSE_REFS, maintenanceLooseRefsSpinner.getSelection());
+        
+        // Merge
+        getPreferenceStore().setValue(PREFS_MERGE_FULL_INTEGRITY_CHECK, mergeFullIntegrityCheckButton.getSelection());
+        
         // SSH
         getPreferenceStore().setValue(PREFS_SSH_SCAN_DIR, sshScanDirButton.getSelection());
         getPreferenceStore().setValue(PREFS_SSH_IDENTITY_FILE, sshIdentityFileTextField.getText());
@@ -245,6 +324,15 @@ implements IWorkbenchPreferencePage, IPreferenceConstants {
 
         userRepoFolderTextField.setText(getPreferenceStore().getDefaultString(PREFS_REPOSITORY_FOLDER));
         
+        maintenanceEnabledButton.setSelection(getPreferenceStore().getDefaultBoolean(PREFS_MAINTENANCE_ENABLED));
+        maintenanceIntervalSpinner.setSelection(getPreferenceStore().getDefaultInt(PREFS_MAINTENANCE_INTERVAL));
+        maintenanceLooseObjectsSpinner.setSelection(getPreferenceStore().getDefaultInt(PREFS_MAINTENANCE_LOOSE_OBJECTS));
+        maintenancePackFilesSpinner.setSelection(getPreferenceStore().getDefaultInt(PREFS_MAINTENANCE_PACK_FILES));
+        maintenanceLooseRefsSpinner.setSelection(getPreferenceStore().getDefaultInt(PREFS_MAINTENANCE_LOOSE_REFS));
+        updateMaintenanceControls();
+        
+        mergeFullIntegrityCheckButton.setSelection(getPreferenceStore().getDefaultBoolean(PREFS_MERGE_FULL_INTEGRITY_CHECK));
+        
         sshScanDirButton.setSelection(getPreferenceStore().getDefaultBoolean(PREFS_SSH_SCAN_DIR));
         sshIdentityFileTextField.setText(getPreferenceStore().getDefaultString(PREFS_SSH_IDENTITY_FILE));
         sshIdentityPasswordTextField.setText(""); //$NON-NLS-1$
@@ -41,5 +41,13 @@ public class PreferenceInitializer extends AbstractPreferenceInitializer impleme
 		store.setDefault(PREFS_FETCH_IN_BACKGROUND_INTERVAL, 60);
 		
 		store.setDefault(PREFS_HISTORY_SORT_STRATEGY, RevSort.TOPO.name());
+		
+		store.setDefault(PREFS_MAINTENANCE_ENABLED, true);
+		store.setDefault(PREFS_MAINTENANCE_INTERVAL, 30);
+		store.setDefault(PREFS_MAINTENANCE_LOOSE_OBJECTS, 200);
+		store.setDefault(PREFS_MAINTENANCE_PACK_FILES, 10);
+		store.setDefault(PREFS_MAINTENANCE_LOOSE_REFS, 50);
+		
+		store.setDefault(PREFS_MERGE_FULL_INTEGRITY_CHECK, false);
     }
 }
@@ -12,7 +12,6 @@ import java.util.logging.Logger;
 import org.eclipse.jface.layout.GridDataFactory;
 import org.eclipse.jface.viewers.IFilter;
 import org.eclipse.jface.viewers.IStructuredSelection;
-import org.eclipse.jgit.api.Git;
 import org.eclipse.jgit.errors.ConfigInvalidException;
 import org.eclipse.jgit.lib.ConfigConstants;
 import org.eclipse.jgit.lib.PersonIdent;
@@ -166,8 +165,8 @@ public class UserDetailsSection extends AbstractArchiPropertySection {
     }
     
     private void saveToLocalConfig(String name, String globalValue, String localValue) {
-        try(Git git = Git.open(fRepository.getWorkingFolder())) {
-            StoredConfig config = git.getRepository().getConfig();
+        try(GitUtils utils = GitUtils.open(fRepository.getWorkingFolder())) {
+            StoredConfig config = utils.getRepository().getConfig();
             
             logger.info("Saving user config"); //$NON-NLS-1$
             
@@ -183,6 +183,13 @@ public class ArchiRepository implements IArchiRepository {
         return Optional.empty();
     }
     
+    @Override
+    public IArchimateModel loadModel(String revStr) throws IOException {
+        try(GitUtils utils = GitUtils.open(getWorkingFolder())) {
+            return utils.loadModel(revStr);
+        }
+    }
+    
     @Override
     public boolean equals(Object obj) {
         // Equality based on repo (working) folder
@@ -17,6 +17,7 @@ import org.eclipse.jgit.api.ListBranchCommand.ListMode;
 import org.eclipse.jgit.api.errors.GitAPIException;
 import org.eclipse.jgit.lib.BranchConfig;
 import org.eclipse.jgit.lib.BranchTrackingStatus;
+import org.eclipse.jgit.lib.Config;
 import org.eclipse.jgit.lib.Ref;
 import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.revwalk.RevCommit;
@@ -59,9 +60,10 @@ public class BranchInfo {
      * @return A BranchInfo for the current local branch ("HEAD") or null if ref not found
      */
     public static Optional<BranchInfo> currentLocalBranchInfo(File repoDir, Option... options) throws IOException, GitAPIException {
-        try(Repository repository = Git.open(repoDir).getRepository()) {
+        try(GitUtils utils = GitUtils.open(repoDir)) {
+            Repository repository = utils.getRepository();
             Ref ref = repository.exactRef(RepoConstants.HEAD);
-            return ref != null ? Optional.of(new BranchInfo(repository, ref, null, options)) : Optional.empty();
+            return ref != null ? Optional.of(new BranchInfo(repository, ref, options)) : Optional.empty();
         }
     }
     
@@ -70,30 +72,66 @@ public class BranchInfo {
      *         (the current branch is not tracking a remote branch)
      */
     public static Optional<BranchInfo> currentRemoteBranchInfo(File repoDir, Option... options) throws IOException, GitAPIException {
-        try(Repository repository = Git.open(repoDir).getRepository()) {
+        try(GitUtils utils = GitUtils.open(repoDir)) {
+            Repository repository = utils.getRepository();
             Ref ref = repository.exactRef(RepoConstants.R_REMOTES_ORIGIN + repository.getBranch());
-            return ref != null ? Optional.of(new BranchInfo(repository, ref, null, options)) : Optional.empty();
+            return ref != null ? Optional.of(new BranchInfo(repository, ref, options)) : Optional.empty();
         }
     }
 
-    BranchInfo(Repository repository, Ref ref, RevWalk revWalk, Option... options) throws IOException, GitAPIException {
+    BranchInfo(Repository repository, Ref ref, Option... options) throws IOException, GitAPIException {
         repoDir = repository.getWorkTree();
         this.options = options;
-        init(repository, ref, revWalk);
+        init(repository, ref);
+    }
+    
+    /**
+     * Create a BranchInfo from a BranchSnapshot where the values for all branches have already been computed
+     */
+    BranchInfo(BranchSnapshot snapshot, Ref ref, Option... options) {
+        repoDir = snapshot.getWorkingFolder();
+        this.options = options;
+        this.ref = ref.getTarget(); // Important - get the target Ref in case it's a symbolic Ref
+        
+        // Core queries
+        hasLocalRef = snapshot.hasRef(getLocalBranchName());
+        hasRemoteRef = snapshot.hasRef(getRemoteBranchName());
+        isCurrentBranch = getFullName().equals(snapshot.getFullBranch());
+        isPrimaryBranch = isPrimaryBranch(snapshot.getPrimaryBranch());
+        isRefAtHead = snapshot.isRefAtHead(this.ref);
+        latestCommit = snapshot.getLatestCommit(getFullName());
+        
+        // Optional queries
+        if(options != null && options.length > 0) {
+            EnumSet<Option> set = EnumSet.of(options[0], options);
+            
+            if(set.contains(Option.ISREMOTEDELETED) || set.contains(Option.ALL)) {
+                isRemoteDeleted = !isRemote() && isTracked(snapshot.getConfig()) && !hasRemoteRef;
+            }
+            
+            if(set.contains(Option.COMMIT_STATUS) || set.contains(Option.ALL)) {
+                hasUnpushedCommits = snapshot.getAheadCount(getShortName()) > 0;
+                hasRemoteCommits = snapshot.getBehindCount(getShortName()) > 0;
+            }
+            
+            if(set.contains(Option.ISMERGED) || set.contains(Option.ALL)) {
+                // If this branch is "main" or "master" we assume that it is merged
+                isMerged = isPrimaryBranch() || snapshot.isMerged(getFullName());
+            }
+        }
     }
     
     /**
      * Initialise this BranchInfo from Ref and the Repository
-     * @param revWalk Only use this revWalk for isMergedIntoOtherBranches
      */
-    protected void init(Repository repository, Ref ref, RevWalk revWalk) throws IOException, GitAPIException {
+    protected void init(Repository repository, Ref ref) throws IOException, GitAPIException {
         this.ref = ref.getTarget(); // Important - get the target Ref in case it's a symbolic Ref
 
         // Core queries
         hasLocalRef = repository.exactRef(getLocalBranchName()) != null;
         hasRemoteRef = repository.exactRef(getRemoteBranchName()) != null;
         isCurrentBranch = getFullName().equals(repository.getFullBranch());
-        isPrimaryBranch = isPrimaryBranch(repository);
+        isPrimaryBranch = isPrimaryBranch(GitUtils.wrap(repository).getPrimaryBranch().orElse(null));
         isRefAtHead = GitUtils.wrap(repository).isRefAtHead(ref);
         latestCommit = getLatestCommit(repository);
         
@@ -110,7 +148,7 @@ public class BranchInfo {
             }
 
             if(set.contains(Option.ISMERGED) || set.contains(Option.ALL)) {
-                isMerged = isMergedIntoOtherBranches(repository, revWalk);
+                isMerged = isMergedIntoOtherBranches(repository);
             }
         }
     }
@@ -203,9 +241,10 @@ public class BranchInfo {
     }
     
     public void refresh() throws IOException, GitAPIException {
-        try(Repository repository = Git.open(repoDir).getRepository()) {
+        try(GitUtils utils = GitUtils.open(repoDir)) {
+            Repository repository = utils.getRepository();
             Ref newRref = repository.exactRef(getFullName());  // Ref will be a different object with a new Repository instance so renew it
-            init(repository, newRref, null);
+            init(repository, newRref);
         }
     }
     
@@ -226,10 +265,11 @@ public class BranchInfo {
 
     /**
      * If this is "main" or "master" then return true if it is the primary branch
+     * @param primaryBranch The repository's primary branch name or null
      */
-    private boolean isPrimaryBranch(Repository repository) throws IOException {
+    private boolean isPrimaryBranch(String primaryBranch) {
         return RepoConstants.MAIN.equals(getShortName()) || 
-               (RepoConstants.MASTER.equals(getShortName()) && RepoConstants.MASTER.equals(GitUtils.wrap(repository).getPrimaryBranch().orElse(null)));
+               (RepoConstants.MASTER.equals(getShortName()) && RepoConstants.MASTER.equals(primaryBranch));
     }
 
     /**
@@ -256,14 +296,18 @@ public class BranchInfo {
             return false;
         }
         
-        // Is it being tracked?
-        boolean isTracked = new BranchConfig(repository.getConfig(), getShortName()).getRemoteTrackingBranch() != null;
-        
         // Does it have a remote ref?
         boolean noRemote = repository.exactRef(getRemoteBranchName()) == null;
         
         // Is being tracked but no remote ref
-        return isTracked && noRemote;
+        return isTracked(repository.getConfig()) && noRemote;
+    }
+    
+    /**
+     * @return true if this branch is tracking a remote branch
+     */
+    private boolean isTracked(Config config) {
+        return new BranchConfig(config, getShortName()).getRemoteTrackingBranch() != null;
     }
 
     /**
@@ -279,12 +323,9 @@ public class BranchInfo {
     
     /**
      * Update merge status of this branch from a RevWalk
-     * This is slow and expensive so re-use a RevWalk if called multiple times
-     * @param revWalk can be null. If not null use it but don't close it.
-     *        IMPORTANT - the revWalk should only be used for this one method as RevWalkUtils.findBranchesReachableFrom
-     *                    can dispose of any RevCommits in the RevWalk
+     * This is slow and expensive so use BranchStatus when getting the status of more than one branch
      */
-    private boolean isMergedIntoOtherBranches(Repository repository, RevWalk revWalk) throws GitAPIException, IOException {
+    private boolean isMergedIntoOtherBranches(Repository repository) throws GitAPIException, IOException {
         // If this branch is "main" or "master" we assume that it is merged
         if(isPrimaryBranch()) {
             return true;
@@ -303,15 +344,9 @@ public class BranchInfo {
         // Remove this Ref
         otherRefs.remove(ref);
         
-        RevWalk walk = revWalk != null ? revWalk : new RevWalk(repository);
-        
         // If there are other reachable branches then this is merged
-        boolean result = !RevWalkUtils.findBranchesReachableFrom(latestCommit, walk, otherRefs).isEmpty();
-            
-        if(walk != revWalk) { // close our RevWalk but not the caller's
-            walk.close();
+        try(RevWalk walk = new RevWalk(repository)) {
+            return !RevWalkUtils.findBranchesReachableFrom(walk.parseCommit(latestCommit), walk, otherRefs).isEmpty();
         }
-        
-        return result;
     }
 }
\ No newline at end of file
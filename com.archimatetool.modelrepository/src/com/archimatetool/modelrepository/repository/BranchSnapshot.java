@@ -0,0 +1,263 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+package com.archimatetool.modelrepository.repository;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.BranchConfig;
+import org.eclipse.jgit.lib.Config;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevSort;
+import org.eclipse.jgit.revwalk.RevWalk;
+
+import com.archimatetool.modelrepository.repository.BranchInfo.Option;
+
+/**
+ * A snapshot of the status of all branches in a repository, used by BranchStatus to create BranchInfos.
+ *
+ * The refs, HEAD and config are read once. If the ahead/behind counts or merged status are required these are
+ * computed for every branch in one traversal of the commit graph rather than one or more traversals per branch.
+ *
+ * Each branch is given an index and each commit records the set of branches that it is reachable from.
+ * Commits are walked in topological order (children before parents) so that each commit's set is complete
+ * before it is added to its parents' sets.
+ */
+class BranchSnapshot {
+
+    /**
+     * A RevCommit that records the set of branches that it is reachable from
+     */
+    private static class BranchCommit extends RevCommit {
+        final BitSet branches = new BitSet();
+        
+        BranchCommit(AnyObjectId id) {
+            super(id);
+        }
+    }
+    
+    private static class BranchWalk extends RevWalk {
+        BranchWalk(Repository repository) {
+            super(repository);
+        }
+        
+        @Override
+        protected RevCommit createCommit(AnyObjectId id) {
+            return new BranchCommit(id);
+        }
+    }
+    
+    /**
+     * Ahead/behind count for a local branch and its tracking branch
+     */
+    private static class TrackingStatus {
+        final int localIndex;
+        final int trackingIndex;
+        int aheadCount;
+        int behindCount;
+        
+        TrackingStatus(int localIndex, int trackingIndex) {
+            this.localIndex = localIndex;
+            this.trackingIndex = trackingIndex;
+        }
+    }
+    
+    private File workingFolder;
+    private Config config;
+    private String fullBranch;
+    private ObjectId headId;
+    private String primaryBranch;
+    
+    // Branch refs in order with their index
+    private Map<String, Ref> refs = new LinkedHashMap<>();
+    private Map<String, Integer> indexes = new HashMap<>();
+    
+    private Map<String, RevCommit> latestCommits = new HashMap<>();
+    private Map<String, TrackingStatus> trackingStatuses = new HashMap<>();
+    private BitSet merged = new BitSet();
+    
+    /**
+     * @param repository The repository
+     * @param branchRefs All branch refs, local and remote
+     * @param options The options required by the BranchInfos
+     */
+    BranchSnapshot(Repository repository, List<Ref> branchRefs, Option... options) throws IOException {
+        workingFolder = repository.getWorkTree();
+        config = repository.getConfig();
+        fullBranch = repository.getFullBranch();
+        headId = repository.resolve(RepoConstants.HEAD);
+        primaryBranch = GitUtils.wrap(repository).getPrimaryBranch().orElse(null);
+        
+        for(Ref ref : branchRefs) {
+            ref = ref.getTarget(); // Important - get the target Ref in case it's a symbolic Ref
+            if(refs.containsKey(ref.getName())) {
+                continue;
+            }
+            indexes.put(ref.getName(), refs.size());
+            refs.put(ref.getName(), ref);
+        }
+        
+        // Latest commits with their message bodies
+        try(RevWalk revWalk = new RevWalk(repository)) {
+            for(Ref ref : refs.values()) {
+                if(ref.getObjectId() != null) {
+                    latestCommits.put(ref.getName(), revWalk.parseCommit(ref.getObjectId()));
+                }
+            }
+        }
+        
+        EnumSet<Option> set = options != null && options.length > 0 ? EnumSet.of(options[0], options) : EnumSet.noneOf(Option.class);
+        boolean commitStatus = set.contains(Option.COMMIT_STATUS) || set.contains(Option.ALL);
+        boolean isMerged = set.contains(Option.ISMERGED) || set.contains(Option.ALL);
+        
+        if(commitStatus) {
+            createTrackingStatuses();
+        }
+        
+        if(commitStatus || isMerged) {
+            walkCommitGraph(repository);
+        }
+    }
+    
+    /**
+     * Pair each local branch with its tracking branch, as in BranchTrackingStatus
+     */
+    private void createTrackingStatuses() {
+        for(Ref ref : refs.values()) {
+            if(ref.getName().startsWith(RepoConstants.R_HEADS)) {
+                String shortName = Repository.shortenRefName(ref.getName());
+                String trackingBranch = new BranchConfig(config, shortName).getTrackingBranch();
+                Integer trackingIndex = trackingBranch != null ? indexes.get(trackingBranch) : null;
+                if(trackingIndex != null) {
+                    trackingStatuses.put(shortName, new TrackingStatus(indexes.get(ref.getName()), trackingIndex));
+                }
+            }
+        }
+    }
+    
+    /**
+     * Walk all commits reachable from all branches once, propagating the set of branches that each commit is reachable from
+     * to its parents and counting ahead/behind commits for each tracked branch.
+     */
+    private void walkCommitGraph(Repository repository) throws IOException {
+        try(BranchWalk revWalk = new BranchWalk(repository)) {
+            revWalk.setRetainBody(false);
+            revWalk.sort(RevSort.TOPO);
+            
+            List<BranchCommit> tips = new ArrayList<>();
+            
+            for(Ref ref : refs.values()) {
+                BranchCommit tip = null;
+                if(ref.getObjectId() != null) {
+                    tip = (BranchCommit)revWalk.parseCommit(ref.getObjectId());
+                    tip.branches.set(indexes.get(ref.getName()));
+                    revWalk.markStart(tip);
+                }
+                tips.add(tip);
+            }
+            
+            for(RevCommit c : revWalk) {
+                BranchCommit commit = (BranchCommit)c;
+                
+                for(TrackingStatus status : trackingStatuses.values()) {
+                    boolean inLocal = commit.branches.get(status.localIndex);
+                    boolean inTracking = commit.branches.get(status.trackingIndex);
+                    if(inLocal && !inTracking) {
+                        status.aheadCount++;
+                    }
+                    else if(inTracking && !inLocal) {
+                        status.behindCount++;
+                    }
+                }
+                
+                for(RevCommit parent : commit.getParents()) {
+                    ((BranchCommit)parent).branches.or(commit.branches);
+                }
+            }
+            
+            // A branch is merged if its latest commit is reachable from any other branch
+            for(int i = 0; i < tips.size(); i++) {
+                BranchCommit tip = tips.get(i);
+                if(tip != null) {
+                    BitSet others = (BitSet)tip.branches.clone();
+                    others.clear(i);
+                    merged.set(i, !others.isEmpty());
+                }
+            }
+        }
+    }
+    
+    File getWorkingFolder() {
+        return workingFolder;
+    }
+    
+    Config getConfig() {
+        return config;
+    }
+    
+    /**
+     * @return All branch refs
+     */
+    List<Ref> getRefs() {
+        return new ArrayList<>(refs.values());
+    }
+    
+    boolean hasRef(String refName) {
+        return refs.containsKey(refName);
+    }
+    
+    String getFullBranch() {
+        return fullBranch;
+    }
+    
+    String getPrimaryBranch() {
+        return primaryBranch;
+    }
+    
+    boolean isRefAtHead(Ref ref) {
+        return headId != null && Objects.equals(headId, ref.getObjectId());
+    }
+    
+    RevCommit getLatestCommit(String refName) {
+        return latestCommits.get(refName);
+    }
+    
+    /**
+     * @return The number of commits in the local branch that are not in its tracking branch
+     */
+    int getAheadCount(String shortName) {
+        TrackingStatus status = trackingStatuses.get(shortName);
+        return status != null ? status.aheadCount : 0;
+    }
+    
+    /**
+     * @return The number of commits in the tracking branch that are not in the local branch
+     */
+    int getBehindCount(String shortName) {
+        TrackingStatus status = trackingStatuses.get(shortName);
+        return status != null ? status.behindCount : 0;
+    }
+    
+    /**
+     * @return true if the latest commit of the branch is reachable from any other branch
+     */
+    boolean isMerged(String refName) {
+        Integer index = indexes.get(refName);
+        return index != null && merged.get(index);
+    }
+}
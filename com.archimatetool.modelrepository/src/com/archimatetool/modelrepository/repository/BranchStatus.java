@@ -14,12 +14,10 @@ import java.util.Map;
 import java.util.Optional;
 import java.util.stream.Collectors;
 
-import org.eclipse.jgit.api.Git;
 import org.eclipse.jgit.api.ListBranchCommand.ListMode;
 import org.eclipse.jgit.api.errors.GitAPIException;
 import org.eclipse.jgit.lib.Ref;
 import org.eclipse.jgit.lib.Repository;
-import org.eclipse.jgit.revwalk.RevWalk;
 
 /**
  * Status of all Branches for a Repository
@@ -38,22 +36,19 @@ public class BranchStatus {
      * @param options additional options
      */
     public BranchStatus(File repoFolder, BranchInfo.Option... options) throws IOException, GitAPIException {
-        try(Git git = Git.open(repoFolder)) {
+        try(GitUtils git = GitUtils.open(repoFolder)) {
             Repository repository = git.getRepository();
 
-            // This RevWalk should only be used once in BranchInfo#isMergedIntoOtherBranches
-            try(RevWalk revWalk = new RevWalk(repository)) {
-                revWalk.setRetainBody(false);
-                
-                // Get all known branches
-                for(Ref ref : git.branchList().setListMode(ListMode.ALL).call()) {
-                    BranchInfo info = new BranchInfo(repository, ref, revWalk, options);
-                    infos.put(info.getFullName(), info);
-                }
+            // Get all known branches and compute their status in one pass
+            BranchSnapshot snapshot = new BranchSnapshot(repository, git.branchList().setListMode(ListMode.ALL).call(), options);
+            
+            for(Ref ref : snapshot.getRefs()) {
+                BranchInfo info = new BranchInfo(snapshot, ref, options);
+                infos.put(info.getFullName(), info);
             }
             
             // Get current local branch
-            String head = repository.getFullBranch();
+            String head = snapshot.getFullBranch();
             if(head != null) {
                 currentLocalBranchInfo = infos.get(head);
             }
@@ -0,0 +1,121 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+package com.archimatetool.modelrepository.repository;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+
+/**
+ * Process-wide cache of the number of commits reachable from a commit.
+ *
+ * A commit's id identifies its whole history so the count for a commit never changes and can be shared between repositories.
+ * When a count is not cached the commits are walked back only as far as the most recent commit with a cached count,
+ * so after a commit, fetch or merge only the new commits are counted.
+ */
+class CommitCountCache {
+
+    private static final CommitCountCache instance = new CommitCountCache();
+    
+    /**
+     * Maximum number of cached counts
+     */
+    static int MAX_ENTRIES = 256;
+    
+    // Access ordered so that the least recently used count is removed first
+    private final Map<ObjectId, Integer> counts = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<ObjectId, Integer> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+    
+    static CommitCountCache getInstance() {
+        return instance;
+    }
+    
+    private CommitCountCache() {
+    }
+    
+    /**
+     * @return The number of commits reachable from tipId, including tipId
+     */
+    int getCommitCount(Repository repository, ObjectId tipId) throws IOException {
+        Integer cached = get(tipId);
+        if(cached != null) {
+            return cached;
+        }
+        
+        int count = 0;
+        
+        try(RevWalk revWalk = new RevWalk(repository)) {
+            revWalk.setRetainBody(false);
+            
+            RevCommit tip = revWalk.parseCommit(tipId);
+            revWalk.markStart(tip);
+            
+            // Walk back to the most recent commit that has a cached count
+            RevCommit base = null;
+            int baseCount = 0;
+            boolean hasMerge = false;
+            
+            for(RevCommit commit : revWalk) {
+                cached = get(commit);
+                if(cached != null) {
+                    base = commit;
+                    baseCount = cached;
+                    break;
+                }
+                
+                hasMerge |= commit.getParentCount() > 1;
+                count++;
+            }
+            
+            // If there was a merge commit other commits might be reachable from the tip but not from the base so count them
+            if(base != null && hasMerge) {
+                revWalk.reset();
+                revWalk.markStart(tip);
+                revWalk.markUninteresting(base);
+                
+                count = 0;
+                while(revWalk.next() != null) {
+                    count++;
+                }
+            }
+            
+            count += baseCount;
+        }
+        
+        put(tipId, count);
+        
+        return count;
+    }
+    
+    /**
+     * @return The number of cached counts
+     */
+    synchronized int size() {
+        return counts.size();
+    }
+    
+    synchronized void clear() {
+        counts.clear();
+    }
+    
+    private synchronized Integer get(AnyObjectId id) {
+        return counts.get(id);
+    }
+    
+    private synchronized void put(AnyObjectId id, int count) {
+        counts.put(id.copy(), count);
+    }
+}
@@ -6,25 +6,33 @@
 package com.archimatetool.modelrepository.repository;
 
 import java.io.IOException;
-import java.io.StringWriter;
+import java.util.Collection;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Objects;
 import java.util.Set;
-import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.eclipse.emf.compare.AttributeChange;
+import org.eclipse.emf.compare.Comparison;
 import org.eclipse.emf.compare.Diff;
 import org.eclipse.emf.compare.Match;
 import org.eclipse.emf.compare.ReferenceChange;
 import org.eclipse.emf.ecore.EObject;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.TreeWalk;
 import org.jdom2.Document;
 import org.jdom2.Element;
 import org.jdom2.JDOMException;
 import org.jdom2.output.Format;
-import org.jdom2.output.XMLOutputter;
 
 import com.archimatetool.editor.utils.StringUtils;
 import com.archimatetool.jdom.JDOMUtils;
@@ -38,6 +46,7 @@ import com.archimatetool.model.IDiagramModelComponent;
 import com.archimatetool.model.IFolder;
 import com.archimatetool.model.IIdentifier;
 import com.archimatetool.model.IProfile;
+import com.archimatetool.modelrepository.merge.MergeFactory;
 import com.archimatetool.modelrepository.merge.ModelComparison;
 
 /**
@@ -75,24 +84,30 @@ public class CommitManifest {
      *         Include all model object IDs.
      */
     public static String createManifestForInitialCommit(IArchimateModel model) {
-        Element rootElement = createRootElement();
-        Element changesElement = new Element(ELEMENT_CHANGES);
-        rootElement.addContent(changesElement);
+        return createManifest(getChangesForInitialCommit(model), false);
+    }
+    
+    /**
+     * @return the changes for the first commit, all model object IDs are added
+     */
+    static Map<String, Set<String>> getChangesForInitialCommit(IArchimateModel model) {
+        Map<String, Set<String>> index = new LinkedHashMap<>();
+        Set<String> added = Set.of(ADDED);
         
         // Model Id
         if(model.getId() != null) {
-            changesElement.addContent(createObjectElement(model.getId(), ADDED));
+            index.put(model.getId(), added);
         }
         
         // Other Ids
         for(Iterator<EObject> iter = model.eAllContents(); iter.hasNext();) {
             EObject eObject = iter.next();
             if(isValidObject(eObject)) {
-                changesElement.addContent(createObjectElement(((IIdentifier)eObject).getId(), ADDED));
+                index.put(((IIdentifier)eObject).getId(), added);
             }
         }
         
-        return getManifestAsString(rootElement);
+        return index;
     }
 
     /*
@@ -124,97 +139,168 @@ public class CommitManifest {
      * @return a manifest for a commit (that is not the first commit).
      */
     public static String createManifestForCommit(GitUtils utils, boolean amend) throws IOException {
+        Map<String, Set<String>> index = getChangesForCommit(utils, amend);
+        return index.isEmpty() ? "" : createManifest(index, amend);
+    }
+    
+    /**
+     * @return the changes for a commit (that is not the first commit) indexed by object id
+     */
+    static Map<String, Set<String>> getChangesForCommit(GitUtils utils, boolean amend) throws IOException {
         RevCommit latestCommit = utils.getLatestCommit().orElse(null);
         if(latestCommit == null) {
-            return "";
+            return new LinkedHashMap<>();
         }
         
-        // Compare working tree with the latest commit
-        ModelComparison modelComparison = new ModelComparison(new ArchiRepository(utils.getRepository().getWorkTree()), latestCommit).init();
-        Set<ObjectChange> changes = getChangedObjects(modelComparison);
+        // Use the changes recorded in the model change journal if it's valid for the latest commit and the saved model
+        Set<ObjectChange> changes = ModelChangeJournal.getChanges(utils.getRepository());
+        
+        // Else compare working tree with the latest commit
+        if(changes == null) {
+            ModelComparison modelComparison = new ModelComparison(new ArchiRepository(utils.getRepository().getWorkTree()), latestCommit).init();
+            changes = getChangedObjects(modelComparison.getComparison());
+        }
         
         // If amending also add the objects in the latest commit
         if(amend) {
             // Get the changes from the commit that we are amending and add them
-            Set<ObjectChange> previousChanges = getObjectChangesFromCommitMessage(latestCommit.getFullMessage());
+            Set<ObjectChange> previousChanges = getObjectChanges(utils.getRepository(), latestCommit);
             changes.addAll(previousChanges);
         }
         
-        /*
-         * Remove redundant changes
-         * 
-         * added   + deleted  = (both entries removed)
-         * added   + modified = added kept
-         * added   + moved    = added kept
-         * deleted + modified = deleted kept
-         * deleted + moved    = deleted kept
-         */
-        for(ObjectChange change : new HashSet<>(changes)) {
-            if(ADDED.equals(change.type())) {
-                ObjectChange other = getObjectChange(changes, change.id(), DELETED);
-                if(other != null) {
-                    changes.remove(change);
-                    changes.remove(other);
+        return indexChanges(changes);
+    }
+    
+    /**
+     * @return the changes for a merge commit indexed by object id.
+     *         The merged model is compared with our model in the commit that is at HEAD before the merge.
+     */
+    static Map<String, Set<String>> getChangesForMerge(GitUtils utils, IArchimateModel mergedModel, RevCommit ours) throws IOException {
+        IArchimateModel ourModel = utils.loadModel(ours);
+        if(ourModel == null) {
+            return new LinkedHashMap<>();
+        }
+        
+        return indexChanges(getChangedObjects(MergeFactory.createComparison(mergedModel, ourModel, null)));
+    }
+    
+    /**
+     * Get the ids of the objects that were changed between a base commit and a later commit from the manifests of the commits
+     * on the first parent line from tip back to base. A merge commit's manifest has its changes from its first parent so the
+     * commits merged into it don't need to be read.
+     * @return The ids of the changed objects, or null if base is not on the first parent line of tip or a commit on it changed
+     *         the model file and doesn't have a manifest
+     */
+    public static Set<String> getChangedObjectIds(Repository repository, RevCommit base, RevCommit tip) throws IOException {
+        Set<String> ids = new HashSet<>();
+        
+        try(ObjectReader reader = repository.newObjectReader(); RevWalk revWalk = new RevWalk(reader)) {
+            ManifestNotes notes = ManifestNotes.read(repository, reader);
+            
+            revWalk.setFirstParent(true);
+            revWalk.markStart(revWalk.parseCommit(tip));
+            revWalk.markUninteresting(revWalk.parseCommit(base));
+            
+            RevCommit last = null;
+            
+            for(RevCommit commit : revWalk) {
+                if(commit.getParentCount() == 0) {
+                    return null;
                 }
-            }
-
-            if(ADDED.equals(change.type()) || DELETED.equals(change.type())) {
-                ObjectChange other = getObjectChange(changes, change.id(), MODIFIED);
-                if(other != null) {
-                    changes.remove(other);
+                
+                Set<ObjectChange> changes = notes.getObjectChanges(revWalk, commit);
+                if(changes.isEmpty() && !isSameModelFile(reader, commit, revWalk.parseCommit(commit.getParent(0)))) {
+                    logger.info("Commit has no manifest: " + commit.getName());
+                    return null;
                 }
-
-                other = getObjectChange(changes, change.id(), MOVED);
-                if(other != null) {
-                    changes.remove(other);
+                
+                for(ObjectChange change : changes) {
+                    ids.add(change.id());
                 }
+                
+                last = commit;
+            }
+            
+            // The first parent line didn't reach base
+            if(last != null && !last.getParent(0).equals(base)) {
+                return null;
             }
         }
         
-        if(changes.isEmpty()) {
-            return "";
-        }
-
-        Element rootElement = createRootElement();
-        
-        // Amended commit
-        if(amend) {
-            rootElement.setAttribute(ATTRIBUTE_AMENDED, "true");
+        return ids;
+    }
+    
+    /**
+     * @return true if the model file is the same in two commits
+     */
+    private static boolean isSameModelFile(ObjectReader reader, RevCommit commit1, RevCommit commit2) throws IOException {
+        try(TreeWalk treeWalk1 = TreeWalk.forPath(reader, RepoConstants.MODEL_FILENAME, commit1.getTree());
+                TreeWalk treeWalk2 = TreeWalk.forPath(reader, RepoConstants.MODEL_FILENAME, commit2.getTree())) {
+            ObjectId id1 = treeWalk1 != null ? treeWalk1.getObjectId(0) : null;
+            ObjectId id2 = treeWalk2 != null ? treeWalk2.getObjectId(0) : null;
+            return Objects.equals(id1, id2);
         }
+    }
+    
+    /**
+     * @return a manifest for the changes indexed by object id
+     */
+    static String createManifest(Map<String, Set<String>> index, boolean amend) {
+        ManifestWriter writer = new ManifestWriter(amend);
         
-        Element changesElement = new Element(ELEMENT_CHANGES);
-        rootElement.addContent(changesElement);
-        
-        for(ObjectChange change : changes) {
-            changesElement.addContent(createObjectElement(change.id(), change.type()));
+        for(Entry<String, Set<String>> entry : index.entrySet()) {
+            for(String type : entry.getValue()) {
+                writer.addObject(entry.getKey(), type);
+            }
         }
         
-        return getManifestAsString(rootElement);
+        return writer.toString();
     }
     
     /**
-     * @return an ObjectChange in the given set matching id and type.
-     *         Because we use a Set there should be only one match.
+     * Index the changes by object id and remove redundant changes
+     * 
+     * added   + deleted  = (both entries removed)
+     * added   + modified = added kept
+     * added   + moved    = added kept
+     * deleted + modified = deleted kept
+     * deleted + moved    = deleted kept
+     * 
+     * @return the change types of each object, in the order that the objects are first changed
      */
-    private static ObjectChange getObjectChange(Set<ObjectChange> changes, String id, String type) {
+    static Map<String, Set<String>> indexChanges(Collection<ObjectChange> changes) {
+        Map<String, Set<String>> index = new LinkedHashMap<>();
+        
         for(ObjectChange change : changes) {
-            if(change.id().equals(id) && change.type().equals(type)) {
-                return change;
+            index.computeIfAbsent(change.id(), id -> new LinkedHashSet<>(2)).add(change.type());
+        }
+        
+        for(Iterator<Set<String>> iter = index.values().iterator(); iter.hasNext();) {
+            Set<String> types = iter.next();
+            boolean added = types.contains(ADDED);
+            boolean deleted = types.contains(DELETED);
+            
+            if(added && deleted) {
+                iter.remove();
+            }
+            else if(added || deleted) {
+                types.remove(MODIFIED);
+                types.remove(MOVED);
             }
         }
         
-        return null;
+        return index;
     }
     
     /**
-     * @return a Set of ObjectChanges from the ModelComparison comparing the working tree with the latest commit
+     * @return a Set of ObjectChanges from a Comparison of a newer model (left) with an older model (right)
      */
-    private static Set<ObjectChange> getChangedObjects(ModelComparison modelComparison) {
+    private static Set<ObjectChange> getChangedObjects(Comparison comparison) {
         boolean debug = false;
         
         Set<ObjectChange> changes = new LinkedHashSet<>();
         
-        for(Diff diff : modelComparison.getComparison().getDifferences()) {
+        for(Diff diff : comparison.getDifferences()) {
             Match match = diff.getMatch();
             
             if(debug) {
@@ -269,6 +355,23 @@ public class CommitManifest {
             return null;
         }
         
+        eObject = getOwningObject(eObject);
+        
+        // Folder member added or deleted, so get member object
+        if(eObject instanceof IFolder && diff instanceof ReferenceChange refChange
+                                      && refChange.getValue() instanceof IArchimateModelObject member) {
+            eObject = member;
+        }
+        
+        return isValidObject(eObject) ? eObject : null;
+    }
+    
+    /**
+     * @return The object that is recorded as changed when eObject changes.
+     * If it's Bounds, Properties, Feature or Profile get its parent eContainer.
+     * If it's a diagram object get the diagram itself.
+     */
+    static EObject getOwningObject(EObject eObject) {
         // Get the parent eContainer if eObject is Bounds, Properties, Feature, Profile
         if((!(eObject instanceof IArchimateModelObject) || eObject instanceof IProfile)) {
             eObject = eObject.eContainer();
@@ -279,13 +382,7 @@ public class CommitManifest {
             eObject = dmc.getDiagramModel();
         }
         
-        // Folder member added or deleted, so get member object
-        if(eObject instanceof IFolder && diff instanceof ReferenceChange refChange
-                                      && refChange.getValue() instanceof IArchimateModelObject member) {
-            eObject = member;
-        }
-        
-        return isValidObject(eObject) ? eObject : null;
+        return eObject;
     }
     
     /**
@@ -326,6 +423,15 @@ public class CommitManifest {
         return manifest != null ? manifest.contains("<object id=\"" + objectId) : false;
     }
     
+    /**
+     * @return ObjectChange set from the commit's manifest note if it has one, else from the commit message
+     */
+    static Set<ObjectChange> getObjectChanges(Repository repository, RevCommit commit) throws IOException {
+        try(ObjectReader reader = repository.newObjectReader(); RevWalk revWalk = new RevWalk(reader)) {
+            return ManifestNotes.read(repository, reader).getObjectChanges(revWalk, commit);
+        }
+    }
+    
     /**
      * @return ObjectChange set from the commit message
      */
@@ -384,45 +490,86 @@ public class CommitManifest {
     }
     
     /**
-     * @return JDOM manifest root element
+     * Writes the manifest as objects are added rather than building a JDOM tree of every object first.
+     * The output is the same as JDOM's pretty format.
      */
-    private static Element createRootElement() {
-        return new Element(ELEMENT_MANIFEST)
-                   .setAttribute(ATTRIBUTE_VERSION, VERSION);
-    }
-    
-    /**
-     * @return the manifest written from JDOM to a String
-     */
-    private static String getManifestAsString(Element element) {
-        try(StringWriter out = new StringWriter()) {
-            new XMLOutputter(Format.getPrettyFormat()).output(element, out);
-            return PRE_CR + out.toString();
+    private static class ManifestWriter {
+        private final StringBuilder sb = new StringBuilder(PRE_CR);
+        private final String indent;
+        private final String lineSeparator;
+        private int count;
+        
+        ManifestWriter(boolean amended) {
+            Format format = Format.getPrettyFormat();
+            indent = format.getIndent();
+            lineSeparator = format.getLineSeparator();
+            
+            sb.append('<').append(ELEMENT_MANIFEST);
+            appendAttribute(ATTRIBUTE_VERSION, VERSION);
+            if(amended) {
+                appendAttribute(ATTRIBUTE_AMENDED, "true");
+            }
+            sb.append('>').append(lineSeparator);
         }
-        catch(IOException ex) {
-            ex.printStackTrace();
-            logger.log(Level.SEVERE, "Could not output manifest", ex);
-            return "";
+        
+        void addObject(String id, String changeType) {
+            if(count++ == 0) {
+                sb.append(indent).append('<').append(ELEMENT_CHANGES).append('>').append(lineSeparator);
+            }
+            
+            sb.append(indent).append(indent).append('<').append(ELEMENT_OBJECT);
+            appendAttribute(ATTRIBUTE_ID, id);
+            appendAttribute(ATTRIBUTE_CHANGE, changeType);
+            sb.append(" />").append(lineSeparator);
+        }
+        
+        private void appendAttribute(String name, String value) {
+            sb.append(' ').append(name).append("=\"");
+            
+            for(int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                switch(c) {
+                    case '&' -> sb.append("&amp;");
+                    case '<' -> sb.append("&lt;");
+                    case '>' -> sb.append("&gt;");
+                    case '"' -> sb.append("&quot;");
+                    case '\t' -> sb.append("&#x9;");
+                    case '\n' -> sb.append("&#xA;");
+                    case '\r' -> sb.append("&#xD;");
+                    default -> sb.append(c);
+                }
+            }
+            
+            sb.append('"');
+        }
+        
+        @Override
+        public String toString() {
+            if(count == 0) {
+                sb.append(indent).append('<').append(ELEMENT_CHANGES).append(" />").append(lineSeparator);
+            }
+            else {
+                sb.append(indent).append("</").append(ELEMENT_CHANGES).append('>').append(lineSeparator);
+            }
+            
+            return sb.append(MANIFEST_END).toString();
         }
     }
     
     /**
-     * @return a JDOM element for an object
+     * @return true if eObject is of a type that we will write to the manifest 
      */
-    private static Element createObjectElement(String id, String changeType) {
-        return new Element(ELEMENT_OBJECT)
-                   .setAttribute(ATTRIBUTE_ID, id)
-                   .setAttribute(ATTRIBUTE_CHANGE, changeType);
+    static boolean isValidObject(EObject eObject) {
+        return isManifestType(eObject) && ((IIdentifier)eObject).getId() != null;
     }
     
     /**
-     * @return true if eObject is of a type that we will write to the manifest 
+     * @return true if eObject is of a type that we write to the manifest, whether or not it has an id
      */
-    static boolean isValidObject(EObject eObject) {
-        return (eObject instanceof IArchimateModel
+    public static boolean isManifestType(EObject eObject) {
+        return eObject instanceof IArchimateModel
                 || eObject instanceof IFolder
                 || eObject instanceof IArchimateConcept
-                || eObject instanceof IDiagramModel)
-                && ((IIdentifier)eObject).getId() != null;
+                || eObject instanceof IDiagramModel;
     }
 }
@@ -5,30 +5,50 @@
  */
 package com.archimatetool.modelrepository.repository;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
+import org.eclipse.emf.ecore.resource.Resource;
+import org.eclipse.emf.ecore.util.EcoreUtil;
 import org.eclipse.jgit.api.Git;
 import org.eclipse.jgit.api.ListBranchCommand.ListMode;
+import org.eclipse.jgit.api.PushCommand;
 import org.eclipse.jgit.api.ResetCommand.ResetType;
 import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.api.errors.JGitInternalException;
+import org.eclipse.jgit.dircache.DirCache;
+import org.eclipse.jgit.dircache.DirCacheBuildIterator;
+import org.eclipse.jgit.dircache.DirCacheBuilder;
+import org.eclipse.jgit.dircache.DirCacheEntry;
+import org.eclipse.jgit.dircache.DirCacheIterator;
 import org.eclipse.jgit.errors.ConfigInvalidException;
+import org.eclipse.jgit.lib.BitmapIndex;
+import org.eclipse.jgit.lib.BitmapIndex.Bitmap;
+import org.eclipse.jgit.lib.CommitBuilder;
 import org.eclipse.jgit.lib.ConfigConstants;
+import org.eclipse.jgit.lib.Constants;
 import org.eclipse.jgit.lib.CoreConfig.EolStreamType;
+import org.eclipse.jgit.lib.FileMode;
 import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
 import org.eclipse.jgit.lib.ObjectLoader;
+import org.eclipse.jgit.lib.ObjectReader;
 import org.eclipse.jgit.lib.PersonIdent;
 import org.eclipse.jgit.lib.ProgressMonitor;
 import org.eclipse.jgit.lib.Ref;
@@ -37,6 +57,7 @@ import org.eclipse.jgit.lib.RefUpdate.Result;
 import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.lib.StoredConfig;
 import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevTree;
 import org.eclipse.jgit.revwalk.RevWalk;
 import org.eclipse.jgit.revwalk.filter.RevFilter;
 import org.eclipse.jgit.transport.CredentialsProvider;
@@ -48,13 +69,21 @@ import org.eclipse.jgit.transport.RemoteRefUpdate;
 import org.eclipse.jgit.transport.RemoteRefUpdate.Status;
 import org.eclipse.jgit.transport.TagOpt;
 import org.eclipse.jgit.transport.URIish;
+import org.eclipse.jgit.treewalk.FileTreeIterator;
 import org.eclipse.jgit.treewalk.TreeWalk;
 import org.eclipse.jgit.treewalk.TreeWalk.OperationType;
+import org.eclipse.jgit.treewalk.WorkingTreeIterator;
+import org.eclipse.jgit.treewalk.filter.AndTreeFilter;
 import org.eclipse.jgit.treewalk.filter.PathFilter;
+import org.eclipse.jgit.treewalk.filter.PathFilterGroup;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
 import org.eclipse.jgit.util.io.EolStreamTypeUtil;
 
+import com.archimatetool.editor.model.IArchiveManager;
+import com.archimatetool.editor.model.compatibility.ModelCompatibility;
 import com.archimatetool.editor.utils.StringUtils;
 import com.archimatetool.model.IArchimateModel;
+import com.archimatetool.model.util.ArchimateResourceFactory;
 
 /**
  * Extends JGit's Git class to offer some convenience methods.
@@ -65,10 +94,22 @@ import com.archimatetool.model.IArchimateModel;
 @SuppressWarnings("nls")
 public class GitUtils extends Git {
     
+    private static Logger logger = Logger.getLogger(GitUtils.class.getName());
+    
+    /**
+     * Lock for adding images to the image storage that is shared by all archive managers when models are loaded on more than one thread
+     */
+    private static final Object imagesLock = new Object();
+    
     private final boolean closeRepo;
     
+    /**
+     * Open a GitUtils on a shared Repository from the RepositoryPool.
+     * The Repository is released back to the pool when this GitUtils is closed.
+     * @param repoFolder Either the working folder or the ".git" folder of the repository
+     */
     public static GitUtils open(File repoFolder) throws IOException {
-        return new GitUtils(Git.open(repoFolder).getRepository(), true);
+        return new GitUtils(RepositoryPool.getInstance().acquire(repoFolder), true);
     }
     
     public static GitUtils wrap(Repository repository) {
@@ -90,24 +131,28 @@ public class GitUtils extends Git {
         // Check lock file is deleted
         checkLockFile();
         
-        // Add modified files to index
-        add().addFilepattern(".").call();
-        //add().addFilepattern(RepoConstants.MODEL_FILENAME).addFilepattern(RepoConstants.IMAGES_FOLDER).call();
-        
-        // Add missing (deleted) files to the index
-        for(String s : status().call().getMissing()) {
-            rm().addFilepattern(s).call();
+        // Add new and modified files to the index and remove missing (deleted) files
+        try {
+            updateIndex();
+        }
+        catch(IOException ex) {
+            throw new JGitInternalException(ex.getMessage(), ex);
         }
         
-        // In JGit 7.2 and later remove the add(), status() and rm() calls above and simply do this:
-        //add().setAll(true).addFilepattern(".").call();
-        
-        return commit()
+        RevCommit commit = commit()
                 .setAuthor(getUserDetails())
                 .setMessage(commitMessage)
                 .setAmend(amend)
                 .setSign(false) // No GPG signing
                 .call();
+        
+        // Add the new commit to the model object index
+        ModelObjectIndex.updateQuietly(getRepository());
+        
+        // Start a new model change journal against the new commit
+        ModelChangeJournal.getInstance().committed(getRepository());
+        
+        return commit;
     }
 
     /**
@@ -117,8 +162,11 @@ public class GitUtils extends Git {
      * @return RevCommit
      */
     public RevCommit commitChangesWithManifest(String commitMessage, boolean amend) throws GitAPIException, IOException {
-        String manifest = CommitManifest.createManifestForCommit(this, amend);
-        return commitChanges(commitMessage + manifest, amend);
+        Map<String, Set<String>> changes = CommitManifest.getChangesForCommit(this, amend);
+        String manifest = changes.isEmpty() ? "" : CommitManifest.createManifest(changes, amend);
+        RevCommit commit = commitChanges(commitMessage + manifest, amend);
+        ManifestNotes.addQuietly(this, commit, changes);
+        return commit;
     }
     
     /**
@@ -128,8 +176,81 @@ public class GitUtils extends Git {
      * @return RevCommit
      */
     public RevCommit commitModelWithManifest(IArchimateModel model, String commitMessage) throws GitAPIException {
-        String manifest = CommitManifest.createManifestForInitialCommit(model);
-        return commitChanges(commitMessage + manifest, false);
+        Map<String, Set<String>> changes = CommitManifest.getChangesForInitialCommit(model);
+        RevCommit commit = commitChanges(commitMessage + CommitManifest.createManifest(changes, false), false);
+        ManifestNotes.addQuietly(this, commit, changes);
+        return commit;
+    }
+    
+    /**
+     * Commit a merged model as the merge commit of HEAD and another commit without a textual merge or checkout.
+     * The merged model and its images are written to the object database and the tree of the merge commit is built in memory
+     * from them and the other files in the trees of ours, theirs and their base commit.
+     * HEAD is moved to the merge commit and only then are the index and working tree updated.
+     * @param model The merged model
+     * @param ours The commit at HEAD
+     * @param theirs The commit that is merged
+     * @param base The common ancestor of ours and theirs
+     * @param commitMessage The commit message. The manifest is added to this.
+     * @return The merge commit, or null if a file that is not the model file or an image was changed in both ours and theirs
+     */
+    public RevCommit commitMergedModel(IArchimateModel model, RevCommit ours, RevCommit theirs, RevCommit base, String commitMessage) throws IOException, GitAPIException {
+        Repository repository = getRepository();
+        
+        // Changes between our model and the merged model
+        Map<String, Set<String>> changes = CommitManifest.getChangesForMerge(this, model, ours);
+        String manifest = changes.isEmpty() ? "" : CommitManifest.createManifest(changes, false);
+        
+        RevCommit commit;
+        
+        try(ObjectInserter inserter = repository.newObjectInserter()) {
+            ObjectId treeId = insertMergedTree(inserter, model, ours, theirs, base);
+            if(treeId == null) {
+                return null;
+            }
+            
+            CommitBuilder commitBuilder = new CommitBuilder();
+            commitBuilder.setTreeId(treeId);
+            commitBuilder.setParentIds(ours, theirs);
+            commitBuilder.setAuthor(getUserDetails());
+            commitBuilder.setCommitter(getUserDetails());
+            commitBuilder.setMessage(commitMessage + manifest);
+            
+            ObjectId commitId = inserter.insert(commitBuilder);
+            inserter.flush();
+            
+            try(RevWalk revWalk = new RevWalk(repository)) {
+                commit = revWalk.parseCommit(commitId);
+            }
+        }
+        
+        // Move HEAD to the merge commit as long as it's still at ours
+        RefUpdate refUpdate = repository.updateRef(Constants.HEAD);
+        refUpdate.setNewObjectId(commit);
+        refUpdate.setExpectedOldObjectId(ours);
+        refUpdate.setRefLogMessage("commit (merge): " + commit.getShortMessage(), false);
+        
+        Result result = refUpdate.update();
+        switch(result) {
+            case NEW, FAST_FORWARD, FORCED -> {
+            }
+            default -> {
+                throw new IOException("Failed to update HEAD to merge commit: " + result);
+            }
+        }
+        
+        // Update the index and working tree. Only files that are different to ours are written.
+        reset().setRef(commit.getName()).setMode(ResetType.HARD).call();
+        
+        // Add the new commit to the model object index
+        ModelObjectIndex.updateQuietly(repository);
+        
+        ManifestNotes.addQuietly(this, commit, changes);
+        
+        // Start a new model change journal against the new commit
+        ModelChangeJournal.getInstance().committed(repository);
+        
+        return commit;
     }
 
     /**
@@ -138,21 +259,70 @@ public class GitUtils extends Git {
     public boolean hasChangesToCommit() throws GitAPIException {
         return !status().call().isClean();
     }
+    
+    /**
+     * Fast check for changes to commit in any file in the working tree.
+     * This gives the same answer as hasChangesToCommit() but files are compared with the index by stat data and are only hashed if this is ambiguous
+     * @return true if there are changes to commit in the working tree
+     */
+    public boolean hasChangesToCommitFast() throws IOException {
+        return new WorkingTreeStatus(getRepository(), true).hasChanges();
+    }
+    
+    /**
+     * Fast check for changes to commit in the model file and images folder only.
+     * Files are compared with the index by stat data and are only hashed if this is ambiguous
+     * @return true if there are changes to commit in the model file or images folder
+     */
+    public boolean hasModelChangesToCommit() throws IOException {
+        return new WorkingTreeStatus(getRepository()).hasChanges();
+    }
+    
+    /**
+     * Fast check for changes to the model file and images folder in the working tree compared with a commit.
+     * Files are compared with the index by stat data and the index is compared with the commit's tree by blob id.
+     * @return true if the model file or images in the working tree might be different to those in commit
+     */
+    public boolean hasModelChanges(RevCommit commit) throws IOException {
+        return new WorkingTreeStatus(getRepository()).hasChanges(commit.getTree());
+    }
+    
+    /**
+     * Fast check that the model file and images folder are the same in two commits by comparing blob and tree ids.
+     * The contents of a sub-tree with the same id in both commits are not read.
+     * @return true if the model file and images are the same in both commits
+     */
+    public boolean isSameModel(RevCommit commit1, RevCommit commit2) throws IOException {
+        try(TreeWalk treeWalk = new TreeWalk(getRepository())) {
+            treeWalk.setRecursive(true);
+            treeWalk.setFilter(AndTreeFilter.create(PathFilterGroup.createFromStrings(RepoConstants.MODEL_FILENAME, RepoConstants.IMAGES_FOLDER),
+                                                    TreeFilter.ANY_DIFF));
+            treeWalk.addTree(commit1.getTree());
+            treeWalk.addTree(commit2.getTree());
+            return !treeWalk.next();
+        }
+    }
 
     /**
      * Push to Remote
+     * The manifest notes are pushed in the same push. If the remote has notes that we don't have this is rejected
+     * and they are merged on the next fetch. This is not fatal as the manifests are also in the commit messages.
      * @return The first PushResult from the call.
      *         As we're only pushing to one remote URI there should only be one PushResult
      */
     public PushResult pushToRemote(CredentialsProvider credentialsProvider, ProgressMonitor monitor) throws IOException, GitAPIException {
-        Iterable<PushResult> results = push()
+        PushCommand pushCommand = push()
                 .setCredentialsProvider(credentialsProvider)
                 .add(getRepository().getFullBranch()) // Push current branch
                 .setPushTags() // Push tags
-                .setProgressMonitor(monitor)
-                .call();
+                .setProgressMonitor(monitor);
+        
+        // Push manifest notes if we have any
+        if(getRepository().exactRef(RepoConstants.R_NOTES_MANIFEST) != null) {
+            pushCommand.add(RepoConstants.R_NOTES_MANIFEST);
+        }
         
-        PushResult pushResult = results.iterator().next(); // Get the first one
+        PushResult pushResult = pushCommand.call().iterator().next(); // Get the first one
         
         // If current branch push is successful, ensure we are tracking it
         // Do this *after* a push attempt in case of failure
@@ -164,11 +334,33 @@ public class GitUtils extends Git {
             }
         }
         
+        RemoteRefUpdate notesUpdate = pushResult.getRemoteUpdate(RepoConstants.R_NOTES_MANIFEST);
+        if(notesUpdate != null && notesUpdate.getStatus() != Status.OK && notesUpdate.getStatus() != Status.UP_TO_DATE) {
+            logger.info("Manifest notes not pushed: " + notesUpdate.getStatus());
+        }
+        
         return pushResult;
     }
     
+    /**
+     * @return true if refName is a notes ref.
+     * Notes are pushed and fetched with the current branch but their updates are not changes to the model.
+     */
+    public static boolean isNotesRef(String refName) {
+        return refName != null && refName.startsWith(Constants.R_NOTES);
+    }
+    
+    /**
+     * @return true if fetchResult has any tracking ref updates that are not of notes
+     */
+    public static boolean hasTrackingRefUpdates(FetchResult fetchResult) {
+        return fetchResult.getTrackingRefUpdates().stream().anyMatch(refUpdate -> !isNotesRef(refUpdate.getLocalName()));
+    }
+    
     /**
      * Fetch from Remote
+     * The manifest notes are fetched with the branches and merged with ours.
+     * Use hasTrackingRefUpdates() to check whether there were updates other than of the notes.
      * @return a List of FetchResults
      * If fetchTags is true the first FetchResult will be for branches and the second for tags.
      * If fetchTags is false the first and only FetchResult will be for branches.
@@ -176,11 +368,11 @@ public class GitUtils extends Git {
     public List<FetchResult> fetchFromRemote(CredentialsProvider credentialsProvider, ProgressMonitor monitor, boolean fetchTags) throws GitAPIException, IOException {
         List<FetchResult> fetchresults = new ArrayList<>();
         
-        // Fetch branches
+        // Fetch branches and manifest notes
         FetchResult branchFetchResult = fetch()
                 .setCredentialsProvider(credentialsProvider)
                 .setProgressMonitor(monitor)
-                .setRefSpecs(RepoConstants.REFSPEC_FETCH_ALL_BRANCHES) // Explicitly set this rather than from config file
+                .setRefSpecs(RepoConstants.REFSPEC_FETCH_ALL_BRANCHES, RepoConstants.REFSPEC_FETCH_MANIFEST_NOTES) // Explicitly set this rather than from config file
                 .setRemoveDeletedRefs(true) // Delete any remote branch refs that we have but are not on the remote
                 .setTagOpt(TagOpt.NO_TAGS)  // We'll fetch tags separately
                 .call();
@@ -206,9 +398,28 @@ public class GitUtils extends Git {
             setTrackedBranch(getRepository().getBranch());
         }
         
+        // Merge the manifest notes before indexing so that they can be read
+        mergeManifestNotes();
+        
+        // Add the fetched commits to the model object index
+        ModelObjectIndex.updateQuietly(getRepository());
+        
         return fetchresults;
     }
     
+    /**
+     * Merge the fetched manifest notes with ours.
+     * Failing to merge the notes is not fatal as the manifests are also in the commit messages.
+     */
+    private void mergeManifestNotes() {
+        try {
+            ManifestNotes.mergeOriginNotes(getRepository());
+        }
+        catch(IOException ex) {
+            logger.log(Level.WARNING, "Could not merge manifest notes", ex);
+        }
+    }
+    
     /**
      * Do a dry run Fetch on all branches but no tags on remote to check if there are updates
      */
@@ -516,28 +727,17 @@ public class GitUtils extends Git {
      * Return true if there are 2 or more commits for current HEAD
      */
     public boolean hasMoreThanOneCommit() throws IOException, GitAPIException {
-        return getCommitCount(2) > 1;
+        // If the HEAD commit has a parent there is more than one commit
+        return getCommitParentCount(RepoConstants.HEAD) > 0;
     }
     
     /**
      * Return the commit log count for the current HEAD branch
-     * This is expensive and shouldn't be called to often
+     * Counts are cached by commit so only commits added since the last count are walked
      */
     public int getCommitCount() throws IOException, GitAPIException {
-        return getCommitCount(-1);
-    }
-    
-    private int getCommitCount(int maxCount) throws IOException, GitAPIException {
-        int count = 0;
-        
-        try(RevWalk revWalk = (RevWalk)log().setMaxCount(maxCount).call()) {
-            revWalk.setRetainBody(false);
-            while(revWalk.next() != null) {
-                count++;
-            }
-        }
-        
-        return count;
+        ObjectId headID = getRepository().resolve(RepoConstants.HEAD);
+        return headID != null ? CommitCountCache.getInstance().getCommitCount(getRepository(), headID) : 0;
     }
 
     /**
@@ -584,6 +784,15 @@ public class GitUtils extends Git {
             ObjectId tipID = getRepository().resolve(tipRevStr);
             RevCommit tipCommit = revWalk.lookupCommit(tipID);
             
+            // If repository maintenance wrote a reachability bitmap for the tip commit we don't need to walk
+            BitmapIndex bitmapIndex = revWalk.getObjectReader().getBitmapIndex();
+            if(bitmapIndex != null) {
+                Bitmap bitmap = bitmapIndex.getBitmap(tipID);
+                if(bitmap != null) {
+                    return bitmapIndex.newBitmapBuilder().or(bitmap).contains(baseID);
+                }
+            }
+            
             return revWalk.isMergedInto(baseCommit, tipCommit);
         }
     }
@@ -591,37 +800,13 @@ public class GitUtils extends Git {
     /**
      * Checks whether the repository has multiple root commits (commits with no parents)
      * that are reachable from any refs (branches, tags, etc.).
+     * The roots are persisted so that only commits added since the last check are walked.
      * 
      * @return true if the repo contains multiple roots
      */
     public boolean hasMultipleRoots() throws IOException {
-        try(RevWalk revWalk = new RevWalk(getRepository())) {
-            revWalk.setRetainBody(false);
-            
-            // Mark all branch/tag tips as starting points
-            for(Ref ref : getRepository().getRefDatabase().getRefs()) {
-                ObjectId id = ref.getObjectId();
-                if(id != null) {
-                    revWalk.markStart(revWalk.parseCommit(id));
-                }
-            }
-
-            // Collect root commits
-            Set<RevCommit> roots = new HashSet<>();
-
-            for(RevCommit commit : revWalk) {
-                if(commit.getParentCount() == 0) { // This is a root commit
-                    roots.add(commit);
-                }
-            }
-            
-            // Should only be one
-            if(roots.size() > 1) {
-                return true;
-            }
-        }
-        
-        return false;
+        // Should only be one
+        return RootCommitIndex.getRoots(getRepository()).size() > 1;
     }
     
     /**
@@ -745,11 +930,198 @@ public class GitUtils extends Git {
         }
     }
     
+    /**
+     * Load a model from a commit directly from the object database without extracting the commit to disk
+     * @param revStr The id of the commit to load from.
+     *               This could be "HEAD" or "refs/remotes/origin/main", or a SHA-1 - same as for Repository#resolve()
+     * @return The model or null if the commit or the model file in the commit was not found
+     */
+    public IArchimateModel loadModel(String revStr) throws IOException {
+        ObjectId commitId = getRepository().resolve(revStr);
+        if(commitId == null) {
+            return null;
+        }
+        
+        try(RevWalk revWalk = new RevWalk(getRepository())) {
+            return loadModel(revWalk.parseCommit(commitId));
+        }
+    }
+    
+    /**
+     * Load a model from a commit directly from the object database without extracting the commit to disk.
+     * The model file is parsed from the blob's stream and only the images that are referenced in the model
+     * are read from their blobs and added to the model's archive manager.
+     * Models that are loaded more than once are cached in the {@link ModelCache} keyed by the model blob and images tree.
+     * The returned model is never the cached model so it can be changed by the caller.
+     * The model's file is not set.
+     * @param commit The commit to load from
+     * @return The model or null if the model file in the commit was not found
+     */
+    public IArchimateModel loadModel(RevCommit commit) throws IOException {
+        try(ObjectReader reader = getRepository().newObjectReader()) {
+            // Find the model file blob
+            ObjectId modelBlobId = getObjectId(reader, commit.getTree(), RepoConstants.MODEL_FILENAME);
+            if(modelBlobId == null) {
+                return null;
+            }
+            
+            // Images tree might not exist
+            ObjectId imagesTreeId = getObjectId(reader, commit.getTree(), RepoConstants.IMAGES_FOLDER);
+            if(imagesTreeId == null) {
+                imagesTreeId = ObjectId.zeroId();
+            }
+            
+            return ModelCache.getInstance().get(new ModelCache.Key(modelBlobId, imagesTreeId), () -> {
+                // Load the model from the blob's stream
+                IArchimateModel model;
+                try(InputStream in = reader.open(modelBlobId, Constants.OBJ_BLOB).openStream()) {
+                    model = loadModel(in);
+                }
+                
+                // Add an archive manager and load any referenced images
+                IArchiveManager archiveManager = IArchiveManager.FACTORY.createArchiveManager(model);
+                model.setAdapter(IArchiveManager.class, archiveManager);
+                long imagesSize = loadImages(reader, commit.getTree(), archiveManager);
+                
+                return new ModelCache.LoadedModel(model, ModelCache.estimateWeight(model, imagesSize));
+            });
+        }
+    }
+    
+    /**
+     * @return The ObjectId of the model file blob in a commit, or null if the model file in the commit was not found
+     */
+    public ObjectId getModelBlobId(RevCommit commit) throws IOException {
+        try(ObjectReader reader = getRepository().newObjectReader()) {
+            return getObjectId(reader, commit.getTree(), RepoConstants.MODEL_FILENAME);
+        }
+    }
+    
+    /**
+     * Read the bytes of images from their blobs in a commit without loading the commit's model
+     * @param commit The commit to read from
+     * @param imagePaths The paths of the images. These are the same as their paths in the commit's tree.
+     * @return The bytes of the images that were found keyed by path
+     */
+    public Map<String, byte[]> getImages(RevCommit commit, Collection<String> imagePaths) throws IOException {
+        Map<String, byte[]> images = new HashMap<>();
+        
+        if(imagePaths.isEmpty()) {
+            return images;
+        }
+        
+        try(TreeWalk treeWalk = new TreeWalk(getRepository())) {
+            treeWalk.addTree(commit.getTree());
+            treeWalk.setRecursive(true);
+            treeWalk.setFilter(PathFilterGroup.createFromStrings(imagePaths));
+            
+            while(treeWalk.next()) {
+                ObjectLoader loader = treeWalk.getObjectReader().open(treeWalk.getObjectId(0), Constants.OBJ_BLOB);
+                images.put(treeWalk.getPathString(), loader.getBytes(Integer.MAX_VALUE));
+            }
+        }
+        
+        return images;
+    }
+    
+    /**
+     * @return The ObjectId of the entry at path in tree, or null if not found
+     */
+    private ObjectId getObjectId(ObjectReader reader, RevTree tree, String path) throws IOException {
+        try(TreeWalk treeWalk = TreeWalk.forPath(reader, path, tree)) {
+            return treeWalk != null ? treeWalk.getObjectId(0) : null;
+        }
+    }
+    
+    /**
+     * Load a model from an input stream
+     */
+    private IArchimateModel loadModel(InputStream in) throws IOException {
+        // The URI is not used to load the model but resolves relative references
+        Resource resource = ArchimateResourceFactory.createNewResource(new File(getRepository().getWorkTree(), RepoConstants.MODEL_FILENAME));
+        ModelCompatibility modelCompatibility = new ModelCompatibility(resource);
+        
+        try {
+            resource.load(in, null);
+        }
+        catch(IOException ex) {
+            // Error occured loading model. Was it a disaster?
+            try {
+                modelCompatibility.checkErrors();
+            }
+            catch(Exception ex1) {
+                throw new IOException(ex1);
+            }
+        }
+        
+        if(resource.getContents().isEmpty() || !(resource.getContents().get(0) instanceof IArchimateModel model)) {
+            throw new IOException("Resource does not contain a model");
+        }
+        
+        try {
+            // Check for a later model version and fix any backward compatibility issues
+            modelCompatibility.checkVersion();
+            modelCompatibility.fixCompatibility();
+        }
+        catch(Exception ex) {
+            throw new IOException(ex);
+        }
+        
+        return model;
+    }
+    
+    /**
+     * Read the images referenced in the model from their blobs in the tree and add them to the archive manager
+     * @return The total size in bytes of the images read
+     */
+    private long loadImages(ObjectReader reader, RevTree tree, IArchiveManager archiveManager) throws IOException {
+        long size = 0;
+        
+        Set<String> imagePaths = archiveManager.getImagePaths();
+        if(imagePaths.isEmpty()) {
+            return size;
+        }
+        
+        try(TreeWalk treeWalk = new TreeWalk(reader)) {
+            treeWalk.addTree(tree);
+            treeWalk.setRecursive(true);
+            treeWalk.setFilter(PathFilterGroup.createFromStrings(imagePaths));
+            
+            while(treeWalk.next()) {
+                String imagePath = treeWalk.getPathString();
+                
+                // Image paths are derived from the image's content so if the image was already loaded for another model
+                // its bytes are the same and are shared so don't read it again
+                byte[] loadedBytes = archiveManager.getBytesFromEntry(imagePath);
+                if(loadedBytes != null) {
+                    size += loadedBytes.length;
+                    continue;
+                }
+                
+                byte[] bytes = reader.open(treeWalk.getObjectId(0), Constants.OBJ_BLOB).getBytes(Integer.MAX_VALUE);
+                size += bytes.length;
+                
+                // Models can be loaded on more than one thread so add to the shared image storage under the lock
+                synchronized(imagesLock) {
+                    try {
+                        archiveManager.addByteContentEntry(imagePath, bytes);
+                    }
+                    catch(IOException ex) {
+                        // Don't fail beacause of an image that might be in a format unsupported by this version of Archi
+                        logger.log(Level.WARNING, "Could not load image: " + imagePath, ex);
+                    }
+                }
+            }
+        }
+        
+        return size;
+    }
+    
     @Override
     public void close() {
-        // we have to close the repository
+        // we have to release the repository back to the pool
         if(closeRepo) {
-            getRepository().close();
+            RepositoryPool.getInstance().release(getRepository());
         }
         else {
             new Error("Closing GitUtils is not necessary.").printStackTrace();
@@ -773,6 +1145,201 @@ public class GitUtils extends Git {
         }
     }
     
+    /**
+     * Update the index from the working tree in one pass and one write of the index.
+     * New and modified files are added and files that are missing from the working tree are removed.
+     * This is the same as "git add --all" but the index is written once however many files have changed.
+     */
+    private void updateIndex() throws IOException {
+        Repository repository = getRepository();
+        DirCache dirCache = repository.lockDirCache();
+        
+        try(ObjectInserter inserter = repository.newObjectInserter();
+                ObjectReader reader = inserter.newReader();
+                TreeWalk treeWalk = new TreeWalk(repository, reader)) {
+            
+            DirCacheBuilder builder = dirCache.builder();
+            
+            treeWalk.setOperationType(OperationType.CHECKIN_OP); // Apply any EOL conversion to file content
+            treeWalk.setRecursive(true);
+            int dirCacheIndex = treeWalk.addTree(new DirCacheBuildIterator(builder));
+            FileTreeIterator fileTreeIterator = new FileTreeIterator(repository);
+            int workingTreeIndex = treeWalk.addTree(fileTreeIterator);
+            fileTreeIterator.setDirCacheIterator(treeWalk, dirCacheIndex);
+            
+            boolean changed = false;
+            String lastPath = null;
+            
+            while(treeWalk.next()) {
+                DirCacheIterator dirCacheIterator = treeWalk.getTree(dirCacheIndex, DirCacheIterator.class);
+                WorkingTreeIterator workingTreeIterator = treeWalk.getTree(workingTreeIndex, WorkingTreeIterator.class);
+                DirCacheEntry entry = dirCacheIterator != null ? dirCacheIterator.getDirCacheEntry() : null;
+                
+                // Conflicting entries have more than one stage for the same path and are replaced by one entry
+                String path = treeWalk.getPathString();
+                if(path.equals(lastPath)) {
+                    continue;
+                }
+                lastPath = path;
+                
+                // Missing from the working tree so remove it from the index by not adding it to the builder
+                if(workingTreeIterator == null) {
+                    changed = true;
+                    continue;
+                }
+                
+                // Not in the index and ignored
+                if(entry == null && workingTreeIterator.isEntryIgnored()) {
+                    continue;
+                }
+                
+                // Not modified so keep the entry
+                if(entry != null && entry.getStage() == DirCacheEntry.STAGE_0 && !workingTreeIterator.isModified(entry, true, reader)) {
+                    builder.add(entry);
+                    continue;
+                }
+                
+                // New or modified so add the file's content and a new entry
+                DirCacheEntry newEntry = new DirCacheEntry(treeWalk.getRawPath());
+                newEntry.setFileMode(workingTreeIterator.getEntryFileMode());
+                
+                if(FileMode.GITLINK.equals(newEntry.getFileMode())) {
+                    newEntry.setObjectId(workingTreeIterator.getEntryObjectId());
+                }
+                else {
+                    newEntry.setLength(workingTreeIterator.getEntryLength());
+                    newEntry.setLastModified(workingTreeIterator.getEntryLastModifiedInstant());
+                    
+                    long contentLength = workingTreeIterator.getEntryContentLength();
+                    try(InputStream in = workingTreeIterator.openEntryStream()) {
+                        newEntry.setObjectId(inserter.insert(Constants.OBJ_BLOB, contentLength, in));
+                    }
+                }
+                
+                builder.add(newEntry);
+                changed = true;
+            }
+            
+            if(changed) {
+                inserter.flush();
+                builder.commit(); // Write and unlock
+            }
+        }
+        finally {
+            dirCache.unlock();
+        }
+    }
+    
+    /**
+     * Build the tree of a merge commit in an in-core index and write it.
+     * The model file and images folder are taken from the merged model. Any other file is taken from whichever of ours and theirs
+     * changed it since the base commit.
+     * @return The ObjectId of the tree, or null if a file that is not the model file or an image was changed in both ours and theirs
+     */
+    private ObjectId insertMergedTree(ObjectInserter inserter, IArchimateModel model, RevCommit ours, RevCommit theirs, RevCommit base) throws IOException {
+        DirCache dirCache = DirCache.newInCore();
+        DirCacheBuilder builder = dirCache.builder();
+        
+        // The model file
+        builder.add(createDirCacheEntry(RepoConstants.MODEL_FILENAME, insertModel(inserter, model, ours)));
+        
+        // The images referenced in the model. Image paths are the same as their paths in the tree.
+        IArchiveManager archiveManager = (IArchiveManager)model.getAdapter(IArchiveManager.class);
+        if(archiveManager != null) {
+            for(String imagePath : archiveManager.getImagePaths()) {
+                byte[] bytes = archiveManager.getBytesFromEntry(imagePath);
+                if(bytes != null) {
+                    builder.add(createDirCacheEntry(imagePath, inserter.insert(Constants.OBJ_BLOB, bytes)));
+                }
+            }
+        }
+        
+        // Any other files
+        try(ObjectReader reader = inserter.newReader();
+                TreeWalk treeWalk = new TreeWalk(reader)) {
+            treeWalk.setRecursive(true);
+            int oursIndex = treeWalk.addTree(ours.getTree());
+            int theirsIndex = treeWalk.addTree(theirs.getTree());
+            int baseIndex = treeWalk.addTree(base.getTree());
+            
+            while(treeWalk.next()) {
+                String path = treeWalk.getPathString();
+                if(path.equals(RepoConstants.MODEL_FILENAME) || path.startsWith(RepoConstants.IMAGES_FOLDER + "/")) {
+                    continue;
+                }
+                
+                int index;
+                
+                // Same in ours and theirs or not changed in theirs
+                if(isSameEntry(treeWalk, oursIndex, theirsIndex) || isSameEntry(treeWalk, theirsIndex, baseIndex)) {
+                    index = oursIndex;
+                }
+                // Not changed in ours
+                else if(isSameEntry(treeWalk, oursIndex, baseIndex)) {
+                    index = theirsIndex;
+                }
+                // Changed in both
+                else {
+                    logger.info("File changed in both commits: " + path);
+                    return null;
+                }
+                
+                // Deleted
+                if(treeWalk.getRawMode(index) == 0) {
+                    continue;
+                }
+                
+                DirCacheEntry entry = new DirCacheEntry(treeWalk.getRawPath());
+                entry.setFileMode(treeWalk.getFileMode(index));
+                entry.setObjectId(treeWalk.getObjectId(index));
+                builder.add(entry);
+            }
+        }
+        
+        builder.finish();
+        return dirCache.writeTree(inserter);
+    }
+    
+    /**
+     * @return true if the entries of the current path in two trees of a TreeWalk have the same mode and object (or are both missing)
+     */
+    private boolean isSameEntry(TreeWalk treeWalk, int index1, int index2) {
+        return treeWalk.getRawMode(index1) == treeWalk.getRawMode(index2) && treeWalk.idEqual(index1, index2);
+    }
+    
+    /**
+     * @return A new file DirCacheEntry for a blob
+     */
+    private DirCacheEntry createDirCacheEntry(String path, ObjectId blobId) {
+        DirCacheEntry entry = new DirCacheEntry(path);
+        entry.setFileMode(FileMode.REGULAR_FILE);
+        entry.setObjectId(blobId);
+        return entry;
+    }
+    
+    /**
+     * Save a model to a blob with the same EOL conversion as committing the model file from the working tree
+     * @param commit The commit to get the model file's attributes from
+     */
+    private ObjectId insertModel(ObjectInserter inserter, IArchimateModel model, RevCommit commit) throws IOException {
+        // Save a copy of the model in a temporary resource so that the model is not removed from its own resource
+        Resource resource = ArchimateResourceFactory.createNewResource(new File(getRepository().getWorkTree(), RepoConstants.MODEL_FILENAME));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        resource.getContents().add(EcoreUtil.copy(model));
+        resource.save(out, null);
+        
+        EolStreamType eolStreamType = EolStreamType.DIRECT;
+        try(TreeWalk treeWalk = TreeWalk.forPath(getRepository(), RepoConstants.MODEL_FILENAME, commit.getTree())) {
+            if(treeWalk != null) {
+                eolStreamType = treeWalk.getEolStreamType(OperationType.CHECKIN_OP);
+            }
+        }
+        
+        try(InputStream in = EolStreamTypeUtil.wrapInputStream(new ByteArrayInputStream(out.toByteArray()), eolStreamType)) {
+            return inserter.insert(Constants.OBJ_BLOB, in.readAllBytes());
+        }
+    }
+    
     /**
      * If there's a crash, exception or whatever the lock file remains and needs to be deleted
      * especially before calling the AddCommand
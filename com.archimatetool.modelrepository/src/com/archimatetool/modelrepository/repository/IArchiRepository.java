@@ -57,4 +57,11 @@ public interface IArchiRepository {
      * @return The model, or optional empty if it's not open in the model manager (UI)
      */
     Optional<IArchimateModel> getOpenModel();
+    
+    /**
+     * Load the model at a given revision directly from the repository's object database
+     * @param revStr The revision. This could be "HEAD" or "refs/remotes/origin/main", or a SHA-1 - same as for Repository#resolve()
+     * @return The model or null if the revision or model file in the revision was not found
+     */
+    IArchimateModel loadModel(String revStr) throws IOException;
 }
\ No newline at end of file
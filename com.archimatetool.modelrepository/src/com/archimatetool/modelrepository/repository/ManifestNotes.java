@@ -0,0 +1,351 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+package com.archimatetool.modelrepository.repository;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.api.errors.JGitInternalException;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.CommitBuilder;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.RefUpdate;
+import org.eclipse.jgit.lib.RefUpdate.Result;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.notes.NoteMap;
+import org.eclipse.jgit.notes.NoteMapMerger;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.revwalk.filter.RevFilter;
+
+import com.archimatetool.modelrepository.repository.CommitManifest.ObjectChange;
+
+/**
+ * Version 2 of the commit manifest, stored as a git note on the commit in the notes ref {@link RepoConstants#R_NOTES_MANIFEST}.
+ *
+ * A note can be read without parsing the commit's body or any XML, and lists the changes sorted by object id
+ * so that finding an object is a binary search. The version 1 manifest is still written to the commit message
+ * and is read for commits that don't have a note, such as commits made before notes were written.
+ *
+ * The note is a header line followed by one line for each change, sorted by object id and then change:
+ * <pre>
+ * archi-manifest 2
+ * [object id] [A|D|M|V]
+ * </pre>
+ * If the same commit is given different notes locally and on the remote git's default note merge concatenates them.
+ * Header lines after the first are ignored so a concatenated note is read as the union of the changes.
+ */
+@SuppressWarnings("nls")
+public class ManifestNotes {
+
+    private static Logger logger = Logger.getLogger(ManifestNotes.class.getName());
+    
+    static final String HEADER = "archi-manifest 2";
+    
+    // Maximum size of a note to read
+    private static final int MAX_NOTE_SIZE = 64 * 1024 * 1024;
+    
+    // Order of entries by object id and then change
+    private static final Comparator<String[]> ENTRY_ORDER = Comparator.<String[], String>comparing(entry -> entry[0]).thenComparing(entry -> entry[1]);
+    
+    /**
+     * A manifest read from a note
+     */
+    static class Manifest {
+        // Sorted by id and then type
+        private final String[] ids;
+        private final String[] types;
+        
+        private Manifest(String[] ids, String[] types) {
+            this.ids = ids;
+            this.types = types;
+        }
+        
+        /**
+         * @return true if the manifest contains *any* change entry given the object id
+         */
+        boolean containsChange(String objectId) {
+            return Arrays.binarySearch(ids, objectId) >= 0;
+        }
+        
+        /**
+         * @return The changes in the manifest
+         */
+        Set<ObjectChange> getObjectChanges() {
+            Set<ObjectChange> changes = new LinkedHashSet<>(ids.length);
+            for(int i = 0; i < ids.length; i++) {
+                changes.add(new ObjectChange(ids[i], types[i]));
+            }
+            return changes;
+        }
+    }
+    
+    private ObjectReader reader;
+    private List<NoteMap> noteMaps = new ArrayList<>(2);
+    
+    /**
+     * Read the local manifest notes and the notes fetched from origin.
+     * The notes are read on demand using the ObjectReader.
+     */
+    static ManifestNotes read(Repository repository, ObjectReader reader) throws IOException {
+        ManifestNotes notes = new ManifestNotes(reader);
+        
+        try(RevWalk revWalk = new RevWalk(reader)) {
+            for(String refName : new String[] { RepoConstants.R_NOTES_MANIFEST, RepoConstants.R_NOTES_ORIGIN_MANIFEST }) {
+                Ref ref = repository.exactRef(refName);
+                if(ref != null) {
+                    notes.noteMaps.add(NoteMap.read(reader, revWalk.parseCommit(ref.getObjectId())));
+                }
+            }
+        }
+        
+        return notes;
+    }
+    
+    private ManifestNotes(ObjectReader reader) {
+        this.reader = reader;
+    }
+    
+    /**
+     * @return true if there are any notes
+     */
+    boolean isEmpty() {
+        return noteMaps.isEmpty();
+    }
+    
+    /**
+     * @return true if this was read with reader
+     */
+    boolean isReader(ObjectReader reader) {
+        return this.reader == reader;
+    }
+    
+    /**
+     * @return The manifest in the note for a commit, or null if the commit doesn't have a note
+     */
+    Manifest getManifest(AnyObjectId commitId) throws IOException {
+        for(NoteMap noteMap : noteMaps) {
+            ObjectId noteId = noteMap.get(commitId);
+            if(noteId != null) {
+                return parse(reader.open(noteId).getCachedBytes(MAX_NOTE_SIZE));
+            }
+        }
+        
+        return null;
+    }
+    
+    /**
+     * @return The changes in the manifest of a commit from its note if it has one, else from its commit message.
+     * If the commit's body has not been retained it's parsed and then disposed of.
+     */
+    Set<ObjectChange> getObjectChanges(RevWalk revWalk, RevCommit commit) throws IOException {
+        Manifest manifest = getManifest(commit);
+        if(manifest != null) {
+            return manifest.getObjectChanges();
+        }
+        
+        if(commit.getRawBuffer() != null) {
+            return CommitManifest.getObjectChangesFromCommitMessage(commit.getFullMessage());
+        }
+        
+        revWalk.parseBody(commit);
+        Set<ObjectChange> changes = CommitManifest.getObjectChangesFromCommitMessage(commit.getFullMessage());
+        commit.disposeBody();
+        return changes;
+    }
+    
+    /**
+     * @return The changes encoded as the text of a note, or null if they can't be encoded
+     * @param changes The change types of each object
+     */
+    static String encode(Map<String, Set<String>> changes) {
+        List<String[]> entries = new ArrayList<>();
+        
+        for(Entry<String, Set<String>> entry : changes.entrySet()) {
+            String id = entry.getKey();
+            if(id.indexOf('\n') != -1 || id.indexOf('\r') != -1) {
+                return null;
+            }
+            
+            for(String type : entry.getValue()) {
+                String code = switch(type) {
+                    case CommitManifest.ADDED -> "A";
+                    case CommitManifest.DELETED -> "D";
+                    case CommitManifest.MODIFIED -> "M";
+                    case CommitManifest.MOVED -> "V";
+                    default -> null;
+                };
+                
+                if(code == null) {
+                    return null;
+                }
+                
+                entries.add(new String[] { id, code });
+            }
+        }
+        
+        entries.sort(ENTRY_ORDER);
+        
+        StringBuilder sb = new StringBuilder(HEADER).append('\n');
+        for(String[] entry : entries) {
+            sb.append(entry[0]).append(' ').append(entry[1]).append('\n');
+        }
+        
+        return sb.toString();
+    }
+    
+    /**
+     * @return The manifest from the bytes of a note, or null if it isn't a version 2 manifest
+     */
+    static Manifest parse(byte[] bytes) {
+        String[] lines = new String(bytes, StandardCharsets.UTF_8).split("\n");
+        if(!lines[0].equals(HEADER)) {
+            return null;
+        }
+        
+        List<String[]> entries = new ArrayList<>(lines.length - 1);
+        boolean sorted = true;
+        
+        for(int i = 1; i < lines.length; i++) {
+            String line = lines[i];
+            int index = line.lastIndexOf(' ');
+            if(index < 1 || index != line.length() - 2) {
+                continue; // Not an entry, or a header line in concatenated notes
+            }
+            
+            String type = switch(line.charAt(index + 1)) {
+                case 'A' -> CommitManifest.ADDED;
+                case 'D' -> CommitManifest.DELETED;
+                case 'M' -> CommitManifest.MODIFIED;
+                case 'V' -> CommitManifest.MOVED;
+                default -> null;
+            };
+            
+            if(type != null) {
+                String[] entry = { line.substring(0, index), type };
+                if(!entries.isEmpty() && ENTRY_ORDER.compare(entries.get(entries.size() - 1), entry) >= 0) {
+                    sorted = false;
+                }
+                entries.add(entry);
+            }
+        }
+        
+        // Concatenated notes are not sorted and can have duplicate entries
+        if(!sorted) {
+            Set<String[]> set = new TreeSet<>(ENTRY_ORDER);
+            set.addAll(entries);
+            entries = new ArrayList<>(set);
+        }
+        
+        String[] ids = new String[entries.size()];
+        String[] types = new String[entries.size()];
+        for(int i = 0; i < ids.length; i++) {
+            ids[i] = entries.get(i)[0];
+            types[i] = entries.get(i)[1];
+        }
+        
+        return new Manifest(ids, types);
+    }
+    
+    /**
+     * Add a note with the changes to a commit and log any exception rather than throwing it.
+     * Failing to add a note is not fatal as the manifest is also in the commit message.
+     * @param changes The change types of each object
+     */
+    static void addQuietly(GitUtils utils, RevCommit commit, Map<String, Set<String>> changes) {
+        String note = encode(changes);
+        if(note == null) {
+            return;
+        }
+        
+        try {
+            utils.notesAdd()
+                 .setNotesRef(RepoConstants.R_NOTES_MANIFEST)
+                 .setObjectId(commit)
+                 .setMessage(note)
+                 .call();
+        }
+        catch(GitAPIException | JGitInternalException ex) {
+            logger.log(Level.WARNING, "Could not add manifest note", ex);
+        }
+    }
+    
+    /**
+     * Merge the notes fetched from origin into the local notes.
+     * If the local notes don't have any commits that the fetched notes don't have the local ref is fast-forwarded,
+     * else a merge commit is made.
+     */
+    static void mergeOriginNotes(Repository repository) throws IOException {
+        Ref theirsRef = repository.exactRef(RepoConstants.R_NOTES_ORIGIN_MANIFEST);
+        if(theirsRef == null) {
+            return;
+        }
+        
+        Ref oursRef = repository.exactRef(RepoConstants.R_NOTES_MANIFEST);
+        ObjectId newId;
+        
+        try(RevWalk revWalk = new RevWalk(repository); ObjectInserter inserter = repository.newObjectInserter()) {
+            RevCommit theirs = revWalk.parseCommit(theirsRef.getObjectId());
+            RevCommit ours = oursRef != null ? revWalk.parseCommit(oursRef.getObjectId()) : null;
+            
+            if(ours == null || revWalk.isMergedInto(ours, theirs)) {
+                if(theirs.equals(ours)) {
+                    return;
+                }
+                newId = theirs;
+            }
+            else if(revWalk.isMergedInto(theirs, ours)) {
+                return;
+            }
+            else {
+                revWalk.reset();
+                revWalk.setRevFilter(RevFilter.MERGE_BASE);
+                revWalk.markStart(ours);
+                revWalk.markStart(theirs);
+                RevCommit base = revWalk.next();
+                
+                ObjectReader reader = revWalk.getObjectReader();
+                NoteMap baseMap = base != null ? NoteMap.read(reader, base) : NoteMap.newEmptyMap();
+                NoteMap merged = new NoteMapMerger(repository).merge(baseMap, NoteMap.read(reader, ours), NoteMap.read(reader, theirs));
+                
+                PersonIdent ident = new PersonIdent(repository);
+                CommitBuilder builder = new CommitBuilder();
+                builder.setTreeId(merged.writeTree(inserter));
+                builder.setParentIds(ours, theirs);
+                builder.setAuthor(ident);
+                builder.setCommitter(ident);
+                builder.setMessage("Merged manifest notes");
+                newId = inserter.insert(builder);
+                inserter.flush();
+            }
+        }
+        
+        RefUpdate refUpdate = repository.updateRef(RepoConstants.R_NOTES_MANIFEST);
+        refUpdate.setExpectedOldObjectId(oursRef != null ? oursRef.getObjectId() : ObjectId.zeroId());
+        refUpdate.setNewObjectId(newId);
+        
+        Result result = refUpdate.update();
+        if(result != Result.NEW && result != Result.FAST_FORWARD) {
+            throw new IOException("Could not update manifest notes: " + result);
+        }
+    }
+}
@@ -0,0 +1,269 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+package com.archimatetool.modelrepository.repository;
+
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.util.EcoreUtil;
+import org.eclipse.jgit.lib.ObjectId;
+
+import com.archimatetool.editor.model.IArchiveManager;
+import com.archimatetool.model.IArchimateModel;
+
+/**
+ * Process-wide LRU cache of models loaded from commits.
+ *
+ * A model in a commit is identified by the ObjectId of its "model.archimate" blob and the ObjectId of its "images" tree
+ * so the same model is shared between commits, branches and repositories that have the same content.
+ *
+ * The first time a model is requested it is returned to the caller and not cached, so a model that is only loaded once
+ * is not copied and there is only one instance of it in memory. If the same model is requested again it is cached.
+ * The cached model is never handed out. Callers are given a copy so that they can change it without affecting the cache.
+ *
+ * The cache is bounded by {@link #MAX_WEIGHT}, the total estimated heap size in bytes of the cached models and their images.
+ * Cached models are held by soft references so that they can also be reclaimed if memory is low.
+ */
+@SuppressWarnings("nls")
+public class ModelCache {
+
+    private static Logger logger = Logger.getLogger(ModelCache.class.getName());
+    
+    private static final ModelCache instance = new ModelCache();
+    
+    /**
+     * Maximum total estimated heap size in bytes of the cached models and their images
+     */
+    static long MAX_WEIGHT = 64 * 1024 * 1024;
+    
+    /**
+     * Approximate heap size in bytes of a model object including its feature lists and strings such as its id and name
+     */
+    private static final long ESTIMATED_OBJECT_SIZE = 400;
+    
+    /**
+     * Maximum number of keys of models that were requested but not cached that are remembered
+     */
+    private static final int MAX_REQUESTED_KEYS = 1000;
+    
+    /**
+     * Key for a model in a commit
+     * @param modelBlobId The ObjectId of the model.archimate blob
+     * @param imagesTreeId The ObjectId of the images tree, or ObjectId.zeroId() if there are no images
+     */
+    public static record Key(ObjectId modelBlobId, ObjectId imagesTreeId) {}
+    
+    /**
+     * A loaded model
+     * @param model The model
+     * @param weight The estimated heap size in bytes of the model and its images, see {@link ModelCache#estimateWeight(IArchimateModel, long)}
+     */
+    public static record LoadedModel(IArchimateModel model, long weight) {}
+    
+    /**
+     * Loads a model when it is not in the cache
+     */
+    @FunctionalInterface
+    public static interface ModelLoader {
+        /**
+         * @return The loaded model or null if there is no model
+         */
+        LoadedModel load() throws IOException;
+    }
+    
+    /**
+     * An entry in the cache
+     */
+    private static class CacheEntry {
+        SoftReference<IArchimateModel> modelRef;
+        long weight;
+        
+        CacheEntry(IArchimateModel model, long weight) {
+            modelRef = new SoftReference<>(model);
+            this.weight = weight;
+        }
+    }
+    
+    // Access ordered so that the first entry is the least recently used
+    private final Map<Key, CacheEntry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    
+    private long totalWeight;
+    
+    // Keys of models that were requested and not cached, least recently requested first
+    @SuppressWarnings("serial")
+    private final Map<Key, Boolean> requestedKeys = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, Boolean> eldest) {
+            return size() > MAX_REQUESTED_KEYS;
+        }
+    };
+    
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    
+    public static ModelCache getInstance() {
+        return instance;
+    }
+    
+    private ModelCache() {
+    }
+    
+    /**
+     * @return The estimated heap size in bytes of a model and its images, for use as the weight of a {@link LoadedModel}
+     * @param model The model
+     * @param imagesSize The size in bytes of the model's images
+     */
+    public static long estimateWeight(IArchimateModel model, long imagesSize) {
+        long count = 1;
+        for(Iterator<EObject> iter = model.eAllContents(); iter.hasNext(); iter.next()) {
+            count++;
+        }
+        return count * ESTIMATED_OBJECT_SIZE + imagesSize;
+    }
+    
+    /**
+     * Get a copy of a cached model, or load it if it is not present.
+     * The first time a model is requested the loaded model is returned without being cached or copied.
+     * If it is requested again it is loaded again and added to the cache.
+     * The loader is called outside of any lock so that loading one model does not block other callers.
+     * @param key The key of the model
+     * @param loader Loads the model if it is not in the cache
+     * @return A model that the caller can change, or null if the loader returned null
+     */
+    public IArchimateModel get(Key key, ModelLoader loader) throws IOException {
+        IArchimateModel model = getCachedModel(key);
+        
+        if(model != null) {
+            hitCount.incrementAndGet();
+        }
+        else {
+            missCount.incrementAndGet();
+            
+            LoadedModel loadedModel = loader.load();
+            if(loadedModel == null) {
+                return null;
+            }
+            
+            // Not requested before or too big to cache so the caller can have the loaded model
+            if(!wasRequested(key) || !put(key, loadedModel.model(), loadedModel.weight())) {
+                return loadedModel.model();
+            }
+            
+            model = loadedModel.model();
+        }
+        
+        return copyModel(model);
+    }
+    
+    /**
+     * @return The number of times a model was found in the cache
+     */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+    
+    /**
+     * @return The number of times a model was not found in the cache and was loaded
+     */
+    public long getMissCount() {
+        return missCount.get();
+    }
+    
+    /**
+     * @return The number of models in the cache
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+    
+    /**
+     * @return The total size in bytes of the model and image blobs of the cached models
+     */
+    public synchronized long getWeight() {
+        return totalWeight;
+    }
+    
+    /**
+     * Remove all models from the cache and reset the hit and miss counters
+     */
+    public synchronized void clear() {
+        entries.clear();
+        requestedKeys.clear();
+        totalWeight = 0;
+        hitCount.set(0);
+        missCount.set(0);
+    }
+    
+    private synchronized IArchimateModel getCachedModel(Key key) {
+        CacheEntry entry = entries.get(key);
+        if(entry == null) {
+            return null;
+        }
+        
+        IArchimateModel model = entry.modelRef.get();
+        
+        // Reclaimed by the garbage collector
+        if(model == null) {
+            entries.remove(key);
+            totalWeight -= entry.weight;
+        }
+        
+        return model;
+    }
+    
+    /**
+     * Record that a model was requested
+     * @return true if it was requested before
+     */
+    private synchronized boolean wasRequested(Key key) {
+        return requestedKeys.put(key, Boolean.TRUE) != null;
+    }
+    
+    /**
+     * Add a model to the cache
+     * @return false if the model is too big to cache
+     */
+    private synchronized boolean put(Key key, IArchimateModel model, long weight) {
+        // Too big to cache
+        if(weight > MAX_WEIGHT) {
+            logger.info("Model is too large to cache: " + weight + " bytes");
+            return false;
+        }
+        
+        CacheEntry previous = entries.put(key, new CacheEntry(model, weight));
+        if(previous != null) {
+            totalWeight -= previous.weight;
+        }
+        
+        totalWeight += weight;
+        
+        // Remove the least recently used models
+        for(Iterator<CacheEntry> iter = entries.values().iterator(); iter.hasNext() && totalWeight > MAX_WEIGHT;) {
+            totalWeight -= iter.next().weight;
+            iter.remove();
+        }
+        
+        return true;
+    }
+    
+    /**
+     * Copy a model and add a cloned ArchiveManager
+     */
+    private IArchimateModel copyModel(IArchimateModel model) {
+        IArchimateModel copy = EcoreUtil.copy(model);
+        
+        IArchiveManager archiveManager = (IArchiveManager)model.getAdapter(IArchiveManager.class);
+        copy.setAdapter(IArchiveManager.class, archiveManager != null ? archiveManager.clone(copy) : IArchiveManager.FACTORY.createArchiveManager(copy));
+        
+        return copy;
+    }
+}
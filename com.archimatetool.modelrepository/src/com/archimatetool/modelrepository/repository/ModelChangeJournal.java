@@ -0,0 +1,563 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+package com.archimatetool.modelrepository.repository;
+
+import java.beans.PropertyChangeEvent;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.eclipse.emf.common.notify.Notification;
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.EStructuralFeature;
+import org.eclipse.emf.ecore.util.EcoreUtil;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+
+import com.archimatetool.editor.model.IEditorModelManager;
+import com.archimatetool.model.IArchimateModel;
+import com.archimatetool.model.IArchimateModelObject;
+import com.archimatetool.model.IArchimatePackage;
+import com.archimatetool.model.IDiagramModelArchimateComponent;
+import com.archimatetool.model.IFolder;
+import com.archimatetool.model.IIdentifier;
+import com.archimatetool.modelrepository.repository.CommitManifest.ObjectChange;
+
+/**
+ * Journal of the objects added, deleted, modified and moved in a model open in the editor since the latest commit.
+ *
+ * Changes are recorded from the model's notifications and are mapped to objects in the same way as the commit manifest
+ * maps the differences of a model comparison. Changes made since the model was last saved are held in memory and are added to
+ * the journal file in the ".git" folder when the model is saved, so the journal survives a restart.
+ *
+ * The journal file records the commit that the changes were made against and the length and last modified time of the saved model file.
+ * When committing, if HEAD is that commit and the model file has not been changed since it was saved, the changes in the journal
+ * are used for the commit manifest rather than comparing the working tree model with the latest commit.
+ *
+ * If a change can't be recorded, or the repository changes under an open model, the journal is deleted
+ * and the commit manifest is created by comparison.
+ */
+@SuppressWarnings("nls")
+public class ModelChangeJournal {
+
+    private static Logger logger = Logger.getLogger(ModelChangeJournal.class.getName());
+    
+    /**
+     * Journal file name in the ".git" folder
+     */
+    static final String JOURNAL_FILENAME = "archi-journal";
+    
+    private static final int MAGIC = 0x41524A4E; // "ARJN"
+    private static final int VERSION = 1;
+    
+    // Change types are written as their index in this list
+    private static final List<String> CHANGE_TYPES = List.of(CommitManifest.ADDED, CommitManifest.DELETED, CommitManifest.MODIFIED, CommitManifest.MOVED);
+    
+    private static final ModelChangeJournal instance = new ModelChangeJournal();
+    
+    public static ModelChangeJournal getInstance() {
+        return instance;
+    }
+    
+    /**
+     * Length and last modified time in nanoseconds of the saved model file
+     */
+    static record FileStat(long length, long lastModified) {
+        static FileStat of(File file) throws IOException {
+            return new FileStat(Files.size(file.toPath()), Files.getLastModifiedTime(file.toPath()).to(TimeUnit.NANOSECONDS));
+        }
+    }
+    
+    /**
+     * Contents of the journal file
+     */
+    private static class Journal {
+        ObjectId baseId;
+        FileStat modelFileStat;
+        Set<ObjectChange> changes = new LinkedHashSet<>();
+        
+        Journal(ObjectId baseId, FileStat modelFileStat) {
+            this.baseId = baseId;
+            this.modelFileStat = modelFileStat;
+        }
+    }
+    
+    /**
+     * Records the changes to an open model
+     */
+    private static class Recorder {
+        File repoFolder;
+        File journalFile;
+        boolean valid = true;
+        
+        // Changes made since the model was last saved
+        Set<ObjectChange> pending = new LinkedHashSet<>();
+        
+        // Ids of folder members moved to another folder, so that adding them to the new folder is not recorded as an addition
+        Set<String> movedIds = new HashSet<>();
+        
+        Recorder(File repoFolder) {
+            this.repoFolder = repoFolder;
+            journalFile = new File(new ArchiRepository(repoFolder).getGitFolder(), JOURNAL_FILENAME);
+        }
+        
+        /**
+         * @return true if this records the model in folder
+         */
+        boolean isFor(File folder) {
+            // Use a normalized path in case of ".."
+            return folder != null && repoFolder.toPath().toAbsolutePath().normalize().equals(folder.toPath().toAbsolutePath().normalize());
+        }
+    }
+    
+    private final Map<IArchimateModel, Recorder> recorders = new HashMap<>();
+    
+    private ModelChangeJournal() {
+    }
+    
+    /**
+     * Start recording changes to open models
+     */
+    public void start() {
+        IEditorModelManager.INSTANCE.addPropertyChangeListener(this::modelPropertyChanged);
+        
+        // Models that were opened before we started
+        for(IArchimateModel model : IEditorModelManager.INSTANCE.getModels()) {
+            modelOpened(model);
+        }
+    }
+    
+    /**
+     * EditorModelManager Property Change listener
+     */
+    private void modelPropertyChanged(PropertyChangeEvent evt) {
+        if(evt.getPropertyName().equals(IEditorModelManager.PROPERTY_ECORE_EVENT)) {
+            Notification msg = (Notification)evt.getNewValue();
+            if(msg.getNotifier() instanceof EObject eObject && EcoreUtil.getRootContainer(eObject) instanceof IArchimateModel model) {
+                modelChanged(model, msg);
+            }
+        }
+        else if(evt.getPropertyName().equals(IEditorModelManager.PROPERTY_MODEL_SAVED)) {
+            modelSaved((IArchimateModel)evt.getNewValue());
+        }
+        else if(evt.getPropertyName().equals(IEditorModelManager.PROPERTY_MODEL_OPENED)) {
+            modelOpened((IArchimateModel)evt.getNewValue());
+        }
+        else if(evt.getPropertyName().equals(IEditorModelManager.PROPERTY_MODEL_REMOVED)) {
+            modelClosed((IArchimateModel)evt.getNewValue());
+        }
+    }
+    
+    /**
+     * A model was opened. If it's in a repository start recording its changes.
+     * If there's no valid journal from a previous session a new one is started if the model file is the same as in HEAD.
+     */
+    synchronized void modelOpened(IArchimateModel model) {
+        File repoFolder = RepoUtils.getWorkingFolderForModel(model).orElse(null);
+        if(repoFolder == null) {
+            return;
+        }
+        
+        Recorder recorder = new Recorder(repoFolder);
+        recorders.put(model, recorder);
+        
+        try(GitUtils utils = GitUtils.open(repoFolder)) {
+            Repository repository = utils.getRepository();
+            
+            // Valid journal from a previous session
+            if(loadValidJournal(repository) != null) {
+                return;
+            }
+            
+            ObjectId headId = repository.resolve(Constants.HEAD);
+            if(headId != null && !utils.hasModelChangesToCommit()) {
+                save(repository, new Journal(headId, FileStat.of(getModelFile(repository))));
+            }
+            else {
+                invalidate(recorder);
+            }
+        }
+        catch(IOException ex) {
+            logger.log(Level.WARNING, "Could not start model change journal", ex);
+            invalidate(recorder);
+        }
+    }
+    
+    /**
+     * A model was closed. Changes made since it was last saved are discarded.
+     */
+    synchronized void modelClosed(IArchimateModel model) {
+        recorders.remove(model);
+    }
+    
+    /**
+     * A model was saved so add the changes made since it was last saved to the journal file
+     */
+    synchronized void modelSaved(IArchimateModel model) {
+        Recorder recorder = recorders.get(model);
+        
+        // Not recording or saved to another file
+        if(recorder == null || !recorder.isFor(RepoUtils.getWorkingFolderForModel(model).orElse(null))) {
+            recorders.remove(model);
+            modelOpened(model);
+            return;
+        }
+        
+        if(!recorder.valid) {
+            return;
+        }
+        
+        try(GitUtils utils = GitUtils.open(recorder.repoFolder)) {
+            Repository repository = utils.getRepository();
+            
+            // The journal must have been made against HEAD
+            Journal journal = load(repository);
+            if(journal == null || !journal.baseId.equals(repository.resolve(Constants.HEAD))) {
+                invalidate(recorder);
+                return;
+            }
+            
+            for(ObjectChange change : recorder.pending) {
+                record(journal.changes, change);
+            }
+            
+            journal.modelFileStat = FileStat.of(getModelFile(repository));
+            save(repository, journal);
+            
+            recorder.pending.clear();
+        }
+        catch(IOException ex) {
+            logger.log(Level.WARNING, "Could not save model change journal", ex);
+            invalidate(recorder);
+        }
+    }
+    
+    /**
+     * A commit was made so start a new journal against the new commit if the repository's model is open.
+     * Changes made to the open model since it was last saved are kept as they are changes against the new commit.
+     */
+    synchronized void committed(Repository repository) {
+        IArchimateModel model = null;
+        Recorder recorder = null;
+        
+        for(Map.Entry<IArchimateModel, Recorder> entry : recorders.entrySet()) {
+            if(entry.getValue().isFor(repository.getWorkTree())) {
+                model = entry.getKey();
+                recorder = entry.getValue();
+                break;
+            }
+        }
+        
+        // Model is not open so a journal can't be kept
+        if(recorder == null) {
+            try {
+                delete(repository);
+            }
+            catch(IOException ex) {
+                logger.log(Level.WARNING, "Could not delete model change journal", ex);
+            }
+            return;
+        }
+        
+        try {
+            // Restart an invalid journal if the open model is the same as the saved model
+            if(!recorder.valid) {
+                if(IEditorModelManager.INSTANCE.isModelDirty(model)) {
+                    return;
+                }
+                recorder.valid = true;
+            }
+            
+            save(repository, new Journal(repository.resolve(Constants.HEAD), FileStat.of(getModelFile(repository))));
+        }
+        catch(IOException ex) {
+            logger.log(Level.WARNING, "Could not start model change journal", ex);
+            invalidate(recorder);
+        }
+    }
+    
+    /**
+     * Record the changes from a model's notification
+     */
+    synchronized void modelChanged(IArchimateModel model, Notification msg) {
+        Recorder recorder = recorders.get(model);
+        if(recorder == null || !recorder.valid) {
+            return;
+        }
+        
+        if(!recordNotification(recorder, msg)) {
+            logger.info("Model change could not be recorded, model change journal is not used until the next commit");
+            invalidate(recorder);
+        }
+    }
+    
+    /**
+     * Record a notification as object changes
+     * @return false if the changes can't be recorded
+     */
+    private boolean recordNotification(Recorder recorder, Notification msg) {
+        if(msg.isTouch() || msg.getEventType() == Notification.REMOVING_ADAPTER) {
+            return true;
+        }
+        
+        // Transient features are not saved
+        if(msg.getFeature() instanceof EStructuralFeature feature && feature.isTransient()) {
+            return true;
+        }
+        
+        if(!(msg.getNotifier() instanceof EObject eObject)) {
+            return true;
+        }
+        
+        // Folder member added, deleted or moved
+        if(eObject instanceof IFolder folder && (msg.getFeature() == IArchimatePackage.Literals.FOLDER__ELEMENTS
+                                                 || msg.getFeature() == IArchimatePackage.Literals.FOLDER_CONTAINER__FOLDERS)) {
+            return switch(msg.getEventType()) {
+                case Notification.ADD -> memberAdded(recorder, msg.getNewValue());
+                case Notification.ADD_MANY -> membersAdded(recorder, (Collection<?>)msg.getNewValue());
+                case Notification.REMOVE -> memberRemoved(recorder, folder, msg.getOldValue());
+                case Notification.REMOVE_MANY -> membersRemoved(recorder, folder, (Collection<?>)msg.getOldValue());
+                case Notification.MOVE -> recordChange(recorder, msg.getNewValue(), CommitManifest.MOVED);
+                default -> recordChange(recorder, eObject, CommitManifest.MODIFIED);
+            };
+        }
+        
+        // Name change in IDiagramModelArchimateComponent is actually a name change in the linked concept
+        if(eObject instanceof IDiagramModelArchimateComponent && msg.getFeature() == IArchimatePackage.Literals.NAMEABLE__NAME) {
+            return true;
+        }
+        
+        EObject owner = CommitManifest.getOwningObject(eObject);
+        return owner == null || recordChange(recorder, owner, CommitManifest.MODIFIED);
+    }
+    
+    private boolean membersAdded(Recorder recorder, Collection<?> members) {
+        for(Object member : members) {
+            if(!memberAdded(recorder, member)) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    private boolean memberAdded(Recorder recorder, Object member) {
+        // Moved from another folder and already recorded
+        if(member instanceof IIdentifier identifier && recorder.movedIds.remove(identifier.getId())) {
+            return true;
+        }
+        
+        return recordTree(recorder, member, CommitManifest.ADDED);
+    }
+    
+    private boolean membersRemoved(Recorder recorder, IFolder folder, Collection<?> members) {
+        for(Object member : members) {
+            if(!memberRemoved(recorder, folder, member)) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    private boolean memberRemoved(Recorder recorder, IFolder folder, Object member) {
+        // If it's been added to another folder it's a move. The removal is notified after the member's container is set.
+        if(member instanceof EObject eObject && eObject.eContainer() != null && eObject.eContainer() != folder) {
+            if(eObject instanceof IIdentifier identifier) {
+                recorder.movedIds.add(identifier.getId());
+            }
+            return recordChange(recorder, eObject, CommitManifest.MOVED);
+        }
+        
+        return recordTree(recorder, member, CommitManifest.DELETED);
+    }
+    
+    /**
+     * Record a change type for a folder member and, if it's a folder, all of its contents
+     */
+    private boolean recordTree(Recorder recorder, Object member, String type) {
+        if(!recordChange(recorder, member, type)) {
+            return false;
+        }
+        
+        if(member instanceof IFolder folder) {
+            for(Iterator<EObject> iter = folder.eAllContents(); iter.hasNext();) {
+                EObject eObject = iter.next();
+                if(eObject instanceof IArchimateModelObject && !recordChange(recorder, eObject, type)) {
+                    return false;
+                }
+            }
+        }
+        
+        return true;
+    }
+    
+    /**
+     * Record a change to an object
+     * @return false if the object should be recorded but has no id
+     */
+    private boolean recordChange(Recorder recorder, Object object, String type) {
+        if(!(object instanceof EObject eObject)) {
+            return true;
+        }
+        
+        if(CommitManifest.isValidObject(eObject)) {
+            record(recorder.pending, new ObjectChange(((IIdentifier)eObject).getId(), type));
+            return true;
+        }
+        
+        // An object that should be in the manifest but has no id
+        return !CommitManifest.isManifestType(eObject);
+    }
+    
+    /**
+     * Add a change to a set of changes.
+     * If an object is added after it was deleted, as when a deletion is undone, the deletion is removed.
+     * Other redundant changes are removed when the commit manifest is created.
+     */
+    private static void record(Set<ObjectChange> changes, ObjectChange change) {
+        if(CommitManifest.ADDED.equals(change.type()) && changes.remove(new ObjectChange(change.id(), CommitManifest.DELETED))) {
+            return;
+        }
+        
+        changes.add(change);
+    }
+    
+    private void invalidate(Recorder recorder) {
+        recorder.valid = false;
+        recorder.pending.clear();
+        recorder.movedIds.clear();
+        
+        try {
+            Files.deleteIfExists(recorder.journalFile.toPath());
+        }
+        catch(IOException ex) {
+            logger.log(Level.WARNING, "Could not delete model change journal", ex);
+        }
+    }
+    
+    /**
+     * @return The changes recorded in the journal file if it was made against HEAD and the model file has not changed since it was saved,
+     *         otherwise null
+     */
+    static Set<ObjectChange> getChanges(Repository repository) {
+        try {
+            Journal journal = loadValidJournal(repository);
+            return journal != null ? journal.changes : null;
+        }
+        catch(IOException ex) {
+            logger.log(Level.WARNING, "Could not read model change journal", ex);
+            return null;
+        }
+    }
+    
+    /**
+     * @return The journal if it was made against HEAD and the model file has not changed since it was saved, otherwise null
+     */
+    private static Journal loadValidJournal(Repository repository) throws IOException {
+        Journal journal = load(repository);
+        
+        if(journal != null && journal.baseId.equals(repository.resolve(Constants.HEAD))) {
+            File modelFile = getModelFile(repository);
+            if(modelFile.exists() && journal.modelFileStat.equals(FileStat.of(modelFile))) {
+                return journal;
+            }
+        }
+        
+        return null;
+    }
+    
+    private static File getModelFile(Repository repository) {
+        return new File(repository.getWorkTree(), RepoConstants.MODEL_FILENAME);
+    }
+    
+    private static File getJournalFile(Repository repository) {
+        return new File(repository.getDirectory(), JOURNAL_FILENAME);
+    }
+    
+    /**
+     * Load the journal from file
+     * @return The journal or null if the file does not exist or is not a valid journal
+     */
+    private static Journal load(Repository repository) {
+        File file = getJournalFile(repository);
+        if(!file.exists()) {
+            return null;
+        }
+        
+        try(DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file.toPath())))) {
+            if(in.readInt() != MAGIC || in.readInt() != VERSION) {
+                logger.info("Model change journal is not a supported version");
+                return null;
+            }
+            
+            byte[] raw = new byte[Constants.OBJECT_ID_LENGTH];
+            in.readFully(raw);
+            
+            Journal journal = new Journal(ObjectId.fromRaw(raw), new FileStat(in.readLong(), in.readLong()));
+            
+            int count = in.readInt();
+            for(int i = 0; i < count; i++) {
+                String type = CHANGE_TYPES.get(in.readByte());
+                journal.changes.add(new ObjectChange(in.readUTF(), type));
+            }
+            
+            return journal;
+        }
+        catch(IOException | IndexOutOfBoundsException ex) {
+            logger.log(Level.WARNING, "Could not read model change journal", ex);
+            return null;
+        }
+    }
+    
+    /**
+     * Save the journal to file.
+     * Write to a temp file first and then move it so that readers never see a partial file.
+     */
+    private static void save(Repository repository, Journal journal) throws IOException {
+        File file = getJournalFile(repository);
+        File tmpFile = new File(file.getParentFile(), file.getName() + ".tmp");
+        
+        try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmpFile.toPath())))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            
+            byte[] raw = new byte[Constants.OBJECT_ID_LENGTH];
+            journal.baseId.copyRawTo(raw, 0);
+            out.write(raw);
+            
+            out.writeLong(journal.modelFileStat.length());
+            out.writeLong(journal.modelFileStat.lastModified());
+            
+            out.writeInt(journal.changes.size());
+            for(ObjectChange change : journal.changes) {
+                out.writeByte(CHANGE_TYPES.indexOf(change.type()));
+                out.writeUTF(change.id());
+            }
+        }
+        
+        Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+    
+    private static void delete(Repository repository) throws IOException {
+        Files.deleteIfExists(getJournalFile(repository).toPath());
+    }
+}
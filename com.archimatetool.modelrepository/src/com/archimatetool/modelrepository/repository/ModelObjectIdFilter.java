@@ -6,35 +6,95 @@
 package com.archimatetool.modelrepository.repository;
 
 import java.io.IOException;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import org.eclipse.jgit.errors.IncorrectObjectTypeException;
 import org.eclipse.jgit.errors.MissingObjectException;
 import org.eclipse.jgit.errors.StopWalkException;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.revwalk.RevCommit;
 import org.eclipse.jgit.revwalk.RevWalk;
 import org.eclipse.jgit.revwalk.filter.RevFilter;
 
 /**
  * RevFilter that filters on a model object's Id
- * This simply returns true if the manifest in the commit message contains the change objectId
+ * This returns true if the commit is one of the commits in the ModelObjectIndex for the objectId,
+ * or if there is no index, if the commit's manifest note or the manifest in the commit message contains the change objectId
  * 
  * @author Phillip Beauvoir
  */
+@SuppressWarnings("nls")
 public class ModelObjectIdFilter extends RevFilter {
     
+    private static Logger logger = Logger.getLogger(ModelObjectIdFilter.class.getName());
+    
     private String objectId;
+    private Set<ObjectId> commitIds;
+    private Repository repository;
+    private ManifestNotes notes;
+    
+    /**
+     * Create a filter that uses the repository's ModelObjectIndex, updating it first if necessary.
+     * If the index can't be updated, fall back to reading the manifest in each commit message.
+     * @param repository The repository
+     * @param objectId The id of the model object to filter on
+     */
+    public static ModelObjectIdFilter create(Repository repository, String objectId) {
+        try {
+            return new ModelObjectIdFilter(objectId, ModelObjectIndex.update(repository).getCommitIds(objectId));
+        }
+        catch(IOException ex) {
+            logger.log(Level.WARNING, "Could not update model object index", ex);
+            ModelObjectIdFilter filter = new ModelObjectIdFilter(objectId);
+            filter.repository = repository;
+            return filter;
+        }
+    }
     
     /**
      * @param objectId The id of the model object to filter on
      */
     public ModelObjectIdFilter(String objectId) {
+        this(objectId, null);
+    }
+    
+    /**
+     * @param objectId The id of the model object to filter on
+     * @param commitIds The ids of the commits that changed the model object, or null to read the manifest in each commit message
+     */
+    public ModelObjectIdFilter(String objectId, Set<ObjectId> commitIds) {
         this.objectId = objectId;
+        this.commitIds = commitIds;
     }
 
     @Override
     public boolean include(RevWalk revWalk, RevCommit commit) throws StopWalkException, MissingObjectException, IncorrectObjectTypeException, IOException {
+        if(commitIds != null) {
+            return commitIds.contains(commit);
+        }
+        
+        // Read the commit's manifest note if it has one
+        if(repository != null) {
+            if(notes == null || !notes.isReader(revWalk.getObjectReader())) {
+                notes = ManifestNotes.read(repository, revWalk.getObjectReader());
+            }
+            
+            ManifestNotes.Manifest manifest = notes.getManifest(commit);
+            if(manifest != null) {
+                return manifest.containsChange(objectId);
+            }
+        }
+        
         return CommitManifest.containsChange(commit.getFullMessage(), objectId);
     }
+    
+    @Override
+    public boolean requiresCommitBody() {
+        return commitIds == null;
+    }
 
     @Override
     public RevFilter clone() {
@@ -0,0 +1,435 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+package com.archimatetool.modelrepository.repository;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.eclipse.jgit.errors.MissingObjectException;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevObject;
+import org.eclipse.jgit.revwalk.RevWalk;
+
+import com.archimatetool.modelrepository.repository.CommitManifest.ObjectChange;
+
+/**
+ * Persistent index of model object ids to the commits that changed them.
+ *
+ * The index is built from the commits' manifest notes, or the manifests in the commit messages of commits without a note,
+ * and stored in the ".git" folder.
+ * It is updated incrementally by walking only the commits that are not reachable from the ref tips that were last indexed,
+ * so it is cheap to update after a commit, fetch or merge.
+ *
+ * The index of a repository is kept in memory once loaded and is only loaded again if the file is changed by someone else.
+ * The file is a list of segments. Each update appends a segment with the new tips and the entries of the new commits,
+ * and when there are {@link #MAX_SEGMENTS} segments the file is compacted to one segment.
+ * A segment that was not completely written is ignored when loading and the file is compacted on the next update.
+ *
+ * A commit's manifest never changes so entries are never removed. Entries for commits that are no longer reachable
+ * (after an amend or reset) are harmless because the index is only used to filter a RevWalk.
+ */
+@SuppressWarnings("nls")
+public class ModelObjectIndex {
+
+    private static Logger logger = Logger.getLogger(ModelObjectIndex.class.getName());
+    
+    /**
+     * Index file name in the ".git" folder
+     */
+    static final String INDEX_FILENAME = "archi-object-index";
+    
+    private static final int MAGIC = 0x41524F49; // "AROI"
+    private static final int VERSION = 2;
+    
+    /**
+     * Marks the start of a segment
+     */
+    private static final int SEGMENT = 0x53;
+    
+    /**
+     * Number of segments in the file after which it is compacted
+     */
+    static int MAX_SEGMENTS = 32;
+    
+    /**
+     * Maximum number of indexes kept in memory
+     */
+    private static final int MAX_INDEXES = 8;
+    
+    /**
+     * Change types written as a single byte. Any other change type is written as OTHER_CHANGE_TYPE followed by the string.
+     */
+    private static final List<String> CHANGE_TYPES = List.of(CommitManifest.ADDED, CommitManifest.DELETED, CommitManifest.MODIFIED, CommitManifest.MOVED);
+    private static final int OTHER_CHANGE_TYPE = 0xFF;
+    
+    /**
+     * An index entry
+     * @param commitId The commit that changed the object
+     * @param changeType The type of change as written in the manifest
+     */
+    public static record Entry(ObjectId commitId, String changeType) {}
+    
+    // Loaded indexes keyed by file, least recently used first
+    @SuppressWarnings("serial")
+    private static final Map<File, ModelObjectIndex> indexes = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<File, ModelObjectIndex> eldest) {
+            return size() > MAX_INDEXES;
+        }
+    };
+    
+    private File file;
+    private Set<ObjectId> tips = new HashSet<>();
+    private Map<String, List<Entry>> entries = new HashMap<>();
+    
+    private int segmentCount;
+    
+    // Whether the file has to be written again in full because it doesn't exist, isn't valid or has a partly written segment
+    private boolean needsCompaction = true;
+    
+    // The length and modification time of the file when we last read or wrote it
+    private long fileLength, fileLastModified;
+    
+    /**
+     * Update the index for a repository with any new commits and return it
+     */
+    public static synchronized ModelObjectIndex update(Repository repository) throws IOException {
+        File file = new File(repository.getDirectory(), INDEX_FILENAME);
+        
+        ModelObjectIndex index = indexes.get(file);
+        
+        // Not loaded or the file was changed or deleted by someone else
+        if(index == null || !index.isFileUnchanged()) {
+            index = new ModelObjectIndex(file);
+            index.load();
+            indexes.put(file, index);
+        }
+        
+        try {
+            index.update(repository);
+        }
+        catch(IOException ex) {
+            // The file might be partly written so load it again next time
+            indexes.remove(file);
+            throw ex;
+        }
+        
+        return index;
+    }
+    
+    /**
+     * Update the index for a repository if it exists and log any exception rather than throwing it.
+     * If the index doesn't exist it is not created here but the first time that it is used.
+     * Failing to update the index is not fatal as it is brought up to date the next time it is used.
+     */
+    public static void updateQuietly(Repository repository) {
+        if(!new File(repository.getDirectory(), INDEX_FILENAME).exists()) {
+            return;
+        }
+        
+        try {
+            update(repository);
+        }
+        catch(IOException ex) {
+            logger.log(Level.WARNING, "Could not update model object index", ex);
+        }
+    }
+    
+    private ModelObjectIndex(File file) {
+        this.file = file;
+    }
+    
+    /**
+     * @return The entries for an object id
+     */
+    public List<Entry> getEntries(String objectId) {
+        // The index can be updated by another thread
+        synchronized(ModelObjectIndex.class) {
+            List<Entry> list = entries.get(objectId);
+            return list != null ? List.copyOf(list) : Collections.emptyList();
+        }
+    }
+    
+    /**
+     * @return The ids of the commits that changed an object
+     */
+    public Set<ObjectId> getCommitIds(String objectId) {
+        Set<ObjectId> commitIds = new HashSet<>();
+        for(Entry entry : getEntries(objectId)) {
+            commitIds.add(entry.commitId());
+        }
+        return commitIds;
+    }
+    
+    /**
+     * Add entries for commits that are not reachable from the tips of the last update and append them to the file
+     */
+    private void update(Repository repository) throws IOException {
+        Set<ObjectId> newTips = getTips(repository);
+        if(!needsCompaction && newTips.equals(tips)) {
+            return;
+        }
+        
+        Map<String, List<Entry>> newEntries = new LinkedHashMap<>();
+        
+        try(ObjectReader reader = repository.newObjectReader(); RevWalk revWalk = new RevWalk(reader)) {
+            ManifestNotes notes = ManifestNotes.read(repository, reader);
+            
+            // If there are notes only the commits without a note need their body
+            revWalk.setRetainBody(notes.isEmpty());
+            
+            for(ObjectId tip : newTips) {
+                revWalk.markStart(revWalk.parseCommit(tip));
+            }
+            
+            // Don't walk commits that have already been indexed
+            boolean missingTip = false;
+            for(ObjectId tip : tips) {
+                try {
+                    revWalk.markUninteresting(revWalk.parseCommit(tip));
+                }
+                catch(MissingObjectException ex) {
+                    // Commit was garbage collected so we might walk commits that have already been indexed
+                    missingTip = true;
+                }
+            }
+            
+            for(RevCommit commit : revWalk) {
+                for(ObjectChange change : notes.getObjectChanges(revWalk, commit)) {
+                    List<Entry> list = entries.computeIfAbsent(change.id(), id -> new ArrayList<>());
+                    Entry entry = new Entry(commit.copy(), change.type());
+                    if(!missingTip || !list.contains(entry)) {
+                        list.add(entry);
+                        newEntries.computeIfAbsent(change.id(), id -> new ArrayList<>()).add(entry);
+                    }
+                }
+            }
+        }
+        
+        tips = newTips;
+        
+        if(needsCompaction || segmentCount >= MAX_SEGMENTS) {
+            save();
+        }
+        else {
+            append(newEntries);
+        }
+    }
+    
+    /**
+     * @return The commit ids of HEAD and all branches and tags.
+     * Notes refs are not included as their commits are not part of the history.
+     */
+    static Set<ObjectId> getTips(Repository repository) throws IOException {
+        Set<ObjectId> tips = new LinkedHashSet<>();
+        
+        try(RevWalk revWalk = new RevWalk(repository)) {
+            List<Ref> refs = new ArrayList<>(repository.getRefDatabase().getRefsByPrefix(Constants.R_REFS));
+            
+            Ref head = repository.exactRef(Constants.HEAD);
+            if(head != null) {
+                refs.add(head);
+            }
+            
+            for(Ref ref : refs) {
+                if(ref.getObjectId() != null && !ref.getName().startsWith(Constants.R_NOTES)) {
+                    RevObject object = revWalk.peel(revWalk.parseAny(ref.getObjectId()));
+                    if(object instanceof RevCommit) {
+                        tips.add(object.copy());
+                    }
+                }
+            }
+        }
+        
+        return tips;
+    }
+    
+    /**
+     * @return true if the file has not been changed or deleted since we last read or wrote it
+     */
+    private boolean isFileUnchanged() {
+        return file.exists() && file.length() == fileLength && file.lastModified() == fileLastModified;
+    }
+    
+    private void updateFileSnapshot() {
+        fileLength = file.length();
+        fileLastModified = file.lastModified();
+    }
+    
+    /**
+     * Load the index from file.
+     * If the file does not exist or is not a valid index the index is empty and needsCompaction is true.
+     */
+    private void load() {
+        if(!file.exists()) {
+            return;
+        }
+        
+        updateFileSnapshot();
+        
+        try(DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file.toPath())))) {
+            if(in.readInt() != MAGIC || in.readInt() != VERSION) {
+                logger.info("Model object index is not a supported version, rebuilding");
+                return;
+            }
+            
+            needsCompaction = false;
+            
+            int marker;
+            while((marker = in.read()) != -1) {
+                if(marker != SEGMENT) {
+                    throw new IOException("Invalid segment");
+                }
+                
+                try {
+                    readSegment(in);
+                }
+                catch(EOFException ex) {
+                    // The last segment was not completely written so ignore it
+                    logger.info("Model object index has a partly written segment, compacting");
+                    needsCompaction = true;
+                    break;
+                }
+                
+                segmentCount++;
+            }
+        }
+        catch(IOException ex) {
+            logger.log(Level.WARNING, "Could not read model object index, rebuilding", ex);
+            tips.clear();
+            entries.clear();
+            segmentCount = 0;
+            needsCompaction = true;
+        }
+    }
+    
+    /**
+     * Read a segment and add it to the index only if it is read completely
+     */
+    private void readSegment(DataInputStream in) throws IOException {
+        byte[] raw = new byte[Constants.OBJECT_ID_LENGTH];
+        
+        Set<ObjectId> segmentTips = new HashSet<>();
+        int tipCount = in.readInt();
+        for(int i = 0; i < tipCount; i++) {
+            in.readFully(raw);
+            segmentTips.add(ObjectId.fromRaw(raw));
+        }
+        
+        Map<String, List<Entry>> segmentEntries = new HashMap<>();
+        int objectCount = in.readInt();
+        for(int i = 0; i < objectCount; i++) {
+            String objectId = in.readUTF();
+            int entryCount = in.readInt();
+            List<Entry> list = new ArrayList<>(entryCount);
+            for(int j = 0; j < entryCount; j++) {
+                in.readFully(raw);
+                ObjectId commitId = ObjectId.fromRaw(raw);
+                int changeType = in.readUnsignedByte();
+                if(changeType == OTHER_CHANGE_TYPE) {
+                    list.add(new Entry(commitId, in.readUTF()));
+                }
+                else if(changeType < CHANGE_TYPES.size()) {
+                    list.add(new Entry(commitId, CHANGE_TYPES.get(changeType)));
+                }
+                else {
+                    throw new IOException("Invalid change type: " + changeType);
+                }
+            }
+            segmentEntries.put(objectId, list);
+        }
+        
+        // The tips of the last segment are the tips of the index
+        tips = segmentTips;
+        segmentEntries.forEach((objectId, list) -> entries.computeIfAbsent(objectId, id -> new ArrayList<>()).addAll(list));
+    }
+    
+    /**
+     * Append a segment with the current tips and new entries to the file
+     */
+    private void append(Map<String, List<Entry>> newEntries) throws IOException {
+        try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file.toPath(), StandardOpenOption.APPEND)))) {
+            writeSegment(out, newEntries);
+        }
+        
+        segmentCount++;
+        updateFileSnapshot();
+    }
+    
+    /**
+     * Save the whole index to file as one segment.
+     * Write to a temp file first and then move it so that readers never see a partial file.
+     */
+    private void save() throws IOException {
+        File tmpFile = new File(file.getParentFile(), file.getName() + ".tmp");
+        
+        try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmpFile.toPath())))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            writeSegment(out, entries);
+        }
+        
+        Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        
+        segmentCount = 1;
+        needsCompaction = false;
+        updateFileSnapshot();
+    }
+    
+    private void writeSegment(DataOutputStream out, Map<String, List<Entry>> segmentEntries) throws IOException {
+        out.write(SEGMENT);
+        
+        byte[] raw = new byte[Constants.OBJECT_ID_LENGTH];
+        
+        out.writeInt(tips.size());
+        for(ObjectId tip : tips) {
+            tip.copyRawTo(raw, 0);
+            out.write(raw);
+        }
+        
+        out.writeInt(segmentEntries.size());
+        for(Map.Entry<String, List<Entry>> mapEntry : segmentEntries.entrySet()) {
+            out.writeUTF(mapEntry.getKey());
+            out.writeInt(mapEntry.getValue().size());
+            for(Entry entry : mapEntry.getValue()) {
+                entry.commitId().copyRawTo(raw, 0);
+                out.write(raw);
+                int changeType = CHANGE_TYPES.indexOf(entry.changeType());
+                if(changeType != -1) {
+                    out.write(changeType);
+                }
+                else {
+                    out.write(OTHER_CHANGE_TYPE);
+                    out.writeUTF(entry.changeType());
+                }
+            }
+        }
+    }
+}
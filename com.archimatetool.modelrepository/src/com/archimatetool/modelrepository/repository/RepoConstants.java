@@ -97,5 +97,21 @@ public final class RepoConstants {
      * RefSpec for Fetch all forced tags
      */
     public static final String REFSPEC_FETCH_ALL_TAGS = "+refs/tags/*:refs/tags/*";
+    
+    /**
+     * Ref for the commit manifest notes
+     */
+    public static final String R_NOTES_MANIFEST = "refs/notes/archi/manifest";
+    
+    /**
+     * Ref for the commit manifest notes fetched from origin
+     */
+    public static final String R_NOTES_ORIGIN_MANIFEST = "refs/notes/origin/archi/manifest";
+    
+    /**
+     * RefSpec for Fetch forced commit manifest notes.
+     * This is a wildcard so that it's not an error if the remote doesn't have any notes.
+     */
+    public static final String REFSPEC_FETCH_MANIFEST_NOTES = "+refs/notes/archi/*:refs/notes/origin/archi/*";
 
 }
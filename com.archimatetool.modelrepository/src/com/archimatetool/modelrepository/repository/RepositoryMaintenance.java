@@ -0,0 +1,228 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+package com.archimatetool.modelrepository.repository;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Properties;
+import java.util.logging.Logger;
+
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.lib.ConfigConstants;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.NullProgressMonitor;
+import org.eclipse.jgit.lib.ProgressMonitor;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.StoredConfig;
+
+/**
+ * Maintenance of the object database of a repository so that commit walks stay fast as history grows.
+ *
+ * Maintenance packs loose objects and writes a commit-graph file and reachability bitmaps with JGit's garbage collector.
+ * Once the commit-graph is enabled in the repository's config RevWalks read commits from it rather than parsing commit objects,
+ * and GitUtils uses the bitmaps to test whether one commit is reachable from another.
+ */
+@SuppressWarnings("nls")
+public class RepositoryMaintenance {
+
+    private static Logger logger = Logger.getLogger(RepositoryMaintenance.class.getName());
+    
+    /**
+     * Commit-graph file in the ".git" folder
+     */
+    static final String COMMIT_GRAPH_FILE = "objects/info/commit-graph";
+    
+    /**
+     * Maintenance task
+     */
+    public static enum Task {
+        /**
+         * Nothing to do
+         */
+        NONE,
+        
+        /**
+         * Pack loose refs into the packed-refs file
+         */
+        PACK_REFS,
+        
+        /**
+         * Pack loose objects and refs, repack pack files, prune unreachable objects and write the commit-graph and bitmaps
+         */
+        GC
+    }
+    
+    /**
+     * Thresholds at which maintenance is required. A threshold of 0 is never reached.
+     * @param looseObjects Number of loose objects at which to run gc
+     * @param packFiles Number of pack files at which to run gc
+     * @param looseRefs Number of loose refs at which to pack refs
+     */
+    public static record Thresholds(long looseObjects, long packFiles, long looseRefs) {
+        /**
+         * Maintenance is required if there is any loose object or more than one pack file
+         */
+        public static final Thresholds ANY = new Thresholds(1, 2, 0);
+    }
+    
+    /**
+     * The result of running maintenance on a repository
+     * @param task The task that was run
+     * @param duration Time taken in milliseconds
+     * @param statisticsBefore Statistics of the object database before maintenance
+     * @param statisticsAfter Statistics of the object database after maintenance
+     */
+    public static record Result(Task task, long duration, Properties statisticsBefore, Properties statisticsAfter) {
+        
+        /**
+         * @return The number of loose objects before maintenance
+         */
+        public long getLooseObjectsBefore() {
+            return getLong(statisticsBefore, "numberOfLooseObjects");
+        }
+        
+        /**
+         * @return The number of loose objects after maintenance
+         */
+        public long getLooseObjectsAfter() {
+            return getLong(statisticsAfter, "numberOfLooseObjects");
+        }
+        
+        /**
+         * @return The number of pack files after maintenance
+         */
+        public long getPackFilesAfter() {
+            return getLong(statisticsAfter, "numberOfPackFiles");
+        }
+        
+        /**
+         * @return The size in bytes of loose objects and pack files before maintenance minus the size after maintenance
+         */
+        public long getSpaceReclaimed() {
+            return getObjectsSize(statisticsBefore) - getObjectsSize(statisticsAfter);
+        }
+        
+        private static long getObjectsSize(Properties statistics) {
+            return getLong(statistics, "sizeOfLooseObjects") + getLong(statistics, "sizeOfPackedObjects");
+        }
+    }
+    
+    private RepositoryMaintenance() {
+    }
+    
+    /**
+     * Enable the commit-graph in the repository's config so that it is written by gc and used by RevWalks.
+     * @return true if the config was changed
+     */
+    public static boolean enableCommitGraph(Repository repository) throws IOException {
+        StoredConfig config = repository.getConfig();
+        
+        if(config.getBoolean(ConfigConstants.CONFIG_CORE_SECTION, ConfigConstants.CONFIG_COMMIT_GRAPH, false)
+                && config.getBoolean(ConfigConstants.CONFIG_GC_SECTION, ConfigConstants.CONFIG_KEY_WRITE_COMMIT_GRAPH, false)) {
+            return false;
+        }
+        
+        config.setBoolean(ConfigConstants.CONFIG_CORE_SECTION, null, ConfigConstants.CONFIG_COMMIT_GRAPH, true);
+        config.setBoolean(ConfigConstants.CONFIG_GC_SECTION, null, ConfigConstants.CONFIG_KEY_WRITE_COMMIT_GRAPH, true);
+        config.save();
+        
+        logger.info("Set core.commitGraph and gc.writeCommitGraph to true in the config of " + repository.getDirectory());
+        
+        return true;
+    }
+    
+    /**
+     * @return true if the repository has objects that have not been packed by maintenance
+     */
+    public static boolean needsMaintenance(Repository repository) throws IOException, GitAPIException {
+        return getRequiredTask(repository, Thresholds.ANY) != Task.NONE;
+    }
+    
+    /**
+     * @return The task required to bring the repository under the thresholds
+     */
+    public static Task getRequiredTask(Repository repository, Thresholds thresholds) throws IOException, GitAPIException {
+        // Nothing to do if there are no commits
+        if(repository.resolve(Constants.HEAD) == null && repository.getRefDatabase().getRefs().isEmpty()) {
+            return Task.NONE;
+        }
+        
+        // Commits that are not in the commit-graph
+        if(!new File(repository.getDirectory(), COMMIT_GRAPH_FILE).exists()) {
+            return Task.GC;
+        }
+        
+        // Counting loose objects and pack files is cheap compared to gc
+        Properties statistics = GitUtils.wrap(repository).gc().getStatistics();
+        
+        if(isReached(getLong(statistics, "numberOfLooseObjects"), thresholds.looseObjects())
+                || isReached(getLong(statistics, "numberOfPackFiles"), thresholds.packFiles())) {
+            return Task.GC;
+        }
+        
+        if(isReached(getLong(statistics, "numberOfLooseRefs"), thresholds.looseRefs())) {
+            return Task.PACK_REFS;
+        }
+        
+        return Task.NONE;
+    }
+    
+    /**
+     * Run gc on the repository
+     * @param monitor Progress monitor which can be used to cancel the operation, may be null
+     * @return The result
+     */
+    public static Result run(Repository repository, ProgressMonitor monitor) throws IOException, GitAPIException {
+        return run(repository, Task.GC, monitor);
+    }
+    
+    /**
+     * Run a maintenance task on the repository.
+     * gc packs loose objects and refs and writes the commit-graph and reachability bitmaps.
+     * Unreachable objects are only pruned after gc's default expiry period so objects written by concurrent operations are kept.
+     * gc and packing refs lock refs so this should not be run while the repository is being used, see RepositoryPool#getUseCount(File).
+     * gc enables the commit-graph in the repository's config.
+     * @param task The task to run
+     * @param monitor Progress monitor which can be used to cancel the operation, may be null
+     * @return The result
+     */
+    public static Result run(Repository repository, Task task, ProgressMonitor monitor) throws IOException, GitAPIException {
+        long start = System.currentTimeMillis();
+        
+        if(monitor == null) {
+            monitor = NullProgressMonitor.INSTANCE;
+        }
+        
+        GitUtils utils = GitUtils.wrap(repository);
+        Properties statisticsBefore = utils.gc().getStatistics();
+        
+        if(task == Task.GC) {
+            enableCommitGraph(repository);
+            utils.gc()
+                 .setProgressMonitor(monitor)
+                 .call();
+        }
+        else if(task == Task.PACK_REFS) {
+            utils.packRefs()
+                 .setProgressMonitor(monitor)
+                 .setAll(true)
+                 .call();
+        }
+        
+        Properties statisticsAfter = utils.gc().getStatistics();
+        
+        return new Result(task, System.currentTimeMillis() - start, statisticsBefore, statisticsAfter);
+    }
+    
+    private static boolean isReached(long value, long threshold) {
+        return threshold > 0 && value >= threshold;
+    }
+    
+    private static long getLong(Properties properties, String key) {
+        Object value = properties.get(key);
+        return value instanceof Number number ? number.longValue() : 0;
+    }
+}
@@ -0,0 +1,292 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+package com.archimatetool.modelrepository.repository;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import org.eclipse.jgit.errors.RepositoryNotFoundException;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.RepositoryBuilder;
+import org.eclipse.jgit.lib.RepositoryCache.FileKey;
+import org.eclipse.jgit.util.FS;
+
+/**
+ * Process-wide pool of open JGit Repository instances keyed by the canonical ".git" folder.
+ *
+ * Opening a Repository re-reads the config, refs and pack indexes from disk, so we keep Repositories open
+ * and hand out the same instance to callers. Each call to {@link #acquire(File)} must be balanced
+ * with a call to {@link #release(Repository)} (GitUtils#close() does this).
+ *
+ * A Repository that has not been used by anyone for {@link #IDLE_TIMEOUT} ms, or whose folder has been deleted, is closed and removed from the pool.
+ */
+@SuppressWarnings("nls")
+public class RepositoryPool {
+
+    private static Logger logger = Logger.getLogger(RepositoryPool.class.getName());
+    
+    private static final RepositoryPool instance = new RepositoryPool();
+    
+    /**
+     * Time in milliseconds after which an unused Repository is closed
+     */
+    static long IDLE_TIMEOUT = TimeUnit.MINUTES.toMillis(5);
+    
+    /**
+     * Interval in milliseconds between checks for idle Repositories
+     */
+    private static final long SWEEP_INTERVAL = TimeUnit.MINUTES.toMillis(1);
+    
+    /**
+     * Identifies an instance of a ".git" folder, see {@link RepositoryPool#getFingerprint(File)}
+     */
+    private static record Fingerprint(Object gitDirId, Object objectsDirId) {}
+    
+    /**
+     * An entry in the pool
+     */
+    private static class PoolEntry {
+        Repository repository;
+        Fingerprint fingerprint;
+        int refCount;
+        long lastReleased;
+        
+        PoolEntry(Repository repository, Fingerprint fingerprint) {
+            this.repository = repository;
+            this.fingerprint = fingerprint;
+        }
+    }
+    
+    private final Map<File, PoolEntry> entries = new HashMap<>();
+    
+    private ScheduledExecutorService sweeper;
+    
+    public static RepositoryPool getInstance() {
+        return instance;
+    }
+    
+    private RepositoryPool() {
+    }
+    
+    /**
+     * Acquire a shared Repository for a folder.
+     * @param folder Either the working folder or the ".git" folder of the repository
+     * @return The shared Repository. The caller must call {@link #release(Repository)} when finished with it.
+     */
+    public synchronized Repository acquire(File folder) throws IOException {
+        File gitDir = getKeyQuietly(folder);
+        PoolEntry entry = entries.get(gitDir);
+        
+        Fingerprint fingerprint;
+        try {
+            fingerprint = getFingerprint(gitDir);
+        }
+        catch(IOException ex) {
+            // The repository folder was deleted since we opened it
+            if(entry != null) {
+                logger.info("Discarding deleted repository: " + gitDir);
+                remove(gitDir, entry);
+            }
+            throw ex;
+        }
+        
+        // The repository folder was deleted and re-created since we opened it so this entry is stale
+        if(entry != null && !Objects.equals(entry.fingerprint, fingerprint)) {
+            logger.info("Discarding stale repository: " + gitDir);
+            remove(gitDir, entry);
+            entry = null;
+        }
+        
+        if(entry == null) {
+            // The pool holds one reference to the Repository until it is evicted
+            Repository repository = new RepositoryBuilder()
+                    .setFS(FS.DETECTED)
+                    .setGitDir(gitDir)
+                    .setMustExist(true)
+                    .build();
+            
+            entry = new PoolEntry(repository, fingerprint);
+            entries.put(gitDir, entry);
+            startSweeper();
+        }
+        
+        entry.repository.incrementOpen();
+        entry.refCount++;
+        
+        return entry.repository;
+    }
+    
+    /**
+     * Release a Repository previously obtained from {@link #acquire(File)}
+     */
+    public synchronized void release(Repository repository) {
+        if(repository == null) {
+            return;
+        }
+        
+        for(PoolEntry entry : entries.values()) {
+            if(entry.repository == repository) {
+                entry.refCount = Math.max(0, entry.refCount - 1);
+                if(entry.refCount == 0) {
+                    entry.lastReleased = System.currentTimeMillis();
+                }
+                break;
+            }
+        }
+        
+        // Decrement the Repository's use count. If the Repository was evicted while in use this will close it.
+        repository.close();
+    }
+    
+    /**
+     * Close and remove a repository from the pool.
+     * This should be called before deleting a repository folder as open pack files can prevent deletion on Windows.
+     * If the Repository is still in use it will be closed when the last user releases it.
+     * @param folder Either the working folder or the ".git" folder of the repository
+     */
+    public synchronized void evict(File folder) {
+        File gitDir = getKeyQuietly(folder);
+        PoolEntry entry = entries.get(gitDir);
+        if(entry != null) {
+            remove(gitDir, entry);
+        }
+    }
+    
+    /**
+     * Close and remove any repositories that have not been used for IDLE_TIMEOUT ms,
+     * or that are not in use and whose folder has been deleted so that we don't hold its files open
+     */
+    public synchronized void evictIdle() {
+        long now = System.currentTimeMillis();
+        
+        for(Iterator<Entry<File, PoolEntry>> iter = entries.entrySet().iterator(); iter.hasNext();) {
+            Entry<File, PoolEntry> mapEntry = iter.next();
+            PoolEntry entry = mapEntry.getValue();
+            if(entry.refCount == 0 && (now - entry.lastReleased >= IDLE_TIMEOUT || !isRepositoryFolder(mapEntry.getKey()))) {
+                iter.remove();
+                entry.repository.close();
+            }
+        }
+        
+        if(entries.isEmpty()) {
+            stopSweeper();
+        }
+    }
+    
+    /**
+     * Close and remove all repositories from the pool
+     */
+    public synchronized void dispose() {
+        for(PoolEntry entry : entries.values()) {
+            entry.repository.close();
+        }
+        
+        entries.clear();
+        stopSweeper();
+    }
+    
+    /**
+     * @param folder Either the working folder or the ".git" folder of the repository
+     * @return The number of callers that have acquired the repository and not released it, or 0 if it is not in the pool
+     */
+    public synchronized int getUseCount(File folder) {
+        PoolEntry entry = entries.get(getKeyQuietly(folder));
+        return entry != null ? entry.refCount : 0;
+    }
+    
+    /**
+     * @return The number of repositories in the pool
+     */
+    synchronized int size() {
+        return entries.size();
+    }
+    
+    private void remove(File gitDir, PoolEntry entry) {
+        entries.remove(gitDir);
+        entry.repository.close(); // Release the pool's reference
+    }
+    
+    private void startSweeper() {
+        if(sweeper == null) {
+            sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "Repository Pool Sweeper");
+                thread.setDaemon(true);
+                return thread;
+            });
+            sweeper.scheduleWithFixedDelay(this::evictIdle, SWEEP_INTERVAL, SWEEP_INTERVAL, TimeUnit.MILLISECONDS);
+        }
+    }
+    
+    private void stopSweeper() {
+        if(sweeper != null) {
+            sweeper.shutdown();
+            sweeper = null;
+        }
+    }
+    
+    /**
+     * @return The canonical ".git" folder for a working folder or a ".git" folder
+     */
+    private static File getKey(File folder) throws IOException {
+        File gitDir = FileKey.resolve(folder, FS.DETECTED);
+        if(gitDir == null) {
+            throw new RepositoryNotFoundException(folder);
+        }
+        return gitDir.getCanonicalFile();
+    }
+    
+    /**
+     * @return The canonical ".git" folder for a working folder or a ".git" folder even if it doesn't exist
+     */
+    private static File getKeyQuietly(File folder) {
+        try {
+            return getKey(folder);
+        }
+        catch(IOException ex) {
+            File gitDir = ".git".equals(folder.getName()) ? folder : new File(folder, ".git");
+            return gitDir.toPath().toAbsolutePath().normalize().toFile();
+        }
+    }
+    
+    /**
+     * @return true if the ".git" folder still has its "HEAD" file and "objects" folder
+     */
+    private static boolean isRepositoryFolder(File gitDir) {
+        return new File(gitDir, Constants.HEAD).isFile() && new File(gitDir, Constants.OBJECTS).isDirectory();
+    }
+    
+    /**
+     * @return A Fingerprint that identifies this instance of the ".git" folder so that we know if it has been deleted and re-created.
+     * It is made from the file keys (device and inode) of the ".git" folder and its "objects" folder, or their creation times where there
+     * are no file keys, as on Windows. A file system can re-use the inode of a deleted folder but it is very unlikely to re-use both.
+     * The creation time is not used with a file key because on some file systems it is the modification time,
+     * which changes whenever a file is created or renamed in the folder.
+     * @throws IOException if the ".git" folder or its "objects" folder doesn't exist
+     */
+    private static Fingerprint getFingerprint(File gitDir) throws IOException {
+        if(!isRepositoryFolder(gitDir)) {
+            throw new RepositoryNotFoundException(gitDir);
+        }
+        return new Fingerprint(getFileId(gitDir), getFileId(new File(gitDir, Constants.OBJECTS)));
+    }
+    
+    private static Object getFileId(File file) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+        return attributes.fileKey() != null ? attributes.fileKey() : attributes.creationTime();
+    }
+}
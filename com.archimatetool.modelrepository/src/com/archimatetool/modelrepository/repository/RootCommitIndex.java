@@ -0,0 +1,188 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+package com.archimatetool.modelrepository.repository;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.eclipse.jgit.errors.MissingObjectException;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+
+/**
+ * Persistent record of the root commits (commits with no parents) reachable from the refs of a repository.
+ *
+ * The root commits are stored in the ".git" folder together with the ref tips at the time they were found.
+ * When the refs change only the commits that are not reachable from the previous tips are walked.
+ *
+ * A root that is no longer reachable because a ref was deleted or reset would stay in the record. This only matters
+ * if there is more than one root so in that case, if any previous tip has gone, the roots are found again with a full walk.
+ */
+@SuppressWarnings("nls")
+class RootCommitIndex {
+
+    private static Logger logger = Logger.getLogger(RootCommitIndex.class.getName());
+    
+    /**
+     * Index file name in the ".git" folder
+     */
+    static final String INDEX_FILENAME = "archi-roots";
+    
+    private static final int MAGIC = 0x4152524F; // "ARRO"
+    private static final int VERSION = 1;
+    
+    private File file;
+    private Set<ObjectId> tips = new HashSet<>();
+    private Set<ObjectId> roots = new HashSet<>();
+    
+    /**
+     * Update the root commits for a repository with any new commits and return them
+     */
+    static synchronized Set<ObjectId> getRoots(Repository repository) throws IOException {
+        RootCommitIndex index = new RootCommitIndex(repository);
+        if(index.update(repository, index.load())) {
+            index.save();
+        }
+        return Collections.unmodifiableSet(index.roots);
+    }
+    
+    private RootCommitIndex(Repository repository) {
+        file = new File(repository.getDirectory(), INDEX_FILENAME);
+    }
+    
+    /**
+     * Add the roots of commits that are not reachable from the tips of the last update
+     * @param loaded Whether the index was loaded from file
+     * @return true if the index changed
+     */
+    private boolean update(Repository repository, boolean loaded) throws IOException {
+        Set<ObjectId> newTips = ModelObjectIndex.getTips(repository);
+        if(loaded && newTips.equals(tips)) {
+            return false;
+        }
+        
+        boolean tipsRemoved = !newTips.containsAll(tips);
+        
+        walk(repository, newTips);
+        
+        // If a ref was deleted or reset a root might not be reachable any more so find the roots again with a full walk
+        if(roots.size() > 1 && tipsRemoved) {
+            tips.clear();
+            roots.clear();
+            walk(repository, newTips);
+        }
+        
+        tips = newTips;
+        
+        return true;
+    }
+    
+    /**
+     * Walk the commits reachable from newTips that are not reachable from the current tips and add their roots
+     */
+    private void walk(Repository repository, Set<ObjectId> newTips) throws IOException {
+        try(RevWalk revWalk = new RevWalk(repository)) {
+            revWalk.setRetainBody(false);
+            
+            for(ObjectId tip : newTips) {
+                revWalk.markStart(revWalk.parseCommit(tip));
+            }
+            
+            // Don't walk commits that have already been checked
+            for(ObjectId tip : tips) {
+                try {
+                    revWalk.markUninteresting(revWalk.parseCommit(tip));
+                }
+                catch(MissingObjectException ex) {
+                    // Commit was garbage collected, any root reachable from it that is still reachable is reachable from another tip
+                }
+            }
+            
+            for(RevCommit commit : revWalk) {
+                if(commit.getParentCount() == 0) {
+                    roots.add(commit.copy());
+                }
+            }
+        }
+    }
+    
+    /**
+     * Load the index from file
+     * @return true if loaded, false if the file does not exist or is not a valid index
+     */
+    private boolean load() {
+        if(!file.exists()) {
+            return false;
+        }
+        
+        try(DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file.toPath())))) {
+            if(in.readInt() != MAGIC || in.readInt() != VERSION) {
+                logger.info("Root commit index is not a supported version, rebuilding");
+                return false;
+            }
+            
+            readIds(in, tips);
+            readIds(in, roots);
+            
+            return true;
+        }
+        catch(IOException ex) {
+            logger.log(Level.WARNING, "Could not read root commit index, rebuilding", ex);
+            tips.clear();
+            roots.clear();
+            return false;
+        }
+    }
+    
+    /**
+     * Save the index to file.
+     * Write to a temp file first and then move it so that readers never see a partial file.
+     */
+    private void save() throws IOException {
+        File tmpFile = new File(file.getParentFile(), file.getName() + ".tmp");
+        
+        try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmpFile.toPath())))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            writeIds(out, tips);
+            writeIds(out, roots);
+        }
+        
+        Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+    
+    private void readIds(DataInputStream in, Set<ObjectId> ids) throws IOException {
+        byte[] raw = new byte[Constants.OBJECT_ID_LENGTH];
+        int count = in.readInt();
+        for(int i = 0; i < count; i++) {
+            in.readFully(raw);
+            ids.add(ObjectId.fromRaw(raw));
+        }
+    }
+    
+    private void writeIds(DataOutputStream out, Set<ObjectId> ids) throws IOException {
+        byte[] raw = new byte[Constants.OBJECT_ID_LENGTH];
+        out.writeInt(ids.size());
+        for(ObjectId id : ids) {
+            id.copyRawTo(raw, 0);
+            out.write(raw);
+        }
+    }
+}
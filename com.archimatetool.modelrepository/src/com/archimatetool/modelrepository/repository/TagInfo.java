@@ -8,19 +8,20 @@ package com.archimatetool.modelrepository.repository;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
 
-import org.eclipse.jgit.api.Git;
 import org.eclipse.jgit.api.ListBranchCommand.ListMode;
 import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.Ref;
 import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.revwalk.RevCommit;
 import org.eclipse.jgit.revwalk.RevTag;
 import org.eclipse.jgit.revwalk.RevWalk;
-import org.eclipse.jgit.revwalk.RevWalkUtils;
 
 /**
  * Tag Info
@@ -40,36 +41,69 @@ public class TagInfo {
     public static List<TagInfo> getTags(File repoFolder) throws IOException, GitAPIException {
         List<TagInfo> list = new ArrayList<>();
         
-        try(Git git = Git.open(repoFolder)) {
+        try(GitUtils git = GitUtils.open(repoFolder)) {
             List<Ref> tags = git.tagList().call();
             if(!tags.isEmpty()) {
+                // Get the commit and tag of each tag ref
+                try(RevWalk revWalk = new RevWalk(git.getRepository())) {
+                    for(Ref tagRef : tags) {
+                        list.add(new TagInfo(git.getRepository(), tagRef, revWalk));
+                    }
+                }
+                
                 // Get all branches now
                 List<Ref> branchRefs = git.branchList().setListMode(ListMode.ALL).call();
                 
-                // Use two RevWalks, one for the commit and tag, and one for getIsOrphaned
-                try(RevWalk revWalk1 = new RevWalk(git.getRepository()); RevWalk revWalk2 = new RevWalk(git.getRepository())) {
-                    revWalk2.setRetainBody(false); // This one doesn't need to retain body
-                    
-                    for(Ref tagRef : tags) {
-                        list.add(new TagInfo(git.getRepository(), tagRef, revWalk1, revWalk2, branchRefs));
+                // Find the tagged commits that are not reachable from any branch in one walk
+                Set<ObjectId> unreachableCommits = new HashSet<>();
+                for(TagInfo tagInfo : list) {
+                    if(tagInfo.commit != null) {
+                        unreachableCommits.add(tagInfo.commit.copy());
                     }
                 }
+                removeReachableCommits(git.getRepository(), unreachableCommits, branchRefs);
+                
+                for(TagInfo tagInfo : list) {
+                    tagInfo.isOrphaned = tagInfo.commit == null || unreachableCommits.contains(tagInfo.commit);
+                }
             }
         }
         
         return list;
     }
     
-    TagInfo(Repository repository, Ref ref, RevWalk revWalk1, RevWalk revWalk2,  List<Ref> branchRefs) throws IOException {
+    /**
+     * Walk the commits reachable from all branches once and remove them from the set of commits.
+     * The walk stops as soon as all of the commits have been found.
+     */
+    private static void removeReachableCommits(Repository repository, Set<ObjectId> commits, List<Ref> branchRefs) throws IOException {
+        if(commits.isEmpty()) {
+            return;
+        }
+        
+        try(RevWalk revWalk = new RevWalk(repository)) {
+            revWalk.setRetainBody(false);
+            
+            for(Ref ref : branchRefs) {
+                if(ref.getObjectId() != null) {
+                    revWalk.markStart(revWalk.parseCommit(ref.getObjectId()));
+                }
+            }
+            
+            for(RevCommit commit : revWalk) {
+                if(commits.remove(commit) && commits.isEmpty()) {
+                    break;
+                }
+            }
+        }
+    }
+    
+    TagInfo(Repository repository, Ref ref, RevWalk revWalk) throws IOException {
         this.ref = ref;
         repoDir = repository.getWorkTree();
         
-        // Use a separate RevWalk for these
-        commit = getCommit(repository, revWalk1);
-        tag = getRevTag(repository, revWalk1);
-        
-        // And a separate RevWalk for this
-        isOrphaned = getIsOrphaned(repository, revWalk2, branchRefs);
+        commit = getCommit(repository, revWalk);
+        tag = getRevTag(repository, revWalk);
     }
     
     public File getWorkingFolder() {
@@ -107,11 +141,6 @@ public class TagInfo {
         return isOrphaned;
     }
     
-    private boolean getIsOrphaned(Repository repository, RevWalk revWalk, List<Ref> branchRefs) throws IOException {
-        // If there are no other reachable branches from the tag's commit
-        return commit != null ? RevWalkUtils.findBranchesReachableFrom(commit, revWalk, branchRefs).isEmpty() : true;
-    }
-
     /**
      * If this is an annotated tag return RevTag, else null
      */
@@ -0,0 +1,205 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+package com.archimatetool.modelrepository.repository;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.eclipse.jgit.dircache.DirCache;
+import org.eclipse.jgit.dircache.DirCacheEntry;
+import org.eclipse.jgit.dircache.DirCacheIterator;
+import org.eclipse.jgit.errors.LockFailedException;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.EmptyTreeIterator;
+import org.eclipse.jgit.treewalk.FileTreeIterator;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.WorkingTreeIterator;
+import org.eclipse.jgit.treewalk.WorkingTreeIterator.MetadataDiff;
+import org.eclipse.jgit.treewalk.filter.PathFilterGroup;
+
+/**
+ * Fast check for changes to commit in the model file and images folder, or in all files.
+ *
+ * HEAD (or another commit's tree), the index and the working tree are compared in one TreeWalk limited to the model file and the images folder
+ * unless all files are checked.
+ * A working tree file is compared with its index entry by length and last modified time, and its content is only hashed
+ * if the stat data is ambiguous (the times differ but the length is the same, or the entry is racily clean).
+ * This gives the same answer as a JGit status() for these paths.
+ *
+ * If a file's content is unchanged but its time differs, as when a model is saved without changes, the time in the index entry
+ * is refreshed so that the next check doesn't need to hash the file again.
+ */
+@SuppressWarnings("nls")
+class WorkingTreeStatus {
+
+    private static Logger logger = Logger.getLogger(WorkingTreeStatus.class.getName());
+    
+    /**
+     * Stat data of a working tree file with the same content as its index entry
+     */
+    private static record StatData(ObjectId objectId, long length, Instant lastModified) {}
+    
+    private Repository repository;
+    private boolean allFiles;
+    
+    // Index entries with unchanged content but different stat data, keyed by path
+    private Map<String, StatData> refreshedEntries = new HashMap<>();
+    
+    /**
+     * Check the model file and images folder only
+     */
+    WorkingTreeStatus(Repository repository) {
+        this(repository, false);
+    }
+    
+    /**
+     * @param allFiles If true check all files, otherwise only the model file and images folder
+     */
+    WorkingTreeStatus(Repository repository, boolean allFiles) {
+        this.repository = repository;
+        this.allFiles = allFiles;
+    }
+    
+    /**
+     * @return true if the checked files have been added, changed or deleted in the index or working tree
+     */
+    boolean hasChanges() throws IOException {
+        return hasChanges(repository.resolve(RepoConstants.HEAD + "^{tree}"));
+    }
+    
+    /**
+     * @param treeId The tree to compare with, or null for no tree
+     * @return true if the checked files in the index or working tree are different to those in the tree
+     */
+    boolean hasChanges(ObjectId treeId) throws IOException {
+        if(compare(treeId)) {
+            return true;
+        }
+        
+        if(!refreshedEntries.isEmpty()) {
+            refreshIndex();
+        }
+        
+        return false;
+    }
+    
+    private boolean compare(ObjectId treeId) throws IOException {
+        DirCache dirCache = repository.readDirCache();
+        
+        try(ObjectReader reader = repository.newObjectReader(); TreeWalk treeWalk = new TreeWalk(repository, reader)) {
+            treeWalk.setRecursive(true);
+            if(!allFiles) {
+                treeWalk.setFilter(PathFilterGroup.createFromStrings(RepoConstants.MODEL_FILENAME, RepoConstants.IMAGES_FOLDER));
+            }
+            
+            int treeIndex;
+            if(treeId != null) {
+                try(RevWalk revWalk = new RevWalk(reader)) {
+                    treeIndex = treeWalk.addTree(revWalk.parseTree(treeId));
+                }
+            }
+            else {
+                treeIndex = treeWalk.addTree(new EmptyTreeIterator());
+            }
+            
+            int dirCacheIndex = treeWalk.addTree(new DirCacheIterator(dirCache));
+            
+            FileTreeIterator fileTreeIterator = new FileTreeIterator(repository);
+            int workingTreeIndex = treeWalk.addTree(fileTreeIterator);
+            fileTreeIterator.setDirCacheIterator(treeWalk, dirCacheIndex);
+            
+            while(treeWalk.next()) {
+                // Staged change
+                if(treeWalk.getRawMode(treeIndex) != treeWalk.getRawMode(dirCacheIndex) || !treeWalk.idEqual(treeIndex, dirCacheIndex)) {
+                    return true;
+                }
+                
+                DirCacheIterator dirCacheIterator = treeWalk.getTree(dirCacheIndex, DirCacheIterator.class);
+                WorkingTreeIterator workingTreeIterator = treeWalk.getTree(workingTreeIndex, WorkingTreeIterator.class);
+                
+                // Untracked file
+                if(dirCacheIterator == null) {
+                    if(workingTreeIterator != null && !workingTreeIterator.isEntryIgnored()) {
+                        return true;
+                    }
+                    continue;
+                }
+                
+                // Missing file
+                if(workingTreeIterator == null) {
+                    return true;
+                }
+                
+                DirCacheEntry entry = dirCacheIterator.getDirCacheEntry();
+                MetadataDiff diff = workingTreeIterator.compareMetadata(entry);
+                
+                if(diff == MetadataDiff.DIFFER_BY_METADATA) {
+                    return true;
+                }
+                
+                if(diff != MetadataDiff.EQUAL) {
+                    // Stat data is ambiguous so compare content
+                    if(workingTreeIterator.isModified(entry, true, reader)) {
+                        return true;
+                    }
+                    
+                    refreshedEntries.put(entry.getPathString(), new StatData(entry.getObjectId(),
+                                                                             workingTreeIterator.getEntryLength(),
+                                                                             workingTreeIterator.getEntryLastModifiedInstant()));
+                }
+            }
+        }
+        
+        return false;
+    }
+    
+    /**
+     * Write the refreshed stat data to the index.
+     * This is an optimisation so if the index is locked by another operation, or has changed, it's not done.
+     */
+    private void refreshIndex() {
+        DirCache dirCache = null;
+        
+        try {
+            dirCache = repository.lockDirCache();
+            
+            boolean changed = false;
+            
+            for(Map.Entry<String, StatData> mapEntry : refreshedEntries.entrySet()) {
+                DirCacheEntry entry = dirCache.getEntry(mapEntry.getKey());
+                StatData statData = mapEntry.getValue();
+                if(entry != null && entry.getObjectId().equals(statData.objectId())) {
+                    entry.setLength(statData.length());
+                    entry.setLastModified(statData.lastModified());
+                    changed = true;
+                }
+            }
+            
+            if(changed) {
+                dirCache.write();
+                dirCache.commit();
+            }
+        }
+        catch(LockFailedException ex) {
+            // Another operation has the index
+        }
+        catch(IOException ex) {
+            logger.log(Level.WARNING, "Could not refresh index", ex);
+        }
+        finally {
+            if(dirCache != null) {
+                dirCache.unlock();
+            }
+        }
+    }
+}
@@ -225,9 +225,9 @@ public class HistoryTableViewer extends TableViewer {
         }
         
         try(GitUtils utils = GitUtils.open(repo.getWorkingFolder())) {
-            return utils.hasChangesToCommit();
+            return utils.hasModelChangesToCommit();
         }
-        catch(IOException | GitAPIException ex) {
+        catch(IOException ex) {
             ex.printStackTrace();
             logger.log(Level.SEVERE, "Has changes to commit", ex); //$NON-NLS-1$
             return false;
@@ -296,7 +296,7 @@ public class HistoryTableViewer extends TableViewer {
                     
                     // Add a filter to show only commits that contain an object's Id
                     if(filteredObjectId != null) {
-                        revWalk.setRevFilter(new ModelObjectIdFilter(filteredObjectId));
+                        revWalk.setRevFilter(ModelObjectIdFilter.create(utils.getRepository(), filteredObjectId));
                     }
 
                     // Set the local branch commit start
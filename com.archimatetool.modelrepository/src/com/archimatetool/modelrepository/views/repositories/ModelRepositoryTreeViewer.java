@@ -235,7 +235,7 @@ public class ModelRepositoryTreeViewer extends TreeViewer implements IRepository
         try(GitUtils utils = GitUtils.open(repo.getWorkingFolder())) {
             BranchInfo branchInfo = BranchInfo.currentLocalBranchInfo(repo.getWorkingFolder(), Option.COMMIT_STATUS).orElse(null);
             if(branchInfo != null) {
-                boolean hasChanges = utils.hasChangesToCommit();
+                boolean hasChanges = utils.hasModelChangesToCommit();
                 boolean hasMultipleRoots = utils.hasMultipleRoots();
                 if(hasMultipleRoots) {
                     logger.warning("Repository has multiple roots: " + repo.getWorkingFolder()); //$NON-NLS-1$
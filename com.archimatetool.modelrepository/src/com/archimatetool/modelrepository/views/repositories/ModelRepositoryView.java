@@ -73,6 +73,7 @@ import com.archimatetool.modelrepository.repository.IArchiRepository;
 import com.archimatetool.modelrepository.repository.IRepositoryListener;
 import com.archimatetool.modelrepository.repository.RepoUtils;
 import com.archimatetool.modelrepository.repository.RepositoryListenerManager;
+import com.archimatetool.modelrepository.repository.RepositoryPool;
 import com.archimatetool.modelrepository.treemodel.Group;
 import com.archimatetool.modelrepository.treemodel.RepositoryRef;
 import com.archimatetool.modelrepository.treemodel.RepositoryTreeModel;
@@ -436,6 +437,7 @@ implements IContextProvider, ISelectionListener, ITabbedPropertySheetPageContrib
                     CredentialsStorage.getInstance().clearCredentials(repository);
                     // Delete folder
                     logger.info("Deleting repository folder: " + repository.getWorkingFolder()); //$NON-NLS-1$
+                    RepositoryPool.getInstance().evict(repository.getWorkingFolder()); // Close any open Repository first
                     FileUtils.deleteFolder(repository.getWorkingFolder());
                 }
 
@@ -15,6 +15,7 @@ import org.eclipse.jgit.transport.RemoteRefUpdate.Status;
 import org.eclipse.ui.IWorkbenchWindow;
 
 import com.archimatetool.editor.utils.StringUtils;
+import com.archimatetool.modelrepository.repository.GitUtils;
 import com.archimatetool.modelrepository.repository.IArchiRepository;
 
 /**
@@ -65,6 +66,11 @@ public abstract class AbstractPushResultWorkflow extends AbstractRepositoryWorkf
         
         // Iterate thru all pushed refs, current branch and tags, and get the primary one
         for(RemoteRefUpdate refUpdate : pushResult.getRemoteUpdates()) {
+            // Notes that are not pushed are merged on the next fetch
+            if(GitUtils.isNotesRef(refUpdate.getRemoteName())) {
+                continue;
+            }
+            
             switch(refUpdate.getStatus()) {
                 // OK over-rides UP_TO_DATE and means remote ref was updated
                 case OK -> {
@@ -119,6 +125,7 @@ public abstract class AbstractPushResultWorkflow extends AbstractRepositoryWorkf
         
         pushResult.getRemoteUpdates().stream()
                   .filter(refUpdate -> !ALLOWED.contains(refUpdate.getStatus()))        // Ignore OK, UP_TO_DATE and NON_EXISTING
+                  .filter(refUpdate -> !GitUtils.isNotesRef(refUpdate.getRemoteName())) // Ignore notes
                   .forEach(refUpdate -> {
                       sb.append(refUpdate.getStatus().name()); // Status enum name
                       sb.append('\n');
@@ -38,6 +38,7 @@ import com.archimatetool.modelrepository.repository.IRepositoryListener;
 import com.archimatetool.modelrepository.repository.RepoConstants;
 import com.archimatetool.modelrepository.repository.RepoUtils;
 import com.archimatetool.modelrepository.repository.RepositoryListenerManager;
+import com.archimatetool.modelrepository.repository.RepositoryPool;
 
 /**
  * Abstract workflow in the UI.
@@ -321,6 +322,7 @@ public abstract class AbstractRepositoryWorkflow implements IRepositoryWorkflow
     protected void deleteRepository() {
         try {
             logger.info("Deleting repository folder: " + archiRepository.getWorkingFolder().getPath()); //$NON-NLS-1$
+            RepositoryPool.getInstance().evict(archiRepository.getWorkingFolder()); // Close any open Repository first
             FileUtils.deleteFolder(archiRepository.getWorkingFolder());
         }
         catch(IOException ex) {
@@ -18,6 +18,7 @@ import com.archimatetool.editor.utils.FileUtils;
 import com.archimatetool.modelrepository.repository.IArchiRepository;
 import com.archimatetool.modelrepository.repository.IRepositoryListener;
 import com.archimatetool.modelrepository.repository.RepositoryListenerManager;
+import com.archimatetool.modelrepository.repository.RepositoryPool;
 import com.archimatetool.modelrepository.treemodel.RepositoryRef;
 import com.archimatetool.modelrepository.treemodel.RepositoryTreeModel;
 
@@ -81,6 +82,7 @@ public class DeleteModelWorkflow extends AbstractRepositoryWorkflow {
             
             // Delete repo
             if(deleteRepo) {
+                RepositoryPool.getInstance().evict(archiRepository.getWorkingFolder()); // Close any open Repository first
                 FileUtils.deleteFolder(archiRepository.getWorkingFolder());
             }
             
@@ -5,9 +5,6 @@
  */
 package com.archimatetool.modelrepository.workflows;
 
-import java.io.File;
-import java.io.IOException;
-import java.nio.file.Files;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -19,15 +16,13 @@ import org.eclipse.jgit.revwalk.RevCommit;
 import org.eclipse.ui.IWorkbenchWindow;
 
 import com.archimatetool.editor.model.IEditorModelManager;
-import com.archimatetool.editor.utils.FileUtils;
 import com.archimatetool.model.IArchimateModel;
 import com.archimatetool.modelrepository.IRunnable;
 import com.archimatetool.modelrepository.repository.GitUtils;
 import com.archimatetool.modelrepository.repository.IArchiRepository;
-import com.archimatetool.modelrepository.repository.RepoConstants;
 
 /**
- * Checkout a commit and extract the .archimate file from it
+ * Load the model from a commit and open it in the Models Tree
  */
 public class ExtractModelFromCommitWorkflow extends AbstractRepositoryWorkflow {
     
@@ -51,32 +46,25 @@ public class ExtractModelFromCommitWorkflow extends AbstractRepositoryWorkflow {
         }
         
         ProgressMonitorDialog dialog = new ProgressMonitorDialog(workbenchWindow.getShell());
-        AtomicReference<File> tempFolder = new AtomicReference<>();
+        AtomicReference<IArchimateModel> modelRef = new AtomicReference<>();
         
         try {
-            // Create a temporary folder to extract to
-            tempFolder.set(Files.createTempDirectory("archi-").toFile()); //$NON-NLS-1$
-            
             IRunnable.run(dialog, true, false, monitor -> {
                 monitor.beginTask(Messages.ExtractModelFromCommitWorkflow_3, IProgressMonitor.UNKNOWN);
                 
                 try(GitUtils utils = GitUtils.open(archiRepository.getWorkingFolder())) {
-                    // Extract the commit
-                    logger.info("Extracting the commit"); //$NON-NLS-1$
-                    utils.extractCommit(revCommit, tempFolder.get(), false);
+                    // Load the model from the commit
+                    logger.info("Loading the model from the commit"); //$NON-NLS-1$
+                    modelRef.set(utils.loadModel(revCommit));
                 }
             });
 
-            // If the model file exists, open it
-            File modelFile = new File(tempFolder.get(), RepoConstants.MODEL_FILENAME);
-            if(modelFile.exists()) {
-                IArchimateModel model = IEditorModelManager.INSTANCE.openModel(modelFile);
-                if(model != null) {
-                    // Set file to null
-                    model.setFile(null);
-                    // Add part of the commit hash to name
-                    model.setName(model.getName() + " (" + revCommit.getName().substring(0, 8) + ")"); //$NON-NLS-1$ //$NON-NLS-2$
-                }
+            // If the model exists, open it
+            IArchimateModel model = modelRef.get();
+            if(model != null) {
+                // Add part of the commit hash to name
+                model.setName(model.getName() + " (" + revCommit.getName().substring(0, 8) + ")"); //$NON-NLS-1$ //$NON-NLS-2$
+                IEditorModelManager.INSTANCE.openModel(model);
             }
             else {
                 logger.warning("Model does not exist!"); //$NON-NLS-1$
@@ -87,13 +75,6 @@ public class ExtractModelFromCommitWorkflow extends AbstractRepositoryWorkflow {
             logger.log(Level.SEVERE, "Extract Model", ex); //$NON-NLS-1$
             displayErrorDialog(Messages.ExtractModelFromCommitWorkflow_0, ex);
         }
-        
-        try {
-            FileUtils.deleteFolder(tempFolder.get());
-        }
-        catch(IOException ex) {
-            logger.log(Level.WARNING, "Extract Model", ex); //$NON-NLS-1$
-        }
     }
     
     @Override
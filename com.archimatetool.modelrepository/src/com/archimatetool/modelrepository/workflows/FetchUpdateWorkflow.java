@@ -86,7 +86,7 @@ public class FetchUpdateWorkflow extends AbstractRepositoryWorkflow {
                             // If there were updates add the repo to be updated
                             for(FetchResult fetchResult : fetchResults) {
                                 logFetchResult(fetchResult);
-                                if(!fetchResult.getTrackingRefUpdates().isEmpty()) {
+                                if(GitUtils.hasTrackingRefUpdates(fetchResult)) {
                                     updatedRepos.add(repository);
                                 }
                             }
@@ -83,8 +83,8 @@ public class RefreshModelWorkflow extends AbstractRepositoryWorkflow {
         logFetchResults(fetchResults);
         
         // Check if there are either branch or tag tracking updates
-        boolean hasTrackingRefUpdates = !(fetchResults.get(0).getTrackingRefUpdates().isEmpty() &&
-                                          fetchResults.get(1).getTrackingRefUpdates().isEmpty());
+        boolean hasTrackingRefUpdates = GitUtils.hasTrackingRefUpdates(fetchResults.get(0)) ||
+                                        GitUtils.hasTrackingRefUpdates(fetchResults.get(1));
 
         MergeHandlerResult mergeHandlerResult;
         